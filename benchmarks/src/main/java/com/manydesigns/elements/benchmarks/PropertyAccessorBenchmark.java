@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.benchmarks;
+
+import com.manydesigns.elements.ElementsProperties;
+import com.manydesigns.elements.reflection.JavaPropertyAccessor;
+import com.manydesigns.elements.reflection.PropertyAccessor;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes all the properties of an entity with 50 columns, with reflection and with generated accessors
+ * ({@link ElementsProperties#REFLECTION_ACCESSORS_GENERATED}), as a CRUD page does for each row of a search or an
+ * export. Like the entities mapped by Portofino, the class is generated with Javassist in its own class loader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyAccessorBenchmark {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    public static final int COLUMNS = 50;
+    protected static final Class<?>[] COLUMN_TYPES = {
+            String.class, Integer.class, Long.class, BigDecimal.class, Date.class, Boolean.class };
+
+    @Param({"false", "true"})
+    public boolean generated;
+
+    protected PropertyAccessor[] accessors;
+    protected Object[] values;
+    protected Object entity;
+
+    @Setup
+    public void setup() throws Exception {
+        Class<?> entityClass = generateEntityClass();
+        ElementsProperties.getConfiguration().setProperty(
+                ElementsProperties.REFLECTION_ACCESSORS_GENERATED, generated);
+        try {
+            List<PropertyAccessor> accessorList = new ArrayList<>();
+            for(PropertyDescriptor descriptor : Introspector.getBeanInfo(entityClass, Object.class).getPropertyDescriptors()) {
+                accessorList.add(new JavaPropertyAccessor(descriptor));
+            }
+            accessors = accessorList.toArray(new PropertyAccessor[0]);
+        } finally {
+            ElementsProperties.getConfiguration().clearProperty(ElementsProperties.REFLECTION_ACCESSORS_GENERATED);
+        }
+        values = new Object[accessors.length];
+        for(int i = 0; i < accessors.length; i++) {
+            values[i] = sampleValue(accessors[i].getType(), i);
+        }
+        entity = entityClass.getConstructor().newInstance();
+        writeAll();
+    }
+
+    @Benchmark
+    public void readAll(Blackhole blackhole) {
+        for(PropertyAccessor accessor : accessors) {
+            blackhole.consume(accessor.get(entity));
+        }
+    }
+
+    @Benchmark
+    public void writeAll() {
+        for(int i = 0; i < accessors.length; i++) {
+            accessors[i].set(entity, values[i]);
+        }
+    }
+
+    protected static Class<?> generateEntityClass() throws Exception {
+        ClassPool classPool = new ClassPool(ClassPool.getDefault());
+        CtClass ctClass = classPool.makeClass("com.manydesigns.elements.benchmarks.generated.Entity50");
+        for(int i = 0; i < COLUMNS; i++) {
+            CtClass type = classPool.get(COLUMN_TYPES[i % COLUMN_TYPES.length].getName());
+            String name = "column" + i;
+            CtField field = new CtField(type, name, ctClass);
+            ctClass.addField(field);
+            ctClass.addMethod(CtNewMethod.getter("getColumn" + i, field));
+            ctClass.addMethod(CtNewMethod.setter("setColumn" + i, field));
+        }
+        byte[] classFile = ctClass.toBytecode();
+        return new ClassLoader(PropertyAccessorBenchmark.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(ctClass.getName(), classFile, 0, classFile.length);
+            }
+        }.define();
+    }
+
+    protected static Object sampleValue(Class<?> type, int i) {
+        if(type == String.class) {
+            return "value " + i;
+        } else if(type == Integer.class) {
+            return i;
+        } else if(type == Long.class) {
+            return (long) i;
+        } else if(type == BigDecimal.class) {
+            return BigDecimal.valueOf(i, 2);
+        } else if(type == Date.class) {
+            return new Date(i);
+        } else {
+            return i % 2 == 0;
+        }
+    }
+}
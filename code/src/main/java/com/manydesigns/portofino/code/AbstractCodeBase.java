@@ -3,22 +3,36 @@ package com.manydesigns.portofino.code;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.subjects.PublishSubject;
 import io.reactivex.subjects.Subject;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelectInfo;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.FileTypeSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.ref.WeakReference;
 import java.net.URL;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.*;
+import java.util.concurrent.*;
 
 public abstract class AbstractCodeBase implements CodeBase {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractCodeBase.class);
+    public static final long DEFAULT_NEGATIVE_LOOKUP_TTL = 5000;
+    public static final int MAX_NEGATIVE_LOOKUPS = 10000;
     protected CodeBase parent;
     protected final ConcurrentMap<String, WeakReference<Class>> knownClasses = new ConcurrentHashMap<>();
+    /**
+     * Names of classes that were found not to be local, with the time of the lookup. Saves file system accesses
+     * for classes that live in the parent codebase or classloader. Entries expire after {@link #negativeLookupTtl}
+     * milliseconds, so that newly created source files are eventually picked up.
+     */
+    protected final ConcurrentMap<String, Long> notLocalClasses = new ConcurrentHashMap<>();
+    protected long negativeLookupTtl = DEFAULT_NEGATIVE_LOOKUP_TTL;
     protected final Subject<Class> reloads = PublishSubject.create();
     protected FileObject root;
     protected ClassLoader classLoader;
@@ -26,6 +40,7 @@ public abstract class AbstractCodeBase implements CodeBase {
 
     public AbstractCodeBase(FileObject root) {
         this.root = root;
+        reloads.subscribe(c -> notLocalClasses.clear());
     }
 
     public AbstractCodeBase(FileObject root, CodeBase parent, ClassLoader classLoader) {
@@ -60,7 +75,14 @@ public abstract class AbstractCodeBase implements CodeBase {
 
     @Override
     public Class loadClass(String className, SearchScope searchScope) throws IOException, ClassNotFoundException {
-        Class localClass = loadLocalClass(className);
+        Class localClass = null;
+        if(!isKnownNotLocal(className)) {
+            localClass = loadLocalClass(className);
+            if(localClass == null) {
+                //Only remember actual lookups, so that the entry expires negativeLookupTtl ms after the last one
+                rememberNotLocal(className);
+            }
+        }
         if(localClass != null) {
             WeakReference<Class> oldClass = knownClasses.get(className);
             boolean shouldSignalReload = oldClass != null && oldClass.get() != localClass;
@@ -84,6 +106,98 @@ public abstract class AbstractCodeBase implements CodeBase {
 
     protected abstract Class loadLocalClass(String className) throws IOException, ClassNotFoundException;
 
+    protected boolean isKnownNotLocal(String className) {
+        Long lookupTime = notLocalClasses.get(className);
+        if(lookupTime == null) {
+            return false;
+        }
+        if(System.currentTimeMillis() - lookupTime > negativeLookupTtl) {
+            notLocalClasses.remove(className, lookupTime);
+            return false;
+        }
+        return true;
+    }
+
+    protected void rememberNotLocal(String className) {
+        if(negativeLookupTtl <= 0) {
+            return;
+        }
+        if(notLocalClasses.size() >= MAX_NEGATIVE_LOOKUPS) {
+            notLocalClasses.clear();
+        }
+        notLocalClasses.put(className, System.currentTimeMillis());
+    }
+
+    public long getNegativeLookupTtl() {
+        return negativeLookupTtl;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a class that was not found locally is remembered as such.
+     * Zero or a negative value disables negative lookup caching.
+     */
+    public void setNegativeLookupTtl(long negativeLookupTtl) {
+        this.negativeLookupTtl = negativeLookupTtl;
+        notLocalClasses.clear();
+    }
+
+    @Override
+    public Map<String, Long> preloadClasses(ExecutorService executor) throws IOException {
+        Map<String, Future<Long>> futures = new LinkedHashMap<>();
+        for(String className : listLocalClassNames()) {
+            futures.put(className, executor.submit(() -> timeLoadClass(className)));
+        }
+        Map<String, Long> times = new LinkedHashMap<>();
+        for(Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+            try {
+                times.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while preloading classes");
+            } catch (ExecutionException e) {
+                logger.warn("Class preload failed for " + entry.getKey(), e.getCause());
+            }
+        }
+        return times;
+    }
+
+    protected long timeLoadClass(String className) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        loadClass(className, SearchScope.LOCAL);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Lists the names of the classes defined by source files in this code base, i.e. files with one of the
+     * {@link #getSourceExtensions() source extensions}.
+     */
+    protected List<String> listLocalClassNames() throws IOException {
+        Set<String> extensions = getSourceExtensions();
+        List<String> classNames = new ArrayList<>();
+        if(root == null || extensions.isEmpty() || !root.exists()) {
+            return classNames;
+        }
+        FileObject[] sources = root.findFiles(new FileTypeSelector(FileType.FILE) {
+            @Override
+            public boolean includeFile(FileSelectInfo fileInfo) throws FileSystemException {
+                return super.includeFile(fileInfo) &&
+                       extensions.contains(fileInfo.getFile().getName().getExtension());
+            }
+        });
+        for(FileObject source : sources) {
+            String path = root.getName().getRelativeName(source.getName());
+            classNames.add(FilenameUtils.removeExtension(path).replace('/', '.'));
+        }
+        return classNames;
+    }
+
+    /**
+     * @return the extensions of the source files that this code base compiles, e.g. "java".
+     */
+    protected Set<String> getSourceExtensions() {
+        return Collections.emptySet();
+    }
+
     @Override
     public URL findResource(String name) throws IOException {
         FileObject fileObject = getRoot().resolveFile(name);
@@ -113,6 +227,7 @@ public abstract class AbstractCodeBase implements CodeBase {
 
     @Override
     public void clear(boolean recursively) throws Exception {
+        notLocalClasses.clear();
         if(recursively && parent != null) {
             parent.clear(recursively);
         }
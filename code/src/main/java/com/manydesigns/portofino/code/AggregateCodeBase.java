@@ -6,9 +6,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
 public class AggregateCodeBase extends AbstractCodeBase {
 
@@ -53,6 +56,15 @@ public class AggregateCodeBase extends AbstractCodeBase {
         }
     }
 
+    @Override
+    public Map<String, Long> preloadClasses(ExecutorService executor) throws IOException {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for(CodeBaseWithSubscription c : codeBases) {
+            times.putAll(c.codeBase.preloadClasses(executor));
+        }
+        return times;
+    }
+
     @Override
     public void clear(boolean recursively) throws Exception {
         super.clear(recursively);
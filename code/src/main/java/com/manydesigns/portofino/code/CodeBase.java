@@ -6,6 +6,9 @@ import org.apache.commons.vfs2.FileSystemException;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by alessio on 28/03/17.
@@ -41,6 +44,17 @@ public interface CodeBase {
 
     URL findResource(String name) throws IOException;
 
+    /**
+     * Eagerly compiles and loads all the classes defined by source files in this code base (not in its parent),
+     * so that the first requests don't have to wait for them to be compiled.
+     * @param executor used to load classes in parallel.
+     * @return the time taken to load each class, in milliseconds, by class name. Classes that could not be loaded
+     * are logged and omitted.
+     */
+    default Map<String, Long> preloadClasses(ExecutorService executor) throws IOException {
+        return Collections.emptyMap();
+    }
+
     enum SearchScope {
         LOCAL, LOCAL_PARENT, LOCAL_PARENT_CLASSLOADER;
     }
@@ -15,6 +15,8 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
 
 import static com.manydesigns.portofino.code.JavaCodeBase.classNameToPath;
 
@@ -75,6 +77,11 @@ public class GroovyCodeBase extends AbstractCodeBase {
         return groovyScriptEngine.loadScriptByName(fileObject.getURL().toString());
     }
 
+    @Override
+    protected Set<String> getSourceExtensions() {
+        return Collections.singleton("groovy");
+    }
+
     @Override
     public ClassLoader getClassLoader() {
         return classLoader != null ? classLoader : Thread.currentThread().getContextClassLoader();
@@ -32,11 +32,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Angelo Lupo          - angelo.lupo@manydesigns.com
@@ -49,8 +57,22 @@ public class JavaCodeBase extends AbstractCodeBase {
     protected JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
     protected DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<>();
     protected InMemoryFileManager fileManager;
-    protected VFSClassloader sourceClassloader;
+    protected volatile VFSClassloader sourceClassloader;
     protected VFSClassloader compiledClassloader;
+    /**
+     * Classes compiled from source, by class name. Used to avoid recompiling sources that have not changed.
+     */
+    protected final ConcurrentMap<String, CompiledSource> compiledSources = new ConcurrentHashMap<>();
+    /**
+     * Optional directory where compiled bytecode is persisted, so that it survives restarts.
+     */
+    protected FileObject bytecodeCache;
+    /**
+     * Stamp of all the sources that classes compiled from source may depend on, computed once per classloader.
+     */
+    protected volatile String sourcesStamp;
+
+    public static final String BYTECODE_STAMP_EXTENSION = ".stamp";
 
     private static final Logger logger = LoggerFactory.getLogger(JavaCodeBase.class);
 
@@ -67,13 +89,46 @@ public class JavaCodeBase extends AbstractCodeBase {
         if(fileManager != null) {
             fileManager.close();
         }
+        compiledSources.clear();
+        sourcesStamp = null;
         if(compiler != null) {
             fileManager = new InMemoryFileManager(compiler.getStandardFileManager(diagnosticCollector, null, null));
-            sourceClassloader = new VFSClassloader(fileManager.directory, getClassLoader());
+            sourceClassloader = createSourceClassloader();
         }
         compiledClassloader = new VFSClassloader(root, getClassLoader());
     }
 
+    /**
+     * Creates the classloader for classes compiled from source. If a class has not been compiled yet, the
+     * classloader tries to restore its bytecode from the {@link #bytecodeCache}, if any.
+     */
+    protected VFSClassloader createSourceClassloader() {
+        return new VFSClassloader(fileManager.directory, getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                try {
+                    if (!fileObject.resolveFile(classNameToPath(name) + ".class").exists()) {
+                        restoreCachedBytecode(name);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not restore cached bytecode for " + name, e);
+                }
+                return super.findClass(name);
+            }
+        };
+    }
+
+    /**
+     * Replaces the classloader for classes compiled from source, e.g. because a class has to be redefined. The
+     * classes loaded so far are bound to the old classloader, so they're evicted from {@link #compiledSources}:
+     * the next request loads them again, from the bytecode already compiled, with the new classloader.
+     */
+    protected void replaceSourceClassloader() {
+        sourceClassloader = createSourceClassloader();
+        compiledSources.replaceAll((name, compiledSource) ->
+                new CompiledSource(compiledSource.sourcePath, compiledSource.lastModified, null));
+    }
+
     public JavaCodeBase(FileObject root, CodeBase parent) throws IOException {
         this(root, parent, parent != null ? parent.getClassLoader() : null);
     }
@@ -109,20 +164,316 @@ public class JavaCodeBase extends AbstractCodeBase {
 
     public Class loadJavaFile(final FileObject fileObject, final String name) throws ClassNotFoundException {
         try {
-            JavaFileObject javaFile = new VFSJavaFileObject(JavaFileObject.Kind.SOURCE, fileObject, name);
-            JavaCompiler.CompilationTask task =
-                    compiler.getTask(null, fileManager, null, null, null, Collections.singletonList(javaFile));
-            if(task.call()) {
-                return sourceClassloader.loadClass(name);
-            } else {
-                logger.warn("Compilation errors");
-                //TODO log compilation errors
-                throw new ClassNotFoundException(name);
+            String sourcePath = fileObject.getName().getURI();
+            long lastModified = getLastModifiedTime(fileObject);
+            Class upToDateClass = getUpToDateClass(name, sourcePath, lastModified);
+            if(upToDateClass != null) {
+                return upToDateClass;
+            }
+            synchronized (this) {
+                upToDateClass = getUpToDateClass(name, sourcePath, lastModified);
+                if(upToDateClass != null) {
+                    return upToDateClass;
+                }
+                CompiledSource compiledSource = compiledSources.get(name);
+                Class compiledClass = null;
+                if(compiledSource == null) {
+                    compiledClass = loadCachedBytecode(fileObject, name);
+                }
+                if(compiledClass == null) {
+                    if(compiledSource != null) {
+                        //Recompilation: the old classloader has already defined the class, so we need a new one
+                        replaceSourceClassloader();
+                    }
+                    compiledClass = compileJavaFile(fileObject, name);
+                    storeBytecode(fileObject, name);
+                }
+                compiledSources.put(name, new CompiledSource(sourcePath, lastModified, compiledClass));
+                return compiledClass;
             }
+        } catch (ClassNotFoundException e) {
+            throw e;
         } catch (Exception e) {
             throw new ClassNotFoundException(name, e);
         }
     }
+
+    protected Class getUpToDateClass(String name, String sourcePath, long lastModified) throws ClassNotFoundException {
+        CompiledSource compiledSource = compiledSources.get(name);
+        if(compiledSource == null || !compiledSource.isUpToDate(sourcePath, lastModified)) {
+            return null;
+        }
+        if(compiledSource.compiledClass == null) {
+            //Compiled by compileAll, but not loaded yet
+            Class compiledClass = sourceClassloader.loadClass(name);
+            compiledSources.replace(name, compiledSource, new CompiledSource(sourcePath, lastModified, compiledClass));
+            return compiledClass;
+        }
+        return compiledSource.compiledClass;
+    }
+
+    @Override
+    public Map<String, Long> preloadClasses(ExecutorService executor) throws IOException {
+        compileAll(listLocalClassNames());
+        return super.preloadClasses(executor);
+    }
+
+    @Override
+    protected Set<String> getSourceExtensions() {
+        return Collections.singleton("java");
+    }
+
+    /**
+     * Compiles the given classes from source in a single compilation task, which is much faster than compiling
+     * them one by one on first use. Classes that are up to date, that have a .class file in the code base, or
+     * whose bytecode is cached, are skipped. Compiled classes are not loaded until they are requested.
+     * @return the names of the classes that were compiled.
+     */
+    public synchronized List<String> compileAll(Collection<String> classNames) throws IOException {
+        List<String> compiled = new ArrayList<>();
+        if(compiler == null) {
+            return compiled;
+        }
+        Map<String, FileObject> sources = new LinkedHashMap<>();
+        boolean recompiling = false;
+        for(String name : classNames) {
+            String path = classNameToPath(name);
+            FileObject source = root.resolveFile(path + ".java");
+            if(!source.exists() || root.resolveFile(path + ".class").exists()) {
+                continue;
+            }
+            String sourcePath = source.getName().getURI();
+            long lastModified = getLastModifiedTime(source);
+            CompiledSource compiledSource = compiledSources.get(name);
+            if(compiledSource != null && compiledSource.isUpToDate(sourcePath, lastModified)) {
+                continue;
+            }
+            if(compiledSource == null && restoreCachedBytecode(source, name)) {
+                compiledSources.put(name, new CompiledSource(sourcePath, lastModified, null));
+                continue;
+            }
+            recompiling |= compiledSource != null;
+            sources.put(name, source);
+        }
+        if(sources.isEmpty()) {
+            return compiled;
+        }
+        if(recompiling) {
+            replaceSourceClassloader();
+        }
+        List<JavaFileObject> javaFiles = new ArrayList<>();
+        for(Map.Entry<String, FileObject> entry : sources.entrySet()) {
+            try {
+                javaFiles.add(new VFSJavaFileObject(JavaFileObject.Kind.SOURCE, entry.getValue(), entry.getKey()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        long start = System.nanoTime();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, null, null, javaFiles);
+        if(!task.call()) {
+            logger.warn("Compilation errors, classes will be compiled one by one when requested");
+            return compiled;
+        }
+        logger.info("Compiled {} Java sources in {} ms",
+                sources.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        for(Map.Entry<String, FileObject> entry : sources.entrySet()) {
+            String name = entry.getKey();
+            FileObject source = entry.getValue();
+            storeBytecode(source, name);
+            compiledSources.put(name, new CompiledSource(source.getName().getURI(), getLastModifiedTime(source), null));
+            compiled.add(name);
+        }
+        return compiled;
+    }
+
+    protected Class compileJavaFile(FileObject fileObject, String name) throws Exception {
+        JavaFileObject javaFile = new VFSJavaFileObject(JavaFileObject.Kind.SOURCE, fileObject, name);
+        JavaCompiler.CompilationTask task =
+                compiler.getTask(null, fileManager, null, null, null, Collections.singletonList(javaFile));
+        if(task.call()) {
+            return sourceClassloader.loadClass(name);
+        } else {
+            logger.warn("Compilation errors");
+            //TODO log compilation errors
+            throw new ClassNotFoundException(name);
+        }
+    }
+
+    protected static long getLastModifiedTime(FileObject fileObject) {
+        try {
+            return fileObject.getContent().getLastModifiedTime();
+        } catch (FileSystemException e) {
+            logger.debug("Could not determine last modified time of " + fileObject, e);
+            return 0;
+        }
+    }
+
+    //**************************************************************************
+    // Persistent bytecode cache
+    //**************************************************************************
+
+    /**
+     * Loads a class from the bytecode cache, if its bytecode was stored there from the same version of the source.
+     * @return the class, or null if no valid cached bytecode exists.
+     */
+    protected Class loadCachedBytecode(FileObject source, String name) {
+        try {
+            if(restoreCachedBytecode(source, name)) {
+                logger.debug("Loading {} from the bytecode cache", name);
+                return sourceClassloader.loadClass(name);
+            }
+        } catch (Exception | LinkageError e) {
+            logger.warn("Could not load " + name + " from the bytecode cache, recompiling", e);
+        }
+        return null;
+    }
+
+    protected boolean restoreCachedBytecode(String name) throws IOException {
+        if(bytecodeCache == null) {
+            return false;
+        }
+        FileObject source = root.resolveFile(classNameToPath(name) + ".java");
+        return source.exists() && restoreCachedBytecode(source, name);
+    }
+
+    /**
+     * Copies the cached bytecode of a class and of its nested classes to the in-memory directory of compiled
+     * classes, if the bytecode is up to date with respect to the source.
+     */
+    protected boolean restoreCachedBytecode(FileObject source, String name) throws IOException {
+        if(bytecodeCache == null) {
+            return false;
+        }
+        String path = classNameToPath(name);
+        FileObject stamp = bytecodeCache.resolveFile(path + BYTECODE_STAMP_EXTENSION);
+        if(!stamp.exists()) {
+            return false;
+        }
+        String cachedStamp;
+        try(InputStream inputStream = stamp.getContent().getInputStream()) {
+            cachedStamp = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+        if(!cachedStamp.equals(getBytecodeStamp(source))) {
+            return false;
+        }
+        return copyClassFiles(bytecodeCache.resolveFile(path + ".class"), fileManager.directory.resolveFile(path));
+    }
+
+    /**
+     * Stores the bytecode of a class freshly compiled from source, and that of its nested classes, in the
+     * bytecode cache, if one is configured.
+     */
+    protected void storeBytecode(FileObject source, String name) {
+        if(bytecodeCache == null) {
+            return;
+        }
+        String path = classNameToPath(name);
+        try {
+            if(copyClassFiles(fileManager.directory.resolveFile(path + ".class"), bytecodeCache.resolveFile(path))) {
+                //The stamp is written last, so that partially stored bytecode is never considered valid
+                FileObject stamp = bytecodeCache.resolveFile(path + BYTECODE_STAMP_EXTENSION);
+                try(OutputStream outputStream = stamp.getContent().getOutputStream()) {
+                    outputStream.write(getBytecodeStamp(source).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not store the bytecode of " + name + " in the bytecode cache", e);
+        }
+    }
+
+    /**
+     * Copies a class file and the class files of its nested classes (Outer$Inner.class) next to the given
+     * destination path (without extension).
+     * @return false if the class file does not exist.
+     */
+    protected static boolean copyClassFiles(FileObject classFile, FileObject destination) throws FileSystemException {
+        if(!classFile.exists()) {
+            return false;
+        }
+        String baseName = FilenameUtils.removeExtension(classFile.getName().getBaseName());
+        FileObject destinationFolder = destination.getParent();
+        for(FileObject child : classFile.getParent().getChildren()) {
+            String childName = child.getName().getBaseName();
+            if(childName.equals(baseName + ".class") ||
+               (childName.startsWith(baseName + "$") && childName.endsWith(".class"))) {
+                destinationFolder.resolveFile(childName).copyFrom(child, Selectors.SELECT_SELF);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the stamp that identifies the version of a source file that some cached bytecode was compiled from.
+     * Besides the source itself, it includes the Java version and a stamp of all the sources of this code base and
+     * its parents ({@link #getSourcesStamp()}), because a class must be recompiled when its dependencies change.
+     */
+    protected String getBytecodeStamp(FileObject source) throws IOException {
+        return getLastModifiedTime(source) + " " + source.getName().getURI() + " " +
+                System.getProperty("java.version") + " " + getSourcesStamp();
+    }
+
+    /**
+     * Returns a digest of the paths and modification times of all the Java sources of this code base and of its
+     * parent Java code bases. It's computed once and then reused until the code base is cleared.
+     */
+    protected String getSourcesStamp() throws IOException {
+        String stamp = sourcesStamp;
+        if(stamp == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            SortedMap<String, Long> sources = new TreeMap<>();
+            if(root != null && root.exists()) {
+                for(FileObject source : root.findFiles(new FileExtensionSelector("java"))) {
+                    sources.put(source.getName().getURI(), getLastModifiedTime(source));
+                }
+            }
+            sources.forEach((path, lastModified) ->
+                    digest.update((path + " " + lastModified + "\n").getBytes(StandardCharsets.UTF_8)));
+            if(parent instanceof JavaCodeBase) {
+                digest.update(((JavaCodeBase) parent).getSourcesStamp().getBytes(StandardCharsets.UTF_8));
+            }
+            stamp = new BigInteger(1, digest.digest()).toString(16);
+            sourcesStamp = stamp;
+        }
+        return stamp;
+    }
+
+    public FileObject getBytecodeCache() {
+        return bytecodeCache;
+    }
+
+    /**
+     * Sets the directory where the bytecode of classes compiled from source is persisted, so that it is not
+     * recompiled after a restart unless the source has changed. Null (the default) disables the cache.
+     */
+    public void setBytecodeCache(FileObject bytecodeCache) {
+        this.bytecodeCache = bytecodeCache;
+    }
+
+    /**
+     * A class compiled from source, along with the source path and last modification time it was compiled from.
+     * The class is null if it was compiled (or restored from the bytecode cache) but not loaded yet.
+     */
+    protected static class CompiledSource {
+        public final String sourcePath;
+        public final long lastModified;
+        public final Class compiledClass;
+
+        public CompiledSource(String sourcePath, long lastModified, Class compiledClass) {
+            this.sourcePath = sourcePath;
+            this.lastModified = lastModified;
+            this.compiledClass = compiledClass;
+        }
+
+        public boolean isUpToDate(String sourcePath, long lastModified) {
+            return this.sourcePath.equals(sourcePath) && this.lastModified == lastModified;
+        }
+    }
     
     protected void listClassFiles(String packageName, Collection<JavaFileObject> list) throws IOException {
         Enumeration<URL> resources = getClassLoader().getResources(packageName.replace('.', '/'));
@@ -324,7 +675,7 @@ public class JavaCodeBase extends AbstractCodeBase {
                 FileObject fileObject = directory.resolveFile(classNameToPath(name) + ".class");
                 if(!fileObject.exists()) {
                     fileObject.createFile();
-                    //TODO if it exists it is a recompilation and the vfsClassLoader should be re-created
+                    //If it exists it is a recompilation; loadJavaFile takes care of re-creating the classloader
                 }
                 return fileObject.getContent().getOutputStream();
             }
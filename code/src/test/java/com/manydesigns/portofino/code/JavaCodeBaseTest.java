@@ -0,0 +1,195 @@
+package com.manydesigns.portofino.code;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class JavaCodeBaseTest {
+
+    protected File tempDir;
+    protected FileObject root;
+    protected FileObject bytecodeCache;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("portofino-codebase").toFile();
+        root = VFS.getManager().toFileObject(new File(tempDir, "src"));
+        root.createFolder();
+        bytecodeCache = VFS.getManager().toFileObject(new File(tempDir, "cache"));
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        VFS.getManager().resolveFile(tempDir.toURI().toString()).deleteAll();
+    }
+
+    protected void writeSource(String value, long lastModified) throws IOException {
+        writeSource("Example", "public String toString() { return \"" + value + "\"; }", lastModified);
+    }
+
+    protected void writeSource(String className, String body, long lastModified) throws IOException {
+        FileObject source = root.resolveFile("test/" + className + ".java");
+        try(OutputStream outputStream = source.getContent().getOutputStream()) {
+            String code = "package test; public class " + className + " { " + body + " }";
+            outputStream.write(code.getBytes(StandardCharsets.UTF_8));
+        }
+        source.getContent().setLastModifiedTime(lastModified);
+    }
+
+    @Test
+    public void testCompiledClassesAreCached() throws Exception {
+        writeSource("1", 1000000);
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        AtomicInteger reloads = new AtomicInteger();
+        codeBase.getReloads().subscribe(c -> reloads.incrementAndGet());
+        Class first = codeBase.loadClass("test.Example");
+        assertSame(codeBase.loadClass("test.Example"), first);
+        assertEquals(reloads.get(), 0);
+
+        writeSource("2", 2000000);
+        Class second = codeBase.loadClass("test.Example");
+        assertNotSame(second, first);
+        assertEquals(second.newInstance().toString(), "2");
+        assertEquals(reloads.get(), 1);
+        codeBase.close();
+    }
+
+    @Test
+    public void testNegativeLookups() throws Exception {
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        assertSame(codeBase.loadClass(String.class.getName()), String.class);
+        assertTrue(codeBase.isKnownNotLocal(String.class.getName()));
+        try {
+            codeBase.loadClass("test.Example", CodeBase.SearchScope.LOCAL);
+            fail("Exception expected");
+        } catch (ClassNotFoundException e) {}
+
+        writeSource("1", 1000000);
+        codeBase.clear(false);
+        assertFalse(codeBase.isKnownNotLocal("test.Example"));
+        assertEquals(codeBase.loadClass("test.Example").newInstance().toString(), "1");
+        codeBase.close();
+    }
+
+    @Test
+    public void testNegativeLookupsDoNotSlide() throws Exception {
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        codeBase.loadClass(String.class.getName());
+        Long lookupTime = codeBase.notLocalClasses.get(String.class.getName());
+        assertNotNull(lookupTime);
+        Thread.sleep(10);
+        codeBase.loadClass(String.class.getName());
+        assertEquals(codeBase.notLocalClasses.get(String.class.getName()), lookupTime);
+        codeBase.close();
+    }
+
+    @Test
+    public void testRecompilationEvictsLoadedClasses() throws Exception {
+        writeSource("1", 1000000);
+        writeSource("Other", "public Object example() { return new Example(); }", 1000000);
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        Class other = codeBase.loadClass("test.Other");
+        codeBase.loadClass("test.Example");
+
+        writeSource("2", 2000000);
+        Class example = codeBase.loadClass("test.Example");
+        Class newOther = codeBase.loadClass("test.Other");
+        assertNotSame(newOther, other);
+        assertSame(newOther.getClassLoader(), example.getClassLoader());
+        assertEquals(newOther.getMethod("example").invoke(newOther.newInstance()).toString(), "2");
+        codeBase.close();
+    }
+
+    @Test
+    public void testPreloadClasses() throws Exception {
+        writeSource("1", 1000000);
+        FileObject other = root.resolveFile("test/Other.java");
+        try(OutputStream outputStream = other.getContent().getOutputStream()) {
+            String code = "package test; public class Other extends Example {}";
+            outputStream.write(code.getBytes(StandardCharsets.UTF_8));
+        }
+        JavaCodeBase codeBase = new JavaCodeBase(root) {
+            @Override
+            protected Class compileJavaFile(FileObject fileObject, String name) {
+                throw new AssertionError("Should have been compiled in a batch");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Map<String, Long> times = codeBase.preloadClasses(executor);
+            assertEquals(times.keySet(), new HashSet<>(Arrays.asList("test.Example", "test.Other")));
+        } finally {
+            executor.shutdown();
+        }
+        Class otherClass = codeBase.loadClass("test.Other");
+        assertSame(otherClass.getSuperclass(), codeBase.loadClass("test.Example"));
+        codeBase.close();
+    }
+
+    @Test
+    public void testBytecodeCache() throws Exception {
+        writeSource("1", 1000000);
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        codeBase.setBytecodeCache(bytecodeCache);
+        codeBase.loadClass("test.Example");
+        codeBase.close();
+        assertTrue(bytecodeCache.resolveFile("test/Example.class").exists());
+        assertTrue(bytecodeCache.resolveFile("test/Example" + JavaCodeBase.BYTECODE_STAMP_EXTENSION).exists());
+
+        codeBase = new JavaCodeBase(root) {
+            @Override
+            protected Class compileJavaFile(FileObject fileObject, String name) {
+                throw new AssertionError("Should have been loaded from the bytecode cache");
+            }
+        };
+        codeBase.setBytecodeCache(bytecodeCache);
+        assertEquals(codeBase.loadClass("test.Example").newInstance().toString(), "1");
+        codeBase.close();
+
+        writeSource("2", 2000000);
+        codeBase = new JavaCodeBase(root);
+        codeBase.setBytecodeCache(bytecodeCache);
+        assertEquals(codeBase.loadClass("test.Example").newInstance().toString(), "2");
+        codeBase.close();
+    }
+
+    @Test
+    public void testBytecodeCacheTracksDependencies() throws Exception {
+        writeSource("1", 1000000);
+        writeSource("Other", "", 1000000);
+        JavaCodeBase codeBase = new JavaCodeBase(root);
+        codeBase.setBytecodeCache(bytecodeCache);
+        codeBase.loadClass("test.Example");
+        codeBase.close();
+
+        writeSource("Other", "public int x;", 2000000);
+        AtomicInteger compilations = new AtomicInteger();
+        codeBase = new JavaCodeBase(root) {
+            @Override
+            protected Class compileJavaFile(FileObject fileObject, String name) throws Exception {
+                compilations.incrementAndGet();
+                return super.compileJavaFile(fileObject, name);
+            }
+        };
+        codeBase.setBytecodeCache(bytecodeCache);
+        assertEquals(codeBase.loadClass("test.Example").newInstance().toString(), "1");
+        assertEquals(compilations.get(), 1);
+        codeBase.close();
+    }
+}
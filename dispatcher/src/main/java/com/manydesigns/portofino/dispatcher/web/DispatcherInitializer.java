@@ -39,6 +39,7 @@ public class DispatcherInitializer implements ServletContextListener {
     private static final Logger logger = LoggerFactory.getLogger(DispatcherInitializer.class);
 
     public static final String CODE_BASE_ATTRIBUTE = "portofino.codebase";
+    public static final String CODE_BASE_BYTECODE_CACHE_PROPERTY = "codebase.bytecode.cache.path";
     
     @Override
     public void contextInitialized(ServletContextEvent sce) {
@@ -122,6 +123,12 @@ public class DispatcherInitializer implements ServletContextListener {
         //TODO auto discovery?
         FileObject codeBaseRoot = getCodeBaseRoot();
         JavaCodeBase javaCodeBase = new JavaCodeBase(codeBaseRoot, null, getClass().getClassLoader());
+        String bytecodeCachePath = configuration.getString(CODE_BASE_BYTECODE_CACHE_PROPERTY);
+        if(bytecodeCachePath != null) {
+            FileObject bytecodeCache = applicationRoot.resolveFile(bytecodeCachePath);
+            logger.info("Caching compiled bytecode in {}", bytecodeCache);
+            javaCodeBase.setBytecodeCache(bytecodeCache);
+        }
         CodeBase codeBase = javaCodeBase;
         try {
             Class<?> gcb = Class.forName("com.manydesigns.portofino.code.GroovyCodeBase");
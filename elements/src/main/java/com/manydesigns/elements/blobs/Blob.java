@@ -55,6 +55,7 @@ public class Blob {
     public final static String REPOSITORY_ID_PROPERTY = "repository.id";
     public final static String ENCRYPTION_PROPERTY = "encryption.type";
     public final static String CUSTOM_DATA_PROPERTY = "custom.data";
+    public final static String DIGEST_PROPERTY = "digest";
 
     protected final DateTimeFormatter formatter = ISODateTimeFormat.dateTime();
 
@@ -70,6 +71,7 @@ public class Blob {
     protected String repository;
     protected String repositoryId;
     protected Map customData;
+    protected String digest;
 
     public Blob(String code) {
         this.code = code;
@@ -98,6 +100,7 @@ public class Blob {
         safeSetProperty(metaProperties, REPOSITORY_ID_PROPERTY, repositoryId);
         safeSetProperty(metaProperties, ENCRYPTION_PROPERTY, encryptionType);
         safeSetProperty(metaProperties, CUSTOM_DATA_PROPERTY, getSerializedCustomData());
+        safeSetProperty(metaProperties, DIGEST_PROPERTY, digest);
 
         return metaProperties;
     }
@@ -112,6 +115,7 @@ public class Blob {
         repositoryId = metaProperties.getProperty(REPOSITORY_ID_PROPERTY);
         encryptionType=metaProperties.getProperty(ENCRYPTION_PROPERTY);
         setCustomData(metaProperties.getProperty(CUSTOM_DATA_PROPERTY));
+        digest = metaProperties.getProperty(DIGEST_PROPERTY);
         propertiesLoaded = true;
     }
 
@@ -224,6 +228,18 @@ public class Blob {
         this.customData = customData;
     }
 
+    /**
+     * @return the digest of the stored contents, in hexadecimal, if they are stored by content by a
+     * {@link DeduplicatingBlobManager}; null otherwise.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
     public String getSerializedCustomData() {
         ObjectMapper mapper = new ObjectMapper();
         try {
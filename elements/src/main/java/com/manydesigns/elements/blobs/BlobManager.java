@@ -22,6 +22,7 @@ package com.manydesigns.elements.blobs;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * @author Angelo Lupo          - angelo.lupo@manydesigns.com
@@ -41,4 +42,16 @@ public interface BlobManager {
 
     boolean delete(Blob blob) throws IOException;
 
+    /**
+     * Opens a channel to read the contents of a blob directly from a file, if the blob manager stores it as-is in a
+     * local file (e.g. it's not encrypted nor stored in a remote repository). This allows the contents to be
+     * transferred efficiently, and to be read from any position.
+     * @param blob the blob.
+     * @return the channel, or null if the contents are only available through {@link #openStream(Blob)}.
+     * @throws IOException if the file cannot be opened.
+     */
+    default FileChannel openChannel(Blob blob) throws IOException {
+        return null;
+    }
+
 }
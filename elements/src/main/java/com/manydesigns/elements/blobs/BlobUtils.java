@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 
 /**
@@ -77,6 +78,11 @@ public abstract class BlobUtils {
         }
     }
 
+    /**
+     * @deprecated encrypting while reading is an extra pass over the data, and it silently falls back to plain text
+     * on errors. Use {@link #encrypt(OutputStream, String)} instead.
+     */
+    @Deprecated
     public static InputStream encrypt( InputStream decryptedInputStream, String type ){
         try {
             logger.debug("Decrypting encryptedInputStream");
@@ -87,6 +93,20 @@ public abstract class BlobUtils {
         return decryptedInputStream;
     }
 
+    /**
+     * Wraps a stream so that blob contents written to it are encrypted, in the same pass that writes them.
+     * @throws IOException if the encryption cannot be set up. Unlike {@link #encrypt(InputStream, String)}, this never
+     * falls back to writing plain text.
+     */
+    public static OutputStream encrypt(OutputStream encryptedOutputStream, String type) throws IOException {
+        try {
+            logger.debug("Encrypting output stream");
+            return CryptoService.getInstance().encrypt(encryptedOutputStream);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Error encrypting output stream", e);
+        }
+    }
+
     public static InputStream decrypt( InputStream encryptedInputStream , String type ){
         try {
             logger.debug("Decrypting encryptedInputStream");
@@ -97,6 +117,10 @@ public abstract class BlobUtils {
         return encryptedInputStream;
     }
 
+    /**
+     * @deprecated blob managers record the actual size of the contents while saving them.
+     */
+    @Deprecated
     public static Long calculatePaddingSize(Blob blob) {
         logger.debug("Calculating padding size");
         return CryptoService.getInstance().getFileSize(blob.getSize());
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.blobs;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blob manager that stores each distinct content only once. Blobs keep their random codes and their own metadata
+ * files, laid out as in {@link HierarchicalBlobManager}; the contents, however, are stored under their digest in a
+ * separate directory, which is computed while the upload is being written. A reference count in the metadata of the
+ * contents keeps track of how many blobs share them, so that they are deleted together with the last one.<br />
+ * Blobs saved by a {@link HierarchicalBlobManager} in the same directory can still be read and deleted, and blobs
+ * stored in a remote {@link Repository} are handled as in {@link HierarchicalBlobManager}.<br />
+ * Reference counts are only synchronized within a single JVM: a blobs directory must not be shared among several
+ * applications using this blob manager.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class DeduplicatingBlobManager extends HierarchicalBlobManager {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    public static final String CONTENT_DIRECTORY = "content";
+    public static final String REFERENCES_PROPERTY = "references";
+    public static final int LOCK_STRIPES = 64;
+
+    protected final File contentDir;
+    protected final Lock[] contentLocks = new Lock[LOCK_STRIPES];
+
+    public DeduplicatingBlobManager(File blobsDir, String metaFileNamePattern, String dataFileNamePattern) {
+        super(blobsDir, metaFileNamePattern, dataFileNamePattern);
+        contentDir = new File(blobsDir, CONTENT_DIRECTORY);
+        for(int i = 0; i < contentLocks.length; i++) {
+            contentLocks[i] = new ReentrantLock();
+        }
+    }
+
+    //**************************************************************************
+    // BlobManager implementation
+    //**************************************************************************
+
+    @Override
+    public InputStream openStream(Blob blob) throws IOException {
+        ensureValidCode(blob.getCode());
+        if(!blob.isPropertiesLoaded()) {
+            loadMetadata(blob);
+        }
+        if(blob.getRepository() != null || blob.getDigest() == null) {
+            return super.openStream(blob);
+        }
+        FileInputStream fileInputStream = new FileInputStream(getContentDataFile(blob.getDigest()));
+        if(blob.isEncrypted()) {
+            blob.setInputStream(BlobUtils.decrypt(fileInputStream, blob.getEncryptionType()));
+        } else {
+            blob.setInputStream(fileInputStream);
+        }
+        return blob.getInputStream();
+    }
+
+    @Override
+    public FileChannel openChannel(Blob blob) throws IOException {
+        ensureValidCode(blob.getCode());
+        if(!blob.isPropertiesLoaded()) {
+            loadMetadata(blob);
+        }
+        if(blob.getRepository() != null || blob.getDigest() == null) {
+            return super.openChannel(blob);
+        }
+        if(blob.isEncrypted()) {
+            return null;
+        }
+        return FileChannel.open(getContentDataFile(blob.getDigest()).toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public void save(Blob blob) throws IOException {
+        if(blob.getRepository() != null) {
+            super.save(blob);
+            return;
+        }
+        ensureValidCode(blob.getCode());
+        File metaFile = getMetaFile(blob.getCode());
+        String oldDigest = null;
+        if(metaFile.exists()) {
+            oldDigest = loadMetaProperties(metaFile).getProperty(Blob.DIGEST_PROPERTY);
+        }
+        if(!contentDir.isDirectory()) {
+            contentDir.mkdirs();
+        }
+        File tempFile = createTempFile(contentDir);
+        try {
+            blob.setDigest(writeContents(blob, tempFile));
+            addReference(blob.getDigest(), tempFile);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+        if(!metaFile.getParentFile().isDirectory()) {
+            metaFile.getParentFile().mkdirs();
+        }
+        try(OutputStream out = new FileOutputStream(metaFile)) {
+            blob.getMetaProperties().store(out, "Blob code #" + blob.getCode());
+        } finally {
+            blob.dispose();
+        }
+        if(oldDigest != null) {
+            removeReference(oldDigest);
+        }
+    }
+
+    @Override
+    public boolean delete(Blob blob) {
+        if(!blob.isPropertiesLoaded()) {
+            try {
+                loadMetadata(blob);
+            } catch (IOException e) {
+                logger.warn("Could not load metadata", e);
+            }
+        }
+        if(blob.getRepository() != null || blob.getDigest() == null) {
+            return super.delete(blob);
+        }
+        String code = blob.getCode();
+        ensureValidCode(code);
+        File metaFile = getMetaFile(code);
+        boolean success;
+        try {
+            success = metaFile.delete();
+        } catch (Exception e) {
+            logger.warn("Could not delete meta file", e);
+            success = false;
+        }
+        if(success) {
+            try {
+                removeReference(blob.getDigest());
+            } catch (IOException e) {
+                logger.warn("Could not release contents " + blob.getDigest() + " of blob " + code, e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    //**************************************************************************
+    // Contents and reference counting
+    //**************************************************************************
+
+    /**
+     * Adds a reference to the contents with the given digest. If they're not stored yet, the given file, that holds
+     * them, is atomically moved in place; otherwise it's left untouched.
+     */
+    protected void addReference(String digest, File file) throws IOException {
+        Lock lock = getContentLock(digest);
+        lock.lock();
+        try {
+            File dataFile = getContentDataFile(digest);
+            Properties contentProperties;
+            if(dataFile.exists()) {
+                contentProperties = loadContentProperties(digest);
+                logger.debug("Contents {} already stored, adding a reference", digest);
+            } else {
+                if(!dataFile.getParentFile().isDirectory()) {
+                    dataFile.getParentFile().mkdirs();
+                }
+                Files.move(file.toPath(), dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                contentProperties = new Properties();
+            }
+            contentProperties.setProperty(REFERENCES_PROPERTY, Long.toString(getReferences(contentProperties) + 1));
+            storeContentProperties(digest, contentProperties);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a reference to the contents with the given digest, deleting them if it was the last one.
+     */
+    protected void removeReference(String digest) throws IOException {
+        Lock lock = getContentLock(digest);
+        lock.lock();
+        try {
+            Properties contentProperties = loadContentProperties(digest);
+            long references = getReferences(contentProperties) - 1;
+            if(references > 0) {
+                contentProperties.setProperty(REFERENCES_PROPERTY, Long.toString(references));
+                storeContentProperties(digest, contentProperties);
+            } else {
+                logger.debug("Last reference to contents {} removed, deleting them", digest);
+                Files.deleteIfExists(getContentDataFile(digest).toPath());
+                Files.deleteIfExists(getContentMetaFile(digest).toPath());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getReferences(String digest) throws IOException {
+        Lock lock = getContentLock(digest);
+        lock.lock();
+        try {
+            return getReferences(loadContentProperties(digest));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected long getReferences(Properties contentProperties) {
+        return Long.parseLong(contentProperties.getProperty(REFERENCES_PROPERTY, "0"));
+    }
+
+    protected Properties loadContentProperties(String digest) throws IOException {
+        File metaFile = getContentMetaFile(digest);
+        if(metaFile.exists()) {
+            return loadMetaProperties(metaFile);
+        } else {
+            return new Properties();
+        }
+    }
+
+    protected void storeContentProperties(String digest, Properties contentProperties) throws IOException {
+        File metaFile = getContentMetaFile(digest);
+        File tempFile = new File(metaFile.getParentFile(), metaFile.getName() + ".tmp");
+        try(OutputStream out = new FileOutputStream(tempFile)) {
+            contentProperties.store(out, "Contents " + DIGEST_ALGORITHM + " " + digest);
+        }
+        Files.move(tempFile.toPath(), metaFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    protected Lock getContentLock(String digest) {
+        return contentLocks[Math.floorMod(digest.hashCode(), contentLocks.length)];
+    }
+
+    protected File getContentSubdir(String digest) {
+        return new File(new File(contentDir, digest.substring(0, 2)), digest.substring(2, 4));
+    }
+
+    protected File getContentDataFile(String digest) {
+        return new File(getContentSubdir(digest), digest + ".data");
+    }
+
+    protected File getContentMetaFile(String digest) {
+        return new File(getContentSubdir(digest), digest + ".properties");
+    }
+
+    public File getContentDir() {
+        return contentDir;
+    }
+}
@@ -4,6 +4,7 @@ import com.manydesigns.elements.util.RandomUtil;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 /**
  * @author Angelo Lupo          - angelo.lupo@manydesigns.com
@@ -51,6 +52,17 @@ public class HierarchicalBlobManager extends SimpleBlobManager {
         return blob.getInputStream();
     }
 
+    @Override
+    public FileChannel openChannel(Blob blob) throws IOException {
+        if(!blob.isPropertiesLoaded()) {
+            loadMetadata(blob);
+        }
+        if(blob.getRepository() != null) {
+            return null;
+        }
+        return super.openChannel(blob);
+    }
+
     @Override
     public void save(Blob blob) throws IOException {
         if( blob.getRepository() != null ){ //TODO vedere se usare così
@@ -21,12 +21,21 @@
 package com.manydesigns.elements.blobs;
 
 import com.manydesigns.elements.util.RandomUtil;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Properties;
 
 /**
@@ -50,6 +59,8 @@ public class SimpleBlobManager implements BlobManager {
     // Fields
     //**************************************************************************
 
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
     protected File blobsDir;
     protected String metaFileNamePattern;
     protected String dataFileNamePattern;
@@ -109,6 +120,18 @@ public class SimpleBlobManager implements BlobManager {
         return blob.getInputStream();
     }
 
+    @Override
+    public FileChannel openChannel(Blob blob) throws IOException {
+        ensureValidCode(blob.getCode());
+        if(!blob.isPropertiesLoaded()) {
+            loadMetadata(blob);
+        }
+        if(blob.isEncrypted()) {
+            return null;
+        }
+        return FileChannel.open(getDataFile(blob.getCode()).toPath(), StandardOpenOption.READ);
+    }
+
     @Override
     public void save(Blob blob) throws IOException {
         ensureValidCode(blob.getCode());
@@ -116,15 +139,15 @@ public class SimpleBlobManager implements BlobManager {
         if(!dataFile.getParentFile().isDirectory()) {
             dataFile.getParentFile().mkdirs();
         }
-        InputStream encryptInputStream;
-        try(FileOutputStream out = new FileOutputStream(dataFile)) {
-            InputStream inputStream = blob.getInputStream();
-            if(blob.isEncrypted()){
-                 encryptInputStream = BlobUtils.encrypt(inputStream,blob.getEncryptionType());
-                IOUtils.copyLarge(encryptInputStream, out);
-            } else {
-                blob.setSize(IOUtils.copyLarge(inputStream, out));
-            }
+        File tempFile = createTempFile(dataFile.getParentFile());
+        try {
+            writeContents(blob, tempFile);
+            //The digest marks contents stored by a DeduplicatingBlobManager; these are stored with the blob instead
+            blob.setDigest(null);
+            Files.move(tempFile.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteTempFile(tempFile);
         }
         File metaFile = getMetaFile(blob.getCode());
         if(!metaFile.getParentFile().isDirectory()) {
@@ -136,6 +159,50 @@ public class SimpleBlobManager implements BlobManager {
         blob.dispose();
     }
 
+    /**
+     * Writes the contents of a blob to a file in a single pass, encrypting them if required. The size of the contents
+     * is recorded in the blob as a side effect, so that the declared size (e.g. the Content-Length of an upload) is
+     * not relied upon; the digest of the written data is returned, so that no further pass over the data is needed
+     * to compute it.
+     * @param blob the blob, with an open input stream.
+     * @param file the file to write, usually a temporary file to be moved in place afterwards.
+     * @return the digest of the written data, in hexadecimal.
+     * @throws IOException if the contents cannot be read or written.
+     */
+    protected String writeContents(Blob blob, File file) throws IOException {
+        MessageDigest digest = createDigest();
+        CountingInputStream inputStream = new CountingInputStream(blob.getInputStream());
+        OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(file)), digest);
+        try {
+            if(blob.isEncrypted()) {
+                out = BlobUtils.encrypt(out, blob.getEncryptionType());
+            }
+            IOUtils.copyLarge(inputStream, out);
+        } finally {
+            out.close();
+        }
+        blob.setSize(inputStream.getByteCount());
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    protected MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected File createTempFile(File directory) throws IOException {
+        return File.createTempFile("upload-", ".tmp", directory);
+    }
+
+    protected void deleteTempFile(File tempFile) {
+        if(tempFile.exists() && !tempFile.delete()) {
+            logger.warn("Could not delete temporary file {}", tempFile.getAbsolutePath());
+        }
+    }
+
     @Override
     public boolean delete(Blob blob) {
         String code = blob.getCode();
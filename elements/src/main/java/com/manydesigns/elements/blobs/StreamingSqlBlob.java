@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.blobs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * A read-only {@link java.sql.Blob} backed by an input stream of known length. Used to hand uploaded contents to
+ * the persistence layer (e.g. Hibernate) without first reading them into memory. The stream can only be consumed
+ * once.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class StreamingSqlBlob implements java.sql.Blob {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    protected final long length;
+    protected InputStream inputStream;
+
+    public StreamingSqlBlob(InputStream inputStream, long length) {
+        this.inputStream = inputStream;
+        this.length = length;
+    }
+
+    @Override
+    public long length() throws SQLException {
+        checkNotFreed();
+        return length;
+    }
+
+    @Override
+    public InputStream getBinaryStream() throws SQLException {
+        checkNotFreed();
+        return inputStream;
+    }
+
+    @Override
+    public InputStream getBinaryStream(long pos, long length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Random access is not supported by streaming blobs");
+    }
+
+    @Override
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Random access is not supported by streaming blobs");
+    }
+
+    @Override
+    public long position(byte[] pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Searching is not supported by streaming blobs");
+    }
+
+    @Override
+    public long position(java.sql.Blob pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Searching is not supported by streaming blobs");
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Streaming blobs are read-only");
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Streaming blobs are read-only");
+    }
+
+    @Override
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Streaming blobs are read-only");
+    }
+
+    @Override
+    public void truncate(long len) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Streaming blobs are read-only");
+    }
+
+    @Override
+    public void free() throws SQLException {
+        if(inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                throw new SQLException("Could not close the blob stream", e);
+            } finally {
+                inputStream = null;
+            }
+        }
+    }
+
+    protected void checkNotFreed() throws SQLException {
+        if(inputStream == null) {
+            throw new SQLException("Blob has been freed");
+        }
+    }
+}
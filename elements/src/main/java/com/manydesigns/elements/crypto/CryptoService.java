@@ -3,6 +3,7 @@ package com.manydesigns.elements.crypto;
 import javax.crypto.*;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -58,6 +59,11 @@ public class CryptoService {
     return decrypt(encrypted, typeAlgo, getkey());
   }
 
+  public OutputStream encrypt(OutputStream encrypted)
+    throws GeneralSecurityException, IOException {
+    return encrypt(encrypted, typeAlgo, getkey());
+  }
+
   public static byte[] encrypt(byte[] decrypted, String algorithm, SecretKey key)
     throws BadPaddingException, IllegalBlockSizeException, InvalidKeyException, NoSuchPaddingException, NoSuchAlgorithmException {
     Cipher cipher = Cipher.getInstance(algorithm);
@@ -84,6 +90,16 @@ public class CryptoService {
     return new CipherInputStream(decryptedInputStream, cipher);
   }
 
+  /**
+   * Wraps a stream so that data written to it is encrypted before reaching it. Closing the returned stream writes
+   * the final (padded) block and closes the wrapped stream.
+   */
+  public static OutputStream encrypt(OutputStream encryptedOutputStream, String algorithm, SecretKey key) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException {
+    Cipher cipher = Cipher.getInstance(algorithm);
+    cipher.init(Cipher.ENCRYPT_MODE, key);
+    return new CipherOutputStream(encryptedOutputStream, cipher);
+  }
+
   public long getFileSize( Long originalSize ){
     //if( typeAlgo ...
     double value = Math.ceil(originalSize.doubleValue()/16d)*16;
@@ -24,6 +24,7 @@ import com.manydesigns.elements.Mode;
 import com.manydesigns.elements.annotations.DatabaseBlob;
 import com.manydesigns.elements.blobs.Blob;
 import com.manydesigns.elements.blobs.BlobManager;
+import com.manydesigns.elements.blobs.StreamingSqlBlob;
 import com.manydesigns.elements.ognl.OgnlUtils;
 import com.manydesigns.elements.reflection.ClassAccessor;
 import com.manydesigns.elements.reflection.PropertyAccessor;
@@ -39,6 +40,12 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
 
 /**
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -56,6 +63,12 @@ public class DatabaseBlobField extends AbstractBlobField {
     protected final PropertyAccessor fileNameAccessor;
     protected final PropertyAccessor timestampAccessor;
 
+    /**
+     * The {@link java.sql.Blob} read from the object, if the property is of that type, and the blob that wraps it.
+     */
+    protected java.sql.Blob sqlBlob;
+    protected Blob sqlBlobValue;
+
     public DatabaseBlobField(
             @NotNull ClassAccessor classAccessor, @NotNull PropertyAccessor accessor, @NotNull Mode mode,
             @Nullable String prefix) throws NoSuchFieldException {
@@ -85,16 +98,32 @@ public class DatabaseBlobField extends AbstractBlobField {
 
     public void readFromObject(Object obj) {
         super.readFromObject(obj);
+        sqlBlob = null;
+        sqlBlobValue = null;
         if (obj == null) {
             forgetBlob();
         } else {
-            byte[] value = (byte[]) accessor.get(obj);
+            Object value = accessor.get(obj);
             if(value == null) {
                 forgetBlob();
             } else {
                 blob = new Blob(null);
-                blob.setSize(value.length);
-                blob.setInputStream(new ByteArrayInputStream(value));
+                if(value instanceof java.sql.Blob) {
+                    //Don't read the contents: they are streamed from the database only if and when they're requested
+                    sqlBlob = (java.sql.Blob) value;
+                    sqlBlobValue = blob;
+                    try {
+                        blob.setSize(sqlBlob.length());
+                    } catch (SQLException e) {
+                        logger.error("Could not read the size of the blob", e);
+                        blobError = getText("elements.error.field.fileblob.cannotLoad");
+                    }
+                    blob.setInputStream(new SqlBlobInputStream(sqlBlob));
+                } else {
+                    byte[] bytes = (byte[]) value;
+                    blob.setSize(bytes.length);
+                    blob.setInputStream(new ByteArrayInputStream(bytes));
+                }
                 if(fileNameAccessor != null) {
                     blob.setFilename((String) fileNameAccessor.get(obj));
                 } else {
@@ -119,10 +148,14 @@ public class DatabaseBlobField extends AbstractBlobField {
         if (blob == null) {
             writeToObject(obj, null);
         } else {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
             try {
-                IOUtils.copyLarge(blob.getInputStream(), baos);
-                writeToObject(obj, baos.toByteArray());
+                if(isSqlBlobProperty()) {
+                    writeToObject(obj, toSqlBlob(blob));
+                } else {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    IOUtils.copyLarge(blob.getInputStream(), baos);
+                    writeToObject(obj, baos.toByteArray());
+                }
                 if(fileNameAccessor != null) {
                     writeToObject(fileNameAccessor, obj, blob.getFilename());
                 }
@@ -143,6 +176,34 @@ public class DatabaseBlobField extends AbstractBlobField {
         }
     }
 
+    public boolean isSqlBlobProperty() {
+        return java.sql.Blob.class.isAssignableFrom(accessor.getType());
+    }
+
+    /**
+     * Converts a blob to a value for a {@link java.sql.Blob} property. If the blob is the one that was read from the
+     * object, the original value is returned, so that its contents are neither copied nor marked as modified.
+     * Otherwise, the contents are spooled to a temporary file and streamed to the database from there when the object
+     * is saved. The size of the blob may be just a hint (e.g. the Content-Length of an upload), while the database
+     * needs the exact length of the stream, so the size of the spooled file is used and recorded on the blob.
+     */
+    protected java.sql.Blob toSqlBlob(Blob blob) throws IOException {
+        if(blob == sqlBlobValue && sqlBlob != null) {
+            return sqlBlob;
+        }
+        //Spool to a temporary file rather than to memory; it's deleted when the stream is closed
+        Path tempFile = Files.createTempFile("blob-", ".tmp");
+        long size;
+        try(InputStream inputStream = blob.getInputStream()) {
+            size = Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        blob.setSize(size);
+        return new StreamingSqlBlob(Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE), size);
+    }
+
     @Override
     protected void loadBlob(BlobManager blobManager, Blob blob, boolean loadContents) throws IOException {
         if(!blob.isPropertiesLoaded()) {
@@ -165,4 +226,55 @@ public class DatabaseBlobField extends AbstractBlobField {
     public PropertyAccessor getFileNameAccessor() {
         return fileNameAccessor;
     }
+
+    /**
+     * An input stream over the contents of a {@link java.sql.Blob} that is only opened on first access, so that
+     * reading an object does not fetch its binary contents from the database.
+     */
+    protected static class SqlBlobInputStream extends InputStream {
+        protected final java.sql.Blob sqlBlob;
+        protected InputStream delegate;
+
+        public SqlBlobInputStream(java.sql.Blob sqlBlob) {
+            this.sqlBlob = sqlBlob;
+        }
+
+        protected InputStream getDelegate() throws IOException {
+            if(delegate == null) {
+                try {
+                    delegate = sqlBlob.getBinaryStream();
+                } catch (SQLException e) {
+                    throw new IOException("Could not open the blob stream", e);
+                }
+            }
+            return delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getDelegate().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getDelegate().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return getDelegate().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate != null ? delegate.available() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(delegate != null) {
+                delegate.close();
+            }
+        }
+    }
 }
@@ -593,6 +593,10 @@ public class SelectField extends AbstractField<Object> {
         selectionModel.setLabelSearch(selectionModelIndex, labelSearch);
     }
 
+    public void setLabelSearch(String labelSearch, Integer firstResult, Integer maxResults) {
+        selectionModel.setLabelSearch(selectionModelIndex, labelSearch, firstResult, maxResults);
+    }
+
     public SelectionModel getSelectionModel() {
         return selectionModel;
     }
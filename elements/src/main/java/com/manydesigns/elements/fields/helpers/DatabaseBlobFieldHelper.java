@@ -45,7 +45,8 @@ public class DatabaseBlobFieldHelper implements FieldHelper {
                                        PropertyAccessor propertyAccessor,
                                        Mode mode,
                                        String prefix) {
-        if (byte[].class.isAssignableFrom(propertyAccessor.getType())) {
+        Class<?> type = propertyAccessor.getType();
+        if (byte[].class.isAssignableFrom(type) || java.sql.Blob.class.isAssignableFrom(type)) {
             try {
                 return new DatabaseBlobField(classAccessor, propertyAccessor, mode, prefix);
             } catch (NoSuchFieldException e) {
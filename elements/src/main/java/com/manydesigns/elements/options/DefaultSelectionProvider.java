@@ -207,6 +207,8 @@ public class DefaultSelectionProvider implements SelectionProvider {
 
         private final Object[] values;
         private final String[] labelSearches;
+        private Integer labelSearchFirstResult;
+        private Integer labelSearchMaxResults;
         private final Map<Object, Option>[] optionsArray;
 
         private boolean needsValidation;
@@ -248,6 +250,12 @@ public class DefaultSelectionProvider implements SelectionProvider {
             needsValidation = true;
         }
 
+        public void setLabelSearch(int index, String labelSearch, Integer firstResult, Integer maxResults) {
+            setLabelSearch(index, labelSearch);
+            labelSearchFirstResult = firstResult;
+            labelSearchMaxResults = maxResults;
+        }
+
         public String getLabelSearch(int index) {
             return labelSearches[index];
         }
@@ -286,6 +294,27 @@ public class DefaultSelectionProvider implements SelectionProvider {
                 optionsArray[j].clear();
             }
 
+            if (fieldCount == 1 && !StringUtils.isEmpty(labelSearches[0]) &&
+                optionProvider instanceof SearchableOptionProvider) {
+                //Autocomplete: only the matching options are loaded
+                List<OptionProvider.Option> options = ((SearchableOptionProvider) optionProvider).getOptions(
+                        labelSearches[0], labelSearchFirstResult, labelSearchMaxResults);
+                for (OptionProvider.Option option : options) {
+                    Object cellValue = option.getValues()[0];
+                    String cellLabel = option.getLabels()[0];
+                    Option currentOption = optionsArray[0].get(cellValue);
+                    if (cellLabel != null && (currentOption == null || !currentOption.active)) {
+                        optionsArray[0].put(cellValue, new Option(cellValue, cellLabel, option.isActive()));
+                    }
+                }
+                // Like below, the value must be one of the options, even if it doesn't match the search
+                if (values[0] != null && !isValueOfAny(values[0], optionsArray[0].keySet()) &&
+                    !isValueOfAnyOption(values[0], DefaultSelectionProvider.this.getOptions())) {
+                    values[0] = null;
+                }
+                return;
+            }
+
             int maxMatchingIndex = -1;
             for (OptionProvider.Option option : DefaultSelectionProvider.this.getOptions()) {
                 Object[] currentValueRow = option.getValues();
@@ -304,12 +333,7 @@ public class DefaultSelectionProvider implements SelectionProvider {
                         }
                     }
 
-                    if (value != null && value.equals(cellValue)) {
-                        if (j > maxMatchingIndex) {
-                            maxMatchingIndex = j;
-                        }
-                    } else if (value instanceof Object[] &&
-                               ArrayUtils.contains((Object[]) value, cellValue)) {
+                    if (isValueOf(value, cellValue)) {
                         if (j > maxMatchingIndex) {
                             maxMatchingIndex = j;
                         }
@@ -322,10 +346,57 @@ public class DefaultSelectionProvider implements SelectionProvider {
             for (int i = maxMatchingIndex + 1; i < fieldCount; i++) {
                 values[i] = null;
             }
+
+            if (fieldCount == 1 && (labelSearchFirstResult != null || labelSearchMaxResults != null)) {
+                List<Option> options = new ArrayList<>(optionsArray[0].values());
+                int from = Math.min(labelSearchFirstResult != null ? labelSearchFirstResult : 0, options.size());
+                int to = labelSearchMaxResults != null ?
+                        Math.min(from + labelSearchMaxResults, options.size()) : options.size();
+                optionsArray[0].clear();
+                for (Option option : options.subList(from, to)) {
+                    optionsArray[0].put(option.value, option);
+                }
+            }
+        }
+
+        /**
+         * Tells whether a value (or, for multiple selection, one of the values) is the given option value.
+         */
+        private boolean isValueOf(Object value, Object cellValue) {
+            return (value != null && value.equals(cellValue)) ||
+                   (value instanceof Object[] && ArrayUtils.contains((Object[]) value, cellValue));
+        }
+
+        private boolean isValueOfAny(Object value, Collection<?> cellValues) {
+            for (Object cellValue : cellValues) {
+                if (isValueOf(value, cellValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isValueOfAnyOption(Object value, List<OptionProvider.Option> options) {
+            if (options == null) {
+                return false;
+            }
+            for (OptionProvider.Option option : options) {
+                if (isValueOf(value, option.getValues()[0])) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 
-    private boolean matchLabel(String cellLabel, String labelSearch2) {
+    /**
+     * Tells whether a label matches a search: each word of the search must be the prefix of a word of the label,
+     * in the same order and without gaps, ignoring case.
+     * @param cellLabel the label.
+     * @param labelSearch2 the search. If empty, everything matches.
+     * @return true if the label matches.
+     */
+    public static boolean matchLabel(String cellLabel, String labelSearch2) {
         if (labelSearch2 == null || labelSearch2.length() == 0) {
             return true;
         }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.options;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.*;
+
+/**
+ * An index of a list of options by the words in their labels, to search them by label without scanning the whole
+ * list. It is immutable, so it can be built once and shared as long as the list doesn't change.
+ */
+public class LabelIndex {
+
+    protected final List<OptionProvider.Option> options;
+    protected final int labelIndex;
+    protected final NavigableMap<String, int[]> words = new TreeMap<>();
+
+    /**
+     * @param options the options to index. The list must not be modified afterwards.
+     * @param labelIndex the label to index, for options with multiple fields.
+     */
+    public LabelIndex(List<OptionProvider.Option> options, int labelIndex) {
+        this.options = options;
+        this.labelIndex = labelIndex;
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < options.size(); i++) {
+            String label = options.get(i).getLabels()[labelIndex];
+            if(label == null) {
+                continue;
+            }
+            for(String word : StringUtils.split(label.toLowerCase(), DefaultSelectionProvider.NON_WORD_CHARACTERS)) {
+                List<Integer> list = positions.computeIfAbsent(word, k -> new ArrayList<>());
+                if(list.isEmpty() || list.get(list.size() - 1) != i) {
+                    list.add(i);
+                }
+            }
+        }
+        positions.forEach((word, list) -> words.put(word, list.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Returns the options whose label matches the search, as per
+     * {@link DefaultSelectionProvider#matchLabel(String, String)}, in their original order.
+     * @param labelSearch the text to search.
+     * @param firstResult the index of the first matching option to return, or null to start from the first.
+     * @param maxResults the maximum number of options to return, or null to return all of them.
+     * @return the matching options.
+     */
+    public List<OptionProvider.Option> search(String labelSearch, Integer firstResult, Integer maxResults) {
+        String[] searchWords = StringUtils.split(
+                StringUtils.defaultString(labelSearch).toLowerCase(), DefaultSelectionProvider.NON_WORD_CHARACTERS);
+        int skip = firstResult != null ? firstResult : 0;
+        int max = maxResults != null ? maxResults : Integer.MAX_VALUE;
+        List<OptionProvider.Option> result = new ArrayList<>();
+        if(searchWords.length == 0) {
+            for(int i = skip; i < options.size() && result.size() < max; i++) {
+                result.add(options.get(i));
+            }
+            return result;
+        }
+        //Candidates: the options with a word starting with the first searched word
+        BitSet candidates = new BitSet(options.size());
+        String prefix = searchWords[0];
+        for(int[] positions : words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            for(int position : positions) {
+                candidates.set(position);
+            }
+        }
+        for(int i = candidates.nextSetBit(0); i >= 0 && result.size() < max; i = candidates.nextSetBit(i + 1)) {
+            OptionProvider.Option option = options.get(i);
+            if(DefaultSelectionProvider.matchLabel(option.getLabels()[labelIndex], labelSearch)) {
+                if(skip > 0) {
+                    skip--;
+                } else {
+                    result.add(option);
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<OptionProvider.Option> getOptions() {
+        return options;
+    }
+}
@@ -1,21 +1,50 @@
 package com.manydesigns.elements.options;
 
+import java.util.Collections;
 import java.util.List;
 
-public class MemoizingOptionProvider implements OptionProvider {
+public class MemoizingOptionProvider implements SearchableOptionProvider {
 
     protected List<OptionProvider.Option> options;
+    protected LabelIndex labelIndex;
     protected final OptionProvider delegate;
 
     public MemoizingOptionProvider(OptionProvider delegate) {
         this.delegate = delegate;
     }
 
+    protected MemoizingOptionProvider() {
+        this(null);
+    }
+
     @Override
     public List<Option> getOptions() {
         if(options == null) {
-            options = delegate.getOptions();
+            options = loadOptions();
         }
         return options;
     }
+
+    protected List<Option> loadOptions() {
+        return delegate.getOptions();
+    }
+
+    /**
+     * Searches the memoized options using a {@link LabelIndex}, built the first time it's needed.
+     */
+    @Override
+    public List<Option> getOptions(String labelSearch, Integer firstResult, Integer maxResults) {
+        if(labelIndex == null) {
+            List<Option> options = getOptions();
+            if(options == null) {
+                return Collections.emptyList();
+            }
+            labelIndex = createLabelIndex(options);
+        }
+        return labelIndex.search(labelSearch, firstResult, maxResults);
+    }
+
+    protected LabelIndex createLabelIndex(List<Option> options) {
+        return new LabelIndex(options, 0);
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.options;
+
+import java.util.List;
+
+/**
+ * An {@link OptionProvider} that can efficiently search its options by label, for example by querying a database,
+ * rather than having them all loaded and filtered in memory. Only used with single-field selection providers.
+ */
+public interface SearchableOptionProvider extends OptionProvider {
+
+    /**
+     * Returns the options whose label matches the search (see
+     * {@link DefaultSelectionProvider#matchLabel(String, String)}, although implementations are allowed to match a
+     * superset), in a stable order.
+     * @param labelSearch the text to search. Not empty.
+     * @param firstResult the index of the first matching option to return, or null to start from the first.
+     * @param maxResults the maximum number of options to return, or null to return all of them.
+     * @return the matching options.
+     */
+    List<Option> getOptions(String labelSearch, Integer firstResult, Integer maxResults);
+}
@@ -40,6 +40,14 @@ public interface SelectionModel {
     String getLabelSearch(int index);
     void setLabelSearch(int index, String labelSearch);
 
+    /**
+     * Sets the label search and restricts the options to a range of the matching ones. Only supported with a single
+     * field; the default implementation ignores the range.
+     */
+    default void setLabelSearch(int index, String labelSearch, Integer firstResult, Integer maxResults) {
+        setLabelSearch(index, labelSearch);
+    }
+
     Map<Object, Option> getOptions(int index);
 
     String getOption(int index, Object value, boolean includeInactive);
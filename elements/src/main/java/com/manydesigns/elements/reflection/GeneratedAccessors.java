@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.manydesigns.elements.reflection;
+
+import com.manydesigns.elements.ElementsProperties;
+import javassist.bytecode.*;
+import javassist.util.proxy.DefineClassHelper;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Factory of functions that read and write properties without going through {@link Method#invoke(Object, Object...)}
+ * or {@link Field#get(Object)}. Getters and setters are compiled into lambdas with {@link LambdaMetafactory} when
+ * their classes are visible from this class' class loader; otherwise (e.g. for the entity classes generated at runtime
+ * in their own class loader) a small accessor class is generated with Javassist and defined next to the class of the
+ * property. Fields, and methods for which no class can be generated, are accessed with method handles.
+ * Used by {@link JavaPropertyAccessor} and {@link JavaFieldAccessor} when the
+ * {@link ElementsProperties#REFLECTION_ACCESSORS_GENERATED} property is true.<br>
+ * The functions don't check their arguments: callers must only pass objects of the declaring class and values of the
+ * type of the property, and fall back to reflection otherwise (see {@link #isAssignable(Class, boolean, Object)}).
+ * Exceptions thrown by getters and setters, including checked ones, are propagated unchanged.
+ */
+public class GeneratedAccessors {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    public static final Logger logger = LoggerFactory.getLogger(GeneratedAccessors.class);
+
+    protected static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    protected static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    protected static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    protected static final AtomicInteger generatedClassCount = new AtomicInteger();
+
+    public static boolean isEnabled() {
+        return ElementsProperties.getConfiguration().getBoolean(ElementsProperties.REFLECTION_ACCESSORS_GENERATED, false);
+    }
+
+    /**
+     * @return a function that invokes the getter, or null if it cannot be generated.
+     */
+    public static @Nullable Function<Object, Object> getter(Method getter) {
+        try {
+            MethodHandle handle = lookup.unreflect(getter);
+            if (isVisible(getter.getDeclaringClass())) {
+                Class<?> returnType = getter.getReturnType();
+                CallSite callSite = LambdaMetafactory.metafactory(
+                        lookup, "apply", MethodType.methodType(Function.class), GETTER_TYPE, handle,
+                        MethodType.methodType(
+                                returnType.isPrimitive() ? handle.type().wrap().returnType() : Object.class,
+                                getter.getDeclaringClass()));
+                //noinspection unchecked
+                return (Function<Object, Object>) callSite.getTarget().invoke();
+            } else if (canGenerateAccessor(getter)) {
+                try {
+                    //noinspection unchecked
+                    return (Function<Object, Object>) generateGetter(getter);
+                } catch (Exception e) {
+                    logger.debug("Cannot generate getter class for " + getter + ", using a method handle", e);
+                }
+            }
+            return getter(handle.asType(GETTER_TYPE));
+        } catch (Throwable e) {
+            logger.debug("Cannot generate getter for " + getter, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a function that invokes the setter, or null if it cannot be generated.
+     */
+    public static @Nullable BiConsumer<Object, Object> setter(Method setter) {
+        try {
+            MethodHandle handle = lookup.unreflect(setter);
+            Class<?> parameterType = setter.getParameterTypes()[0];
+            if (isVisible(setter.getDeclaringClass()) && (parameterType.isPrimitive() || isVisible(parameterType))) {
+                CallSite callSite = LambdaMetafactory.metafactory(
+                        lookup, "accept", MethodType.methodType(BiConsumer.class), SETTER_TYPE, handle,
+                        MethodType.methodType(
+                                void.class, setter.getDeclaringClass(), handle.type().wrap().parameterType(1)));
+                //noinspection unchecked
+                return (BiConsumer<Object, Object>) callSite.getTarget().invoke();
+            } else if (canGenerateAccessor(setter)) {
+                try {
+                    //noinspection unchecked
+                    return (BiConsumer<Object, Object>) generateSetter(setter);
+                } catch (Exception e) {
+                    logger.debug("Cannot generate setter class for " + setter + ", using a method handle", e);
+                }
+            }
+            return setter(handle.asType(SETTER_TYPE));
+        } catch (Throwable e) {
+            logger.debug("Cannot generate setter for " + setter, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a function that reads the field, or null if it cannot be generated.
+     */
+    public static @Nullable Function<Object, Object> getter(Field field) {
+        try {
+            MethodHandle handle = lookup.unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return getter(handle.asType(GETTER_TYPE));
+        } catch (Throwable e) {
+            logger.debug("Cannot generate getter for " + field, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a function that writes the field, or null if it cannot be generated (e.g. because it's final).
+     */
+    public static @Nullable BiConsumer<Object, Object> setter(Field field) {
+        try {
+            MethodHandle handle = lookup.unreflectSetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return setter(handle.asType(SETTER_TYPE));
+        } catch (Throwable e) {
+            logger.debug("Cannot generate setter for " + field, e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether a value can be passed to a generated setter, i.e. without the conversions and checks that reflection
+     * does.
+     * @param type the type of the property, with primitive types replaced by their wrappers (see {@link #wrap(Class)}).
+     * @param primitive whether the type of the property is primitive, in which case null is not assignable.
+     */
+    public static boolean isAssignable(Class<?> type, boolean primitive, Object value) {
+        if (value == null) {
+            return !primitive;
+        } else {
+            return primitive ? value.getClass() == type : type.isInstance(value);
+        }
+    }
+
+    /**
+     * @return the wrapper of a primitive type, or the type itself.
+     */
+    public static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+
+    protected static Function<Object, Object> getter(MethodHandle handle) {
+        return obj -> {
+            try {
+                return handle.invokeExact(obj);
+            } catch (Throwable e) {
+                throw GeneratedAccessors.<RuntimeException>sneakyThrow(e);
+            }
+        };
+    }
+
+    protected static BiConsumer<Object, Object> setter(MethodHandle handle) {
+        return (obj, value) -> {
+            try {
+                handle.invokeExact(obj, value);
+            } catch (Throwable e) {
+                throw GeneratedAccessors.<RuntimeException>sneakyThrow(e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T extends Throwable> T sneakyThrow(Throwable e) throws T {
+        throw (T) e;
+    }
+
+    //**************************************************************************
+    // Accessor classes
+    //**************************************************************************
+
+    /**
+     * Whether an accessor class, defined in the package of the declaring class of the method, can call the method.
+     */
+    protected static boolean canGenerateAccessor(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (Modifier.isPrivate(method.getModifiers()) || Modifier.isStatic(method.getModifiers()) ||
+            declaringClass.isInterface() || declaringClass.getClassLoader() == null) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers()) && !isSamePackage(type, declaringClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean isSamePackage(Class<?> class1, Class<?> class2) {
+        return class1.getClassLoader() == class2.getClassLoader() &&
+               getPackageName(class1).equals(getPackageName(class2));
+    }
+
+    protected static String getPackageName(Class<?> theClass) {
+        String name = theClass.getName();
+        int index = name.lastIndexOf('.');
+        return index >= 0 ? name.substring(0, index) : "";
+    }
+
+    /**
+     * Generates a class equivalent to <code>obj -> ((DeclaringClass) obj).getter()</code>.
+     */
+    protected static Object generateGetter(Method getter) throws Exception {
+        Class<?> declaringClass = getter.getDeclaringClass();
+        ClassFile classFile = newAccessorClass(declaringClass, Function.class);
+        Bytecode code = new Bytecode(classFile.getConstPool());
+        code.addAload(1);
+        code.addCheckcast(declaringClass.getName());
+        code.addInvokevirtual(
+                declaringClass.getName(), getter.getName(), MethodType.methodType(getter.getReturnType()).toMethodDescriptorString());
+        Class<?> returnType = getter.getReturnType();
+        if (returnType.isPrimitive()) {
+            Class<?> wrapperType = wrap(returnType);
+            code.addInvokestatic(
+                    wrapperType.getName(), "valueOf",
+                    MethodType.methodType(wrapperType, returnType).toMethodDescriptorString());
+        }
+        code.addOpcode(Opcode.ARETURN);
+        code.setMaxStack(2);
+        code.setMaxLocals(2);
+        addMethod(classFile, "apply", GETTER_TYPE.toMethodDescriptorString(), code);
+        return defineAccessorClass(classFile, declaringClass).getConstructor().newInstance();
+    }
+
+    /**
+     * Generates a class equivalent to <code>(obj, value) -> ((DeclaringClass) obj).setter((Type) value)</code>.
+     */
+    protected static Object generateSetter(Method setter) throws Exception {
+        Class<?> declaringClass = setter.getDeclaringClass();
+        Class<?> parameterType = setter.getParameterTypes()[0];
+        ClassFile classFile = newAccessorClass(declaringClass, BiConsumer.class);
+        Bytecode code = new Bytecode(classFile.getConstPool());
+        code.addAload(1);
+        code.addCheckcast(declaringClass.getName());
+        code.addAload(2);
+        if (parameterType.isPrimitive()) {
+            Class<?> wrapperType = wrap(parameterType);
+            code.addCheckcast(wrapperType.getName());
+            code.addInvokevirtual(
+                    wrapperType.getName(), parameterType.getName() + "Value",
+                    MethodType.methodType(parameterType).toMethodDescriptorString());
+        } else if (parameterType != Object.class) {
+            code.addCheckcast(parameterType.getName());
+        }
+        Class<?> returnType = setter.getReturnType();
+        code.addInvokevirtual(
+                declaringClass.getName(), setter.getName(),
+                MethodType.methodType(returnType, parameterType).toMethodDescriptorString());
+        //Fluent setters return a value
+        if (returnType == long.class || returnType == double.class) {
+            code.addOpcode(Opcode.POP2);
+        } else if (returnType != void.class) {
+            code.addOpcode(Opcode.POP);
+        }
+        code.addOpcode(Opcode.RETURN);
+        code.setMaxStack(3);
+        code.setMaxLocals(3);
+        addMethod(classFile, "accept", SETTER_TYPE.toMethodDescriptorString(), code);
+        return defineAccessorClass(classFile, declaringClass).getConstructor().newInstance();
+    }
+
+    protected static ClassFile newAccessorClass(Class<?> declaringClass, Class<?> functionalInterface) {
+        String className = declaringClass.getName() + "$$Accessor$" + generatedClassCount.incrementAndGet();
+        ClassFile classFile = new ClassFile(false, className, Object.class.getName());
+        classFile.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.FINAL | AccessFlag.SUPER);
+        classFile.setInterfaces(new String[] { functionalInterface.getName() });
+        Bytecode constructor = new Bytecode(classFile.getConstPool());
+        constructor.addAload(0);
+        constructor.addInvokespecial(Object.class.getName(), MethodInfo.nameInit, "()V");
+        constructor.addOpcode(Opcode.RETURN);
+        constructor.setMaxStack(1);
+        constructor.setMaxLocals(1);
+        addMethod(classFile, MethodInfo.nameInit, "()V", constructor);
+        return classFile;
+    }
+
+    protected static void addMethod(ClassFile classFile, String name, String descriptor, Bytecode code) {
+        MethodInfo method = new MethodInfo(classFile.getConstPool(), name, descriptor);
+        method.setAccessFlags(AccessFlag.PUBLIC);
+        method.setCodeAttribute(code.toCodeAttribute());
+        try {
+            classFile.addMethod(method);
+        } catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Defines the class in the class loader and package of the given class, so that it can access it even if it's
+     * not visible from here.
+     */
+    protected static Class<?> defineAccessorClass(ClassFile classFile, Class<?> neighbor) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            classFile.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return DefineClassHelper.toClass(
+                classFile.getName(), neighbor, neighbor.getClassLoader(), neighbor.getProtectionDomain(),
+                bytes.toByteArray());
+    }
+
+    protected static boolean isVisible(Class<?> theClass) {
+        try {
+            return Class.forName(theClass.getName(), false, GeneratedAccessors.class.getClassLoader()) == theClass;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -63,6 +63,7 @@ public class JavaClassAccessor implements ClassAccessor {
     protected final Class javaClass;
     protected final PropertyAccessor[] propertyAccessors;
     protected final PropertyAccessor[] keyPropertyAccessors;
+    protected final Map<String, PropertyAccessor> propertyAccessorsByName;
 
     //**************************************************************************
     // Static fields and methods
@@ -102,6 +103,10 @@ public class JavaClassAccessor implements ClassAccessor {
         List<PropertyAccessor> accessorList = setupPropertyAccessors();
         propertyAccessors = new PropertyAccessor[accessorList.size()];
         accessorList.toArray(propertyAccessors);
+        propertyAccessorsByName = new HashMap<>();
+        for (PropertyAccessor current : propertyAccessors) {
+            propertyAccessorsByName.putIfAbsent(current.getName(), current);
+        }
 
         List<PropertyAccessor> keyAccessors = setupKeyPropertyAccessors();
         keyPropertyAccessors = new PropertyAccessor[keyAccessors.size()];
@@ -227,12 +232,11 @@ public class JavaClassAccessor implements ClassAccessor {
 
     public PropertyAccessor getProperty(String propertyName)
             throws NoSuchFieldException {
-        for (PropertyAccessor current : propertyAccessors) {
-            if (current.getName().equals(propertyName)) {
-                return current;
-            }
+        PropertyAccessor result = propertyAccessorsByName.get(propertyName);
+        if (result == null) {
+            throw new NoSuchFieldException(propertyName);
         }
-        throw new NoSuchFieldException(propertyName);
+        return result;
     }
 
     public PropertyAccessor[] getProperties() {
@@ -24,6 +24,9 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -40,6 +43,9 @@ public class JavaFieldAccessor implements PropertyAccessor {
     //**************************************************************************
 
     private Field field;
+    private final Function<Object, Object> getterFunction;
+    private final BiConsumer<Object, Object> setterFunction;
+    private final Class<?> valueType;
 
 
     //**************************************************************************
@@ -49,6 +55,14 @@ public class JavaFieldAccessor implements PropertyAccessor {
     public JavaFieldAccessor(Field field) {
         assert field != null;
         this.field = field;
+        valueType = GeneratedAccessors.wrap(field.getType());
+        if (GeneratedAccessors.isEnabled()) {
+            getterFunction = GeneratedAccessors.getter(field);
+            setterFunction = GeneratedAccessors.setter(field);
+        } else {
+            getterFunction = null;
+            setterFunction = null;
+        }
     }
 
 
@@ -69,6 +83,15 @@ public class JavaFieldAccessor implements PropertyAccessor {
     }
 
     public Object get(Object obj) {
+        //Other objects go through reflection, which throws the appropriate exceptions
+        if (getterFunction != null && isTarget(obj)) {
+            try {
+                return getterFunction.apply(obj);
+            } catch (RuntimeException e) {
+                throw new ReflectionException(
+                        String.format("Cannot get property: %s", getName()), e);
+            }
+        }
         try {
             return field.get(obj);
         } catch (IllegalAccessException e) {
@@ -78,6 +101,16 @@ public class JavaFieldAccessor implements PropertyAccessor {
     }
 
     public void set(Object obj, Object value) {
+        if (setterFunction != null && isTarget(obj) &&
+            GeneratedAccessors.isAssignable(valueType, field.getType().isPrimitive(), value)) {
+            try {
+                setterFunction.accept(obj, value);
+                return;
+            } catch (RuntimeException e) {
+                throw new ReflectionException(
+                        String.format("Cannot set property: %s", getName()), e);
+            }
+        }
         try {
             field.set(obj, value);
         } catch (IllegalAccessException e) {
@@ -86,7 +119,10 @@ public class JavaFieldAccessor implements PropertyAccessor {
         }
     }
 
-    
+    protected boolean isTarget(Object obj) {
+        return Modifier.isStatic(field.getModifiers()) || field.getDeclaringClass().isInstance(obj);
+    }
+
     //**************************************************************************
     // AnnotatedElement implementation
     //**************************************************************************
@@ -29,6 +29,8 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -48,6 +50,10 @@ public class JavaPropertyAccessor extends AbstractAnnotatedAccessor implements P
     private final PropertyDescriptor propertyDescriptor;
     private final Method getter;
     private final Method setter;
+    private final Function<Object, Object> getterFunction;
+    private final BiConsumer<Object, Object> setterFunction;
+    private final Class<?> setterValueType;
+    private final boolean setterValuePrimitive;
 
     public final static Logger logger =
             LoggerFactory.getLogger(JavaPropertyAccessor.class);
@@ -60,6 +66,15 @@ public class JavaPropertyAccessor extends AbstractAnnotatedAccessor implements P
         this.propertyDescriptor = propertyDescriptor;
         getter = propertyDescriptor.getReadMethod();
         setter = propertyDescriptor.getWriteMethod();
+        setterValuePrimitive = setter != null && setter.getParameterTypes()[0].isPrimitive();
+        setterValueType = setter != null ? GeneratedAccessors.wrap(setter.getParameterTypes()[0]) : null;
+        if (GeneratedAccessors.isEnabled()) {
+            getterFunction = GeneratedAccessors.getter(getter);
+            setterFunction = setter != null ? GeneratedAccessors.setter(setter) : null;
+        } else {
+            getterFunction = null;
+            setterFunction = null;
+        }
         try {
             Field field = getter.getDeclaringClass().getDeclaredField(propertyDescriptor.getName());
             for(Annotation ann : field.getAnnotations()) {
@@ -98,6 +113,15 @@ public class JavaPropertyAccessor extends AbstractAnnotatedAccessor implements P
     }
 
     public Object get(Object obj) {
+        //Other objects go through reflection, which throws the appropriate exceptions
+        if (getterFunction != null && getter.getDeclaringClass().isInstance(obj)) {
+            try {
+                return getterFunction.apply(obj);
+            } catch (Throwable e) {
+                throw new ReflectionException(
+                        String.format("Cannot get property: %s", getName()), new InvocationTargetException(e));
+            }
+        }
         try {
             return getter.invoke(obj);
         } catch (IllegalAccessException e) {
@@ -113,6 +137,14 @@ public class JavaPropertyAccessor extends AbstractAnnotatedAccessor implements P
         if (setter == null) {
             throw new ReflectionException(String.format(
                     "Setter not available for property: %s", getName()));
+        } else if (setterFunction != null && setter.getDeclaringClass().isInstance(obj) &&
+                   GeneratedAccessors.isAssignable(setterValueType, setterValuePrimitive, value)) {
+            try {
+                setterFunction.accept(obj, value);
+            } catch (Throwable e) {
+                throw new ReflectionException(
+                        String.format("Cannot set property: %s", getName()), new InvocationTargetException(e));
+            }
         } else {
             try {
                 setter.invoke(obj, value);
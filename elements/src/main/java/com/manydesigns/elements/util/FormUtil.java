@@ -63,11 +63,11 @@ public class FormUtil {
 
     /**
      * Writes a collection of fields as properties of a JSON object.
-     * @param js the JSONStringer to write to. Must have a JSON object open for writing.
+     * @param js the JSONWriter to write to. Must have a JSON object open for writing.
      * @param fields the fields to output
      * @throws org.json.JSONException if the JSON can not be generated.
      */
-    public static void fieldsToJson(JSONStringer js, Collection<Field> fields) throws JSONException {
+    public static void fieldsToJson(JSONWriter js, Collection<Field> fields) throws JSONException {
         for (Field field : fields) {
             Object value = field.getValue();
             if(value instanceof Date) {
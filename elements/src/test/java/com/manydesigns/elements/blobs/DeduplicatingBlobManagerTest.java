@@ -0,0 +1,100 @@
+package com.manydesigns.elements.blobs;
+
+import com.manydesigns.elements.AbstractElementsTest;
+import com.manydesigns.elements.util.RandomUtil;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static org.testng.Assert.*;
+
+public class DeduplicatingBlobManagerTest extends AbstractElementsTest {
+
+    DeduplicatingBlobManager manager;
+    File blobsDir;
+
+    byte[] sampleContent = "This is some content".getBytes();
+
+    @Override
+    @BeforeMethod
+    public void setUp() throws Exception {
+        super.setUp();
+        blobsDir = Files.createTempDirectory("blobs").toFile();
+        manager = new DeduplicatingBlobManager(
+                blobsDir, SimpleBlobManagerTest.META_FILE_NAME_PATTERN, SimpleBlobManagerTest.DATA_FILE_NAME_PATTERN);
+    }
+
+    @Override
+    @AfterMethod
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(blobsDir);
+        super.tearDown();
+    }
+
+    protected Blob saveBlob(byte[] content) throws IOException {
+        Blob blob = new Blob(RandomUtil.createRandomId());
+        blob.setInputStream(new ByteArrayInputStream(content));
+        blob.setFilename("sample.txt");
+        blob.setContentType("text/plain");
+        manager.save(blob);
+        return blob;
+    }
+
+    @Test
+    public void testSharedContents() throws IOException {
+        Blob blob1 = saveBlob(sampleContent);
+        Blob blob2 = saveBlob(sampleContent);
+        assertNotEquals(blob1.getCode(), blob2.getCode());
+        assertEquals(blob1.getDigest(), blob2.getDigest());
+        assertEquals(blob1.getSize(), sampleContent.length);
+        assertEquals(manager.getReferences(blob1.getDigest()), 2);
+
+        Blob loaded = new Blob(blob2.getCode());
+        try(InputStream inputStream = manager.openStream(loaded)) {
+            assertEquals(IOUtils.toByteArray(inputStream), sampleContent);
+        }
+        assertEquals(loaded.getFilename(), "sample.txt");
+
+        assertTrue(manager.delete(new Blob(blob1.getCode())));
+        assertEquals(manager.getReferences(blob2.getDigest()), 1);
+        assertTrue(manager.getContentDataFile(blob2.getDigest()).exists());
+
+        assertTrue(manager.delete(new Blob(blob2.getCode())));
+        assertEquals(manager.getReferences(blob2.getDigest()), 0);
+        assertFalse(manager.getContentDataFile(blob2.getDigest()).exists());
+    }
+
+    @Test
+    public void testDistinctContents() throws IOException {
+        Blob blob1 = saveBlob(sampleContent);
+        Blob blob2 = saveBlob("Some other content".getBytes());
+        assertNotEquals(blob1.getDigest(), blob2.getDigest());
+        assertEquals(manager.getReferences(blob1.getDigest()), 1);
+        assertEquals(manager.getReferences(blob2.getDigest()), 1);
+    }
+
+    @Test
+    public void testLegacyBlobs() throws IOException {
+        HierarchicalBlobManager legacyManager = new HierarchicalBlobManager(
+                blobsDir, SimpleBlobManagerTest.META_FILE_NAME_PATTERN, SimpleBlobManagerTest.DATA_FILE_NAME_PATTERN);
+        Blob blob = new Blob(RandomUtil.createRandomId());
+        blob.setInputStream(new ByteArrayInputStream(sampleContent));
+        legacyManager.save(blob);
+
+        Blob loaded = new Blob(blob.getCode());
+        try(InputStream inputStream = manager.openStream(loaded)) {
+            assertEquals(IOUtils.toByteArray(inputStream), sampleContent);
+        }
+        assertNull(loaded.getDigest());
+        assertTrue(manager.delete(new Blob(blob.getCode())));
+        assertFalse(legacyManager.getDataFile(blob.getCode()).exists());
+    }
+}
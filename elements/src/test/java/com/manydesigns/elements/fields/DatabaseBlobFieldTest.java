@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.elements.fields;
+
+import com.manydesigns.elements.AbstractElementsTest;
+import com.manydesigns.elements.blobs.Blob;
+import com.manydesigns.elements.forms.Form;
+import com.manydesigns.elements.forms.FormBuilder;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+/*
+* @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+* @author Angelo Lupo          - angelo.lupo@manydesigns.com
+* @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+* @author Alessio Stalla       - alessio.stalla@manydesigns.com
+*/
+public class DatabaseBlobFieldTest extends AbstractElementsTest {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    String sampleContent = "This is some content";
+
+    protected DatabaseBlobField buildField(Form form) {
+        return (DatabaseBlobField) form.findFieldByPropertyName("data");
+    }
+
+    @Test
+    public void testSqlBlobUsesActualSize() throws Exception {
+        Form form = new FormBuilder(Bean.class).build();
+        DatabaseBlobField field = buildField(form);
+        assertTrue(field.isSqlBlobProperty());
+
+        Blob blob = new Blob(field.generateNewCode());
+        //The declared size is only a hint, e.g. the Content-Length of a request
+        blob.setSize(1000);
+        blob.setInputStream(new ByteArrayInputStream(sampleContent.getBytes(StandardCharsets.UTF_8)));
+        field.setValue(blob);
+        Bean bean = new Bean();
+        field.writeToObject(bean);
+
+        assertNotNull(bean.data);
+        assertEquals(bean.data.length(), sampleContent.length());
+        assertEquals(blob.getSize(), sampleContent.length());
+        try(InputStream inputStream = bean.data.getBinaryStream()) {
+            assertEquals(IOUtils.toString(inputStream, StandardCharsets.UTF_8), sampleContent);
+        }
+        bean.data.free();
+    }
+
+    @Test
+    public void testUnmodifiedSqlBlobIsKept() throws Exception {
+        Form form = new FormBuilder(Bean.class).build();
+        DatabaseBlobField field = buildField(form);
+        Bean bean = new Bean();
+        java.sql.Blob original = new SerialBlob(sampleContent.getBytes(StandardCharsets.UTF_8));
+        bean.data = original;
+
+        form.readFromObject(bean);
+        assertEquals(field.getValue().getSize(), sampleContent.length());
+        field.writeToObject(bean);
+        assertSame(bean.data, original);
+    }
+
+    @Test
+    public void testByteArray() throws Exception {
+        Form form = new FormBuilder(BytesBean.class).build();
+        DatabaseBlobField field = buildField(form);
+        assertFalse(field.isSqlBlobProperty());
+
+        Blob blob = new Blob(field.generateNewCode());
+        blob.setSize(-1);
+        blob.setInputStream(new ByteArrayInputStream(sampleContent.getBytes(StandardCharsets.UTF_8)));
+        field.setValue(blob);
+        BytesBean bean = new BytesBean();
+        field.writeToObject(bean);
+        assertEquals(new String(bean.data, StandardCharsets.UTF_8), sampleContent);
+    }
+
+    public static class Bean {
+        public java.sql.Blob data;
+    }
+
+    public static class BytesBean {
+        public byte[] data;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.manydesigns.elements.options;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+@Test
+public class DefaultSelectionProviderTest {
+
+    protected DefaultSelectionProvider createSearchableSelectionProvider(String... labels) {
+        List<OptionProvider.Option> options = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            options.add(new OptionProvider.Option(new Object[] { i }, new String[] { labels[i] }, true));
+        }
+        return new DefaultSelectionProvider("test", 1, new MemoizingOptionProvider(() -> options));
+    }
+
+    public void testAutocompleteLoadsOnlyTheMatchingOptions() {
+        DefaultSelectionProvider selectionProvider =
+                createSearchableSelectionProvider("Mario Rossi", "Maria Bianchi", "Giuseppe Verdi");
+        SelectionModel selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setLabelSearch(0, "mar");
+        assertEquals(new ArrayList<>(selectionModel.getOptions(0).keySet()), Arrays.asList(0, 1));
+    }
+
+    public void testAutocompleteKeepsValidValues() {
+        DefaultSelectionProvider selectionProvider =
+                createSearchableSelectionProvider("Mario Rossi", "Maria Bianchi", "Giuseppe Verdi");
+        SelectionModel selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setValue(0, 1);
+        selectionModel.setLabelSearch(0, "mar");
+        assertEquals(selectionModel.getValue(0), 1);
+
+        //The value is an option, although it doesn't match the search
+        selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setValue(0, 2);
+        selectionModel.setLabelSearch(0, "mar");
+        assertEquals(selectionModel.getValue(0), 2);
+    }
+
+    public void testAutocompleteDiscardsInvalidValues() {
+        DefaultSelectionProvider selectionProvider =
+                createSearchableSelectionProvider("Mario Rossi", "Maria Bianchi", "Giuseppe Verdi");
+        SelectionModel selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setValue(0, 3);
+        selectionModel.setLabelSearch(0, "mar");
+        assertNull(selectionModel.getValue(0));
+
+        //Same as without a search
+        selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setValue(0, 3);
+        assertNull(selectionModel.getValue(0));
+    }
+
+    public void testAutocompleteWithMultipleValues() {
+        DefaultSelectionProvider selectionProvider =
+                createSearchableSelectionProvider("Mario Rossi", "Maria Bianchi", "Giuseppe Verdi");
+        SelectionModel selectionModel = selectionProvider.createSelectionModel();
+        Object[] values = { 2, 3 };
+        selectionModel.setValue(0, values);
+        selectionModel.setLabelSearch(0, "mar");
+        assertSame(selectionModel.getValue(0), values);
+
+        selectionModel = selectionProvider.createSelectionModel();
+        selectionModel.setValue(0, new Object[] { 3, 4 });
+        selectionModel.setLabelSearch(0, "mar");
+        assertNull(selectionModel.getValue(0));
+    }
+
+}
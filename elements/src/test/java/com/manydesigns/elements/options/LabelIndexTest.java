@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.manydesigns.elements.options;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class LabelIndexTest {
+
+    protected LabelIndex createIndex(String... labels) {
+        List<OptionProvider.Option> options = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            options.add(new OptionProvider.Option(new Object[] { i }, new String[] { labels[i] }, true));
+        }
+        return new LabelIndex(options, 0);
+    }
+
+    protected List<Object> values(List<OptionProvider.Option> options) {
+        List<Object> values = new ArrayList<>();
+        for (OptionProvider.Option option : options) {
+            values.add(option.getValues()[0]);
+        }
+        return values;
+    }
+
+    public void testSearchMatchesLikeMatchLabel() {
+        LabelIndex index = createIndex("Mario Rossi", "Maria Bianchi", "Giuseppe Verdi", "Rosa Mario", null);
+        assertEquals(values(index.search("mar", null, null)), Arrays.asList(0, 1, 3));
+        assertEquals(values(index.search("MARIO ro", null, null)), Arrays.asList(0));
+        assertEquals(values(index.search("ros", null, null)), Arrays.asList(0, 3));
+        assertEquals(values(index.search("ossi", null, null)), Collections.emptyList());
+    }
+
+    public void testSearchRange() {
+        LabelIndex index = createIndex("a1", "b", "a2", "a3", "a4");
+        assertEquals(values(index.search("a", 1, 2)), Arrays.asList(2, 3));
+        assertEquals(values(index.search("a", 3, 10)), Arrays.asList(4));
+        assertEquals(values(index.search("a", 5, null)), Collections.emptyList());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.manydesigns.elements.reflection;
+
+import com.manydesigns.elements.ElementsProperties;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.testng.Assert.*;
+
+@Test
+public class GeneratedAccessorsTest {
+
+    public static class TestBean {
+        public String field;
+        private int number;
+        private String text;
+
+        public int getNumber() {
+            return number;
+        }
+
+        public void setNumber(int number) {
+            this.number = number;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            if("fail".equals(text)) {
+                throw new IllegalArgumentException(text);
+            }
+            this.text = text;
+        }
+    }
+
+    public void testMethods() throws Exception {
+        TestBean bean = new TestBean();
+        Function<Object, Object> getNumber = GeneratedAccessors.getter(TestBean.class.getMethod("getNumber"));
+        BiConsumer<Object, Object> setNumber =
+                GeneratedAccessors.setter(TestBean.class.getMethod("setNumber", int.class));
+        assertNotNull(getNumber);
+        assertNotNull(setNumber);
+        setNumber.accept(bean, 42);
+        assertEquals(bean.number, 42);
+        assertEquals(getNumber.apply(bean), 42);
+
+        BiConsumer<Object, Object> setText =
+                GeneratedAccessors.setter(TestBean.class.getMethod("setText", String.class));
+        assertNotNull(setText);
+        setText.accept(bean, "hello");
+        assertEquals(GeneratedAccessors.getter(TestBean.class.getMethod("getText")).apply(bean), "hello");
+        try {
+            setText.accept(bean, "fail");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+    }
+
+    public void testFields() throws Exception {
+        TestBean bean = new TestBean();
+        BiConsumer<Object, Object> setter = GeneratedAccessors.setter(TestBean.class.getField("field"));
+        assertNotNull(setter);
+        setter.accept(bean, "value");
+        assertEquals(bean.field, "value");
+        assertEquals(GeneratedAccessors.getter(TestBean.class.getField("field")).apply(bean), "value");
+    }
+
+    /**
+     * Loads a class in its own class loader, like the entity classes generated at runtime, so that it's not
+     * visible from the class loader of {@link GeneratedAccessors}.
+     */
+    protected static Class<?> loadIsolated(Class<?> theClass) throws ClassNotFoundException {
+        ClassLoader classLoader = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                String resource = "/" + name.replace('.', '/') + ".class";
+                try(InputStream in = GeneratedAccessorsTest.class.getResourceAsStream(resource)) {
+                    if(in == null) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    byte[] bytes = IOUtils.toByteArray(in);
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        };
+        Class<?> isolated = classLoader.loadClass(theClass.getName());
+        assertNotEquals(isolated, theClass);
+        assertFalse(GeneratedAccessors.isVisible(isolated));
+        return isolated;
+    }
+
+    public void testInvisibleClass() throws Exception {
+        Class<?> beanClass = loadIsolated(TestBean.class);
+        Object bean = beanClass.getConstructor().newInstance();
+        Function<Object, Object> getNumber = GeneratedAccessors.getter(beanClass.getMethod("getNumber"));
+        BiConsumer<Object, Object> setNumber = GeneratedAccessors.setter(beanClass.getMethod("setNumber", int.class));
+        assertNotNull(getNumber);
+        assertNotNull(setNumber);
+        //Compiled classes rather than method handles
+        assertEquals(getNumber.getClass().getClassLoader(), beanClass.getClassLoader());
+        assertEquals(setNumber.getClass().getClassLoader(), beanClass.getClassLoader());
+        setNumber.accept(bean, 42);
+        assertEquals(getNumber.apply(bean), 42);
+
+        BiConsumer<Object, Object> setText = GeneratedAccessors.setter(beanClass.getMethod("setText", String.class));
+        assertNotNull(setText);
+        setText.accept(bean, "hello");
+        assertEquals(GeneratedAccessors.getter(beanClass.getMethod("getText")).apply(bean), "hello");
+        try {
+            setText.accept(bean, "fail");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+    }
+
+    public void testExceptionsAreTheSameAsWithReflection() throws Exception {
+        Class<?> isolatedBeanClass = loadIsolated(TestBean.class);
+        for(Class<?> beanClass : new Class<?>[] { TestBean.class, isolatedBeanClass }) {
+            JavaPropertyAccessor reflective = createAccessor(beanClass, "number", false);
+            JavaPropertyAccessor generated = createAccessor(beanClass, "number", true);
+            Object bean = beanClass.getConstructor().newInstance();
+            for(JavaPropertyAccessor accessor : new JavaPropertyAccessor[] { reflective, generated }) {
+                assertThrows(IllegalArgumentException.class, () -> accessor.get("not a bean"));
+                assertThrows(NullPointerException.class, () -> accessor.get(null));
+                assertThrows(IllegalArgumentException.class, () -> accessor.set(bean, "not a number"));
+                assertThrows(IllegalArgumentException.class, () -> accessor.set(bean, null));
+                assertThrows(IllegalArgumentException.class, () -> accessor.set("not a bean", 1));
+                //Widening conversions are done like with reflection
+                accessor.set(bean, (short) 2);
+                assertEquals(accessor.get(bean), 2);
+            }
+
+            reflective = createAccessor(beanClass, "text", false);
+            generated = createAccessor(beanClass, "text", true);
+            for(JavaPropertyAccessor accessor : new JavaPropertyAccessor[] { reflective, generated }) {
+                try {
+                    accessor.set(bean, "fail");
+                    fail("Exception expected");
+                } catch (ReflectionException e) {
+                    assertTrue(e.getCause() instanceof InvocationTargetException);
+                    assertTrue(e.getCause().getCause() instanceof IllegalArgumentException);
+                }
+            }
+        }
+    }
+
+    protected static JavaPropertyAccessor createAccessor(Class<?> beanClass, String name, boolean generated)
+            throws Exception {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method getter = beanClass.getMethod("get" + capitalized);
+        Method setter = beanClass.getMethod("set" + capitalized, getter.getReturnType());
+        ElementsProperties.getConfiguration().setProperty(
+                ElementsProperties.REFLECTION_ACCESSORS_GENERATED, generated);
+        try {
+            return new JavaPropertyAccessor(new PropertyDescriptor(name, getter, setter));
+        } finally {
+            ElementsProperties.getConfiguration().clearProperty(ElementsProperties.REFLECTION_ACCESSORS_GENERATED);
+        }
+    }
+}
@@ -22,7 +22,9 @@ package com.manydesigns.mail;
 
 import com.manydesigns.mail.quartz.MailScheduler;
 import com.manydesigns.mail.queue.MailQueue;
+import com.manydesigns.mail.sender.ConcurrentMailSenderStatistics;
 import com.manydesigns.mail.sender.MailSender;
+import com.manydesigns.mail.sender.MailSenderStatistics;
 import com.manydesigns.mail.setup.MailQueueSetup;
 import com.manydesigns.portofino.modules.Module;
 import com.manydesigns.portofino.modules.ModuleStatus;
@@ -34,7 +36,14 @@ import org.springframework.context.annotation.Bean;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import javax.servlet.ServletContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -46,6 +55,12 @@ public class MailModule implements Module {
     public static final String copyright =
             "Copyright (C) 2005-2020 ManyDesigns srl";
 
+    /**
+     * The JMX name of the statistics of the mail sender; the context path of the application is appended as the
+     * "context" key.
+     */
+    public static final String STATISTICS_OBJECT_NAME = "com.manydesigns.portofino:type=MailSender";
+
     //**************************************************************************
     // Fields
     //**************************************************************************
@@ -57,6 +72,7 @@ public class MailModule implements Module {
     public Configuration configuration;
 
     protected MailQueueSetup mailQueueSetup;
+    protected ObjectName statisticsObjectName;
 
     protected ModuleStatus status = ModuleStatus.CREATED;
 
@@ -89,11 +105,60 @@ public class MailModule implements Module {
             logger.debug(e.getMessage(), e);
             logger.info("Quartz is not available, mail scheduler not started");
         }
+        registerStatistics(mailQueueSetup.getMailSender());
         status = ModuleStatus.STARTED;
     }
 
+    /**
+     * Registers the statistics of the mail sender with the platform MBean server, so that monitoring tools can
+     * read them.
+     */
+    @SuppressWarnings("unchecked")
+    protected void registerStatistics(MailSender mailSender) {
+        if(!(mailSender instanceof MailSenderStatistics)) {
+            return;
+        }
+        Class statisticsInterface = mailSender instanceof ConcurrentMailSenderStatistics ?
+                ConcurrentMailSenderStatistics.class : MailSenderStatistics.class;
+        String contextPath = servletContext != null ? servletContext.getContextPath() : "";
+        try {
+            ObjectName objectName =
+                    new ObjectName(STATISTICS_OBJECT_NAME + ",context=" + ObjectName.quote(contextPath));
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            mBeanServer.registerMBean(new StandardMBean(mailSender, statisticsInterface, true), objectName);
+            statisticsObjectName = objectName;
+        } catch (JMException e) {
+            logger.warn("Could not register the mail sender statistics with JMX", e);
+        }
+    }
+
+    protected void unregisterStatistics() {
+        if(statisticsObjectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsObjectName);
+        } catch (JMException e) {
+            logger.debug("Could not unregister the mail sender statistics", e);
+        }
+        statisticsObjectName = null;
+    }
+
     @PreDestroy
     public void destroy() {
+        unregisterStatistics();
+        MailSender mailSender = mailQueueSetup.getMailSender();
+        if(mailSender != null) {
+            mailSender.shutdown();
+        }
+        MailQueue mailQueue = mailQueueSetup.getMailQueue();
+        if(mailQueue instanceof Closeable) {
+            try {
+                ((Closeable) mailQueue).close();
+            } catch (IOException e) {
+                logger.warn("Could not close mail queue", e);
+            }
+        }
         status = ModuleStatus.DESTROYED;
     }
 
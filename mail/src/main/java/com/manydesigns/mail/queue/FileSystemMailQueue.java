@@ -99,19 +99,7 @@ public class FileSystemMailQueue implements MailQueue {
             String emailId = RandomUtil.createRandomId(20);
             File destinationFile = getEmailFile(emailId);
             checkDirectory(queuedDirectory);
-            if(!email.getAttachments().isEmpty()) {
-                File attachDir = getEmailAttachmentsDirectory(emailId);
-                checkDirectory(attachDir);
-                for(Attachment attachment : email.getAttachments()) {
-                    String attachmentId = RandomUtil.createRandomId(20);
-                    File attachmentFile = new File(attachDir, attachmentId + ".bin");
-                    try(InputStream inputStream = attachment.getInputStream();
-                        FileOutputStream fos = new FileOutputStream(attachmentFile)) {
-                        IOUtils.copy(inputStream, fos);
-                    }
-                    attachment.setFilePath(attachmentFile.getAbsolutePath());
-                }
-            }
+            storeAttachments(emailId, email);
             marshaller.marshal(email, destinationFile);
             return emailId;
         } catch (Exception e) {
@@ -119,6 +107,25 @@ public class FileSystemMailQueue implements MailQueue {
         }
     }
 
+    /**
+     * Copies the attachments of the given email to the queue, and updates their paths accordingly.
+     */
+    protected void storeAttachments(String emailId, Email email) throws IOException, QueueException {
+        if(!email.getAttachments().isEmpty()) {
+            File attachDir = getEmailAttachmentsDirectory(emailId);
+            checkDirectory(attachDir);
+            for(Attachment attachment : email.getAttachments()) {
+                String attachmentId = RandomUtil.createRandomId(20);
+                File attachmentFile = new File(attachDir, attachmentId + ".bin");
+                try(InputStream inputStream = attachment.getInputStream();
+                    FileOutputStream fos = new FileOutputStream(attachmentFile)) {
+                    IOUtils.copy(inputStream, fos);
+                }
+                attachment.setFilePath(attachmentFile.getAbsolutePath());
+            }
+        }
+    }
+
     protected File getEmailFile(String emailId) {
         return RandomUtil.getCodeFile(queuedDirectory, "email-{0}.xml", emailId);
     }
@@ -0,0 +1,636 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.mail.queue;
+
+import com.manydesigns.elements.util.RandomUtil;
+import com.manydesigns.mail.queue.model.Email;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A mail queue that keeps enqueued mails in an append-only journal file, with an in-memory index of the mails
+ * waiting to be sent. Enqueueing a mail, listing the queue and marking a mail as sent or failed don't scan the
+ * file system. Each operation is a single record appended to the journal and synced to disk, so a crash never
+ * leaves a mail in an intermediate state. On startup, a torn record at the end of the journal, left by a crash in
+ * the middle of a write, is discarded (its bytes are saved next to the journal, see {@link #DISCARDED_SUFFIX});
+ * a corrupted record anywhere else makes the queue fail to open, rather than silently losing the mails after it.
+ * <p>Attachments are stored as files, as in {@link FileSystemMailQueue}; sent (if kept) and failed mails are
+ * written to the sent and failed directories using the same layout. The journal is compacted when most of its
+ * records refer to mails that are no longer enqueued.</p>
+ * <p>Mails found in the queue directory in the {@link FileSystemMailQueue} format are migrated to the journal on
+ * startup.</p>
+ * <p>This class is thread safe and does not need to be wrapped in a {@link LockingMailQueue}.</p>
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class JournalMailQueue extends FileSystemMailQueue implements Closeable {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    public static final String JOURNAL_FILE_NAME = "queue.journal";
+    public static final String DISCARDED_SUFFIX = ".discarded";
+    public static final long COMPACTION_MIN_SIZE = 1024 * 1024;
+
+    protected static final byte ENQUEUED = 1;
+    protected static final byte SENT = 2;
+    protected static final byte FAILED = 3;
+    protected static final int HEADER_SIZE = 8;
+
+    protected final File journalFile;
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+    protected final Map<String, JournalEntry> index = new LinkedHashMap<>();
+    protected final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+    protected final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+    protected FileChannel journal;
+    protected long journalSize;
+    protected long liveSize;
+    protected boolean syncOnWrite = true;
+    protected long compactionMinSize = COMPACTION_MIN_SIZE;
+
+    protected static final Logger logger = LoggerFactory.getLogger(JournalMailQueue.class);
+
+    public JournalMailQueue(File directory) throws QueueException {
+        super(directory);
+        journalFile = new File(queuedDirectory, JOURNAL_FILE_NAME);
+        try {
+            openJournal();
+            migrateQueuedFiles();
+        } catch (IOException e) {
+            throw new QueueException("Couldn't open mail queue journal " + journalFile.getAbsolutePath(), e);
+        }
+    }
+
+    //**************************************************************************
+    // MailQueue implementation
+    //**************************************************************************
+
+    @Override
+    public String enqueue(Email email) throws QueueException {
+        String emailId = RandomUtil.createRandomId(20);
+        byte[] data;
+        try {
+            checkDirectory(queuedDirectory);
+            storeAttachments(emailId, email);
+            data = marshal(email);
+        } catch (Exception e) {
+            throw new QueueException("Couldn't enqueue mail", e);
+        }
+        lock.writeLock().lock();
+        try {
+            long offset = append(encodeRecord(ENQUEUED, emailId, data));
+            addToIndex(emailId, new JournalEntry(offset, (int) (journalSize - offset)));
+        } catch (IOException e) {
+            throw new QueueException("Couldn't enqueue mail", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return emailId;
+    }
+
+    @Override
+    public List<String> getEnqueuedEmailIds() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Email loadEmail(String id) throws QueueException {
+        byte[] data = loadData(id);
+        if(data == null) {
+            logger.debug("Email with id {} not found", id);
+            return null;
+        }
+        try {
+            return unmarshal(data);
+        } catch (JAXBException e) {
+            throw new MailParseException("Couldn't parse email", e);
+        }
+    }
+
+    @Override
+    public void markSent(String id) throws QueueException {
+        if(keepSent) {
+            byte[] data = loadData(id);
+            if(data == null) {
+                logger.debug("Not marking email with id {} as sent", id);
+                return;
+            }
+            logger.info("Moving email with id {} to sent directory", id);
+            archive(id, data, sentDirectory);
+        }
+        if(!remove(id, SENT)) {
+            logger.debug("Not marking email with id {} as sent", id);
+            return;
+        }
+        if(!keepSent) {
+            logger.info("Deleting sent email with id {}", id);
+        }
+        deleteAttachments(id);
+    }
+
+    @Override
+    public void markFailed(String id) throws QueueException {
+        byte[] data = loadData(id);
+        if(data == null) {
+            logger.debug("Not marking email with id {} as failed", id);
+            return;
+        }
+        logger.info("Marking email with id {} as failed", id);
+        archive(id, data, failedDirectory);
+        if(remove(id, FAILED)) {
+            deleteAttachments(id);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if(journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //**************************************************************************
+    // Journal
+    //**************************************************************************
+
+    protected void openJournal() throws IOException {
+        checkDirectoryQuietly(queuedDirectory);
+        journal = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replayJournal();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            journal = null;
+            throw e;
+        }
+        logger.info("Mail queue journal {} opened, {} mails enqueued", journalFile, index.size());
+    }
+
+    protected void replayJournal() throws IOException {
+        index.clear();
+        liveSize = 0;
+        long position = 0;
+        long size = journal.size();
+        while(position < size) {
+            JournalRecord record = readRecord(position);
+            if(record == null) {
+                if(!isLastRecord(position, size)) {
+                    throw new IOException("Corrupted record at position " + position + " of " + size + " in " +
+                            journalFile + ", refusing to open the mail queue to avoid losing the following mails");
+                }
+                discardTail(position, size);
+                break;
+            }
+            if(record.type == ENQUEUED) {
+                addToIndex(record.id, new JournalEntry(position, record.size));
+            } else {
+                removeFromIndex(record.id);
+            }
+            position += record.size;
+        }
+        journalSize = position;
+    }
+
+    /**
+     * Tells whether the (unreadable) record at the given position is the last one in the journal, i.e. it could
+     * have been torn by a crash while it was being appended.
+     */
+    protected boolean isLastRecord(long position, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(size - position < HEADER_SIZE || !readFully(header, position)) {
+            return true;
+        }
+        header.flip();
+        int length = header.getInt();
+        if(length <= 0) {
+            //The file may have been extended with zeros without the record being written
+            return isZeroFilled(position, size);
+        }
+        return position + HEADER_SIZE + length >= size;
+    }
+
+    protected boolean isZeroFilled(long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while(position < size) {
+            buffer.clear();
+            int read = journal.read(buffer, position);
+            if(read < 0) {
+                break;
+            }
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a torn record from the end of the journal, saving its bytes in a separate file for inspection.
+     */
+    protected void discardTail(long position, long size) throws IOException {
+        File discardedFile = new File(queuedDirectory, JOURNAL_FILE_NAME + DISCARDED_SUFFIX);
+        logger.warn("Discarding a torn record at position {} of {} in {}, saving it to {}",
+                position, size, journalFile, discardedFile);
+        try(FileChannel discarded = FileChannel.open(discardedFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long transferred = 0;
+            while(transferred < size - position) {
+                transferred += journal.transferTo(position + transferred, size - position - transferred, discarded);
+            }
+            discarded.force(true);
+        }
+        journal.truncate(position);
+        journal.force(true);
+    }
+
+    protected void checkDirectoryQuietly(File directory) {
+        try {
+            checkDirectory(directory);
+        } catch (QueueException e) {
+            logger.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Moves mails stored as individual files by {@link FileSystemMailQueue} to the journal. Attachments stay
+     * where they are. Files are deleted only after their mail has been written to the journal, so the migration
+     * can be safely interrupted and resumed.
+     */
+    protected void migrateQueuedFiles() throws IOException, QueueException {
+        List<String> ids = super.getEnqueuedEmailIds();
+        if(ids.isEmpty()) {
+            return;
+        }
+        logger.info("Migrating {} mails from {} to the journal", ids.size(), queuedDirectory);
+        lock.writeLock().lock();
+        try {
+            for(String id : ids) {
+                File emailFile = getEmailFile(id);
+                if(!index.containsKey(id)) {
+                    long offset = append(encodeRecord(ENQUEUED, id, Files.readAllBytes(emailFile.toPath())));
+                    addToIndex(id, new JournalEntry(offset, (int) (journalSize - offset)));
+                }
+                Files.delete(emailFile.toPath());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a mail from the queue, recording the transition in the journal.
+     * @return the mail data, or null if the mail was not enqueued.
+     */
+    /**
+     * Reads the contents of an enqueued mail from the journal.
+     * @return the contents, or null if the mail is not in the queue.
+     */
+    protected byte[] loadData(String id) throws QueueException {
+        lock.readLock().lock();
+        try {
+            JournalEntry entry = index.get(id);
+            return entry != null ? readRecord(entry.offset).data : null;
+        } catch (IOException e) {
+            throw new QueueException("Couldn't load email", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Journals the transition of a mail out of the queue.
+     * @return true if the mail was in the queue, false otherwise.
+     */
+    protected boolean remove(String id, byte type) throws QueueException {
+        lock.writeLock().lock();
+        try {
+            if(!index.containsKey(id)) {
+                return false;
+            }
+            append(encodeRecord(type, id, null));
+            removeFromIndex(id);
+            try {
+                compactIfNeeded();
+            } catch (IOException e) {
+                //The mail has been removed anyway, and the journal is still valid
+                logger.warn("Couldn't compact mail queue journal " + journalFile, e);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new QueueException("Couldn't update mail queue journal", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies a mail and its attachments to the given directory. It's done before the mail is removed from the
+     * journal, so that a failure or a crash never leaves the mail nowhere; if the mail is still in the queue
+     * afterwards, it's simply archived again, overwriting the copy.
+     */
+    protected void archive(String id, byte[] data, File directory) throws QueueException {
+        try {
+            checkDirectory(directory);
+            Files.write(RandomUtil.getCodeFile(directory, "email-{0}.xml", id).toPath(), data);
+            File attachmentsDir = getEmailAttachmentsDirectory(id);
+            if(attachmentsDir.exists()) {
+                FileUtils.copyDirectoryToDirectory(attachmentsDir, directory);
+            }
+        } catch (IOException e) {
+            throw new QueueException("Couldn't archive email with id " + id + " to " + directory, e);
+        }
+    }
+
+    protected void deleteAttachments(String id) {
+        File attachmentsDir = getEmailAttachmentsDirectory(id);
+        try {
+            if(attachmentsDir.exists()) {
+                FileUtils.deleteDirectory(attachmentsDir);
+            }
+        } catch (IOException e) {
+            //The mail is out of the queue anyway, only the cleanup failed
+            logger.warn("Couldn't delete the attachments of email with id " + id, e);
+        }
+    }
+
+    protected void addToIndex(String id, JournalEntry entry) {
+        JournalEntry previous = index.put(id, entry);
+        if(previous != null) {
+            liveSize -= previous.size;
+        }
+        liveSize += entry.size;
+    }
+
+    protected void removeFromIndex(String id) {
+        JournalEntry entry = index.remove(id);
+        if(entry != null) {
+            liveSize -= entry.size;
+        }
+    }
+
+    /**
+     * Appends a record to the journal. Must be called holding the write lock.
+     * @return the offset of the record.
+     */
+    protected long append(ByteBuffer record) throws IOException {
+        if(journal == null) {
+            throw new IOException("Journal closed");
+        }
+        long offset = journalSize;
+        long position = offset;
+        while(record.hasRemaining()) {
+            position += journal.write(record, position);
+        }
+        if(syncOnWrite) {
+            journal.force(false);
+        }
+        journalSize = position;
+        return offset;
+    }
+
+    /**
+     * Reads the record at the given position.
+     * @return the record, or null if it's incomplete or corrupted.
+     */
+    protected JournalRecord readRecord(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(!readFully(header, position)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if(length <= 0 || position + HEADER_SIZE + length > journal.size()) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if(!readFully(payload, position + HEADER_SIZE)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if((int) crc.getValue() != checksum) {
+            return null;
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        byte type = input.readByte();
+        String id = input.readUTF();
+        byte[] data = new byte[input.available()];
+        input.readFully(data);
+        return new JournalRecord(type, id, data, HEADER_SIZE + length);
+    }
+
+    protected boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = journal.read(buffer, position);
+            if(read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    protected static ByteBuffer encodeRecord(byte type, String id, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(type);
+        output.writeUTF(id);
+        if(data != null) {
+            output.write(data);
+        }
+        output.flush();
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Rewrites the journal keeping only the enqueued mails, if they take up less than half of it.
+     * Must be called holding the write lock. If compaction fails, the current journal is kept.
+     */
+    protected void compactIfNeeded() throws IOException {
+        if(journalSize < compactionMinSize || liveSize * 2 > journalSize) {
+            return;
+        }
+        logger.info("Compacting mail queue journal {} ({} bytes, {} live)", journalFile, journalSize, liveSize);
+        File compactedFile = new File(queuedDirectory, JOURNAL_FILE_NAME + ".tmp");
+        Map<String, JournalEntry> compactedIndex = new LinkedHashMap<>();
+        long position = 0;
+        try(FileChannel compacted = FileChannel.open(compactedFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for(Map.Entry<String, JournalEntry> entry : index.entrySet()) {
+                ByteBuffer record = ByteBuffer.allocate(entry.getValue().size);
+                if(!readFully(record, entry.getValue().offset)) {
+                    throw new IOException("Couldn't read journal record for mail " + entry.getKey());
+                }
+                record.flip();
+                compactedIndex.put(entry.getKey(), new JournalEntry(position, record.remaining()));
+                while(record.hasRemaining()) {
+                    position += compacted.write(record, position);
+                }
+            }
+            compacted.force(true);
+        }
+        //Some platforms don't allow replacing an open file
+        journal.close();
+        journal = null;
+        try {
+            replaceJournal(compactedFile);
+        } catch (IOException e) {
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Files.deleteIfExists(compactedFile.toPath());
+            throw e;
+        }
+        index.clear();
+        index.putAll(compactedIndex);
+        journalSize = position;
+        liveSize = position;
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Atomically replaces the journal file with the compacted one.
+     */
+    protected void replaceJournal(File compactedFile) throws IOException {
+        Files.move(compactedFile.toPath(), journalFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //**************************************************************************
+    // Serialization
+    //**************************************************************************
+
+    protected byte[] marshal(Email email) throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        if(marshaller == null) {
+            marshaller = jaxbContext.createMarshaller();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        marshaller.marshal(email, bytes);
+        marshallers.offer(marshaller);
+        return bytes.toByteArray();
+    }
+
+    protected Email unmarshal(byte[] data) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if(unmarshaller == null) {
+            unmarshaller = jaxbContext.createUnmarshaller();
+        }
+        Email email = (Email) unmarshaller.unmarshal(new ByteArrayInputStream(data));
+        unmarshallers.offer(unmarshaller);
+        return email;
+    }
+
+    //**************************************************************************
+    // Getters/setters
+    //**************************************************************************
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    public boolean isSyncOnWrite() {
+        return syncOnWrite;
+    }
+
+    /**
+     * Whether to sync the journal to disk after each write (the default). Disabling it trades crash safety for
+     * throughput.
+     */
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    public long getCompactionMinSize() {
+        return compactionMinSize;
+    }
+
+    /**
+     * The size in bytes below which the journal is never compacted; {@link #COMPACTION_MIN_SIZE} by default.
+     */
+    public void setCompactionMinSize(long compactionMinSize) {
+        this.compactionMinSize = compactionMinSize;
+    }
+
+    protected static class JournalEntry {
+        public final long offset;
+        public final int size;
+
+        public JournalEntry(long offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    protected static class JournalRecord {
+        public final byte type;
+        public final String id;
+        public final byte[] data;
+        public final int size;
+
+        public JournalRecord(byte type, String id, byte[] data, int size) {
+            this.type = type;
+            this.id = id;
+            this.data = data;
+            this.size = size;
+        }
+    }
+}
@@ -36,11 +36,28 @@ public class LockingMailQueue implements MailQueue {
     public static final String copyright =
             "Copyright (C) 2005-2020 ManyDesigns srl";
 
+    public static final int LOCK_STRIPES = 64;
+
     protected final MailQueue mailQueue;
+    /**
+     * Held exclusively while enqueueing, so that the list of enqueued ids never contains a partially written mail.
+     * Operations on individual mails only take it in shared mode, so that mails can be processed in parallel.
+     */
     protected final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    /**
+     * Per-mail locks, striped by id.
+     */
+    protected final ReadWriteLock[] idLocks = new ReadWriteLock[LOCK_STRIPES];
 
     public LockingMailQueue(MailQueue mailQueue) {
         this.mailQueue = mailQueue;
+        for(int i = 0; i < idLocks.length; i++) {
+            idLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    protected ReadWriteLock getIdLock(String id) {
+        return idLocks[Math.floorMod(id.hashCode(), idLocks.length)];
     }
 
     public String enqueue(Email email) throws QueueException {
@@ -63,28 +80,34 @@ public class LockingMailQueue implements MailQueue {
 
     public Email loadEmail(String id) throws QueueException {
         lock.readLock().lock();
+        getIdLock(id).readLock().lock();
         try {
             return mailQueue.loadEmail(id);
         } finally {
+            getIdLock(id).readLock().unlock();
             lock.readLock().unlock();
         }
     }
 
     public void markSent(String id) throws QueueException {
-        lock.writeLock().lock();
+        lock.readLock().lock();
+        getIdLock(id).writeLock().lock();
         try {
             mailQueue.markSent(id);
         } finally {
-            lock.writeLock().unlock();
+            getIdLock(id).writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
     public void markFailed(String id) throws QueueException {
-        lock.writeLock().lock();
+        lock.readLock().lock();
+        getIdLock(id).writeLock().lock();
         try {
             mailQueue.markFailed(id);
         } finally {
-            lock.writeLock().unlock();
+            getIdLock(id).writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.mail.sender;
+
+import com.manydesigns.mail.queue.MailQueue;
+import com.manydesigns.mail.queue.model.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A mail sender that sends queued mails in parallel using a pool of worker threads, reusing SMTP connections
+ * across messages. The number of connections and the send rate can be limited to play nice with the SMTP server.
+ * Connection settings (server, port, login, ...) are read the first time a mail is sent; subsequent changes are
+ * not taken into account.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class ConcurrentMailSender extends DefaultMailSender implements ConcurrentMailSenderStatistics {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    public static final int DEFAULT_MAX_MESSAGES_PER_CONNECTION = 100;
+
+    protected int threads = Runtime.getRuntime().availableProcessors();
+    protected int maxConnections;
+    protected int maxMessagesPerConnection = DEFAULT_MAX_MESSAGES_PER_CONNECTION;
+    protected double maxMessagesPerSecond;
+
+    protected ExecutorService executor;
+    protected SmtpConnectionPool connectionPool;
+
+    public ConcurrentMailSender(MailQueue queue) {
+        super(queue);
+    }
+
+    @Override
+    protected int processEmails(List<String> ids, Set<String> idsToMarkAsSent) {
+        Set<String> sharedIdsToMarkAsSent = Collections.synchronizedSet(idsToMarkAsSent);
+        ExecutorService executor = getExecutor();
+        List<Future<Integer>> futures = new ArrayList<>(ids.size());
+        for(String id : ids) {
+            futures.add(executor.submit(() -> processEmail(id, sharedIdsToMarkAsSent)));
+        }
+        int serverErrors = 0;
+        for(Future<Integer> future : futures) {
+            try {
+                serverErrors += future.get();
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while sending mails, cancelling pending sends");
+                futures.forEach(f -> f.cancel(false));
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("Unexpected error sending mail", e.getCause());
+            } catch (CancellationException e) {
+                logger.debug("Mail send cancelled", e);
+            }
+        }
+        return serverErrors;
+    }
+
+    @Override
+    protected void send(Email emailBean) throws EmailException {
+        logger.debug("Entering send(Email)");
+        SmtpConnectionPool connectionPool = getConnectionPool();
+        org.apache.commons.mail.Email email = buildEmail(emailBean);
+        email.setMailSession(connectionPool.getSession());
+        email.buildMimeMessage();
+        try {
+            connectionPool.send(email.getMimeMessage());
+        } catch (MessagingException e) {
+            throw new EmailException("Sending the email to the following server failed : " + server + ":" + port, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            //Wrapped in a MessagingException so that the mail is retried rather than marked as failed
+            throw new EmailException(new MessagingException("Interrupted while sending mail", e));
+        }
+        logger.debug("Exiting send(Email)");
+    }
+
+    protected synchronized SmtpConnectionPool getConnectionPool() throws EmailException {
+        if(connectionPool == null) {
+            int connections = maxConnections > 0 ? maxConnections : threads;
+            logger.info("Creating SMTP connection pool for {}:{} with {} connections", server, port, connections);
+            connectionPool = new SmtpConnectionPool(
+                    createSession(), connections, maxMessagesPerConnection, maxMessagesPerSecond);
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Creates the mail session shared by all the connections, configured for the SMTP server.
+     */
+    protected Session createSession() throws EmailException {
+        SimpleEmail prototype = new SimpleEmail();
+        configureServer(prototype);
+        return prototype.getMailSession();
+    }
+
+    protected synchronized ExecutorService getExecutor() {
+        if(executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+                Thread thread = new Thread(r, "mail-sender-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if(executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if(connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+
+    //**************************************************************************
+    // Statistics
+    //**************************************************************************
+
+    @Override
+    public synchronized int getActiveConnectionCount() {
+        return connectionPool != null ? connectionPool.getActiveConnectionCount() : 0;
+    }
+
+    @Override
+    public synchronized int getIdleConnectionCount() {
+        return connectionPool != null ? connectionPool.getIdleConnectionCount() : 0;
+    }
+
+    @Override
+    public synchronized int getWaitingSendCount() {
+        return connectionPool != null ? connectionPool.getWaitingSendCount() : 0;
+    }
+
+    @Override
+    public synchronized long getOpenedConnectionCount() {
+        return connectionPool != null ? connectionPool.getOpenedConnectionCount() : 0;
+    }
+
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of concurrent SMTP connections. Zero or less means one per thread.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    @Override
+    public int getMaxMessagesPerConnection() {
+        return maxMessagesPerConnection;
+    }
+
+    public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    @Override
+    public double getMaxMessagesPerSecond() {
+        return maxMessagesPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of messages sent per second. Zero or less means no limit.
+     */
+    public void setMaxMessagesPerSecond(double maxMessagesPerSecond) {
+        this.maxMessagesPerSecond = maxMessagesPerSecond;
+    }
+}
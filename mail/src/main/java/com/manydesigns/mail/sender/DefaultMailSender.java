@@ -39,6 +39,8 @@ import javax.mail.internet.ParseException;
 import java.io.File;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -46,7 +48,7 @@ import java.util.Set;
  * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
  * @author Alessio Stalla       - alessio.stalla@manydesigns.com
  */
-public class DefaultMailSender implements MailSender {
+public class DefaultMailSender implements MailSender, MailSenderStatistics {
     public static final String copyright =
             "Copyright (C) 2005-2020 ManyDesigns srl";
 
@@ -59,6 +61,11 @@ public class DefaultMailSender implements MailSender {
     protected String login;
     protected String password;
 
+    protected final LongAdder sentCount = new LongAdder();
+    protected final LongAdder failedCount = new LongAdder();
+    protected final LongAdder serverErrorCount = new LongAdder();
+    protected final LongAdder sendTime = new LongAdder();
+
     public static final Logger logger = LoggerFactory.getLogger(DefaultMailSender.class);
 
     public DefaultMailSender(MailQueue queue) {
@@ -73,62 +80,91 @@ public class DefaultMailSender implements MailSender {
             logger.error("Couldn't read email queue", e);
             return -1;
         }
+        if(ids.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long sentBefore = sentCount.sum();
+        int serverErrors = processEmails(ids, idsToMarkAsSent);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long sent = sentCount.sum() - sentBefore;
+        logger.info("Processed {} queued mails in {} ms: {} sent ({} mails/s), {} server errors",
+                ids.size(), elapsed, sent, elapsed > 0 ? sent * 1000 / elapsed : sent, serverErrors);
+        return serverErrors;
+    }
+
+    protected int processEmails(List<String> ids, Set<String> idsToMarkAsSent) {
         int serverErrors = 0;
         for(String id : ids) {
-            if(idsToMarkAsSent.contains(id)) {
-                logger.info("Mail with id {} already sent but mark failed, retrying", id);
-                try {
-                    queue.markSent(id);
-                    idsToMarkAsSent.remove(id);
-                } catch (Throwable e) {
-                    logger.error("Couldn't mark mail as sent", e);
-                }
-                continue;
-            }
-            Email email;
+            serverErrors += processEmail(id, idsToMarkAsSent);
+        }
+        return serverErrors;
+    }
+
+    /**
+     * Sends a single queued mail and marks it as sent or failed.
+     * @return the number of server errors, i.e. 1 if the mail could not be sent due to a (possibly transient)
+     * server error and will be retried, 0 otherwise.
+     */
+    protected int processEmail(String id, Set<String> idsToMarkAsSent) {
+        if(idsToMarkAsSent.contains(id)) {
+            logger.info("Mail with id {} already sent but mark failed, retrying", id);
             try {
-                email = queue.loadEmail(id);
-            } catch (MailParseException e) {
-                logger.error("Mail with id " + id + " is corrupted, marking as failed", e);
-                markFailed(id, e);
-                continue;
+                queue.markSent(id);
+                idsToMarkAsSent.remove(id);
             } catch (Throwable e) {
-                logger.error("Unexpected error loading mail with id " + id + ", skipping", e);
-                continue;
+                logger.error("Couldn't mark mail as sent", e);
             }
-            if(email != null) {
-                boolean sent = false;
-                try {
-                    logger.info("Sending email with id {}", id);
-                    send(email);
-                    sent = true;
-                } catch (EmailException e) {
-                    Throwable cause = e.getCause();
-                    if(cause instanceof ParseException ||
-                       cause instanceof IllegalWriteException ||
-                       cause instanceof MethodNotSupportedException) {
-                        markFailed(id, cause);
-                    } else if(cause instanceof MessagingException) {
-                        if(e.getCause() instanceof SendFailedException && e.getCause().getCause() instanceof SMTPAddressFailedException) {
-                            logger.warn("Mail not sent due to known server error, marking as failed");
-                            markFailed(id, e);
-                        } else {
-                            logger.warn("Mail not sent due to known server error, NOT marking as failed", e);
-                            serverErrors++;
-                        }
-                    } else {
+            return 0;
+        }
+        Email email;
+        try {
+            email = queue.loadEmail(id);
+        } catch (MailParseException e) {
+            logger.error("Mail with id " + id + " is corrupted, marking as failed", e);
+            markFailed(id, e);
+            return 0;
+        } catch (Throwable e) {
+            logger.error("Unexpected error loading mail with id " + id + ", skipping", e);
+            return 0;
+        }
+        int serverErrors = 0;
+        if(email != null) {
+            boolean sent = false;
+            long start = System.nanoTime();
+            try {
+                logger.info("Sending email with id {}", id);
+                send(email);
+                sent = true;
+                sentCount.increment();
+                sendTime.add(System.nanoTime() - start);
+            } catch (EmailException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof ParseException ||
+                   cause instanceof IllegalWriteException ||
+                   cause instanceof MethodNotSupportedException) {
+                    markFailed(id, cause);
+                } else if(cause instanceof MessagingException) {
+                    if(e.getCause() instanceof SendFailedException && e.getCause().getCause() instanceof SMTPAddressFailedException) {
+                        logger.warn("Mail not sent due to known server error, marking as failed");
                         markFailed(id, e);
+                    } else {
+                        logger.warn("Mail not sent due to known server error, NOT marking as failed", e);
+                        serverErrors++;
+                        serverErrorCount.increment();
                     }
-                } catch (Throwable e) {
+                } else {
                     markFailed(id, e);
                 }
-                if(sent) try {
-                    logger.info("Email with id {} sent, marking as sent ", id);
-                    queue.markSent(id);
-                } catch (Throwable e) {
-                    logger.error("Couldn't mark mail as sent", e);
-                    idsToMarkAsSent.add(id);
-                }
+            } catch (Throwable e) {
+                markFailed(id, e);
+            }
+            if(sent) try {
+                logger.info("Email with id {} sent, marking as sent ", id);
+                queue.markSent(id);
+            } catch (Throwable e) {
+                logger.error("Couldn't mark mail as sent", e);
+                idsToMarkAsSent.add(id);
             }
         }
         return serverErrors;
@@ -136,6 +172,7 @@ public class DefaultMailSender implements MailSender {
 
     protected void markFailed(String id, Throwable e) {
         logger.error("Unrecognized error while sending mail, marking as failed", e);
+        failedCount.increment();
         try {
             queue.markFailed(id);
         } catch (Throwable error) {
@@ -146,6 +183,16 @@ public class DefaultMailSender implements MailSender {
 
     protected void send(Email emailBean) throws EmailException {
         logger.debug("Entering send(Email)");
+        org.apache.commons.mail.Email email = buildEmail(emailBean);
+        configureServer(email);
+        email.send();
+        logger.debug("Exiting send(Email)");
+    }
+
+    /**
+     * Builds the commons-email message from the queued mail, without configuring the SMTP server.
+     */
+    protected org.apache.commons.mail.Email buildEmail(Email emailBean) throws EmailException {
         org.apache.commons.mail.Email email;
         String textBody = emailBean.getTextBody();
         String htmlBody = emailBean.getHtmlBody();
@@ -189,11 +236,6 @@ public class DefaultMailSender implements MailSender {
             email = htmlEmail;
         }
 
-        if (null != login && null != password) {
-            email.setAuthenticator(new DefaultAuthenticator(login, password));
-        }
-        email.setHostName(server);
-        email.setSmtpPort(port);
         email.setSubject(emailBean.getSubject());
         email.setFrom(emailBean.getFrom());
 
@@ -210,12 +252,47 @@ public class DefaultMailSender implements MailSender {
                     break;
             }
         }
+        email.setCharset("UTF-8");
+        return email;
+    }
+
+    protected void configureServer(org.apache.commons.mail.Email email) {
+        if (null != login && null != password) {
+            email.setAuthenticator(new DefaultAuthenticator(login, password));
+        }
+        email.setHostName(server);
+        email.setSmtpPort(port);
         email.setSSLOnConnect(ssl);
         email.setStartTLSEnabled(tls);
         email.setSslSmtpPort(port + "");
-        email.setCharset("UTF-8");
-        email.send();
-        logger.debug("Exiting send(Email)");
+    }
+
+    //**************************************************************************
+    // Statistics
+    //**************************************************************************
+
+    @Override
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public long getServerErrorCount() {
+        return serverErrorCount.sum();
+    }
+
+    /**
+     * @return the average time taken to send a mail, in milliseconds.
+     */
+    @Override
+    public double getAverageSendTime() {
+        long sent = sentCount.sum();
+        return sent > 0 ? sendTime.sum() / 1000000.0 / sent : 0;
     }
 
     public String getServer() {
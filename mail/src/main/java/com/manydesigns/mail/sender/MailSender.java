@@ -58,4 +58,9 @@ public interface MailSender {
 
     void setPassword(String password);
 
+    /**
+     * Releases any resources (threads, connections) held by the sender.
+     */
+    default void shutdown() {}
+
 }
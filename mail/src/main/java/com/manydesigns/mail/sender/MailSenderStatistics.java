@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.mail.sender;
+
+/**
+ * Statistics of a mail sender since it was created. The mail module registers them with JMX (see
+ * {@link com.manydesigns.mail.MailModule#STATISTICS_OBJECT_NAME}), so they're available to monitoring tools.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public interface MailSenderStatistics {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    long getSentCount();
+
+    /**
+     * @return the number of mails that were marked as failed, and won't be retried.
+     */
+    long getFailedCount();
+
+    /**
+     * @return the number of sends that failed due to a (possibly transient) server error, and will be retried.
+     */
+    long getServerErrorCount();
+
+    /**
+     * @return the average time taken to send a mail, in milliseconds.
+     */
+    double getAverageSendTime();
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.mail.sender;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of open connections to a single SMTP server. Limits the number of concurrent connections and, optionally,
+ * the rate at which messages are sent.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class SmtpConnectionPool {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    protected final Session session;
+    protected final int maxConnections;
+    protected final Semaphore permits;
+    protected final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    protected final int maxMessagesPerConnection;
+    protected final long minSendIntervalNanos;
+    protected long nextSendTime = System.nanoTime();
+    protected volatile boolean closed;
+    protected final LongAdder openedConnections = new LongAdder();
+
+    public static final Logger logger = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+    /**
+     * @param session the mail session, configured for the SMTP server.
+     * @param maxConnections the maximum number of connections open at the same time.
+     * @param maxMessagesPerConnection after sending this many messages, a connection is closed and a new one is
+     *                                 opened. Zero or less means no limit.
+     * @param maxMessagesPerSecond the maximum send rate. Zero or less means no limit.
+     */
+    public SmtpConnectionPool(
+            Session session, int maxConnections, int maxMessagesPerConnection, double maxMessagesPerSecond) {
+        this.session = session;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.permits = new Semaphore(this.maxConnections);
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.minSendIntervalNanos = maxMessagesPerSecond > 0 ? (long) (1000000000 / maxMessagesPerSecond) : 0;
+    }
+
+    /**
+     * Sends a message using a pooled connection, waiting for one to become available if necessary.
+     */
+    public void send(MimeMessage message) throws MessagingException, InterruptedException {
+        if(closed) {
+            throw new MessagingException("Connection pool closed");
+        }
+        throttle();
+        permits.acquire();
+        PooledConnection connection = null;
+        boolean reusable = false;
+        try {
+            connection = obtainConnection();
+            message.saveChanges();
+            connection.transport.sendMessage(message, message.getAllRecipients());
+            connection.messages++;
+            reusable = maxMessagesPerConnection <= 0 || connection.messages < maxMessagesPerConnection;
+        } finally {
+            if(connection != null) {
+                if(reusable && !closed) {
+                    idleConnections.push(connection);
+                } else {
+                    closeQuietly(connection);
+                }
+            }
+            permits.release();
+        }
+    }
+
+    protected PooledConnection obtainConnection() throws MessagingException {
+        PooledConnection connection;
+        while((connection = idleConnections.poll()) != null) {
+            if(connection.transport.isConnected()) {
+                return connection;
+            }
+            logger.debug("Discarding stale SMTP connection");
+            closeQuietly(connection);
+        }
+        logger.debug("Opening new SMTP connection");
+        Transport transport = session.getTransport();
+        transport.connect();
+        openedConnections.increment();
+        return new PooledConnection(transport);
+    }
+
+    protected void throttle() throws InterruptedException {
+        if(minSendIntervalNanos <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long sendTime = Math.max(now, nextSendTime);
+            nextSendTime = sendTime + minSendIntervalNanos;
+            wait = sendTime - now;
+        }
+        if(wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    protected void closeQuietly(PooledConnection connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Could not close SMTP connection", e);
+        }
+    }
+
+    /**
+     * Closes all the idle connections. Connections in use are closed when they are returned to the pool.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while((connection = idleConnections.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    //**************************************************************************
+    // Statistics
+    //**************************************************************************
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getIdleConnectionCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * @return the number of messages being sent, i.e. of connections in use.
+     */
+    public int getActiveConnectionCount() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * @return an estimate of the number of messages waiting for a connection.
+     */
+    public int getWaitingSendCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return the number of connections opened since the pool was created, including the ones opened to replace
+     * connections that were recycled or found to be stale.
+     */
+    public long getOpenedConnectionCount() {
+        return openedConnections.sum();
+    }
+
+    protected static class PooledConnection {
+        protected final Transport transport;
+        protected int messages;
+
+        protected PooledConnection(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
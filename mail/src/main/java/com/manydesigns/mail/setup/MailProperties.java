@@ -39,9 +39,17 @@ public class MailProperties {
     public static final String MAIL_SMTP_PASSWORD = "mail.smtp.password";
     public static final String MAIL_KEEP_SENT = "mail.keep.sent";
     public static final String MAIL_QUEUE_LOCATION = "mail.queue.location";
+    public static final String MAIL_QUEUE_TYPE = "mail.queue.type";
+    public static final String MAIL_QUEUE_TYPE_FILESYSTEM = "filesystem";
+    public static final String MAIL_QUEUE_TYPE_JOURNAL = "journal";
 
     public static final String MAIL_SENDER_POLL_INTERVAL = "mail.sender.poll.interval";
     public static final String MAIL_SENDER_SERVER_URL = "mail.sender.server_url";
     public static final String MAIL_QUARTZ_ENABLED = "mail.quartz.enabled";
 
+    public static final String MAIL_SENDER_THREADS = "mail.sender.threads";
+    public static final String MAIL_SMTP_MAX_CONNECTIONS = "mail.smtp.max.connections";
+    public static final String MAIL_SMTP_MAX_MESSAGES_PER_CONNECTION = "mail.smtp.max.messages.per.connection";
+    public static final String MAIL_SMTP_MAX_MESSAGES_PER_SECOND = "mail.smtp.max.messages.per.second";
+
 }
@@ -21,8 +21,11 @@
 package com.manydesigns.mail.setup;
 
 import com.manydesigns.mail.queue.FileSystemMailQueue;
+import com.manydesigns.mail.queue.JournalMailQueue;
 import com.manydesigns.mail.queue.LockingMailQueue;
 import com.manydesigns.mail.queue.MailQueue;
+import com.manydesigns.mail.queue.QueueException;
+import com.manydesigns.mail.sender.ConcurrentMailSender;
 import com.manydesigns.mail.sender.DefaultMailSender;
 import com.manydesigns.mail.sender.MailSender;
 import org.apache.commons.configuration2.Configuration;
@@ -59,8 +62,18 @@ public class MailQueueSetup {
             String mailQueueLocation = mailConfiguration.getString(MailProperties.MAIL_QUEUE_LOCATION);
             boolean keepSent = mailConfiguration.getBoolean(MailProperties.MAIL_KEEP_SENT, false);
             logger.info("Mail queue location: {}", mailQueueLocation);
-            //TODO rendere configurabile
-            mailQueue = new LockingMailQueue(new FileSystemMailQueue(new File(mailQueueLocation)));
+            String mailQueueType = mailConfiguration.getString(
+                    MailProperties.MAIL_QUEUE_TYPE, MailProperties.MAIL_QUEUE_TYPE_FILESYSTEM);
+            if(MailProperties.MAIL_QUEUE_TYPE_JOURNAL.equals(mailQueueType)) {
+                try {
+                    mailQueue = new JournalMailQueue(new File(mailQueueLocation));
+                } catch (QueueException e) {
+                    logger.error("Could not open mail queue journal, mail is disabled", e);
+                    return;
+                }
+            } else {
+                mailQueue = new LockingMailQueue(new FileSystemMailQueue(new File(mailQueueLocation)));
+            }
             mailQueue.setKeepSent(keepSent);
             String mailHost = mailConfiguration.getString(MailProperties.MAIL_SMTP_HOST);
             if (null == mailHost) {
@@ -78,7 +91,22 @@ public class MailQueueSetup {
                 String password = mailConfiguration.getString(
                         MailProperties.MAIL_SMTP_PASSWORD);
                 
-                mailSender = new DefaultMailSender(mailQueue);
+                if(mailConfiguration.containsKey(MailProperties.MAIL_SENDER_THREADS)) {
+                    ConcurrentMailSender concurrentMailSender = new ConcurrentMailSender(mailQueue);
+                    concurrentMailSender.setThreads(
+                            mailConfiguration.getInt(MailProperties.MAIL_SENDER_THREADS));
+                    concurrentMailSender.setMaxConnections(
+                            mailConfiguration.getInt(MailProperties.MAIL_SMTP_MAX_CONNECTIONS, 0));
+                    concurrentMailSender.setMaxMessagesPerConnection(mailConfiguration.getInt(
+                            MailProperties.MAIL_SMTP_MAX_MESSAGES_PER_CONNECTION,
+                            ConcurrentMailSender.DEFAULT_MAX_MESSAGES_PER_CONNECTION));
+                    concurrentMailSender.setMaxMessagesPerSecond(
+                            mailConfiguration.getDouble(MailProperties.MAIL_SMTP_MAX_MESSAGES_PER_SECOND, 0));
+                    logger.info("Using {} threads to send mail", concurrentMailSender.getThreads());
+                    mailSender = concurrentMailSender;
+                } else {
+                    mailSender = new DefaultMailSender(mailQueue);
+                }
                 mailSender.setServer(mailHost);
                 mailSender.setLogin(login);
                 mailSender.setPassword(password);
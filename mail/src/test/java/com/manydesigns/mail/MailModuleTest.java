@@ -0,0 +1,82 @@
+package com.manydesigns.mail;
+
+import com.manydesigns.mail.queue.FileSystemMailQueue;
+import com.manydesigns.mail.queue.LockingMailQueue;
+import com.manydesigns.mail.queue.MailQueue;
+import com.manydesigns.mail.queue.model.Email;
+import com.manydesigns.mail.queue.model.Recipient;
+import com.manydesigns.mail.sender.ConcurrentMailSender;
+import com.manydesigns.mail.sender.FakeTransport;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Session;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import static org.testng.Assert.*;
+
+public class MailModuleTest {
+
+    protected File directory;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        FakeTransport.reset();
+        directory = Files.createTempDirectory("portofino-mail-queue").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    protected void enqueue(MailQueue queue, String to) throws Exception {
+        Email email = new Email();
+        email.setFrom("from@example.com");
+        email.setSubject("Test");
+        email.setTextBody("Test");
+        email.getRecipients().add(new Recipient(Recipient.Type.TO, to));
+        queue.enqueue(email);
+    }
+
+    @Test
+    public void testStatisticsAreRegisteredWithJmx() throws Exception {
+        MailQueue queue = new LockingMailQueue(new FileSystemMailQueue(directory));
+        ConcurrentMailSender sender = new ConcurrentMailSender(queue) {
+            @Override
+            protected Session createSession() {
+                return FakeTransport.createSession();
+            }
+        };
+        sender.setMaxConnections(2);
+        enqueue(queue, "to@example.com");
+        enqueue(queue, FakeTransport.INVALID_ADDRESS);
+        sender.runOnce(new HashSet<>());
+
+        MailModule mailModule = new MailModule();
+        mailModule.registerStatistics(sender);
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(
+                MailModule.STATISTICS_OBJECT_NAME + ",context=" + ObjectName.quote(""));
+        try {
+            assertEquals(mBeanServer.getAttribute(objectName, "SentCount"), 1L);
+            assertEquals(mBeanServer.getAttribute(objectName, "FailedCount"), 1L);
+            assertEquals(mBeanServer.getAttribute(objectName, "MaxConnections"), 2);
+            assertEquals(mBeanServer.getAttribute(objectName, "ActiveConnectionCount"), 0);
+            assertEquals(mBeanServer.getAttribute(objectName, "OpenedConnectionCount"),
+                         sender.getOpenedConnectionCount());
+        } finally {
+            mailModule.unregisterStatistics();
+            sender.shutdown();
+        }
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,230 @@
+package com.manydesigns.mail.queue;
+
+import com.manydesigns.mail.queue.model.Email;
+import com.manydesigns.mail.queue.model.Recipient;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class JournalMailQueueTest {
+
+    protected File directory;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("portofino-mail-queue").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    protected JournalMailQueue openQueue() throws QueueException {
+        JournalMailQueue queue = new JournalMailQueue(directory);
+        queue.setSyncOnWrite(false);
+        return queue;
+    }
+
+    protected Email createEmail(String subject, String body) {
+        Email email = new Email();
+        email.setFrom("from@example.com");
+        email.setSubject(subject);
+        email.setTextBody(body);
+        email.getRecipients().add(new Recipient(Recipient.Type.TO, "to@example.com"));
+        return email;
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        JournalMailQueue queue = openQueue();
+        String id1 = queue.enqueue(createEmail("1", "one"));
+        String id2 = queue.enqueue(createEmail("2", "two"));
+        String id3 = queue.enqueue(createEmail("3", "three"));
+        queue.markSent(id2);
+        queue.close();
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id1, id3));
+        assertEquals(queue.loadEmail(id1).getSubject(), "1");
+        assertEquals(queue.loadEmail(id3).getTextBody(), "three");
+        assertNull(queue.loadEmail(id2));
+        queue.markFailed(id1);
+        queue.close();
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id3));
+        queue.close();
+    }
+
+    @Test
+    public void testTornTailIsDiscarded() throws Exception {
+        JournalMailQueue queue = openQueue();
+        String id1 = queue.enqueue(createEmail("1", "one"));
+        String id2 = queue.enqueue(createEmail("2", "two"));
+        queue.close();
+        File journalFile = queue.getJournalFile();
+        long size = journalFile.length();
+
+        //Simulate a crash while appending a record: a header promising more bytes than were written
+        try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(size);
+            file.writeInt(1000);
+            file.writeInt(0);
+            file.write(new byte[] { 1, 2, 3 });
+        }
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id1, id2));
+        assertEquals(journalFile.length(), size);
+        assertTrue(new File(journalFile.getParentFile(),
+                JournalMailQueue.JOURNAL_FILE_NAME + JournalMailQueue.DISCARDED_SUFFIX).exists());
+        String id3 = queue.enqueue(createEmail("3", "three"));
+        queue.close();
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id1, id2, id3));
+        queue.close();
+    }
+
+    @Test
+    public void testCorruptedLastRecordIsDiscarded() throws Exception {
+        JournalMailQueue queue = openQueue();
+        String id1 = queue.enqueue(createEmail("1", "one"));
+        queue.enqueue(createEmail("2", "two"));
+        queue.close();
+        File journalFile = queue.getJournalFile();
+
+        try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long last = file.length() - 1;
+            file.seek(last);
+            int b = file.read();
+            file.seek(last);
+            file.write(b ^ 0xFF);
+        }
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id1));
+        queue.close();
+    }
+
+    @Test
+    public void testCorruptedMiddleRecordFails() throws Exception {
+        JournalMailQueue queue = openQueue();
+        queue.enqueue(createEmail("1", "one"));
+        queue.enqueue(createEmail("2", "two"));
+        queue.close();
+        File journalFile = queue.getJournalFile();
+        long size = journalFile.length();
+
+        try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(JournalMailQueue.HEADER_SIZE + 5);
+            int b = file.read();
+            file.seek(JournalMailQueue.HEADER_SIZE + 5);
+            file.write(b ^ 0xFF);
+        }
+
+        try {
+            openQueue();
+            fail("The queue should refuse to open a journal corrupted in the middle");
+        } catch (QueueException e) {
+            //Expected
+        }
+        assertEquals(journalFile.length(), size);
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        JournalMailQueue queue = openQueue();
+        queue.setCompactionMinSize(1024);
+        String body = StringUtils.repeat("x", 1024);
+        String kept = queue.enqueue(createEmail("kept", body));
+        for(int i = 0; i < 10; i++) {
+            queue.markSent(queue.enqueue(createEmail("sent " + i, body)));
+        }
+        File journalFile = queue.getJournalFile();
+        assertTrue(journalFile.length() < 4 * 1024, "The journal should have been compacted");
+        assertEquals(queue.loadEmail(kept).getSubject(), "kept");
+        String added = queue.enqueue(createEmail("added", body));
+        queue.close();
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(kept, added));
+        assertEquals(queue.loadEmail(added).getSubject(), "added");
+        queue.close();
+    }
+
+    @Test
+    public void testFailedCompactionKeepsTheJournal() throws Exception {
+        JournalMailQueue queue = new JournalMailQueue(directory) {
+            @Override
+            protected void replaceJournal(File compactedFile) throws IOException {
+                throw new IOException("Simulated failure");
+            }
+        };
+        queue.setSyncOnWrite(false);
+        queue.setCompactionMinSize(1024);
+        String body = StringUtils.repeat("x", 1024);
+        String kept = queue.enqueue(createEmail("kept", body));
+        for(int i = 0; i < 5; i++) {
+            queue.markSent(queue.enqueue(createEmail("sent " + i, body)));
+        }
+        assertEquals(queue.loadEmail(kept).getSubject(), "kept");
+        String added = queue.enqueue(createEmail("added", body));
+        queue.close();
+
+        queue = openQueue();
+        List<String> ids = queue.getEnqueuedEmailIds();
+        assertEquals(ids, Arrays.asList(kept, added));
+        queue.close();
+    }
+
+    @Test
+    public void testFailedMailsAreArchived() throws Exception {
+        JournalMailQueue queue = openQueue();
+        String id = queue.enqueue(createEmail("1", "one"));
+        queue.markFailed(id);
+        assertTrue(queue.getEnqueuedEmailIds().isEmpty());
+        assertTrue(new File(queue.getFailedDirectory(), "email-" + id + ".xml").exists());
+        queue.close();
+    }
+
+    @Test
+    public void testFailedArchiveKeepsTheMail() throws Exception {
+        JournalMailQueue queue = new JournalMailQueue(directory) {
+            @Override
+            protected void archive(String id, byte[] data, File directory) throws QueueException {
+                throw new QueueException("Simulated failure");
+            }
+        };
+        queue.setSyncOnWrite(false);
+        String id = queue.enqueue(createEmail("1", "one"));
+        try {
+            queue.markFailed(id);
+            fail("The archive failure should be propagated");
+        } catch (QueueException e) {
+            //Expected
+        }
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id));
+        queue.close();
+
+        queue = openQueue();
+        assertEquals(queue.getEnqueuedEmailIds(), Arrays.asList(id));
+        assertEquals(queue.loadEmail(id).getSubject(), "1");
+        queue.markFailed(id);
+        assertTrue(queue.getEnqueuedEmailIds().isEmpty());
+        assertTrue(new File(queue.getFailedDirectory(), "email-" + id + ".xml").exists());
+        queue.close();
+    }
+}
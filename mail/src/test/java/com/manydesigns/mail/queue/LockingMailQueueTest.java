@@ -0,0 +1,101 @@
+package com.manydesigns.mail.queue;
+
+import com.manydesigns.mail.queue.model.Email;
+import com.manydesigns.mail.queue.model.Recipient;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.testng.Assert.*;
+
+public class LockingMailQueueTest {
+
+    protected File directory;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("portofino-mail-queue").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    protected Email createEmail(String subject) {
+        Email email = new Email();
+        email.setFrom("from@example.com");
+        email.setSubject(subject);
+        email.setTextBody(subject);
+        email.getRecipients().add(new Recipient(Recipient.Type.TO, "to@example.com"));
+        return email;
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        LockingMailQueue queue = new LockingMailQueue(new FileSystemMailQueue(directory));
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            ids.add(queue.enqueue(createEmail("Mail " + i)));
+        }
+        Set<String> processed = ConcurrentHashMap.newKeySet();
+        Set<String> enqueuedByReaders = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for(int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    for(int i = thread; i < ids.size(); i += 4) {
+                        String id = ids.get(i);
+                        assertEquals(queue.loadEmail(id).getSubject(), "Mail " + i);
+                        if(i % 2 == 0) {
+                            queue.markSent(id);
+                        } else {
+                            queue.markFailed(id);
+                        }
+                        processed.add(id);
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for(int t = 0; t < 2; t++) {
+                int thread = t;
+                readers.add(executor.submit(() -> {
+                    int round = 0;
+                    while(writers.stream().anyMatch(f -> !f.isDone())) {
+                        Set<String> processedBefore = new HashSet<>(processed);
+                        List<String> enqueued = queue.getEnqueuedEmailIds();
+                        for(String id : enqueued) {
+                            //Mails marked as sent or failed are never listed again
+                            assertFalse(processedBefore.contains(id), id);
+                            //Listed mails are complete: either loadable, or processed in the meantime
+                            Email email = queue.loadEmail(id);
+                            assertTrue(email != null || processed.contains(id), id);
+                        }
+                        enqueuedByReaders.add(queue.enqueue(createEmail("Reader " + thread + " " + round++)));
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> future : writers) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            for(Future<?> future : readers) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(processed.size(), ids.size());
+        assertEquals(new HashSet<>(queue.getEnqueuedEmailIds()), enqueuedByReaders);
+    }
+}
@@ -0,0 +1,81 @@
+package com.manydesigns.mail.sender;
+
+import com.manydesigns.mail.queue.FileSystemMailQueue;
+import com.manydesigns.mail.queue.LockingMailQueue;
+import com.manydesigns.mail.queue.MailQueue;
+import com.manydesigns.mail.queue.QueueException;
+import com.manydesigns.mail.queue.model.Email;
+import com.manydesigns.mail.queue.model.Recipient;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Session;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.testng.Assert.*;
+
+public class ConcurrentMailSenderTest {
+
+    protected File directory;
+    protected MailQueue queue;
+    protected ConcurrentMailSender sender;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        FakeTransport.reset();
+        directory = Files.createTempDirectory("portofino-mail-queue").toFile();
+        queue = new LockingMailQueue(new FileSystemMailQueue(directory));
+        sender = new ConcurrentMailSender(queue) {
+            @Override
+            protected Session createSession() {
+                return FakeTransport.createSession();
+            }
+        };
+        sender.setThreads(4);
+        sender.setMaxConnections(2);
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        sender.shutdown();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    protected String enqueue(String to, String subject) throws QueueException {
+        Email email = new Email();
+        email.setFrom("from@example.com");
+        email.setSubject(subject);
+        email.setTextBody("Test");
+        email.getRecipients().add(new Recipient(Recipient.Type.TO, to));
+        return queue.enqueue(email);
+    }
+
+    @Test
+    public void testSendInParallel() throws Exception {
+        Set<String> busy = new HashSet<>();
+        for(int i = 0; i < 30; i++) {
+            enqueue("to" + i + "@example.com", "Mail " + i);
+            if(i % 10 == 0) {
+                enqueue(FakeTransport.INVALID_ADDRESS, "Invalid " + i);
+                busy.add(enqueue(FakeTransport.BUSY_ADDRESS, "Busy " + i));
+            }
+        }
+        Set<String> idsToMarkAsSent = new HashSet<>();
+        assertEquals(sender.runOnce(idsToMarkAsSent), 3);
+        assertTrue(idsToMarkAsSent.isEmpty());
+        assertEquals(FakeTransport.sent.get(), 30);
+        assertTrue(FakeTransport.maxSending.get() <= 2);
+        assertEquals(sender.getSentCount(), 30);
+        assertEquals(sender.getFailedCount(), 3);
+        assertEquals(sender.getServerErrorCount(), 3);
+        //Mails that failed with a transient error are retried; the others are removed from the queue
+        assertEquals(new HashSet<>(queue.getEnqueuedEmailIds()), busy);
+        assertEquals(sender.getActiveConnectionCount(), 0);
+        assertTrue(sender.getOpenedConnectionCount() >= 2);
+    }
+}
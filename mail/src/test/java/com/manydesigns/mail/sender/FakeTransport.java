@@ -0,0 +1,105 @@
+package com.manydesigns.mail.sender;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+
+import javax.mail.*;
+import javax.mail.internet.InternetAddress;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Transport that doesn't connect to any server, to test the sending of mail. It records what happens in static
+ * fields, since instances are created by the mail session; call {@link #reset()} before each test.
+ * Mails to {@link #INVALID_ADDRESS} are rejected by the "server", mails to {@link #BUSY_ADDRESS} fail with a
+ * transient error.
+ */
+public class FakeTransport extends Transport {
+
+    public static final String INVALID_ADDRESS = "invalid@example.com";
+    public static final String BUSY_ADDRESS = "busy@example.com";
+
+    public static final List<FakeTransport> instances = new CopyOnWriteArrayList<>();
+    public static final AtomicInteger closed = new AtomicInteger();
+    public static final AtomicInteger sent = new AtomicInteger();
+    public static final AtomicInteger sending = new AtomicInteger();
+    public static final AtomicInteger maxSending = new AtomicInteger();
+    /**
+     * If not null, sends wait for it to be released.
+     */
+    public static volatile CountDownLatch gate;
+
+    public int messages;
+
+    public FakeTransport(Session session, URLName urlname) {
+        super(session, urlname);
+    }
+
+    public static void reset() {
+        instances.clear();
+        closed.set(0);
+        sent.set(0);
+        sending.set(0);
+        maxSending.set(0);
+        gate = null;
+    }
+
+    public static Session createSession() {
+        Session session = Session.getInstance(new Properties());
+        try {
+            session.setProvider(new Provider(
+                    Provider.Type.TRANSPORT, "smtp", FakeTransport.class.getName(), "Portofino", null));
+        } catch (NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        }
+        return session;
+    }
+
+    @Override
+    protected boolean protocolConnect(String host, int port, String user, String password) {
+        instances.add(this);
+        return true;
+    }
+
+    @Override
+    public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+        if(!isConnected()) {
+            throw new IllegalStateException("Not connected");
+        }
+        int current = sending.incrementAndGet();
+        maxSending.accumulateAndGet(current, Math::max);
+        try {
+            CountDownLatch gate = FakeTransport.gate;
+            if(gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+                throw new MessagingException("Timed out waiting for the gate");
+            }
+            for(Address address : addresses) {
+                String recipient = ((InternetAddress) address).getAddress();
+                if(INVALID_ADDRESS.equals(recipient)) {
+                    throw new SendFailedException("Invalid address", new SMTPAddressFailedException(
+                            (InternetAddress) address, "RCPT TO", 550, "No such user"));
+                } else if(BUSY_ADDRESS.equals(recipient)) {
+                    throw new MessagingException("Try again later");
+                }
+            }
+            messages++;
+            sent.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted", e);
+        } finally {
+            sending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws MessagingException {
+        if(isConnected()) {
+            closed.incrementAndGet();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,141 @@
+package com.manydesigns.mail.sender;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static org.testng.Assert.*;
+
+public class SmtpConnectionPoolTest {
+
+    protected Session session;
+
+    @BeforeMethod
+    public void setup() {
+        FakeTransport.reset();
+        session = FakeTransport.createSession();
+    }
+
+    protected MimeMessage createMessage() throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom("from@example.com");
+        message.setRecipients(Message.RecipientType.TO, "to@example.com");
+        message.setSubject("Test");
+        message.setText("Test");
+        return message;
+    }
+
+    protected static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSendsWaitForAFreeConnection() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(session, 2, 0, 0);
+        FakeTransport.gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < 5; i++) {
+                futures.add(executor.submit(() -> {
+                    pool.send(createMessage());
+                    return null;
+                }));
+            }
+            waitUntil(() -> FakeTransport.sending.get() == 2 && pool.getWaitingSendCount() == 3);
+            assertEquals(pool.getActiveConnectionCount(), 2);
+            assertEquals(FakeTransport.instances.size(), 2);
+
+            FakeTransport.gate.countDown();
+            for(Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(FakeTransport.sent.get(), 5);
+        assertEquals(FakeTransport.maxSending.get(), 2);
+        //The connections are reused rather than opened for each message
+        assertEquals(FakeTransport.instances.size(), 2);
+        assertEquals(pool.getOpenedConnectionCount(), 2);
+        assertEquals(pool.getActiveConnectionCount(), 0);
+        assertEquals(pool.getIdleConnectionCount(), 2);
+    }
+
+    @Test
+    public void testThrottle() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(session, 1, 0, 20);
+        long start = System.nanoTime();
+        for(int i = 0; i < 11; i++) {
+            pool.send(createMessage());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        //The first message is sent immediately, the other 10 at 50 ms intervals
+        assertTrue(elapsed >= 490, "Sent 11 messages at 20/s in " + elapsed + " ms");
+        assertEquals(FakeTransport.sent.get(), 11);
+    }
+
+    @Test
+    public void testConnectionsAreRecycled() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(session, 1, 3, 0);
+        for(int i = 0; i < 7; i++) {
+            pool.send(createMessage());
+        }
+        assertEquals(FakeTransport.instances.size(), 3);
+        assertEquals(FakeTransport.instances.get(0).messages, 3);
+        assertEquals(FakeTransport.instances.get(1).messages, 3);
+        assertEquals(FakeTransport.instances.get(2).messages, 1);
+        assertEquals(FakeTransport.closed.get(), 2);
+        assertEquals(pool.getIdleConnectionCount(), 1);
+
+        pool.close();
+        assertEquals(FakeTransport.closed.get(), 3);
+        assertEquals(pool.getIdleConnectionCount(), 0);
+        try {
+            pool.send(createMessage());
+            fail("The pool is closed");
+        } catch (MessagingException e) {
+            //Ok
+        }
+    }
+
+    @Test
+    public void testStaleConnectionsAreReplaced() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(session, 1, 0, 0);
+        pool.send(createMessage());
+        //The server closes the idle connection
+        FakeTransport.instances.get(0).close();
+        pool.send(createMessage());
+        assertEquals(FakeTransport.instances.size(), 2);
+        assertEquals(FakeTransport.sent.get(), 2);
+    }
+
+    @Test
+    public void testFailedConnectionsAreNotReused() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(session, 1, 0, 0);
+        MimeMessage message = createMessage();
+        message.setRecipients(Message.RecipientType.TO, FakeTransport.BUSY_ADDRESS);
+        try {
+            pool.send(message);
+            fail("The message should not have been sent");
+        } catch (MessagingException e) {
+            //Ok
+        }
+        assertEquals(pool.getIdleConnectionCount(), 0);
+        assertEquals(pool.getActiveConnectionCount(), 0);
+        pool.send(createMessage());
+        assertEquals(FakeTransport.instances.size(), 2);
+    }
+}
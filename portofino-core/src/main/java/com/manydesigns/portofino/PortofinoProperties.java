@@ -44,6 +44,8 @@ public final class PortofinoProperties {
 
     //App properties
     public static final String BLOBS_DIR_PATH = "blobs.dir.path";
+    //Store identical blob contents only once (see DeduplicatingBlobManager)
+    public static final String BLOBS_DEDUPLICATE = "blobs.deduplicate";
     public static final String APP_NAME = "app.name";
     public static final String APP_VERSION = "app.version";
     public static final String LOGIN_PATH = "login.path";
@@ -60,6 +62,11 @@ public final class PortofinoProperties {
     public static final String GROOVY_PRELOAD_PAGES = "groovy.preloadPages";
     public static final String GROOVY_PRELOAD_CLASSES = "groovy.preloadClasses";
 
+    //Code base
+    //Compile all the sources in the code base and all the actions at startup, before accepting requests
+    public static final String CODEBASE_PRECOMPILE = "codebase.precompile";
+    public static final String CODEBASE_PRECOMPILE_THREADS = "codebase.precompile.threads";
+
     private PortofinoProperties() {}
 
 }
@@ -40,7 +40,6 @@ import io.jsonwebtoken.io.Encoders;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.builder.FileBasedConfigurationBuilder;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
@@ -60,7 +59,9 @@ import org.springframework.context.annotation.Bean;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.servlet.ServletContext;
-import java.util.UUID;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static com.manydesigns.portofino.spring.PortofinoSpringConfiguration.APPLICATION_DIRECTORY;
 import static com.manydesigns.portofino.spring.PortofinoSpringConfiguration.PORTOFINO_CONFIGURATION;
@@ -133,20 +134,33 @@ public class ResourceActionsModule implements Module, ApplicationContextAware {
         logger.info("Actions directory: " + actionsDirectory);
         //TODO ElementsFileUtils.ensureDirectoryExistsAndWarnIfNotWritable(actionsDirectory);
 
-        if(configuration.getBoolean(PortofinoProperties.GROOVY_PRELOAD_PAGES, false)) {
-            logger.info("Preloading actions");
+        boolean precompile = configuration.getBoolean(PortofinoProperties.CODEBASE_PRECOMPILE, false);
+        boolean preloadActions = precompile || configuration.getBoolean(PortofinoProperties.GROOVY_PRELOAD_PAGES, false);
+        boolean preloadClasses = precompile || configuration.getBoolean(PortofinoProperties.GROOVY_PRELOAD_CLASSES, false);
+        if(preloadActions || preloadClasses) {
+            int threads = configuration.getInt(
+                    PortofinoProperties.CODEBASE_PRECOMPILE_THREADS, Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
             try {
-                ResourceResolver resourceResolver =
-                        PortofinoApplicationRoot.getRootFactory().createRoot().getResourceResolver();
-                preloadResourceActions(actionsDirectory, resourceResolver);
-            } catch (Exception e) {
-                logger.warn("Could not preload actions", e);
+                //Classes first, as actions are likely to depend on them
+                if(preloadClasses) {
+                    logger.info("Preloading classes");
+                    preloadClasses(executor);
+                }
+                if(preloadActions) {
+                    logger.info("Preloading actions");
+                    try {
+                        ResourceResolver resourceResolver =
+                                PortofinoApplicationRoot.getRootFactory().createRoot().getResourceResolver();
+                        preloadResourceActions(actionsDirectory, resourceResolver, executor);
+                    } catch (Exception e) {
+                        logger.warn("Could not preload actions", e);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
             }
         }
-        if(configuration.getBoolean(PortofinoProperties.GROOVY_PRELOAD_CLASSES, false)) {
-            logger.info("Preloading Groovy classes");
-            preloadClasses(codeBase.getRoot());
-        }
 
         cacheResetListenerRegistry.getCacheResetListeners().add(new ConfigurationCacheResetListener());
 
@@ -205,47 +219,70 @@ public class ResourceActionsModule implements Module, ApplicationContextAware {
         return applicationDirectory.resolveFile(actionsDirectory);
     }
 
-    protected void preloadResourceActions(FileObject directory, ResourceResolver resourceResolver) throws FileSystemException {
+    protected void preloadResourceActions(
+            FileObject directory, ResourceResolver resourceResolver, ExecutorService executor)
+            throws FileSystemException {
+        Map<String, Future<Long>> futures = new LinkedHashMap<>();
+        submitResourceActionPreloads(directory, resourceResolver, executor, futures);
+        Map<String, Long> times = new LinkedHashMap<>();
+        for(Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+            try {
+                times.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while preloading actions");
+                return;
+            } catch (ExecutionException e) {
+                logger.warn("ResourceAction preload failed for actionDescriptor " + entry.getKey(), e.getCause());
+            }
+        }
+        logPreloadTimes("actions", times);
+    }
+
+    protected void submitResourceActionPreloads(
+            FileObject directory, ResourceResolver resourceResolver, ExecutorService executor,
+            Map<String, Future<Long>> futures) throws FileSystemException {
         for(FileObject child : directory.getChildren()) {
             logger.debug("visit {}", child);
             if(child.getType() == FileType.FOLDER) {
                 if(!child.equals(directory) && !child.equals(directory.getParent())) {
-                    try {
+                    futures.put(child.getName().getPath(), executor.submit(() -> {
+                        long start = System.nanoTime();
                         resourceResolver.resolve(child, Class.class).getConstructor().newInstance();
-                    } catch(Throwable t) {
-                        logger.warn("ResourceAction preload failed for actionDescriptor " + child.getName().getPath(), t);
-                    }
-                    preloadResourceActions(child, resourceResolver);
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }));
+                    submitResourceActionPreloads(child, resourceResolver, executor, futures);
                 }
             }
         }
     }
 
-    protected void preloadClasses(FileObject directory) {
-        try {
-            for(FileObject file : directory.getChildren()) {
-                logger.debug("visit {}", file);
-                if(file.getType() == FileType.FOLDER) {
-                    if(!file.equals(directory) && !file.equals(directory.getParent())) {
-                        preloadClasses(file);
-                    }
-                } else {
-                    String extension = file.getName().getExtension();
-                    String className = codeBase.getRoot().getName().getRelativeName(file.getName());
-                    if(!StringUtils.isEmpty(extension)) {
-                        className = className.substring(0, className.length() - extension.length() - 1);
-                    }
-                    logger.debug("Preloading " + className);
-                    try {
-                        codeBase.loadClass(className);
-                    } catch(Throwable t) {
-                        logger.warn("Class preload failed for " + className, t);
-                    }
-                }
+    /**
+     * Compiles and loads the classes in the code base and in its ancestors, starting from the root-most one.
+     */
+    protected void preloadClasses(ExecutorService executor) {
+        Deque<CodeBase> codeBases = new ArrayDeque<>();
+        for(CodeBase cb = codeBase; cb != null; cb = cb.getParent()) {
+            codeBases.push(cb);
+        }
+        Map<String, Long> times = new LinkedHashMap<>();
+        for(CodeBase cb : codeBases) {
+            try {
+                times.putAll(cb.preloadClasses(executor));
+            } catch (IOException e) {
+                logger.warn("Could not preload classes in " + cb, e);
             }
-        } catch (FileSystemException e) {
-            logger.warn("Could not preload classes under " + directory, e);
         }
+        logPreloadTimes("classes", times);
+    }
+
+    protected void logPreloadTimes(String what, Map<String, Long> times) {
+        long total = 0;
+        for(Map.Entry<String, Long> entry : times.entrySet()) {
+            logger.info("Preloaded {} in {} ms", entry.getKey(), entry.getValue());
+            total += entry.getValue();
+        }
+        logger.info("Preloaded {} {} ({} ms cumulative)", times.size(), what, total);
     }
 
     @PreDestroy
@@ -30,7 +30,6 @@
 package com.manydesigns.portofino.i18n;
 
 import com.manydesigns.elements.ElementsThreadLocals;
-import com.manydesigns.elements.i18n.SimpleTextProvider;
 import com.manydesigns.elements.i18n.TextProvider;
 import org.apache.commons.vfs2.FileObject;
 import org.slf4j.Logger;
@@ -42,7 +41,6 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.Locale;
-import java.util.ResourceBundle;
 
 /**
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -78,15 +76,7 @@ public class I18nUtils {
         Locale locale = request.getLocale();
         ResourceBundleManager resourceBundleManager =
                 (ResourceBundleManager) servletContext.getAttribute(RESOURCE_BUNDLE_MANAGER);
-        ResourceBundle portofinoResourceBundle = resourceBundleManager.getBundle(locale);
-
-        //Setup Elements I18n
-        ResourceBundle elementsResourceBundle =
-                ResourceBundle.getBundle(SimpleTextProvider.DEFAULT_MESSAGE_RESOURCE, locale);
-
-        TextProvider textProvider =
-                new MultipleTextProvider(
-                        portofinoResourceBundle, elementsResourceBundle);
+        TextProvider textProvider = resourceBundleManager.getTextProvider(locale);
         ElementsThreadLocals.setTextProvider(textProvider);
     }
 
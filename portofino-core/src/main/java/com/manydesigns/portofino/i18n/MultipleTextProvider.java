@@ -23,12 +23,18 @@ package com.manydesigns.portofino.i18n;
 import com.manydesigns.elements.i18n.TextProvider;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.ResourceBundle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * A text provider that looks up messages in several resource bundles, in order. The bundles are merged into a single
+ * index the first time a message is requested, and each message is compiled into a {@link MessageFormat} only once,
+ * so the same provider should be reused for the same bundles (see {@link ResourceBundleManager#getTextProvider}).
+ * Compiled formats are cloned before use, as MessageFormat is not thread safe. Keys that are not found in any bundle
+ * are not remembered, since they can be arbitrary strings; looking them up again only costs a hash lookup. Changes to
+ * the bundles after the index has been built are not seen.
+ *
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
  * @author Angelo Lupo          - angelo.lupo@manydesigns.com
  * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
@@ -41,22 +47,24 @@ public class MultipleTextProvider implements TextProvider {
     //--------------------------------------------------------------------------
 
     protected final List<ResourceBundle> resourceBundles;
+    protected volatile Map<String, String> messages;
+    protected final ConcurrentMap<String, MessageFormat> messageFormats = new ConcurrentHashMap<>();
 
     public MultipleTextProvider(ResourceBundle... resourceBundles) {
-        this.resourceBundles = new ArrayList<>(Arrays.asList(resourceBundles));
+        this.resourceBundles = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(resourceBundles)));
     }
     //--------------------------------------------------------------------------
     // TextProvider implementation
     //--------------------------------------------------------------------------
 
     public String getText(String key, Object... args) {
-        String localizedString = getLocalizedString(key);
-        return MessageFormat.format(localizedString != null ? localizedString : key, args);
+        MessageFormat messageFormat = getMessageFormat(key);
+        return messageFormat != null ? messageFormat.format(args) : MessageFormat.format(key, args);
     }
 
     public String getTextOrNull(String key, Object... args) {
-        String localizedString = getLocalizedString(key);
-        return localizedString != null ? MessageFormat.format(localizedString, args) : null;
+        MessageFormat messageFormat = getMessageFormat(key);
+        return messageFormat != null ? messageFormat.format(args) : null;
     }
 
     public List<ResourceBundle> getResourceBundles() {
@@ -68,13 +76,43 @@ public class MultipleTextProvider implements TextProvider {
     //--------------------------------------------------------------------------
 
     public String getLocalizedString(String key) {
-        for (ResourceBundle current : resourceBundles) {
-            try {
-                return current.getString(key);
-            } catch (Throwable t) {
-                /* IGNORE */
+        return getMessages().get(key);
+    }
+
+    /**
+     * Returns the message with the given key compiled into a {@link MessageFormat}, or null if no bundle contains it.
+     * The result is a copy of the cached format, that the caller can use (and modify) freely.
+     */
+    public MessageFormat getMessageFormat(String key) {
+        MessageFormat messageFormat = messageFormats.get(key);
+        if(messageFormat == null) {
+            String localizedString = getLocalizedString(key);
+            if(localizedString == null) {
+                return null;
+            }
+            messageFormat = messageFormats.computeIfAbsent(key, k -> new MessageFormat(localizedString));
+        }
+        return (MessageFormat) messageFormat.clone();
+    }
+
+    protected Map<String, String> getMessages() {
+        Map<String, String> messages = this.messages;
+        if(messages == null) {
+            messages = new HashMap<>();
+            //Bundles that come first take precedence
+            for(int i = resourceBundles.size() - 1; i >= 0; i--) {
+                ResourceBundle resourceBundle = resourceBundles.get(i);
+                Enumeration<String> keys = resourceBundle.getKeys();
+                while (keys.hasMoreElements()) {
+                    String key = keys.nextElement();
+                    Object value = resourceBundle.getObject(key);
+                    if(value instanceof String) {
+                        messages.put(key, (String) value);
+                    }
+                }
             }
+            this.messages = messages;
         }
-        return null;
+        return messages;
     }
 }
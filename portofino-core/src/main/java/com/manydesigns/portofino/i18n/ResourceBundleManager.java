@@ -20,12 +20,14 @@
 
 package com.manydesigns.portofino.i18n;
 
+import com.manydesigns.elements.i18n.SimpleTextProvider;
 import org.apache.commons.configuration2.CompositeConfiguration;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.apache.commons.configuration2.builder.ReloadingFileBasedConfigurationBuilder;
 import org.apache.commons.configuration2.builder.fluent.Parameters;
 import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.configuration2.reloading.ReloadingController;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -36,9 +38,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
+import java.util.ResourceBundle;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -51,8 +56,12 @@ public class ResourceBundleManager {
             "Copyright (C) 2005-2020 ManyDesigns srl";
 
     protected LinkedList<String> searchPaths = new LinkedList<>();
-    protected final ConcurrentMap<Locale, ConfigurationResourceBundle> resourceBundles =
-            new ConcurrentHashMap<Locale, ConfigurationResourceBundle>();
+    /**
+     * The cached bundles and text providers, together with the reloading controllers of their properties files. The
+     * cache is cleared by replacing it as a whole, so that a bundle that is being loaded concurrently is either cached
+     * along with its controllers, or not cached at all.
+     */
+    protected volatile Cache cache = new Cache();
 
     public static final Logger logger = LoggerFactory.getLogger(ResourceBundleManager.class);
 
@@ -81,7 +90,11 @@ public class ResourceBundleManager {
     }
 
     public ConfigurationResourceBundle getBundle(Locale locale) {
-        ConfigurationResourceBundle bundle = resourceBundles.get(locale);
+        return getBundle(cache, locale);
+    }
+
+    protected ConfigurationResourceBundle getBundle(Cache cache, Locale locale) {
+        ConfigurationResourceBundle bundle = cache.resourceBundles.get(locale);
         if(bundle == null) {
             CompositeConfiguration configuration = new CompositeConfiguration();
             Iterator<String> iterator = searchPaths.descendingIterator();
@@ -99,9 +112,9 @@ public class ResourceBundleManager {
                 } catch (IOException e) {
                     if(!StringUtils.isEmpty(locale.getCountry())) {
                         logger.debug("Couldn't load resource bundle for locale " + locale + " from " + basePath + ", trying with language-only locale", e);
-                        bundle = getBundle(new Locale(locale.getLanguage()));
+                        bundle = getBundle(cache, new Locale(locale.getLanguage()));
                         //TODO setParent?
-                        resourceBundles.put(locale, bundle);
+                        cache.resourceBundles.put(locale, bundle);
                         return bundle;
                     } else {
                         logger.debug("Couldn't load resource bundle for locale " + locale + " from " + basePath + ", trying with default", e);
@@ -110,21 +123,56 @@ public class ResourceBundleManager {
                     }
                 }
                 try {
-                    Configuration conf = new ReloadingFileBasedConfigurationBuilder<>(PropertiesConfiguration.class)
-                            .configure(new Parameters().fileBased().setURL(bundleUrl))
-                            .getConfiguration();
+                    ReloadingFileBasedConfigurationBuilder<PropertiesConfiguration> builder =
+                            new ReloadingFileBasedConfigurationBuilder<>(PropertiesConfiguration.class)
+                                    .configure(new Parameters().fileBased().setURL(bundleUrl));
+                    Configuration conf = builder.getConfiguration();
                     configuration.addConfiguration(conf);
+                    cache.reloadingControllers.add(builder.getReloadingController());
                 } catch (ConfigurationException e) {
                     logger.debug("Couldn't load resource bundle from " + bundleUrl, e);
                 }
             }
             bundle = new ConfigurationResourceBundle(configuration, locale);
             //TODO setParent?
-            resourceBundles.put(locale, bundle);
+            cache.resourceBundles.put(locale, bundle);
         }
         return bundle;
     }
 
+    /**
+     * Returns a text provider for the given locale, looking up messages in the bundle returned by
+     * {@link #getBundle(Locale)} and then in the Elements messages. Providers are cached and shared; if any of the
+     * underlying properties files has changed, the cached bundles and providers are discarded and built anew.
+     */
+    public MultipleTextProvider getTextProvider(Locale locale) {
+        checkForReloading();
+        Cache cache = this.cache;
+        return cache.textProviders.computeIfAbsent(locale, l -> {
+            ResourceBundle elementsResourceBundle =
+                    ResourceBundle.getBundle(SimpleTextProvider.DEFAULT_MESSAGE_RESOURCE, l);
+            return new MultipleTextProvider(getBundle(cache, l), elementsResourceBundle);
+        });
+    }
+
+    /**
+     * Checks whether any of the properties files backing the cached bundles has changed, and in that case clears the
+     * cache. Each file is actually checked at most once every refresh delay of its reloading detector.
+     */
+    public void checkForReloading() {
+        for(ReloadingController reloadingController : cache.reloadingControllers) {
+            if(reloadingController.checkForReloading(null)) {
+                logger.info("Resource bundle changed, clearing cache");
+                clearCache();
+                return;
+            }
+        }
+    }
+
+    public void clearCache() {
+        cache = new Cache();
+    }
+
     @NotNull
     protected URL getBundleUrl(String bundleLocation) {
         URL url;
@@ -149,7 +197,13 @@ public class ResourceBundleManager {
         LinkedList<String> newSearchPaths = new LinkedList<String>(searchPaths);
         newSearchPaths.add(searchPath);
         searchPaths = newSearchPaths;
-        resourceBundles.clear(); //Clear cache
+        clearCache();
+    }
+
+    protected static class Cache {
+        protected final ConcurrentMap<Locale, ConfigurationResourceBundle> resourceBundles = new ConcurrentHashMap<>();
+        protected final ConcurrentMap<Locale, MultipleTextProvider> textProviders = new ConcurrentHashMap<>();
+        protected final List<ReloadingController> reloadingControllers = new CopyOnWriteArrayList<>();
     }
 
     @Override
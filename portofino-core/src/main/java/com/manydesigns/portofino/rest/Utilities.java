@@ -29,8 +29,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 
 /**
@@ -38,6 +43,8 @@ import java.util.Date;
  */
 public class Utilities {
 
+    public static final String BYTES_UNIT = "bytes";
+
     public static Response downloadBlob(Blob blob, BlobManager blobManager, HttpServletRequest request, Logger logger) {
         if(blob == null) {
             return Response.status(Response.Status.NOT_FOUND).build();
@@ -50,40 +57,234 @@ public class Utilities {
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
         }
-        long contentLength = blob.getSize();
         String contentType = blob.getContentType();
         String fileName = blob.getFilename();
         long lastModified = blob.getCreateTimestamp().getMillis();
-        if(request.getHeader("If-Modified-Since") != null) {
-            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
-            if(ifModifiedSince >= lastModified) {
-                return Response.status(Response.Status.NOT_MODIFIED).build();
+        String eTag = getETag(blob);
+        if(isNotModified(request, eTag, lastModified)) {
+            Response.ResponseBuilder responseBuilder = Response.status(Response.Status.NOT_MODIFIED);
+            if(eTag != null) {
+                responseBuilder.header(HttpHeaders.ETAG, eTag);
             }
+            return responseBuilder.build();
         }
-        final InputStream inputStream;
-        if(blob.getInputStream() == null) {
-            try {
-                inputStream = blobManager.openStream(blob);
-            } catch (IOException e) {
-                logger.error("Could not load blob", e);
-                return Response.status(Response.Status.NOT_FOUND).build();
+        FileChannel channel = null;
+        InputStream inputStream = blob.getInputStream();
+        long contentLength = blob.getSize();
+        try {
+            if(inputStream == null) {
+                channel = blobManager.openChannel(blob);
+                if(channel != null) {
+                    contentLength = channel.size();
+                } else {
+                    inputStream = blobManager.openStream(blob);
+                }
             }
-        } else {
-            inputStream = blob.getInputStream();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(channel);
+            logger.error("Could not load blob", e);
+            return Response.status(Response.Status.NOT_FOUND).build();
         }
-        StreamingOutput streamingOutput = output -> {
-            try(InputStream i = inputStream) {
-                IOUtils.copyLarge(i, output);
+
+        ByteRange range = null;
+        String rangeHeader = request.getHeader("Range");
+        if(rangeHeader != null && contentLength > 0 && isRangeApplicable(request, eTag, lastModified)) {
+            range = parseRange(rangeHeader, contentLength);
+            if(range != null && !range.isSatisfiable()) {
+                IOUtils.closeQuietly(channel);
+                IOUtils.closeQuietly(inputStream);
+                return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE).
+                        header("Content-Range", BYTES_UNIT + " */" + contentLength).
+                        build();
             }
-        };
-        Response.ResponseBuilder responseBuilder = Response.ok(streamingOutput).
+        }
+        long start = range != null ? range.start : 0;
+        long length = range != null ? range.getLength() : contentLength;
+
+        StreamingOutput streamingOutput;
+        if(channel != null) {
+            FileChannel fileChannel = channel;
+            streamingOutput = output -> {
+                try(FileChannel c = fileChannel) {
+                    transfer(c, start, length, output);
+                }
+            };
+        } else {
+            InputStream stream = inputStream;
+            boolean partial = range != null;
+            streamingOutput = output -> {
+                try(InputStream i = stream) {
+                    if(partial) {
+                        IOUtils.copyLarge(i, output, start, length);
+                    } else {
+                        IOUtils.copyLarge(i, output);
+                    }
+                }
+            };
+        }
+        Response.ResponseBuilder responseBuilder =
+                (range != null ? Response.status(Response.Status.PARTIAL_CONTENT) : Response.ok()).
+                entity(streamingOutput).
                 type(contentType).
                 lastModified(new Date(lastModified)).
                 header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+        if(eTag != null) {
+            responseBuilder.header(HttpHeaders.ETAG, eTag);
+        }
         if(contentLength > 0) {
-            responseBuilder.header(HttpHeaders.CONTENT_LENGTH, contentLength);
+            responseBuilder.header("Accept-Ranges", BYTES_UNIT);
+            responseBuilder.header(HttpHeaders.CONTENT_LENGTH, length);
+        }
+        if(range != null) {
+            responseBuilder.header("Content-Range", BYTES_UNIT + " " + range.start + "-" + range.end + "/" + contentLength);
         }
         return responseBuilder.build();
     }
 
+    /**
+     * Copies a portion of a file to an output stream. The copy is delegated to {@link FileChannel#transferTo}, which
+     * avoids intermediate buffers and, where the platform and the servlet container allow it, avoids copying in user
+     * space altogether.
+     */
+    public static void transfer(FileChannel channel, long start, long length, OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long position = start;
+        long remaining = length;
+        while(remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if(transferred <= 0) {
+                throw new EOFException("File truncated at position " + position + " while transferring blob");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * Computes a strong entity tag for a blob. Blobs are immutable and a new code is generated each time a blob is
+     * uploaded, so the code is enough to identify the contents.
+     * @return the entity tag, including quotes, or null if the blob has no code (e.g. it's stored in the database).
+     */
+    public static String getETag(Blob blob) {
+        return blob.getCode() != null ? "\"" + blob.getCode() + "\"" : null;
+    }
+
+    /**
+     * Evaluates the If-None-Match and If-Modified-Since headers. If-Modified-Since is ignored when If-None-Match is
+     * present, as per RFC 7232.
+     */
+    public static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if(ifNoneMatch != null) {
+            if(eTag == null) {
+                return false;
+            }
+            for(String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if(tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if(tag.equals("*") || tag.equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if(request.getHeader("If-Modified-Since") != null) {
+            try {
+                long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+                return ifModifiedSince >= lastModified;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the If-Range header: a range request is honored only if the representation hasn't changed. An entity
+     * tag must match strongly, a date must be exactly the last modification date (at the resolution of HTTP dates).
+     */
+    public static boolean isRangeApplicable(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if(ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        try {
+            long date = request.getDateHeader("If-Range");
+            return date / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the value of a Range header. Only single byte ranges are supported; requests for multiple ranges are
+     * served as a whole, as allowed by RFC 7233.
+     * @param rangeHeader the value of the header.
+     * @param contentLength the length of the contents, must be positive.
+     * @return the requested range, possibly not satisfiable, or null if the header should be ignored.
+     */
+    public static ByteRange parseRange(String rangeHeader, long contentLength) {
+        String prefix = BYTES_UNIT + "=";
+        rangeHeader = rangeHeader.trim();
+        if(!rangeHeader.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return null;
+        }
+        String spec = rangeHeader.substring(prefix.length()).trim();
+        int dash = spec.indexOf('-');
+        if(spec.indexOf(',') >= 0 || dash < 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            if(first.isEmpty()) {
+                long suffixLength = Long.parseLong(last);
+                if(suffixLength <= 0) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, contentLength - suffixLength), contentLength - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if(start < 0 || end < start) {
+                return null;
+            }
+            if(start >= contentLength) {
+                return ByteRange.UNSATISFIABLE;
+            }
+            return new ByteRange(start, Math.min(end, contentLength - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A range of bytes, with inclusive bounds as in HTTP.
+     */
+    public static class ByteRange {
+        public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        public final long start;
+        public final long end;
+
+        public ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public boolean isSatisfiable() {
+            return start >= 0;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
+    }
+
 }
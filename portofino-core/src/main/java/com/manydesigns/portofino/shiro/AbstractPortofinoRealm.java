@@ -20,10 +20,14 @@
 
 package com.manydesigns.portofino.shiro;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.manydesigns.elements.reflection.ClassAccessor;
 import com.manydesigns.elements.reflection.JavaClassAccessor;
+import com.manydesigns.elements.reflection.PropertyAccessor;
 import com.manydesigns.portofino.code.CodeBase;
 import com.manydesigns.portofino.security.SecurityLogic;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwt;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
@@ -55,6 +59,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.security.Key;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -70,6 +75,8 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
 
     public static final String JWT_EXPIRATION_PROPERTY = "jwt.expiration";
     public static final String JWT_SECRET_PROPERTY = "jwt.secret";
+    public static final String JWT_CACHE_SIZE_PROPERTY = "jwt.cache.size";
+    public static final String JWT_COMPACT_PRINCIPAL_PROPERTY = "jwt.principal.compact";
 
     @Autowired
     protected Configuration portofinoConfiguration;
@@ -81,6 +88,15 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
 
     protected boolean legacyHashing = false;
 
+    /**
+     * Already verified tokens, with the principal extracted from them. Null until first used, empty if disabled.
+     */
+    private volatile Optional<Cache<String, CachedWebToken>> webTokenCache;
+    /**
+     * The key computed from the secret, together with the secret, to detect configuration changes.
+     */
+    protected volatile Map.Entry<String, Key> jwtKey;
+
     private static final Logger logger = LoggerFactory.getLogger(AbstractPortofinoRealm.class);
 
     protected AbstractPortofinoRealm() {
@@ -99,7 +115,19 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
     }
 
     public AuthenticationInfo loadAuthenticationInfo(JSONWebToken token) {
+        //Before looking in the cache, so that a change of the secret invalidates the cached tokens
         Key key = getJWTKey();
+        Cache<String, CachedWebToken> cache = getWebTokenCache();
+        if(cache != null) {
+            CachedWebToken cached = cache.getIfPresent(token.getPrincipal());
+            if(cached != null) {
+                if(cached.expiresAt > System.currentTimeMillis()) {
+                    return new SimpleAuthenticationInfo(
+                            copyPrincipal(cached.principal), cached.credentials, getName());
+                }
+                cache.invalidate(token.getPrincipal());
+            }
+        }
         Jwt jwt;
         try {
             jwt = Jwts.parser().setSigningKey(key).parse(token.getPrincipal());
@@ -108,11 +136,112 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
         }
         String credentials = legacyHashing ? token.getCredentials() : encryptPassword(token.getCredentials());
         Object principal = extractPrincipalFromWebToken(jwt);
+        Object body = jwt.getBody();
+        if(cache != null && body instanceof Claims && ((Claims) body).getExpiration() != null) {
+            long expiresAt = ((Claims) body).getExpiration().getTime();
+            cache.put(token.getPrincipal(), new CachedWebToken(copyPrincipal(principal), credentials, expiresAt));
+        }
         return new SimpleAuthenticationInfo(principal, credentials, getName());
     }
 
+    /**
+     * Returns the cache of verified tokens, creating it the first time. Its size is configured with the
+     * {@link #JWT_CACHE_SIZE_PROPERTY} property; 0 disables the cache. Entries are kept until the token expires, but
+     * never longer than the configured token duration.
+     * @return the cache, or null if it's disabled.
+     */
+    protected Cache<String, CachedWebToken> getWebTokenCache() {
+        Optional<Cache<String, CachedWebToken>> cache = webTokenCache;
+        if(cache == null) {
+            synchronized (this) {
+                cache = webTokenCache;
+                if(cache == null) {
+                    cache = Optional.ofNullable(createWebTokenCache());
+                    webTokenCache = cache;
+                }
+            }
+        }
+        return cache.orElse(null);
+    }
+
+    protected Cache<String, CachedWebToken> createWebTokenCache() {
+        int size = portofinoConfiguration.getInt(JWT_CACHE_SIZE_PROPERTY, 1000);
+        if(size <= 0) {
+            return null;
+        }
+        int expireAfterMinutes = portofinoConfiguration.getInt(JWT_EXPIRATION_PROPERTY, 30);
+        return CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(expireAfterMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Forgets all the verified tokens. Called when the JWT secret changes; subclasses should call it when users
+     * are changed outside of the application's control.
+     */
+    public void clearWebTokenCache() {
+        Cache<String, CachedWebToken> cache = getWebTokenCache();
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Forgets the verified tokens of the given user, for example because it logged out or its data has changed.
+     * @param principal the user.
+     */
+    public void clearWebTokenCache(Object principal) {
+        Cache<String, CachedWebToken> cache = getWebTokenCache();
+        if(cache != null && principal != null) {
+            cache.asMap().values().removeIf(cached -> isSameUser(cached.principal, principal));
+        }
+    }
+
+    /**
+     * Tells whether two principals represent the same user. This default implementation compares them with equals.
+     */
+    protected boolean isSameUser(Object principal1, Object principal2) {
+        return Objects.equals(principal1, principal2);
+    }
+
+    @Override
+    public void onLogout(PrincipalCollection principals) {
+        super.onLogout(principals);
+        if(principals != null && !principals.isEmpty()) {
+            clearWebTokenCache(principals.getPrimaryPrincipal());
+        }
+    }
+
+    /**
+     * Copies a principal, so that a cached one is never shared among requests. Map principals (the default in
+     * Portofino) are copied; other principals are returned as they are, so they should be immutable.
+     */
+    protected Object copyPrincipal(Object principal) {
+        if(principal instanceof Map) {
+            return new HashMap<>((Map<?, ?>) principal);
+        }
+        return principal;
+    }
+
+    protected static class CachedWebToken {
+        public final Object principal;
+        public final Object credentials;
+        public final long expiresAt;
+
+        public CachedWebToken(Object principal, Object credentials, long expiresAt) {
+            this.principal = principal;
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     protected Object extractPrincipalFromWebToken(Jwt jwt) {
         Map body = (Map) jwt.getBody();
+        if(!body.containsKey("serialized-principal")) {
+            //Compact encoding
+            return getPrincipalFromClaims((Map<String, Object>) body.get("principal"));
+        }
         String base64Principal = (String) body.get("serialized-principal");
         byte[] serializedPrincipal = Base64.decode(base64Principal);
         Object principal;
@@ -135,20 +264,32 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
         return principal;
     }
 
+    /**
+     * Generates a web token for the given principal. Normally, the token includes the principal serialized
+     * with Java serialization. If the {@link #JWT_COMPACT_PRINCIPAL_PROPERTY} property is true, instead, it only
+     * includes the claims returned by {@link #getCompactPrincipal(Object)}, and the principal is rebuilt from them
+     * with {@link #getPrincipalFromClaims(Map)}.
+     * @param principal the principal.
+     * @return the token.
+     */
     public String generateWebToken(Object principal) {
         Key key = getJWTKey();
         Map<String, Object> claims = new HashMap<>();
-        claims.put("principal", getPrincipalForWebToken(principal));
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        ObjectOutputStream objectOutputStream;
-        try {
-            objectOutputStream = new ObjectOutputStream(bytes);
-            objectOutputStream.writeObject(principal);
-            objectOutputStream.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if(portofinoConfiguration.getBoolean(JWT_COMPACT_PRINCIPAL_PROPERTY, false)) {
+            claims.put("principal", getCompactPrincipal(principal));
+        } else {
+            claims.put("principal", getPrincipalForWebToken(principal));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutputStream;
+            try {
+                objectOutputStream = new ObjectOutputStream(bytes);
+                objectOutputStream.writeObject(principal);
+                objectOutputStream.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            claims.put("serialized-principal", bytes.toByteArray());
         }
-        claims.put("serialized-principal", bytes.toByteArray());
         int expireAfterMinutes = portofinoConfiguration.getInt(JWT_EXPIRATION_PROPERTY, 30);
         return Jwts.builder().
                 setClaims(claims).
@@ -161,6 +302,40 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
         return cleanUserPrincipal(principal);
     }
 
+    /**
+     * Returns the claims that identify the principal in a compact web token. This default implementation returns
+     * all the (clean) properties of the principal; subclasses should restrict them, e.g. to the user id and name.
+     * @param principal the principal.
+     * @return the claims, that must be serializable to JSON.
+     */
+    protected Map<String, Object> getCompactPrincipal(Object principal) {
+        Object cleanPrincipal = cleanUserPrincipal(principal);
+        Map<String, Object> claims = new HashMap<>();
+        if(cleanPrincipal instanceof Map) {
+            ((Map<?, ?>) cleanPrincipal).forEach((k, v) -> claims.put(String.valueOf(k), v));
+        } else {
+            ClassAccessor accessor = JavaClassAccessor.getClassAccessor(cleanPrincipal.getClass());
+            for(PropertyAccessor property : accessor.getProperties()) {
+                claims.put(property.getName(), property.get(cleanPrincipal));
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Rebuilds the principal from the claims of a compact web token, see {@link #getCompactPrincipal(Object)}.
+     * This default implementation returns the claims as a map; subclasses can convert them to the types of the
+     * principal's properties.
+     * @param claims the claims.
+     * @return the principal.
+     */
+    protected Object getPrincipalFromClaims(Map<String, Object> claims) {
+        if(claims == null) {
+            throw new AuthenticationException("The token does not contain a principal");
+        }
+        return new HashMap<>(claims);
+    }
+
     /**
      * Clean the user principal making it suitable for JSON serialization. For example, if it is a map, remove
      * circular references.
@@ -192,7 +367,17 @@ public abstract class AbstractPortofinoRealm extends AuthorizingRealm implements
     @NotNull
     protected Key getJWTKey() {
         String secret = portofinoConfiguration.getString(JWT_SECRET_PROPERTY);
-        return new SecretKeySpec(Decoders.BASE64.decode(secret), SignatureAlgorithm.HS512.getJcaName());
+        Map.Entry<String, Key> cachedKey = jwtKey;
+        if(cachedKey == null || !Objects.equals(secret, cachedKey.getKey())) {
+            Key key = new SecretKeySpec(Decoders.BASE64.decode(secret), SignatureAlgorithm.HS512.getJcaName());
+            if(cachedKey != null) {
+                //Tokens signed with the old secret are no longer valid
+                clearWebTokenCache();
+            }
+            cachedKey = new AbstractMap.SimpleImmutableEntry<>(secret, key);
+            jwtKey = cachedKey;
+        }
+        return cachedKey.getValue();
     }
 
     // --------------------------------------------------------------------------
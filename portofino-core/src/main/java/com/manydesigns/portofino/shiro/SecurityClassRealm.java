@@ -25,6 +25,7 @@ import com.manydesigns.portofino.code.CodeBase;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.LogoutAware;
 import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.authz.Permission;
 import org.apache.shiro.cache.CacheManager;
@@ -50,7 +51,7 @@ import java.util.*;
  * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
  * @author Alessio Stalla       - alessio.stalla@manydesigns.com
  */
-public class SecurityClassRealm implements PortofinoRealm, Initializable, Destroyable {
+public class SecurityClassRealm implements PortofinoRealm, Initializable, Destroyable, LogoutAware {
     public static final String copyright =
             "Copyright (C) 2005-2020 ManyDesigns srl";
 
@@ -340,6 +341,14 @@ public class SecurityClassRealm implements PortofinoRealm, Initializable, Destro
         }
     }
 
+    @Override
+    public void onLogout(PrincipalCollection principals) {
+        PortofinoRealm delegate = security;
+        if(delegate instanceof LogoutAware) {
+            ((LogoutAware) delegate).onLogout(principals);
+        }
+    }
+
     @Override
     public void destroy() {
         boolean wasDestroyed = destroyed;
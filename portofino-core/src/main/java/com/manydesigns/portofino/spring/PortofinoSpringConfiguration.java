@@ -1,6 +1,7 @@
 package com.manydesigns.portofino.spring;
 
 import com.manydesigns.elements.blobs.BlobManager;
+import com.manydesigns.elements.blobs.DeduplicatingBlobManager;
 import com.manydesigns.elements.blobs.HierarchicalBlobManager;
 import com.manydesigns.elements.blobs.SimpleBlobManager;
 import com.manydesigns.portofino.PortofinoProperties;
@@ -79,6 +80,10 @@ public class PortofinoSpringConfiguration {
         String dataFilenamePattern = "blob-{0}.data";
         File[] blobs = appBlobsDir.listFiles((dir, name) -> name.startsWith("blob-") && name.endsWith(".properties"));
         if(blobs == null || blobs.length == 0) { //Null if the directory does not exist yet
+            if(configuration.getBoolean(PortofinoProperties.BLOBS_DEDUPLICATE, false)) {
+                logger.info("Using deduplicating blob manager");
+                return new DeduplicatingBlobManager(appBlobsDir, metaFilenamePattern, dataFilenamePattern);
+            }
             logger.info("Using hierarchical blob manager");
             return new HierarchicalBlobManager(appBlobsDir, metaFilenamePattern, dataFilenamePattern);
         } else {
@@ -0,0 +1,37 @@
+package com.manydesigns.portofino.i18n;
+
+import org.testng.annotations.Test;
+
+import java.util.ListResourceBundle;
+import java.util.ResourceBundle;
+
+import static org.testng.Assert.*;
+
+public class MultipleTextProviderTest {
+
+    protected static ResourceBundle bundle(Object[][] contents) {
+        return new ListResourceBundle() {
+            @Override
+            protected Object[][] getContents() {
+                return contents;
+            }
+        };
+    }
+
+    @Test
+    public void testLookups() {
+        MultipleTextProvider textProvider = new MultipleTextProvider(
+                bundle(new Object[][] {{ "greeting", "Hello, {0}!" }, { "number", 42 }}),
+                bundle(new Object[][] {{ "greeting", "Hi" }, { "number", "{0} items" }, { "other", "Other" }}));
+        assertEquals(textProvider.getText("greeting", "world"), "Hello, world!");
+        assertEquals(textProvider.getText("number", 3), "3 items");
+        assertEquals(textProvider.getText("other"), "Other");
+        assertEquals(textProvider.getText("missing {0}", "key"), "missing key");
+        assertNull(textProvider.getTextOrNull("missing"));
+        assertEquals(textProvider.getMessageFormat("greeting").toPattern(), "Hello, {0}!");
+        assertNotSame(textProvider.getMessageFormat("greeting"), textProvider.getMessageFormat("greeting"));
+        assertTrue(textProvider.messageFormats.containsKey("greeting"));
+        assertNull(textProvider.getMessageFormat("missing"));
+        assertFalse(textProvider.messageFormats.containsKey("missing"));
+    }
+}
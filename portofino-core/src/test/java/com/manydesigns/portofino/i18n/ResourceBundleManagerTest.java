@@ -0,0 +1,63 @@
+package com.manydesigns.portofino.i18n;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import static org.testng.Assert.*;
+
+public class ResourceBundleManagerTest {
+
+    protected File directory;
+    protected ResourceBundleManager resourceBundleManager;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("portofino-i18n").toFile();
+        File messages = new File(directory, "messages.properties");
+        FileUtils.writeStringToFile(messages, "greeting=Hello, {0}!\n", StandardCharsets.ISO_8859_1);
+        resourceBundleManager = new ResourceBundleManager();
+        resourceBundleManager.addSearchPath(messages.getAbsolutePath());
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testTextProvidersAreCached() {
+        MultipleTextProvider textProvider = resourceBundleManager.getTextProvider(Locale.ENGLISH);
+        assertEquals(textProvider.getText("greeting", "world"), "Hello, world!");
+        assertSame(resourceBundleManager.getTextProvider(Locale.ENGLISH), textProvider);
+        assertSame(textProvider.getResourceBundles().get(0), resourceBundleManager.getBundle(Locale.ENGLISH));
+        assertFalse(resourceBundleManager.cache.reloadingControllers.isEmpty());
+
+        resourceBundleManager.clearCache();
+        assertTrue(resourceBundleManager.cache.reloadingControllers.isEmpty());
+        MultipleTextProvider newTextProvider = resourceBundleManager.getTextProvider(Locale.ENGLISH);
+        assertNotSame(newTextProvider, textProvider);
+        assertEquals(newTextProvider.getText("greeting", "world"), "Hello, world!");
+    }
+
+    @Test
+    public void testBundlesLoadedBeforeClearingAreNotCached() {
+        //A bundle being loaded while the cache is cleared must not end up in the new cache without its controllers
+        ResourceBundleManager.Cache oldCache = resourceBundleManager.cache;
+        resourceBundleManager.clearCache();
+        resourceBundleManager.getBundle(oldCache, Locale.ENGLISH);
+        assertTrue(resourceBundleManager.cache.resourceBundles.isEmpty());
+        assertTrue(resourceBundleManager.cache.reloadingControllers.isEmpty());
+
+        resourceBundleManager.getBundle(Locale.ENGLISH);
+        assertFalse(resourceBundleManager.cache.resourceBundles.isEmpty());
+        assertFalse(resourceBundleManager.cache.reloadingControllers.isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+package com.manydesigns.portofino.rest;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class UtilitiesTest {
+
+    @Test
+    public void testParseRange() {
+        Utilities.ByteRange range = Utilities.parseRange("bytes=0-99", 1000);
+        assertEquals(range.start, 0);
+        assertEquals(range.end, 99);
+        assertEquals(range.getLength(), 100);
+
+        range = Utilities.parseRange("bytes=500-", 1000);
+        assertEquals(range.start, 500);
+        assertEquals(range.end, 999);
+
+        range = Utilities.parseRange("bytes=-100", 1000);
+        assertEquals(range.start, 900);
+        assertEquals(range.end, 999);
+
+        range = Utilities.parseRange("bytes=900-5000", 1000);
+        assertEquals(range.end, 999);
+
+        range = Utilities.parseRange("bytes=-5000", 1000);
+        assertEquals(range.start, 0);
+    }
+
+    @Test
+    public void testUnsupportedOrUnsatisfiableRanges() {
+        assertNull(Utilities.parseRange("items=0-10", 1000));
+        assertNull(Utilities.parseRange("bytes=0-10,20-30", 1000));
+        assertNull(Utilities.parseRange("bytes=10-5", 1000));
+        assertNull(Utilities.parseRange("bytes=a-b", 1000));
+        assertFalse(Utilities.parseRange("bytes=1000-", 1000).isSatisfiable());
+        assertFalse(Utilities.parseRange("bytes=-0", 1000).isSatisfiable());
+    }
+}
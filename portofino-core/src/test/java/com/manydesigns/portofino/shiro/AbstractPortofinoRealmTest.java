@@ -0,0 +1,165 @@
+package com.manydesigns.portofino.shiro;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Encoders;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.*;
+
+import static org.testng.Assert.*;
+
+public class AbstractPortofinoRealmTest {
+
+    protected TestRealm realm;
+
+    @BeforeMethod
+    public void setup() {
+        realm = new TestRealm();
+        realm.portofinoConfiguration = new PropertiesConfiguration();
+        realm.portofinoConfiguration.setProperty(AbstractPortofinoRealm.JWT_SECRET_PROPERTY, generateSecret());
+        realm.portofinoConfiguration.setProperty(AbstractPortofinoRealm.JWT_COMPACT_PRINCIPAL_PROPERTY, true);
+    }
+
+    protected static String generateSecret() {
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+        return Encoders.BASE64.encode(secret);
+    }
+
+    protected static Map<String, Object> createPrincipal() {
+        Map<String, Object> principal = new HashMap<>();
+        principal.put("id", 1);
+        principal.put("name", "admin");
+        return principal;
+    }
+
+    protected Object authenticate(String token) {
+        AuthenticationInfo info = realm.loadAuthenticationInfo(new JSONWebToken(token));
+        return info.getPrincipals().getPrimaryPrincipal();
+    }
+
+    @Test
+    public void testCachedTokens() {
+        String token = realm.generateWebToken(createPrincipal());
+        assertEquals(authenticate(token), createPrincipal());
+        assertEquals(realm.getWebTokenCache().size(), 1);
+        assertEquals(authenticate(token), createPrincipal());
+        assertEquals(realm.getWebTokenCache().size(), 1);
+
+        realm.clearWebTokenCache(createPrincipal());
+        assertEquals(realm.getWebTokenCache().size(), 0);
+    }
+
+    @Test
+    public void testExpiredTokensAreRejectedEvenIfCached() throws Exception {
+        //Expiration dates in tokens have a precision of one second
+        Date expiration = new Date(System.currentTimeMillis() / 1000 * 1000 + 2000);
+        String token = Jwts.builder()
+                .claim("principal", createPrincipal())
+                .setExpiration(expiration)
+                .signWith(realm.getJWTKey(), SignatureAlgorithm.HS512)
+                .compact();
+        assertEquals(authenticate(token), createPrincipal());
+        assertEquals(realm.getWebTokenCache().size(), 1);
+
+        Thread.sleep(expiration.getTime() - System.currentTimeMillis() + 100);
+        try {
+            authenticate(token);
+            fail("The token is expired");
+        } catch (AuthenticationException e) {
+            //Ok
+        }
+        assertEquals(realm.getWebTokenCache().size(), 0);
+    }
+
+    @Test
+    public void testChangingTheSecretClearsCachedTokens() {
+        String token = realm.generateWebToken(createPrincipal());
+        authenticate(token);
+        assertEquals(realm.getWebTokenCache().size(), 1);
+
+        realm.portofinoConfiguration.setProperty(AbstractPortofinoRealm.JWT_SECRET_PROPERTY, generateSecret());
+        try {
+            authenticate(token);
+            fail("The token was signed with the old secret");
+        } catch (AuthenticationException e) {
+            //Ok
+        }
+        assertEquals(realm.getWebTokenCache().size(), 0);
+        assertEquals(authenticate(realm.generateWebToken(createPrincipal())), createPrincipal());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedPrincipalsCannotBeModified() {
+        String token = realm.generateWebToken(createPrincipal());
+        Map<String, Object> principal = (Map<String, Object>) authenticate(token);
+        principal.put("name", "changed");
+        principal.put("extra", "added");
+
+        Map<String, Object> cachedPrincipal = (Map<String, Object>) authenticate(token);
+        assertNotSame(cachedPrincipal, principal);
+        assertEquals(cachedPrincipal, createPrincipal());
+        cachedPrincipal.clear();
+        assertEquals(authenticate(token), createPrincipal());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        realm.portofinoConfiguration.setProperty(AbstractPortofinoRealm.JWT_CACHE_SIZE_PROPERTY, 0);
+        String token = realm.generateWebToken(createPrincipal());
+        assertEquals(authenticate(token), createPrincipal());
+        assertNull(realm.getWebTokenCache());
+    }
+
+    public static class TestRealm extends AbstractPortofinoRealm {
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) {
+            return loadAuthenticationInfo((JSONWebToken) token);
+        }
+
+        @Override
+        protected Collection<String> loadAuthorizationInfo(Serializable principal) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String encryptPassword(String password) {
+            return password;
+        }
+
+        @Override
+        public Map<Serializable, String> getUsers() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Serializable getUserId(Serializable user) {
+            return user;
+        }
+
+        @Override
+        public String getUsername(Serializable user) {
+            return String.valueOf(user);
+        }
+
+        @Override
+        public String getEmail(Serializable user) {
+            return null;
+        }
+
+        @Override
+        public Set<String> getGroups() {
+            return Collections.emptySet();
+        }
+    }
+}
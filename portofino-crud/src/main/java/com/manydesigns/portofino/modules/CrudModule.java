@@ -20,9 +20,14 @@
 
 package com.manydesigns.portofino.modules;
 
+import com.manydesigns.portofino.cache.CacheResetListenerRegistry;
+import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.persistence.QueryUtils;
 import com.manydesigns.portofino.resourceactions.crud.CrudAction;
+import com.manydesigns.portofino.resourceactions.crud.ModelSelectionProviderSupport;
 import com.manydesigns.portofino.resourceactions.m2m.ManyToManyAction;
 import com.manydesigns.portofino.resourceactions.registry.ActionRegistry;
+import io.reactivex.disposables.Disposable;
 import org.apache.commons.configuration2.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +56,13 @@ public class CrudModule implements Module {
     @Autowired
     public ActionRegistry actionRegistry;
 
+    @Autowired
+    public CacheResetListenerRegistry cacheResetListenerRegistry;
+
+    @Autowired
+    public Persistence persistence;
+
+    protected Disposable tableWritesSubscription;
     protected ModuleStatus status = ModuleStatus.CREATED;
 
     //**************************************************************************
@@ -74,11 +86,22 @@ public class CrudModule implements Module {
     public void init() {
         actionRegistry.register(CrudAction.class);
         actionRegistry.register(ManyToManyAction.class);
+        CrudAction.initCountQueryCache(configuration.getInt(QueryUtils.QUERY_CACHE_SIZE, 1000));
+        cacheResetListenerRegistry.getCacheResetListeners().add(e -> CrudAction.clearCountQueryCache());
+        ModelSelectionProviderSupport.initQueryCache(
+                configuration.getInt(ModelSelectionProviderSupport.QUERY_CACHE_SIZE, 1000),
+                configuration.getInt(ModelSelectionProviderSupport.QUERY_CACHE_TIME_TO_LIVE, 0));
+        cacheResetListenerRegistry.getCacheResetListeners().add(e -> ModelSelectionProviderSupport.clearQueryCache());
+        tableWritesSubscription = persistence.tableWrites.subscribe(ModelSelectionProviderSupport::invalidateQueryCache);
         status = ModuleStatus.STARTED;
     }
 
     @PreDestroy
     public void destroy() {
+        if(tableWritesSubscription != null) {
+            tableWritesSubscription.dispose();
+            tableWritesSubscription = null;
+        }
         status = ModuleStatus.DESTROYED;
     }
 
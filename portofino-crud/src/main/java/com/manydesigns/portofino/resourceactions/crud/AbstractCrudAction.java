@@ -20,16 +20,20 @@
 
 package com.manydesigns.portofino.resourceactions.crud;
 
+import com.google.common.collect.Lists;
 import com.manydesigns.elements.ElementsThreadLocals;
 import com.manydesigns.elements.FormElement;
 import com.manydesigns.elements.Mode;
+import com.manydesigns.elements.annotations.Enabled;
 import com.manydesigns.elements.annotations.FileBlob;
+import com.manydesigns.elements.annotations.Searchable;
 import com.manydesigns.elements.blobs.Blob;
 import com.manydesigns.elements.blobs.BlobManager;
 import com.manydesigns.elements.blobs.BlobUtils;
 import com.manydesigns.elements.fields.*;
 import com.manydesigns.elements.forms.*;
 import com.manydesigns.elements.messages.RequestMessages;
+import com.manydesigns.elements.ognl.OgnlUtils;
 import com.manydesigns.elements.options.DisplayMode;
 import com.manydesigns.elements.options.SearchDisplayMode;
 import com.manydesigns.elements.options.SelectionProvider;
@@ -70,6 +74,7 @@ import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.joda.time.DateTime;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
@@ -83,16 +88,24 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -174,6 +187,7 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
     public Integer maxResults;
     public String sortProperty;
     public String sortDirection;
+    public String cursor;
 
     //--------------------------------------------------------------------------
     // UI forms
@@ -282,6 +296,16 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
     }
 
     public Response jsonSearchData() throws JSONException {
+        if(cursor != null && !isKeysetPaginationSupported()) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST).entity("Keyset pagination not supported").build());
+        }
+        if(isKeysetPagination()) {
+            return jsonKeysetSearchData();
+        }
+        if(isStreamingSearch()) {
+            return jsonStreamingSearchData();
+        }
         executeSearch();
         final long totalRecords = getTotalSearchRecords();
 
@@ -291,6 +315,8 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
                 .value(objects.size())
                 .key("totalRecords")
                 .value(totalRecords)
+                .key("totalRecordsExact")
+                .value(isTotalSearchRecordsExact())
                 .key("startIndex")
                 .value(firstResult == null ? 0 : firstResult)
                 .key("records")
@@ -306,6 +332,103 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
         js.endObject();
         String jsonText = js.toString();
         Response.ResponseBuilder builder = Response.ok(jsonText).type(MediaType.APPLICATION_JSON_TYPE).encoding("UTF-8");
+        addPaginationLinks(builder, totalRecords);
+        return builder.build();
+    }
+
+    /**
+     * Streams the search results to the client while reading them from the database, rather than building the whole
+     * response in memory. A single row form is reused for all the results, so memory usage doesn't depend on the
+     * number of returned records. The format of the response is the same as {@link #jsonSearchData()}, except that
+     * recordsReturned comes after the records.<br />
+     * Since the status and headers are sent before the results are read, an error occurring while streaming cannot
+     * be reported with an error status. In that case, the error is logged, the JSON document is closed with the
+     * records returned so far, and an "error" property set to true tells the client that the results are incomplete.
+     * @return the search results as JSON.
+     * @since 5.2
+     */
+    public Response jsonStreamingSearchData() {
+        setupSearchForm();
+        if(maxResults == null) {
+            maxResults = getCrudConfiguration().getRowsPerPage();
+        }
+        final long totalRecords = getTotalSearchRecords();
+        final boolean totalRecordsExact = isTotalSearchRecordsExact();
+        TableFormBuilder tableFormBuilder = createTableFormBuilder();
+        configureTableFormBuilder(tableFormBuilder, Mode.VIEW, 1);
+        final TableForm rowForm = buildTableForm(tableFormBuilder);
+        tableForm = rowForm;
+        StreamingOutput streamingOutput = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.write("{\"totalRecords\":" + totalRecords +
+                         ",\"totalRecordsExact\":" + totalRecordsExact +
+                         ",\"startIndex\":" + (firstResult == null ? 0 : firstResult) +
+                         ",\"records\":[");
+            TableForm.Row row = rowForm.getRows()[0];
+            int[] recordsReturned = { 0 };
+            boolean error = false;
+            try {
+                forEachSearchResult(object -> {
+                    row.readFromObject(object);
+                    refreshBlobDownloadHref(row, object);
+                    BlobUtils.loadBlobs(rowForm, getBlobManager(), false);
+                    //Each record is rendered on its own, so that a failure doesn't leave the document half-written
+                    JSONStringer js = new JSONStringer();
+                    js.object()
+                            .key("__rowKey")
+                            .value(row.getKey());
+                    FormUtil.fieldsToJson(js, row);
+                    js.endObject();
+                    try {
+                        if(recordsReturned[0] > 0) {
+                            writer.write(',');
+                        }
+                        writer.write(js.toString());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    recordsReturned[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (Exception e) {
+                logger.error("Error while streaming search results, the response is incomplete", e);
+                error = true;
+            }
+            writer.write("],\"recordsReturned\":" + recordsReturned[0]);
+            if(error) {
+                writer.write(",\"error\":true");
+            }
+            writer.write("}");
+            writer.flush();
+        };
+        Response.ResponseBuilder builder =
+                Response.ok(streamingOutput).type(MediaType.APPLICATION_JSON_TYPE).encoding("UTF-8");
+        addPaginationLinks(builder, totalRecords);
+        return builder.build();
+    }
+
+    /**
+     * Tells whether search results are streamed to the client, see {@link #jsonStreamingSearchData()}.
+     * @return true if streaming is enabled in the configuration of the CRUD.
+     */
+    public boolean isStreamingSearch() {
+        return getCrudConfiguration().isStreamingSearch();
+    }
+
+    /**
+     * Passes each object matching the current search criteria and limits to the given consumer. The default
+     * implementation loads all of them with {@link #loadObjects()}; subclasses can read them one at a time instead.
+     * @param consumer the consumer.
+     * @return the number of objects.
+     */
+    protected int forEachSearchResult(Consumer<T> consumer) {
+        loadObjects();
+        objects.forEach(consumer);
+        return objects.size();
+    }
+
+    protected void addPaginationLinks(Response.ResponseBuilder builder, long totalRecords) {
         Integer rowsPerPage = getCrudConfiguration().getRowsPerPage();
         if(rowsPerPage != null && totalRecords > rowsPerPage) {
             int firstResult = getFirstResult() != null ? getFirstResult() : 1;
@@ -323,14 +446,194 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
                 if(currentPage > 0) {
                     sb.append(", ");
                 }
-                sb.append("<").append(getLinkToPage(currentPage + 1)).append(">; rel=\"next\", ");
-                sb.append("<").append(getLinkToPage(lastPage)).append(">; rel=\"last\"");
+                sb.append("<").append(getLinkToPage(currentPage + 1)).append(">; rel=\"next\"");
+                if(isTotalSearchRecordsExact()) {
+                    sb.append(", <").append(getLinkToPage(lastPage)).append(">; rel=\"last\"");
+                }
             }
             builder.header("Link", sb.toString());
         }
+    }
+
+    /**
+     * Keyset pagination: returns a page of search results following the position encoded in the cursor, without
+     * counting the total records and without skipping rows with an offset. The cost of retrieving a page doesn't
+     * depend on how deep it is in the result set. The response includes the cursor of the next page, if any.
+     * @return the search results as JSON.
+     * @throws JSONException if the JSON cannot be generated.
+     * @since 5.2
+     */
+    public Response jsonKeysetSearchData() throws JSONException {
+        executeSearch();
+        String nextCursor = null;
+        if(!objects.isEmpty() && maxResults != null && objects.size() >= maxResults) {
+            nextCursor = encodeCursor(objects.get(objects.size() - 1));
+        }
+        JSONStringer js = new JSONStringer();
+        js.object()
+                .key("recordsReturned")
+                .value(objects.size())
+                .key("nextCursor")
+                .value(nextCursor)
+                .key("records")
+                .array();
+        for (TableForm.Row row : tableForm.getRows()) {
+            js.object()
+                    .key("__rowKey")
+                    .value(row.getKey());
+            FormUtil.fieldsToJson(js, row);
+            js.endObject();
+        }
+        js.endArray();
+        js.endObject();
+        String jsonText = js.toString();
+        Response.ResponseBuilder builder = Response.ok(jsonText).type(MediaType.APPLICATION_JSON_TYPE).encoding("UTF-8");
+        if(nextCursor != null) {
+            builder.header("Link", "<" + getLinkToCursor(nextCursor) + ">; rel=\"next\"");
+        }
         return builder.build();
     }
 
+    /**
+     * Tells whether the search uses keyset pagination, i.e. a cursor was requested. An empty cursor requests the
+     * first page.
+     * @return true if the search uses keyset pagination.
+     */
+    public boolean isKeysetPagination() {
+        return cursor != null && isKeysetPaginationSupported();
+    }
+
+    /**
+     * Tells whether this action honors the cursor when loading objects. Subclasses that do must override this method.
+     * @return false by default.
+     */
+    public boolean isKeysetPaginationSupported() {
+        return false;
+    }
+
+    /**
+     * Returns the property used to sort the results in keyset pagination, i.e. the sort property if any.
+     * The primary key is always used to sort rows with the same value. Since its values are encoded in the cursors
+     * returned to the client, the sort property must be valid according to {@link #isKeysetSortProperty}.
+     * @return the property, or null if the results are sorted by primary key only.
+     * @throws WebApplicationException with status 400 if the sort property is not valid.
+     */
+    protected PropertyAccessor getKeysetSortProperty() {
+        if(StringUtils.isBlank(sortProperty)) {
+            return null;
+        }
+        PropertyAccessor property;
+        try {
+            property = getOrderByProperty(sortProperty);
+        } catch (NoSuchFieldException e) {
+            property = null;
+        }
+        if(property == null || !isKeysetSortProperty(property)) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST).entity("Invalid sort property").build());
+        }
+        return property;
+    }
+
+    /**
+     * Tells whether a property can be used to sort the results in keyset pagination. By default, only enabled and
+     * searchable properties can.
+     * @param property the property.
+     * @return whether the property can be used.
+     */
+    protected boolean isKeysetSortProperty(PropertyAccessor property) {
+        Enabled enabled = property.getAnnotation(Enabled.class);
+        Searchable searchable = property.getAnnotation(Searchable.class);
+        return (enabled == null || enabled.value()) && searchable != null && searchable.value();
+    }
+
+    /**
+     * @return the property to sort the results by, given its name.
+     * @throws NoSuchFieldException if there's no such property.
+     */
+    protected PropertyAccessor getOrderByProperty(String sortProperty) throws NoSuchFieldException {
+        return this.classAccessor.getProperty(sortProperty);
+    }
+
+    /**
+     * Encodes the position of an object in the search results as an opaque cursor: the value of the sort property
+     * and the primary key, in a base64url-encoded JSON array.
+     * @param object the last object of a page.
+     * @return the cursor.
+     */
+    protected String encodeCursor(T object) {
+        JSONArray array = new JSONArray();
+        PropertyAccessor sortAccessor = getKeysetSortProperty();
+        if(sortAccessor != null) {
+            array.put(sortAccessor.getName());
+            array.put(encodeCursorValue(sortAccessor.get(object)));
+        } else {
+            array.put(JSONObject.NULL);
+            array.put(JSONObject.NULL);
+        }
+        for(String pkValue : pkHelper.generatePkStringArray(object)) {
+            array.put(pkValue);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                array.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected Object encodeCursorValue(Object value) {
+        if(value == null) {
+            return JSONObject.NULL;
+        } else if(value instanceof Timestamp) {
+            return value.toString();
+        } else if(value instanceof Date) {
+            return ((Date) value).getTime();
+        } else {
+            return OgnlUtils.convertValueToString(value);
+        }
+    }
+
+    /**
+     * Decodes a cursor produced by {@link #encodeCursor(Object)}.
+     * @param cursor the cursor.
+     * @return the value of the sort property (null if there's no sort property) followed by the values of the
+     * primary key properties.
+     * @throws WebApplicationException with status 400 if the cursor is invalid or doesn't match the sort property
+     * of the current request.
+     */
+    protected Object[] decodeCursor(String cursor) {
+        PropertyAccessor sortAccessor = getKeysetSortProperty();
+        PropertyAccessor[] keyProperties = classAccessor.getKeyProperties();
+        try {
+            JSONArray array = new JSONArray(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            String sortPropertyName = array.isNull(0) ? null : array.getString(0);
+            String expectedSortPropertyName = sortAccessor != null ? sortAccessor.getName() : null;
+            if(!Objects.equals(sortPropertyName, expectedSortPropertyName) ||
+               array.length() != keyProperties.length + 2) {
+                throw new IllegalArgumentException("Cursor does not match the request");
+            }
+            Object[] values = new Object[keyProperties.length + 1];
+            if(sortAccessor != null) {
+                values[0] = decodeCursorValue(array.isNull(1) ? null : array.get(1), sortAccessor.getType());
+            }
+            for(int i = 0; i < keyProperties.length; i++) {
+                values[i + 1] = OgnlUtils.convertValue(array.getString(i + 2), keyProperties[i].getType());
+            }
+            return values;
+        } catch (Exception e) {
+            logger.debug("Invalid cursor: " + cursor, e);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor").build());
+        }
+    }
+
+    protected Object decodeCursorValue(Object value, Class<?> type) {
+        if(value == null) {
+            return null;
+        } else if(value instanceof Number && Date.class.isAssignableFrom(type)) {
+            return OgnlUtils.convertValue(new Date(((Number) value).longValue()), type);
+        } else {
+            return OgnlUtils.convertValue(value.toString(), type);
+        }
+    }
+
     /**
      * Returns the number of objects matching the current search criteria, not considering set limits
      * (first and max results).
@@ -338,6 +641,15 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
      */
     public abstract long getTotalSearchRecords();
 
+    /**
+     * Tells whether {@link #getTotalSearchRecords()} is an exact count. It can be an estimate or a lower bound
+     * in implementations that avoid counting large result sets.
+     * @return true by default.
+     */
+    public boolean isTotalSearchRecordsExact() {
+        return true;
+    }
+
     //**************************************************************************
     // Read
     //**************************************************************************
@@ -887,6 +1199,21 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
         return urlBuilder.toString();
     }
 
+    public String getLinkToCursor(String cursor) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("sortProperty", getSortProperty());
+        parameters.put("sortDirection", getSortDirection());
+        parameters.put("maxResults", getMaxResults());
+        parameters.put("cursor", cursor);
+        parameters.put(AbstractCrudAction.SEARCH_STRING_PARAM, getSearchString());
+
+        Charset charset = Charset.forName(context.getRequest().getCharacterEncoding());
+        UrlBuilder urlBuilder =
+                new UrlBuilder(charset, Util.getAbsoluteUrl(context.getActionPath()), false)
+                        .addParameters(parameters);
+        return urlBuilder.toString();
+    }
+
     protected TableForm buildTableForm(TableFormBuilder tableFormBuilder) {
         TableForm tableForm = tableFormBuilder.build();
         tableForm.setKeyGenerator(pkHelper.createPkGenerator());
@@ -1021,20 +1348,23 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
     protected void refreshTableBlobDownloadHref() {
         Iterator<?> objIterator = objects.iterator();
         for (TableForm.Row row : tableForm.getRows()) {
-            Iterator<Field> fieldIterator = row.iterator();
-            Object obj = objIterator.next();
-            String baseUrl = null;
-            while (fieldIterator.hasNext()) {
-                Field field = fieldIterator.next();
-                if (field instanceof AbstractBlobField) {
-                    if(baseUrl == null) {
-                        OgnlTextFormat hrefFormat = getReadURLFormat();
-                        baseUrl = hrefFormat.format(obj);
-                    }
-                    Blob blob = ((AbstractBlobField) field).getValue();
-                    if(blob != null) {
-                        field.setHref(getBlobDownloadUrl(field, baseUrl));
-                    }
+            refreshBlobDownloadHref(row, objIterator.next());
+        }
+    }
+
+    protected void refreshBlobDownloadHref(TableForm.Row row, Object obj) {
+        Iterator<Field> fieldIterator = row.iterator();
+        String baseUrl = null;
+        while (fieldIterator.hasNext()) {
+            Field field = fieldIterator.next();
+            if (field instanceof AbstractBlobField) {
+                if(baseUrl == null) {
+                    OgnlTextFormat hrefFormat = getReadURLFormat();
+                    baseUrl = hrefFormat.format(obj);
+                }
+                Blob blob = ((AbstractBlobField) field).getValue();
+                if(blob != null) {
+                    field.setHref(getBlobDownloadUrl(field, baseUrl));
                 }
             }
         }
@@ -1101,7 +1431,8 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
 
         Blob blob = new Blob(field.generateNewCode());
         blob.setFilename(filename);
-        blob.setSize(context.getRequest().getContentLength());
+        //Only a hint: the actual size is recorded when the contents are written. -1 if unknown (e.g. chunked upload)
+        blob.setSize(context.getRequest().getContentLengthLong());
         blob.setContentType(context.getRequest().getContentType());
         blob.setCharacterEncoding(context.getRequest().getCharacterEncoding());
         blob.setCreateTimestamp(new DateTime());
@@ -1255,13 +1586,15 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
 
     /**
      * Returns values to update a single select or autocomplete field, in JSON form.
-     * See {@link #jsonOptions(String, int, String, String, boolean)}.
+     * See {@link #jsonOptions(String, int, String, String, boolean, Integer, Integer)}.
      * @param selectionProviderName name of the selection provider. See {@link #selectionProviders()}.
      * @param labelSearch for autocomplete fields, the text entered by the user.
      * @param prefix form prefix, to read values from the request.
      * @param includeSelectPrompt controls if the first option is a label with no value indicating
      * what field is being selected. For combo boxes you would generally pass true as the value of
      * this parameter; for autocomplete fields, you would likely pass false.
+     * @param firstResult for autocomplete fields, the index of the first matching option to return.
+     * @param maxResults for autocomplete fields, the maximum number of options to return.
      * @return a Response with the JSON.
      */
     @GET
@@ -1276,8 +1609,25 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
             @Parameter(description = "The form prefix (advanced and generally not used)")
             @QueryParam("prefix") String prefix,
             @Parameter(description = "Whether the returned values include a default option \"Please choose one\"")
-            @QueryParam("includeSelectPrompt") boolean includeSelectPrompt) {
-        return jsonOptions(selectionProviderName, 0, labelSearch, prefix, includeSelectPrompt);
+            @QueryParam("includeSelectPrompt") boolean includeSelectPrompt,
+            @Parameter(description = "For autocomplete search, the index of the first matching option")
+            @QueryParam("firstResult") Integer firstResult,
+            @Parameter(description = "For autocomplete search, the maximum number of returned options")
+            @QueryParam("maxResults") Integer maxResults) {
+        return jsonOptions(
+                selectionProviderName, 0, labelSearch, prefix, includeSelectPrompt, firstResult, maxResults);
+    }
+
+    public Response jsonOptions(
+            String selectionProviderName, String labelSearch, String prefix, boolean includeSelectPrompt) {
+        return jsonOptions(selectionProviderName, 0, labelSearch, prefix, includeSelectPrompt, null, null);
+    }
+
+    public Response jsonOptions(
+            String selectionProviderName, int selectionProviderIndex, String labelSearch, String prefix,
+            boolean includeSelectPrompt) {
+        return jsonOptions(
+                selectionProviderName, selectionProviderIndex, labelSearch, prefix, includeSelectPrompt, null, null);
     }
     
     /**
@@ -1285,12 +1635,14 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
      * @param selectionProviderName name of the selection provider. See {@link #selectionProviders()}.
      * @param selectionProviderIndex index of the selection field (in case of multiple-valued selection providers,
      *                               otherwise it is always 0 and you can use
-     *                               {@link #jsonOptions(String, String, String, boolean)}).
+     *                               {@link #jsonOptions(String, String, String, boolean, Integer, Integer)}).
      * @param labelSearch for autocomplete fields, the text entered by the user.
      * @param prefix form prefix, to read values from the request.
      * @param includeSelectPrompt controls if the first option is a label with no value indicating
      * what field is being selected. For combo boxes you would generally pass true as the value of
      * this parameter; for autocomplete fields, you would likely pass false.
+     * @param firstResult for autocomplete fields, the index of the first matching option to return.
+     * @param maxResults for autocomplete fields, the maximum number of options to return.
      * @return a Response with the JSON.
      */
     @GET
@@ -1307,7 +1659,11 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
             @Parameter(description = "The form prefix (advanced and generally not used)")
             @QueryParam("prefix") String prefix,
             @Parameter(description = "Whether the returned values include a default option \"Please choose one\"")
-            @QueryParam("includeSelectPrompt") boolean includeSelectPrompt) {
+            @QueryParam("includeSelectPrompt") boolean includeSelectPrompt,
+            @Parameter(description = "For autocomplete search, the index of the first matching option")
+            @QueryParam("firstResult") Integer firstResult,
+            @Parameter(description = "For autocomplete search, the maximum number of returned options")
+            @QueryParam("maxResults") Integer maxResults) {
         CrudSelectionProvider crudSelectionProvider = null;
         for (CrudSelectionProvider current : selectionProviderSupport.getCrudSelectionProviders()) {
             SelectionProvider selectionProvider = current.getSelectionProvider();
@@ -1341,7 +1697,7 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
             return Response.status(Response.Status.BAD_REQUEST).entity("Invalid index").build();
         }
         SelectField targetField = (SelectField) fieldSet.get(selectionProviderIndex);
-        targetField.setLabelSearch(labelSearch);
+        targetField.setLabelSearch(labelSearch, firstResult, maxResults);
 
         String text = targetField.jsonSelectFieldOptions(includeSelectPrompt);
         logger.debug("jsonOptions: {}", text);
@@ -1499,6 +1855,8 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
      * @param searchString the search string
      * @param firstResult pagination: the index of the first result returned by the search
      * @param maxResults pagination: the maximum number of results returned by the search
+     * @param cursor keyset pagination: the position after which to return results, as returned by a previous
+     *               search in nextCursor. Empty for the first page. If present, firstResult is ignored.
      * @since 4.2
      * @return search results (/) or single object (/pk) as JSON
      */
@@ -1516,6 +1874,8 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
             @QueryParam("sortProperty") String sortProperty,
             @Parameter(description = "The direction of the sort (asc or desc)")
             @QueryParam("sortDirection") String sortDirection,
+            @Parameter(description = "Keyset pagination: the nextCursor returned by the previous page, or empty for the first page")
+            @QueryParam("cursor") String cursor,
             @Parameter(description = "The returned object is pre-populated for being edited (including computed fields)")
             @QueryParam("forEdit") boolean forEdit,
             @Parameter(description = "The returned object is a new instance pre-populated for being saved (including computed fields)")
@@ -1529,6 +1889,7 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
             this.maxResults = maxResults;
             this.sortProperty = sortProperty;
             this.sortDirection = sortDirection;
+            this.cursor = cursor;
             return jsonSearchData();
         } else if(forEdit) {
             return jsonEditData();
@@ -1732,14 +2093,25 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
         disableBlobFields();
         FormUtil.readFromJson(form, new JSONObject(jsonObject));
         if (form.validate()) {
-            for (String id : ids) {
-                loadObject(id.split(PK_SEPARATOR));
-                editSetup(object);
-                writeFormToObject();
-                if(editValidate(object)) {
-                    doUpdate(object);
-                    editPostProcess(object);
-                    updated.add(id);
+            List<List<String>> chunks = Lists.partition(ids, getBulkChunkSize());
+            for (List<String> chunk : chunks) {
+                Map<String, T> loaded = loadObjectsByIdentifier(chunk);
+                for (String id : chunk) {
+                    object = loaded.get(id);
+                    if(object == null) {
+                        logger.debug("Object not found for bulk update: {}", id);
+                        throw new WebApplicationException(Response.Status.NOT_FOUND);
+                    }
+                    editSetup(object);
+                    writeFormToObject();
+                    if(editValidate(object)) {
+                        doUpdate(object);
+                        editPostProcess(object);
+                        updated.add(id);
+                    }
+                }
+                if(chunks.size() > 1) {
+                    flushBulkChunk();
                 }
             }
             try {
@@ -1907,6 +2279,39 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
         return response;
     }
 
+    /**
+     * Loads the objects targeted by a bulk operation. The default implementation loads them one at a time;
+     * subclasses may load them with fewer queries.
+     * @param ids the identifiers of the objects, i.e. the primary key values separated by {@link #PK_SEPARATOR}.
+     * @return the loaded objects, keyed by identifier. Objects that don't exist (or that can't be accessed through
+     * this action) are not included.
+     */
+    protected Map<String, T> loadObjectsByIdentifier(List<String> ids) {
+        Map<String, T> objects = new HashMap<>();
+        for(String id : ids) {
+            T object = loadObjectByPrimaryKey(pkHelper.getPrimaryKey(id.split(PK_SEPARATOR)));
+            if(object != null) {
+                objects.put(id, object);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Bulk operations process objects in chunks of this size. Each chunk is loaded at once with
+     * {@link #loadObjectsByIdentifier(List)}, and after each one {@link #flushBulkChunk()} is called.
+     * @return the size of a chunk. By default, all the objects are processed in a single chunk.
+     */
+    protected int getBulkChunkSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Called after each chunk of a bulk operation when there's more than one chunk, to write pending changes
+     * and release memory. The default implementation does nothing.
+     */
+    protected void flushBulkChunk() {}
+
     protected String getDeleteDeniedMessage() {
         return ElementsThreadLocals.getText("the.deleteValidate.method.returned.false");
     }
@@ -1932,15 +2337,20 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
     protected List<String> bulkDelete(List<String> ids) throws Exception {
         List<T> objects = new ArrayList<>(ids.size());
         List<String> deleted = new ArrayList<>();
-        for (String current : ids) {
-            String[] pkArr = current.split("/");
-            Serializable pkObject = pkHelper.getPrimaryKey(pkArr);
-            T obj = loadObjectByPrimaryKey(pkObject);
-            if(obj != null && deleteValidate(obj)) {
-                doDelete(obj);
-                deletePostProcess(obj);
-                objects.add(obj);
-                deleted.add(current);
+        List<List<String>> chunks = Lists.partition(ids, getBulkChunkSize());
+        for (List<String> chunk : chunks) {
+            Map<String, T> loaded = loadObjectsByIdentifier(chunk);
+            for (String current : chunk) {
+                T obj = loaded.get(current);
+                if(obj != null && deleteValidate(obj)) {
+                    doDelete(obj);
+                    deletePostProcess(obj);
+                    objects.add(obj);
+                    deleted.add(current);
+                }
+            }
+            if(chunks.size() > 1) {
+                flushBulkChunk();
             }
         }
         commitTransaction();
@@ -2107,6 +2517,14 @@ public abstract class AbstractCrudAction<T extends Serializable> extends Abstrac
         this.sortDirection = sortDirection;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public String getPropertyName() {
         return propertyName;
     }
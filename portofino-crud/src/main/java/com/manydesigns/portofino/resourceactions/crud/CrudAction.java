@@ -20,6 +20,8 @@
 
 package com.manydesigns.portofino.resourceactions.crud;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.manydesigns.elements.ElementsThreadLocals;
 import com.manydesigns.elements.annotations.Insertable;
 import com.manydesigns.elements.annotations.Updatable;
@@ -27,10 +29,12 @@ import com.manydesigns.elements.messages.RequestMessages;
 import com.manydesigns.elements.reflection.ClassAccessor;
 import com.manydesigns.elements.reflection.PropertyAccessor;
 import com.manydesigns.elements.text.QueryStringWithParameters;
+import com.manydesigns.portofino.model.database.Column;
 import com.manydesigns.portofino.model.database.Database;
 import com.manydesigns.portofino.model.database.DatabaseLogic;
 import com.manydesigns.portofino.model.database.ForeignKey;
 import com.manydesigns.portofino.model.database.Table;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatform;
 import com.manydesigns.portofino.persistence.Persistence;
 import com.manydesigns.portofino.persistence.QueryUtils;
 import com.manydesigns.portofino.persistence.TableCriteria;
@@ -52,6 +56,7 @@ import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.select.SelectExpressionItem;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -60,10 +65,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.Serializable;
 import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -85,7 +88,7 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
 
     public static final String[][] CRUD_CONFIGURATION_FIELDS =
                 {{"name", "database", "query", "searchTitle", "createTitle", "readTitle", "editTitle", "variable",
-                  "largeResultSet", "rowsPerPage", "columns"}};
+                  "largeResultSet", "totalRecordsMode", "streamingSearch", "rowsPerPage", "columns"}};
 
     public Table baseTable;
 
@@ -99,6 +102,36 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     public Persistence persistence;
 
     protected long totalSearchRecords = -1;
+    protected boolean totalSearchRecordsExact = true;
+    protected boolean baseTableModified;
+
+    protected static Cache<List<Object>, CountQuery> countQueryCache;
+
+    static {
+        initCountQueryCache(1000);
+    }
+
+    /**
+     * Initializes the cache of generated count queries, discarding its previous content.
+     * @param maxSize the maximum number of cached queries.
+     */
+    public static void initCountQueryCache(int maxSize) {
+        countQueryCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    public static void clearCountQueryCache() {
+        countQueryCache.invalidateAll();
+    }
+
+    protected static class CountQuery {
+        public final String queryString;
+        public final boolean unfiltered;
+
+        public CountQuery(String queryString, boolean unfiltered) {
+            this.queryString = queryString;
+            this.unfiltered = unfiltered;
+        }
+    }
 
     //**************************************************************************
     // Logging
@@ -107,6 +140,9 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     public static final Logger logger =
             LoggerFactory.getLogger(CrudAction.class);
 
+    public static final String BULK_CHUNK_SIZE = "crud.bulk.chunk.size";
+    public static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+
     @Override
     public long getTotalSearchRecords() {
         if(totalSearchRecords < 0) {
@@ -115,6 +151,11 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
         return totalSearchRecords;
     }
 
+    @Override
+    public boolean isTotalSearchRecordsExact() {
+        return totalSearchRecordsExact;
+    }
+
     protected long calculateTotalSearchRecords() {
         TableCriteria criteria = new TableCriteria(baseTable);
         if(searchForm != null) {
@@ -124,17 +165,100 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
                 QueryUtils.mergeQuery(getBaseQuery(), criteria, this);
 
         String queryString = query.getQueryString();
-        String totalRecordsQueryString;
-        try {
-            totalRecordsQueryString = generateCountQuery(queryString);
-        } catch (JSQLParserException e) {
-            throw new Error(e);
+        CountQuery countQuery = getCountQuery(queryString);
+        totalSearchRecordsExact = true;
+        CrudConfiguration.TotalRecordsMode totalRecordsMode = getTotalRecordsMode();
+        if(totalRecordsMode == CrudConfiguration.TotalRecordsMode.ESTIMATED && countQuery.unfiltered) {
+            Long estimate = estimateTotalSearchRecords();
+            if(estimate != null) {
+                totalSearchRecordsExact = false;
+                return totalSearchRecords = estimate;
+            }
+        } else if(totalRecordsMode == CrudConfiguration.TotalRecordsMode.NONE) {
+            //Never count: the total is a lower bound computed from the current page, if it has been loaded
+            int first = firstResult != null ? firstResult : 0;
+            int loaded = objects != null ? objects.size() : 0;
+            totalSearchRecords = first + loaded;
+            if(objects == null || (maxResults != null && loaded >= maxResults)) {
+                //Only look for the first record after the current page
+                List<Object> next = QueryUtils.runHqlQuery(
+                        session, queryString, query.getParameters(), first + loaded, 1);
+                totalSearchRecords += next.size();
+                totalSearchRecordsExact = next.isEmpty();
+            }
+            return totalSearchRecords;
         }
         //TODO gestire count non disponibile (totalRecordsQueryString == null)
-        List<Object> result = QueryUtils.runHqlQuery(session, totalRecordsQueryString, query.getParameters());
+        List<Object> result = QueryUtils.runHqlQuery(session, countQuery.queryString, query.getParameters());
         return totalSearchRecords = ((Number) result.get(0)).longValue();
     }
 
+    /**
+     * Returns the count query for the given (merged) search query. Count queries are cached, since the merged
+     * query only depends on the base query and on the shape of the search criteria.
+     * @param queryString the search query.
+     * @return the count query.
+     */
+    protected CountQuery getCountQuery(String queryString) {
+        List<Object> cacheKey = Arrays.asList(getClass(), queryString);
+        CountQuery countQuery = countQueryCache.getIfPresent(cacheKey);
+        if(countQuery == null) {
+            try {
+                countQuery = new CountQuery(generateCountQuery(queryString), isUnfilteredQuery(queryString));
+            } catch (JSQLParserException e) {
+                throw new Error(e);
+            }
+            countQueryCache.put(cacheKey, countQuery);
+        }
+        return countQuery;
+    }
+
+    /**
+     * Tells whether a query selects all the rows of a single entity, so that the row count estimated
+     * by the database for the table is an estimate of the number of results as well.
+     * @param queryString the query.
+     * @return true if the query has no where, join, group by or distinct clauses.
+     */
+    protected boolean isUnfilteredQuery(String queryString) {
+        try {
+            PlainSelect plainSelect = QueryUtils.parseQuery(new CCJSqlParserManager(), queryString);
+            return plainSelect.getWhere() == null &&
+                   (plainSelect.getJoins() == null || plainSelect.getJoins().isEmpty()) &&
+                   plainSelect.getGroupByColumnReferences() == null &&
+                   plainSelect.getDistinct() == null;
+        } catch (JSQLParserException e) {
+            logger.debug("Could not parse query " + queryString, e);
+            return false;
+        }
+    }
+
+    /**
+     * Estimates the number of records in the base table using the statistics of the database, through
+     * {@link DatabasePlatform#getEstimatedRowCount(java.sql.Connection, Table)}.
+     * @return the estimate, or null if it's not available.
+     */
+    protected Long estimateTotalSearchRecords() {
+        DatabasePlatform platform = getCrudConfiguration().getActualDatabase().getConnectionProvider().getDatabasePlatform();
+        if(platform == null) {
+            return null;
+        }
+        try {
+            return session.doReturningWork(connection -> platform.getEstimatedRowCount(connection, baseTable));
+        } catch (Exception e) {
+            logger.warn("Could not estimate the number of rows of " + baseTable.getQualifiedName(), e);
+            return null;
+        }
+    }
+
+    protected CrudConfiguration.TotalRecordsMode getTotalRecordsMode() {
+        CrudConfiguration configuration = getCrudConfiguration();
+        if(configuration.isLargeResultSet() && configuration.getTotalRecordsMode() != null) {
+            return configuration.getTotalRecordsMode();
+        } else {
+            return CrudConfiguration.TotalRecordsMode.EXACT;
+        }
+    }
+
     protected String generateCountQuery(String queryString) throws JSQLParserException {
         CCJSqlParserManager parserManager = new CCJSqlParserManager();
         try {
@@ -166,6 +290,24 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     @Override
     protected void commitTransaction() {
         session.getTransaction().commit();
+        if(baseTableModified) {
+            //Again, in case another request has cached the data before the commit
+            persistence.tableWrites.onNext(baseTable);
+            baseTableModified = false;
+        }
+    }
+
+    /**
+     * Invalidates the cached data that depends on the base table, which has been modified, by publishing it to
+     * {@link Persistence#tableWrites}. This includes the selection provider options cached by
+     * {@link ModelSelectionProviderSupport}. The table is published on the first modification in a transaction,
+     * after each chunk of a bulk operation, and after the commit, rather than once per modified row.
+     */
+    protected void baseTableModified() {
+        if(!baseTableModified) {
+            baseTableModified = true;
+            persistence.tableWrites.onNext(baseTable);
+        }
     }
 
     @Override
@@ -179,6 +321,7 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     protected void doSave(T object) {
         try {
             session.save(baseTable.getActualEntityName(), object);
+            baseTableModified();
         } catch(ConstraintViolationException e) {
             logger.warn("Constraint violation in save", e);
             throw new RuntimeException(ElementsThreadLocals.getText("save.failed.because.constraint.violated"));
@@ -196,6 +339,7 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     protected void doUpdate(T object) {
         try {
             session.update(baseTable.getActualEntityName(), object);
+            baseTableModified();
         } catch(ConstraintViolationException e) {
             logger.warn("Constraint violation in update", e);
             throw new RuntimeException(ElementsThreadLocals.getText("save.failed.because.constraint.violated"));
@@ -212,6 +356,68 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     @Override
     protected void doDelete(T object) {
         session.delete(baseTable.getActualEntityName(), object);
+        baseTableModified();
+    }
+
+    /**
+     * Loads all the objects with a single query over the base query, restricting the primary key to the requested
+     * values: with an IN for single-column keys, and with an OR of (k1 = ? AND k2 = ? ...) for composite keys.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<String, T> loadObjectsByIdentifier(List<String> ids) {
+        PropertyAccessor[] keyProperties = classAccessor.getKeyProperties();
+        Map<String, String> idsByPkString = new HashMap<>();
+        Set<Object> keyValues = new LinkedHashSet<>();
+        List<Object[]> keys = new ArrayList<>();
+        for (String id : ids) {
+            Serializable pkObject = pkHelper.getPrimaryKey(id.split(PK_SEPARATOR));
+            if(idsByPkString.put(pkHelper.getPkString(pkObject), id) != null) {
+                continue;
+            }
+            if(keyProperties.length == 1) {
+                keyValues.add(keyProperties[0].get(pkObject));
+            } else {
+                Object[] key = new Object[keyProperties.length];
+                for (int i = 0; i < keyProperties.length; i++) {
+                    key[i] = keyProperties[i].get(pkObject);
+                }
+                keys.add(key);
+            }
+        }
+        TableCriteria criteria = new TableCriteria(baseTable);
+        if(keyProperties.length == 1) {
+            criteria.in(keyProperties[0], keyValues.toArray());
+        } else {
+            criteria.keysIn(keyProperties, keys);
+        }
+        List<Object> candidates = QueryUtils.getObjects(session, getBaseQuery(), criteria, this, null, null);
+        Map<String, T> objects = new HashMap<>();
+        for (Object candidate : candidates) {
+            String id = idsByPkString.get(pkHelper.getPkString(candidate));
+            if(id != null) {
+                objects.put(id, (T) candidate);
+            }
+        }
+        return objects;
+    }
+
+    @Override
+    protected int getBulkChunkSize() {
+        return portofinoConfiguration.getInt(BULK_CHUNK_SIZE, DEFAULT_BULK_CHUNK_SIZE);
+    }
+
+    /**
+     * Flushes pending changes (sent in JDBC batches, see {@link Persistence#JDBC_BATCH_SIZE}) and clears the session,
+     * so that the objects of processed chunks can be garbage collected.
+     */
+    @Override
+    protected void flushBulkChunk() {
+        session.flush();
+        session.clear();
+        if(baseTableModified) {
+            persistence.tableWrites.onNext(baseTable);
+        }
     }
 
     //**************************************************************************
@@ -307,15 +513,12 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
             if(searchForm != null) {
                 searchForm.configureCriteria(criteria);
             }
-            if(!StringUtils.isBlank(sortProperty) && !StringUtils.isBlank(sortDirection)) {
-                try {
-                    PropertyAccessor orderByProperty = getOrderByProperty(sortProperty);
-                    if(orderByProperty != null)
-                        criteria.orderBy(orderByProperty, sortDirection);
-                } catch (NoSuchFieldException e) {
-                    logger.error("Can't order by " + sortProperty + ", property accessor not found", e);
-                }
+            if(isKeysetPagination()) {
+                configureKeysetCriteria(criteria);
+                objects = (List) QueryUtils.getObjects(session, getBaseQuery(), criteria, this, null, maxResults);
+                return objects;
             }
+            configureSortCriteria(criteria);
             objects = (List) QueryUtils.getObjects(session, getBaseQuery(), criteria, this, firstResult, maxResults);
         } catch (ClassCastException e) {
             objects = new ArrayList<>();
@@ -326,10 +529,108 @@ public class CrudAction<T extends Serializable> extends AbstractCrudAction<T> {
     }
 
     /**
-     * @return an PropertyAccessor object
+     * Reads the search results one at a time with a forward-only cursor, detaching each object from the session after
+     * it's been consumed, so that they can be garbage collected.
      */
-    protected PropertyAccessor getOrderByProperty(String sortProperty) throws NoSuchFieldException {
-        return this.classAccessor.getProperty(sortProperty);
+    @Override
+    @SuppressWarnings("unchecked")
+    protected int forEachSearchResult(Consumer<T> consumer) {
+        TableCriteria criteria = new TableCriteria(baseTable);
+        if(searchForm != null) {
+            searchForm.configureCriteria(criteria);
+        }
+        configureSortCriteria(criteria);
+        int count = 0;
+        ScrollableResults results =
+                QueryUtils.scrollObjects(session, getBaseQuery(), criteria, this, firstResult, maxResults);
+        try {
+            while (results.next()) {
+                T object = (T) results.get(0);
+                consumer.accept(object);
+                session.evict(object);
+                count++;
+            }
+        } finally {
+            results.close();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isStreamingSearch() {
+        //The NONE mode relies on the loaded page to compute the total
+        return super.isStreamingSearch() && getTotalRecordsMode() != CrudConfiguration.TotalRecordsMode.NONE;
+    }
+
+    @Override
+    public boolean isKeysetPaginationSupported() {
+        return true;
+    }
+
+    /**
+     * Only properties mapped to a column of the base table can be used, since the query sorts and seeks on them.
+     */
+    @Override
+    protected boolean isKeysetSortProperty(PropertyAccessor property) {
+        return super.isKeysetSortProperty(property) &&
+               DatabaseLogic.findColumnByPropertyName(baseTable, property.getName()) != null;
+    }
+
+    /**
+     * Sorts the results by the sort property (if any) and then by primary key, and, if a cursor is given,
+     * restricts them to those following the position it encodes.
+     * @param criteria the criteria to configure.
+     */
+    protected void configureKeysetCriteria(TableCriteria criteria) {
+        String direction = "desc".equalsIgnoreCase(sortDirection) ? "desc" : "asc";
+        PropertyAccessor sortAccessor = getKeysetSortProperty();
+        PropertyAccessor[] keyProperties = classAccessor.getKeyProperties();
+        List<PropertyAccessor> accessors = new ArrayList<>();
+        if(sortAccessor != null) {
+            accessors.add(sortAccessor);
+        }
+        for(PropertyAccessor keyProperty : keyProperties) {
+            if(sortAccessor == null || !keyProperty.getName().equals(sortAccessor.getName())) {
+                accessors.add(keyProperty);
+            }
+        }
+        boolean nullable = false;
+        if(sortAccessor != null && accessors.size() > keyProperties.length) {
+            Column column = DatabaseLogic.findColumnByPropertyName(baseTable, sortAccessor.getName());
+            nullable = column.isNullable();
+        }
+        criteria.orderBy(accessors.get(0), direction);
+        for(PropertyAccessor accessor : accessors.subList(1, accessors.size())) {
+            criteria.thenOrderBy(accessor, direction);
+        }
+        if(nullable) {
+            criteria.nullsLast();
+        }
+        if(!StringUtils.isEmpty(cursor)) {
+            Object[] cursorValues = decodeCursor(cursor);
+            List<Object> values = new ArrayList<>();
+            if(sortAccessor != null) {
+                values.add(cursorValues[0]);
+            }
+            for(int i = 0; i < keyProperties.length; i++) {
+                if(sortAccessor == null || !keyProperties[i].getName().equals(sortAccessor.getName())) {
+                    values.add(cursorValues[i + 1]);
+                }
+            }
+            criteria.seek(accessors.toArray(new PropertyAccessor[0]), values.toArray(), direction, nullable);
+        }
+    }
+
+    protected void configureSortCriteria(TableCriteria criteria) {
+        if(!StringUtils.isBlank(sortProperty) && !StringUtils.isBlank(sortDirection)) {
+            try {
+                PropertyAccessor orderByProperty = getOrderByProperty(sortProperty);
+                if(orderByProperty != null)
+                    criteria.orderBy(orderByProperty, sortDirection);
+            } catch (NoSuchFieldException e) {
+                logger.error("Can't order by " + sortProperty + ", property accessor not found", e);
+            }
+        }
     }
 
     /**
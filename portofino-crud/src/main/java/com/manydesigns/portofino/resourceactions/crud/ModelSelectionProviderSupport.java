@@ -20,11 +20,16 @@
 
 package com.manydesigns.portofino.resourceactions.crud;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.manydesigns.elements.ElementsThreadLocals;
 import com.manydesigns.elements.annotations.ShortName;
+import com.manydesigns.elements.fields.search.Criteria;
+import com.manydesigns.elements.fields.search.TextMatchMode;
 import com.manydesigns.elements.options.*;
+import com.manydesigns.elements.reflection.PropertyAccessor;
 import com.manydesigns.elements.text.OgnlSqlFormat;
 import com.manydesigns.elements.text.OgnlTextFormat;
 import com.manydesigns.elements.text.QueryStringWithParameters;
@@ -32,6 +37,7 @@ import com.manydesigns.elements.text.TextFormat;
 import com.manydesigns.portofino.resourceactions.crud.configuration.database.SelectionProviderReference;
 import com.manydesigns.portofino.persistence.Persistence;
 import com.manydesigns.portofino.persistence.QueryUtils;
+import com.manydesigns.portofino.persistence.TableCriteria;
 import com.manydesigns.portofino.logic.SelectionProviderLogic;
 import com.manydesigns.portofino.model.database.*;
 import com.manydesigns.portofino.resourceactions.crud.configuration.CrudProperty;
@@ -44,6 +50,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -303,76 +314,338 @@ public class ModelSelectionProviderSupport implements SelectionProviderSupport {
                     "refers to an entity that does not exist ({})", name, hql);
             return null;
         }
-        return new MemoizingOptionProvider(() -> {
-            String entityName = table.getActualEntityName();
-            Session session = persistence.getSession(databaseName);
-            QueryStringWithParameters queryWithParameters = QueryUtils.mergeQuery(hql, null, this);
-
-            Collection<Object> objects = getFromQueryCache(selectionProvider, queryWithParameters);
-            if (objects == null) {
-                String queryString = queryWithParameters.getQueryString();
-                Object[] parameters = queryWithParameters.getParameters();
-                logger.debug("Query not in cache: {}", queryString);
-                try {
-                    objects = QueryUtils.runHqlQuery(session, queryString, parameters);
-                } catch (Exception e) {
-                    logger.error("Exception in populating selection provider " + name, e);
-                    return null;
-                }
-                putInQueryCache(selectionProvider, queryWithParameters, objects);
+        return new HQLOptionProvider(selectionProvider, table, hql);
+    }
+
+    @NotNull
+    protected OptionProvider createSQLOptionProvider(
+            DatabaseSelectionProvider selectionProvider, Class[] fieldTypes, String name, String databaseName, String sql) {
+        return new QueryOptionProvider(selectionProvider) {
+            @Override
+            protected QueryStringWithParameters getQuery() {
+                OgnlSqlFormat sqlFormat = OgnlSqlFormat.create(sql);
+                return new QueryStringWithParameters(
+                        sqlFormat.getFormatString(), sqlFormat.evaluateOgnlExpressions(ModelSelectionProviderSupport.this));
+            }
+
+            @Override
+            protected Collection runQuery(Session session, QueryStringWithParameters query) {
+                return QueryUtils.runSql(session, query.getQueryString(), query.getParameters());
+            }
+
+            @Override
+            protected List<Option> toOptions(Collection objects) {
+                return ((Collection<Object[]>) objects).stream()
+                        .map(o -> SelectionProviderLogic.getOption(fieldTypes, o))
+                        .collect(Collectors.toList());
+            }
+        };
+    }
+
+    protected CachedQueryResult getCachedQueryResult(
+            DatabaseSelectionProvider sp, QueryStringWithParameters queryWithParameters) {
+        if(getCacheTimeToLive(sp) <= 0) {
+            return null;
+        }
+        List<Object> key = getQueryCacheKey(sp, queryWithParameters);
+        CachedQueryResult result = queryCache.getIfPresent(key);
+        if(result == null) {
+            return null;
+        } else if(result.expiresAt < System.currentTimeMillis() || result.version != getTableVersion(result.tableKey)) {
+            queryCache.invalidate(key);
+            return null;
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * Caches the options computed from the results of a query. Only plain option values are cached, not the
+     * objects returned by the query, which belong to the session of the request.
+     * @param tableKey the table the options are read from, see {@link #getTableKey(DatabaseSelectionProvider)}.
+     * @param version the version of the table before the query was run, so that writes published while the query
+     *                was running invalidate the entry.
+     */
+    protected void putInOptionsCache(
+            DatabaseSelectionProvider sp, QueryStringWithParameters queryWithParameters, List<OptionProvider.Option> options,
+            List<String> tableKey, long version) {
+        int timeToLive = getCacheTimeToLive(sp);
+        if(timeToLive <= 0) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + timeToLive * 1000L;
+        queryCache.put(
+                getQueryCacheKey(sp, queryWithParameters),
+                new CachedQueryResult(tableKey, version, Collections.unmodifiableList(options), expiresAt));
+    }
+
+    /**
+     * Returns the database and the table a selection provider reads its options from. With an unknown table, the
+     * options are invalidated by writes to any table of the database.
+     */
+    protected List<String> getTableKey(DatabaseSelectionProvider sp) {
+        String databaseName = sp.getToDatabase();
+        Table table = null;
+        if(!StringUtils.isEmpty(sp.getHql())) {
+            table = QueryUtils.getTableFromQueryString(
+                    DatabaseLogic.findDatabaseByName(persistence.getModel(), databaseName), sp.getHql());
+        } else if(sp instanceof ForeignKey) {
+            table = sp.getToTable();
+        }
+        return Arrays.asList(databaseName, table != null ? table.getQualifiedName() : null);
+    }
+
+    protected List<Object> getQueryCacheKey(DatabaseSelectionProvider sp, QueryStringWithParameters query) {
+        Table fromTable = sp.getFromTable();
+        return Arrays.asList(
+                sp.getToDatabase(), fromTable != null ? fromTable.getQualifiedName() : null, sp.getName(), query);
+    }
+
+    protected int getCacheTimeToLive(DatabaseSelectionProvider sp) {
+        return sp.getCacheTimeToLive() != null ? sp.getCacheTimeToLive() : defaultCacheTimeToLive;
+    }
+
+    //**************************************************************************
+    // Option providers
+    //**************************************************************************
+
+    /**
+     * Loads the options from a query, going through the options cache. The index used to search the options by label
+     * is stored in the cache too, so it is built once per cached result rather than once per request.
+     */
+    protected abstract class QueryOptionProvider extends MemoizingOptionProvider {
+        protected final DatabaseSelectionProvider selectionProvider;
+        protected QueryStringWithParameters query;
+
+        public QueryOptionProvider(DatabaseSelectionProvider selectionProvider) {
+            this.selectionProvider = selectionProvider;
+        }
+
+        protected abstract QueryStringWithParameters getQuery();
+        protected abstract Collection runQuery(Session session, QueryStringWithParameters query);
+        protected abstract List<Option> toOptions(Collection objects);
+
+        @Override
+        protected List<Option> loadOptions() {
+            query = getQuery();
+            CachedQueryResult cached = getCachedQueryResult(selectionProvider, query);
+            if(cached != null) {
+                return cached.options;
+            }
+            logger.debug("Query not in cache: {}", query.getQueryString());
+            List<String> tableKey = getTableKey(selectionProvider);
+            long version = getTableVersion(tableKey);
+            Collection objects;
+            try {
+                objects = runQuery(persistence.getSession(selectionProvider.getToDatabase()), query);
+            } catch (Exception e) {
+                logger.error("Exception in populating selection provider " + selectionProvider.getName(), e);
+                return null;
+            }
+            List<Option> options = toOptions(objects);
+            putInOptionsCache(selectionProvider, query, options, tableKey, version);
+            return options;
+        }
+
+        @Override
+        protected LabelIndex createLabelIndex(List<Option> options) {
+            CachedQueryResult cached = query != null ? getCachedQueryResult(selectionProvider, query) : null;
+            if(cached == null || cached.options != options) {
+                return super.createLabelIndex(options);
             }
+            return cached.labelIndex;
+        }
+    }
+
+    /**
+     * Option provider for HQL queries. When the label of the options is a single string property of the entity,
+     * label searches are done by the database, restricting the query; otherwise, they are done in memory.
+     */
+    protected class HQLOptionProvider extends QueryOptionProvider {
+        protected final Table table;
+        protected final String hql;
+        protected TableAccessor tableAccessor;
+        protected TextFormat[] textFormats;
+        protected PropertyAccessor labelProperty;
+
+        public HQLOptionProvider(DatabaseSelectionProvider selectionProvider, Table table, String hql) {
+            super(selectionProvider);
+            this.table = table;
+            this.hql = hql;
+        }
 
-            TableAccessor tableAccessor =
-                    persistence.getTableAccessor(databaseName, entityName);
-            ShortName shortNameAnnotation =
-                    tableAccessor.getAnnotation(ShortName.class);
-            TextFormat[] textFormats = null;
+        protected void initTableAccessor() {
+            if(tableAccessor != null) {
+                return;
+            }
+            tableAccessor = persistence.getTableAccessor(table);
+            ShortName shortNameAnnotation = tableAccessor.getAnnotation(ShortName.class);
+            PropertyAccessor[] keyProperties = tableAccessor.getKeyProperties();
             //L'ordinamento e' usato solo in caso di chiave singola
-            if (shortNameAnnotation != null && tableAccessor.getKeyProperties().length == 1) {
+            if (shortNameAnnotation != null && keyProperties.length == 1) {
                 textFormats = new TextFormat[]{
                         OgnlTextFormat.create(shortNameAnnotation.value())
                 };
+                Matcher matcher = SINGLE_PROPERTY_SHORT_NAME.matcher(shortNameAnnotation.value());
+                if(matcher.matches()) {
+                    try {
+                        labelProperty = tableAccessor.getProperty(matcher.group(1));
+                    } catch (NoSuchFieldException e) {
+                        logger.debug("Short name of {} is not a property", table.getQualifiedName());
+                    }
+                }
+            } else if(keyProperties.length == 1) {
+                labelProperty = keyProperties[0];
             }
-            final TextFormat[] actualTextFormats = textFormats;
-            Stream<OptionProvider.Option> optionStream =
-                    objects.stream().map(o -> SelectionProviderLogic.getOption(
-                            name, tableAccessor.getKeyProperties(), actualTextFormats, o));
+            if(labelProperty != null && labelProperty.getType() != String.class) {
+                labelProperty = null;
+            }
+        }
+
+        @Override
+        protected QueryStringWithParameters getQuery() {
+            return QueryUtils.mergeQuery(hql, null, ModelSelectionProviderSupport.this);
+        }
+
+        @Override
+        protected Collection runQuery(Session session, QueryStringWithParameters query) {
+            return QueryUtils.runHqlQuery(session, query.getQueryString(), query.getParameters());
+        }
+
+        @Override
+        protected List<Option> toOptions(Collection objects) {
+            initTableAccessor();
+            Stream<Option> optionStream = ((Collection<Object>) objects).stream().map(o ->
+                    SelectionProviderLogic.getOption(
+                            selectionProvider.getName(), tableAccessor.getKeyProperties(), textFormats, o));
             if (selectionProvider instanceof ForeignKey) {
                 optionStream = optionStream.sorted(DefaultSelectionProvider.OPTION_COMPARATOR_BY_LABEL);
             }
             return optionStream.collect(Collectors.toList());
-        });
-    }
+        }
 
-    @NotNull
-    protected OptionProvider createSQLOptionProvider(
-            DatabaseSelectionProvider selectionProvider, Class[] fieldTypes, String name, String databaseName, String sql) {
-        return new MemoizingOptionProvider(() -> {
-            Session session = persistence.getSession(databaseName);
-            OgnlSqlFormat sqlFormat = OgnlSqlFormat.create(sql);
-            String formatString = sqlFormat.getFormatString();
-            Object[] parameters = sqlFormat.evaluateOgnlExpressions(this);
-            QueryStringWithParameters cacheKey = new QueryStringWithParameters(formatString, parameters);
-            Collection<Object[]> objects = getFromQueryCache(selectionProvider, cacheKey);
-            if (objects == null) {
-                logger.debug("Query not in cache: {}", formatString);
-                try {
-                    objects = QueryUtils.runSql(session, formatString, parameters);
-                } catch (Exception e) {
-                    logger.error("Exception in populating selection provider " + name, e);
-                    return null;
-                }
-                putInQueryCache(selectionProvider, cacheKey, objects);
+        /**
+         * Searches the options with a query, if the label is a single property and the options are not already
+         * loaded; each word of the search must be contained in the label, so this can match more options than
+         * {@link DefaultSelectionProvider#matchLabel(String, String)}.
+         */
+        @Override
+        public List<Option> getOptions(String labelSearch, Integer firstResult, Integer maxResults) {
+            initTableAccessor();
+            if(labelProperty == null || options != null) {
+                return super.getOptions(labelSearch, firstResult, maxResults);
+            }
+            String[] words = StringUtils.split(labelSearch, DefaultSelectionProvider.NON_WORD_CHARACTERS);
+            if(words == null || words.length == 0) {
+                return super.getOptions(labelSearch, firstResult, maxResults);
+            }
+            TableCriteria criteria = new TableCriteria(table);
+            for(String word : words) {
+                criteria.ilike(labelProperty, word, TextMatchMode.CONTAINS);
             }
-            return objects.stream().map(o -> SelectionProviderLogic.getOption(fieldTypes, o)).collect(Collectors.toList());
-        });
+            if (selectionProvider instanceof ForeignKey) {
+                criteria.orderBy(labelProperty, Criteria.OrderBy.ASC);
+            }
+            //Make the order deterministic, so that pages neither overlap nor skip options
+            for(PropertyAccessor keyProperty : tableAccessor.getKeyProperties()) {
+                criteria.finallyOrderBy(keyProperty, Criteria.OrderBy.ASC);
+            }
+            QueryStringWithParameters searchQuery =
+                    QueryUtils.mergeQuery(hql, criteria, ModelSelectionProviderSupport.this);
+            List<Object> objects;
+            try {
+                Session session = persistence.getSession(selectionProvider.getToDatabase());
+                objects = QueryUtils.runHqlQuery(
+                        session, searchQuery.getQueryString(), searchQuery.getParameters(), firstResult, maxResults);
+            } catch (Exception e) {
+                logger.error("Exception in searching selection provider " + selectionProvider.getName(), e);
+                return Collections.emptyList();
+            }
+            return objects.stream().map(o -> SelectionProviderLogic.getOption(
+                    selectionProvider.getName(), tableAccessor.getKeyProperties(), textFormats, o))
+                    .collect(Collectors.toList());
+        }
     }
 
-    protected void putInQueryCache(
-            DatabaseSelectionProvider sp, QueryStringWithParameters queryWithParameters, Collection objects) {}
+    /**
+     * A short name made of a single property, e.g. <code>%{name}</code>.
+     */
+    public static final Pattern SINGLE_PROPERTY_SHORT_NAME = Pattern.compile("\\s*%\\{\\s*(\\w+)\\s*\\}\\s*");
 
-    protected Collection getFromQueryCache(
-            DatabaseSelectionProvider sp, QueryStringWithParameters queryWithParameters) {
-        return null;
+    //**************************************************************************
+    // Query cache
+    //**************************************************************************
+
+    public static final String QUERY_CACHE_SIZE = "selection.provider.cache.size";
+    public static final String QUERY_CACHE_TIME_TO_LIVE = "selection.provider.cache.ttl";
+
+    protected static Cache<List<Object>, CachedQueryResult> queryCache;
+    protected static final ConcurrentMap<List<String>, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    protected static final AtomicLong cacheResets = new AtomicLong();
+    protected static int defaultCacheTimeToLive;
+
+    static {
+        initQueryCache(1000, 0);
+    }
+
+    /**
+     * Initializes the cache of selection provider options, shared by all requests, discarding its previous content.
+     * The cache is disabled by default. Cached options are invalidated by writes to the table they're read from
+     * that are published to {@link Persistence#tableWrites}, e.g. by CRUD actions; other writes, as well as writes
+     * to the tables joined by a query, are only seen when the entries expire.
+     * @param maxSize the maximum number of cached queries.
+     * @param defaultTimeToLive how long, in seconds, options are kept, unless the selection provider specifies
+     *                          otherwise. 0 disables caching.
+     */
+    public static void initQueryCache(int maxSize, int defaultTimeToLive) {
+        queryCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        defaultCacheTimeToLive = defaultTimeToLive;
+    }
+
+    public static void clearQueryCache() {
+        //Also discards the options of queries that are running now, which could have read stale data
+        cacheResets.incrementAndGet();
+        queryCache.invalidateAll();
+    }
+
+    /**
+     * Invalidates the cached options that may have been read from a table, because the table has been written to.
+     * Entries are not removed, but are discarded when they're next read.
+     * @param table the table.
+     */
+    public static void invalidateQueryCache(Table table) {
+        String databaseName = table.getDatabaseName();
+        tableVersions.computeIfAbsent(Arrays.asList(databaseName, table.getQualifiedName()), k -> new AtomicLong())
+                .incrementAndGet();
+        tableVersions.computeIfAbsent(Arrays.asList(databaseName, null), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Returns the version of a table, which changes whenever the table is written to or the cache is cleared.
+     */
+    protected static long getTableVersion(List<String> tableKey) {
+        AtomicLong version = tableVersions.get(tableKey);
+        return cacheResets.get() + (version != null ? version.get() : 0);
+    }
+
+    protected static class CachedQueryResult {
+        /** The database and the table the options are read from; the table is null if it's unknown. */
+        public final List<String> tableKey;
+        /** The version of the table when the options were read. */
+        public final long version;
+        public final List<OptionProvider.Option> options;
+        public final long expiresAt;
+        /**
+         * Index of the options, for autocomplete. Built before the entry is published, so that it can be shared.
+         */
+        public final LabelIndex labelIndex;
+
+        public CachedQueryResult(List<String> tableKey, long version, List<OptionProvider.Option> options, long expiresAt) {
+            this.tableKey = tableKey;
+            this.version = version;
+            this.options = options;
+            this.expiresAt = expiresAt;
+            this.labelIndex = new LabelIndex(options, 0);
+        }
     }
 }
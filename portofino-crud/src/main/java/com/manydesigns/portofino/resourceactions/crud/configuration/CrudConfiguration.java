@@ -17,7 +17,7 @@ import java.util.List;
 */
 
 @XmlRootElement(name = "configuration")
-@XmlType(name = "configuration",propOrder = {"name", "searchTitle","createTitle","readTitle","editTitle","variable","largeResultSet","rowsPerPage","useLocalOrder","properties"})
+@XmlType(name = "configuration",propOrder = {"name", "searchTitle","createTitle","readTitle","editTitle","variable","largeResultSet","totalRecordsMode","streamingSearch","rowsPerPage","useLocalOrder","properties"})
 @XmlAccessorType(value = XmlAccessType.NONE)
 public class CrudConfiguration implements ResourceActionConfiguration, ConfigurationWithDefaults {
     public static final String copyright =
@@ -35,9 +35,23 @@ public class CrudConfiguration implements ResourceActionConfiguration, Configura
     protected String editTitle;
     protected String variable;
     protected boolean largeResultSet;
+    protected TotalRecordsMode totalRecordsMode;
+    protected boolean streamingSearch;
     protected boolean useLocalOrder = false;
     protected Integer rowsPerPage;
 
+    /**
+     * How the total number of search results is computed when {@link #isLargeResultSet()} is true.
+     */
+    public enum TotalRecordsMode {
+        /** Run an exact count query (the default). */
+        EXACT,
+        /** Use the row count estimate of the database when the search is not filtered, else an exact count. */
+        ESTIMATED,
+        /** Don't count at all; only find out whether there are more results after the current page. */
+        NONE
+    }
+
     public CrudConfiguration() {
         properties = new ArrayList<>();
     }
@@ -131,6 +145,28 @@ public class CrudConfiguration implements ResourceActionConfiguration, Configura
         this.largeResultSet = largeResultSet;
     }
 
+    @XmlAttribute(required = false)
+    public TotalRecordsMode getTotalRecordsMode() {
+        return totalRecordsMode;
+    }
+
+    public void setTotalRecordsMode(TotalRecordsMode totalRecordsMode) {
+        this.totalRecordsMode = totalRecordsMode;
+    }
+
+    /**
+     * Whether search results are written to the response while they're read from the database, rather than
+     * being loaded in memory first. Disabled by default.
+     */
+    @XmlAttribute(required = false)
+    public boolean isStreamingSearch() {
+        return streamingSearch;
+    }
+
+    public void setStreamingSearch(boolean streamingSearch) {
+        this.streamingSearch = streamingSearch;
+    }
+
     @XmlAttribute(required = false)
     public Integer getRowsPerPage() {
         return rowsPerPage;
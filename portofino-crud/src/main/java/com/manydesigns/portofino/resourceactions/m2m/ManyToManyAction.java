@@ -26,6 +26,7 @@ import com.manydesigns.elements.annotations.ShortName;
 import com.manydesigns.elements.fields.SelectField;
 import com.manydesigns.elements.forms.Form;
 import com.manydesigns.elements.forms.FormBuilder;
+import com.manydesigns.elements.fields.search.Criteria;
 import com.manydesigns.elements.messages.RequestMessages;
 import com.manydesigns.elements.ognl.OgnlUtils;
 import com.manydesigns.elements.options.*;
@@ -43,6 +44,7 @@ import com.manydesigns.portofino.resourceactions.AbstractResourceAction;
 import com.manydesigns.portofino.resourceactions.ResourceActionName;
 import com.manydesigns.portofino.resourceactions.annotations.ConfigurationClass;
 import com.manydesigns.portofino.resourceactions.annotations.ScriptTemplate;
+import com.manydesigns.portofino.resourceactions.crud.CrudAction;
 import com.manydesigns.portofino.resourceactions.m2m.configuration.ManyToManyConfiguration;
 import com.manydesigns.portofino.resourceactions.m2m.configuration.SelectionProviderReference;
 import com.manydesigns.portofino.resourceactions.m2m.configuration.ViewType;
@@ -96,9 +98,14 @@ public class ManyToManyAction extends AbstractResourceAction {
     protected Object onePk;
 
     protected List existingAssociations;
+    protected Map<Object, Object> existingAssociationsByManyPk;
     protected List availableAssociations;
     protected List potentiallyAvailableAssociations;
 
+    //Paging of the "many" side, null means no limit
+    protected Integer firstResult;
+    protected Integer maxResults;
+
     protected TableAccessor relationTableAccessor;
     protected TableAccessor manyTableAccessor;
 
@@ -144,8 +151,8 @@ public class ManyToManyAction extends AbstractResourceAction {
             return this; //TODO WebApplicationException instead?
         }
         Table table = m2mConfiguration.getActualRelationTable();
-        relationTableAccessor = new TableAccessor(table);
-        manyTableAccessor = new TableAccessor(m2mConfiguration.getActualManyTable());
+        relationTableAccessor = persistence.getTableAccessor(table);
+        manyTableAccessor = persistence.getTableAccessor(m2mConfiguration.getActualManyTable());
         if(StringUtils.isBlank(m2mConfiguration.getActualOnePropertyName())) {
             logger.error("One property name not set");
             return this;
@@ -168,7 +175,7 @@ public class ManyToManyAction extends AbstractResourceAction {
                     return this;
                 }
 
-                TableAccessor tableAccessor = new TableAccessor(m2mConfiguration.getActualRelationTable());
+                TableAccessor tableAccessor = persistence.getTableAccessor(m2mConfiguration.getActualRelationTable());
                 PropertyAccessor onePkAccessor = null;
                 try {
                     onePkAccessor = tableAccessor.getProperty(m2mConfiguration.getActualOnePropertyName());
@@ -244,17 +251,19 @@ public class ManyToManyAction extends AbstractResourceAction {
     }
 
     protected void loadAssociations() throws NoSuchFieldException {
+        loadExistingAssociations();
+        loadAvailableAssociations();
+    }
+
+    /**
+     * Loads the relations of the current "one" object, indexing them by the primary key of the "many" side.
+     */
+    protected void loadExistingAssociations() throws NoSuchFieldException {
         Table table = m2mConfiguration.getActualRelationTable();
         TableCriteria criteria = new TableCriteria(table);
         //TODO chiave multipla
-        String onePropertyName = m2mConfiguration.getActualOnePropertyName();
-        PropertyAccessor onePropertyAccessor =
-                relationTableAccessor.getProperty(onePropertyName);
-        //TODO chiave multipla
-        SelectionProviderReference manySelectionProvider = m2mConfiguration.getManySelectionProvider();
-        String manyPropertyName = manySelectionProvider.getActualSelectionProvider().getReferences().get(0).getActualFromColumn().getActualPropertyName();
-        PropertyAccessor manyPropertyAccessor =
-                relationTableAccessor.getProperty(manyPropertyName);
+        PropertyAccessor onePropertyAccessor = getOnePropertyAccessor();
+        PropertyAccessor manyPropertyAccessor = getManyPropertyAccessor();
         criteria = criteria.eq(onePropertyAccessor, onePk);
         QueryStringWithParameters queryString;
         try {
@@ -265,39 +274,70 @@ public class ManyToManyAction extends AbstractResourceAction {
         }
         existingAssociations =
                 QueryUtils.runHqlQuery(session, queryString.getQueryString(), queryString.getParameters());
+        existingAssociationsByManyPk = new HashMap<>();
+        for(Object association : existingAssociations) {
+            existingAssociationsByManyPk.putIfAbsent(manyPropertyAccessor.get(association), association);
+        }
+    }
+
+    /**
+     * Loads the objects on the "many" side, limited to the page given by {@link #firstResult} and
+     * {@link #maxResults} if any, and determines which of them are not associated yet.
+     */
+    protected void loadAvailableAssociations() throws NoSuchFieldException {
         availableAssociations = new ArrayList<Object>();
 
+        SelectionProviderReference manySelectionProvider = m2mConfiguration.getManySelectionProvider();
         String databaseName = ((DatabaseSelectionProvider) manySelectionProvider.getActualSelectionProvider()).getToDatabase();
         String hql = ((DatabaseSelectionProvider) manySelectionProvider.getActualSelectionProvider()).getHql();
 
          if (!StringUtils.isEmpty(hql)) {
             Session selectionProviderSession = persistence.getSession(databaseName);
 
-            QueryStringWithParameters manyQuery = QueryUtils.mergeQuery(hql, null, this);
-            potentiallyAvailableAssociations =QueryUtils.runHqlQuery(selectionProviderSession, manyQuery.getQueryString(), manyQuery.getParameters());
+            TableCriteria criteria = null;
+            if(firstResult != null || maxResults != null) {
+                //Make the order deterministic, so that pages neither overlap nor skip objects
+                criteria = new TableCriteria(m2mConfiguration.getActualManyTable());
+                for(PropertyAccessor keyProperty : manyTableAccessor.getKeyProperties()) {
+                    criteria.finallyOrderBy(keyProperty, Criteria.OrderBy.ASC);
+                }
+            }
+            QueryStringWithParameters manyQuery = QueryUtils.mergeQuery(hql, criteria, this);
+            potentiallyAvailableAssociations = QueryUtils.runHqlQuery(
+                    selectionProviderSession, manyQuery.getQueryString(), manyQuery.getParameters(),
+                    firstResult, maxResults);
         }else{
              throw new RuntimeException("Couldn't determine many query");
         }
 
-        PropertyAccessor[] manyKeyProperties = manyTableAccessor.getKeyProperties();
-        //TODO handle manyKeyProperties.length > 1
-        PropertyAccessor manyPkAccessor = manyTableAccessor.getProperty(manyKeyProperties[0].getName());
+        PropertyAccessor manyPkAccessor = getManyPkAccessor();
         for(Object o : potentiallyAvailableAssociations) {
             Object oPk = manyPkAccessor.get(o);
-            boolean existing = isExistingAssociation(manyPropertyAccessor, oPk);
-            if(!existing) {
+            if(!isExistingAssociation(oPk)) {
                 availableAssociations.add(o);
             }
         }
     }
 
-    private boolean isExistingAssociation(PropertyAccessor manyPropertyAccessor, Object oPk) {
-        for(Object a : existingAssociations) {
-            if(oPk.equals(manyPropertyAccessor.get(a))) {
-                return true;
-            }
-        }
-        return false;
+    protected boolean isExistingAssociation(Object manyPk) {
+        return existingAssociationsByManyPk.containsKey(manyPk);
+    }
+
+    protected PropertyAccessor getOnePropertyAccessor() throws NoSuchFieldException {
+        return relationTableAccessor.getProperty(m2mConfiguration.getActualOnePropertyName());
+    }
+
+    protected PropertyAccessor getManyPropertyAccessor() throws NoSuchFieldException {
+        //TODO chiave multipla
+        SelectionProviderReference manySelectionProvider = m2mConfiguration.getManySelectionProvider();
+        String manyPropertyName = manySelectionProvider.getActualSelectionProvider().getReferences().get(0).getActualFromColumn().getActualPropertyName();
+        return relationTableAccessor.getProperty(manyPropertyName);
+    }
+
+    protected PropertyAccessor getManyPkAccessor() throws NoSuchFieldException {
+        PropertyAccessor[] manyKeyProperties = manyTableAccessor.getKeyProperties();
+        //TODO handle manyKeyProperties.length > 1
+        return manyTableAccessor.getProperty(manyKeyProperties[0].getName());
     }
 
     protected void deleteRelation(Object rel) {
@@ -504,13 +544,20 @@ public class ManyToManyAction extends AbstractResourceAction {
     /**
      * Handles available associations for given key
      * @param key the key string
+     * @param firstResult the index of the first object of the "many" side to return (optional)
+     * @param maxResults the maximum number of objects of the "many" side to return (optional)
      * @since 4.2.1
      * @return available associations set results as JSON.
      */
     @GET
     @Path(":availableAssociations/{key}")
     @Produces(MimeTypes.APPLICATION_JSON_UTF8)
-    public Response getAssociations(@PathParam("key") String key) {
+    public Response getAssociations(
+            @PathParam("key") String key,
+            @QueryParam("firstResult") Integer firstResult,
+            @QueryParam("maxResults") Integer maxResults) {
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
         try {
             loadOnePk(key);
         }catch (Exception e){
@@ -520,7 +567,7 @@ public class ManyToManyAction extends AbstractResourceAction {
     }
 
     protected void loadOnePk(Object key) throws Exception{
-        TableAccessor tableAccessor = new TableAccessor(m2mConfiguration.getActualRelationTable());
+        TableAccessor tableAccessor = persistence.getTableAccessor(m2mConfiguration.getActualRelationTable());
         PropertyAccessor onePkAccessor = tableAccessor.getProperty(m2mConfiguration.getActualOnePropertyName());
 
         if(onePkAccessor == null) {
@@ -565,46 +612,71 @@ public class ManyToManyAction extends AbstractResourceAction {
             }
 
             try {
-                loadAssociations();
+                //The "many" side is not needed to update the relation
+                loadExistingAssociations();
             } catch (Exception e) {
                 logger.error("Could not load associations", e);
                 return Response.serverError().entity(e).build();
             }
 
             PkHelper pkHelper = new PkHelper(manyTableAccessor);
-            //TODO chiave multipla
-            String onePropertyName = m2mConfiguration.getActualOnePropertyName();
-            PropertyAccessor onePropertyAccessor = relationTableAccessor.getProperty(onePropertyName);
-            //TODO chiave multipla
-            String manyPropertyName = m2mConfiguration.getManySelectionProvider().getActualSelectionProvider().getReferences().get(0).getActualFromColumn().getActualPropertyName();
-            PropertyAccessor manyPropertyAccessor = relationTableAccessor.getProperty(manyPropertyName);
-            PropertyAccessor[] manyKeyProperties = manyTableAccessor.getKeyProperties();
-            //TODO handle manyKeyProperties.length > 1
-            PropertyAccessor manyPkAccessor = manyTableAccessor.getProperty(manyKeyProperties[0].getName());
+            PropertyAccessor onePropertyAccessor = getOnePropertyAccessor();
+            PropertyAccessor manyPropertyAccessor = getManyPropertyAccessor();
+            PropertyAccessor manyPkAccessor = getManyPkAccessor();
+            //Writes are flushed every chunkSize relations (in JDBC batches, see Persistence.JDBC_BATCH_SIZE) and the
+            //session is cleared, so that updating tens of thousands of relations doesn't keep them all in memory
+            int chunkSize = getBulkChunkSize();
+            int pendingWrites = 0;
             for(String pkString : selectedPrimaryKeys) {
                 Serializable pkObject = pkHelper.getPrimaryKey(pkString.split("/"));
                 Object pk = manyPkAccessor.get(pkObject);
-                if(!isExistingAssociation(manyPropertyAccessor, pk)) {
+                if(!isExistingAssociation(pk)) {
                     Object newRelation = saveNewRelation(pk, onePropertyAccessor, manyPropertyAccessor);
                     existingAssociations.add(newRelation);
+                    existingAssociationsByManyPk.put(pk, newRelation);
+                    if(++pendingWrites == chunkSize) {
+                        flushChunk();
+                        pendingWrites = 0;
+                    }
                 }
             }
-            Iterator it = existingAssociations.iterator();
-            while(it.hasNext()) {
-                Object o = it.next();
+            Set<String> selectedPrimaryKeySet = new HashSet<>(selectedPrimaryKeys);
+            List<Object> remainingAssociations = new ArrayList<>(existingAssociations.size());
+            for(Object o : existingAssociations) {
                 //TODO handle manyKeyProperties.length > 1
                 Object pkObject = manyPropertyAccessor.get(o);
                 String pkString = (String) OgnlUtils.convertValue(pkObject, String.class);
-                if(!selectedPrimaryKeys.contains(pkString)) {
+                if(selectedPrimaryKeySet.contains(pkString)) {
+                    remainingAssociations.add(o);
+                } else {
+                    //Relations detached by a previous chunk can still be deleted
                     deleteRelation(o);
-                    it.remove();
+                    existingAssociationsByManyPk.remove(pkObject, o);
+                    if(++pendingWrites == chunkSize) {
+                        flushChunk();
+                        pendingWrites = 0;
+                    }
                 }
             }
+            existingAssociations = remainingAssociations;
         }
         session.getTransaction().commit();
+        persistence.tableWrites.onNext(m2mConfiguration.getActualRelationTable());
         return objectCreated();
     }
 
+    protected int getBulkChunkSize() {
+        return portofinoConfiguration.getInt(CrudAction.BULK_CHUNK_SIZE, CrudAction.DEFAULT_BULK_CHUNK_SIZE);
+    }
+
+    /**
+     * Sends the pending inserts and deletes to the database and clears the session.
+     */
+    protected void flushChunk() {
+        session.flush();
+        session.clear();
+    }
+
     protected Response objectCreated() throws URISyntaxException {
         return Response.status(Response.Status.CREATED). build();
     }
@@ -662,13 +734,19 @@ public class ManyToManyAction extends AbstractResourceAction {
             booleanRelation = new LinkedHashMap<>();
             ClassAccessor ca = getManyTableAccessor();
             PkHelper pkHelper = new PkHelper(ca);
+            PropertyAccessor manyPkAccessor;
+            try {
+                manyPkAccessor = getManyPkAccessor();
+            } catch (NoSuchFieldException e) {
+                return resourceActionNotConfigured();
+            }
 
             for(Object obj : potentiallyAvailableAssociations) {
                 String pk = StringUtils.join(pkHelper.generatePkStringArray(obj), "/");
                 enumList.put(pk);
                 titleMap.put(pk, ShortNameUtils.getName(ca, obj));
 
-                if(!availableAssociations.contains(obj)) {
+                if(isExistingAssociation(manyPkAccessor.get(obj))) {
                     trueRelations.put(pk);
                 }
             }
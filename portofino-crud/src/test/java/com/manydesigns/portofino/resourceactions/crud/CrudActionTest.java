@@ -42,10 +42,12 @@ import com.manydesigns.portofino.model.database.IncrementGenerator;
 import com.manydesigns.portofino.model.database.Table;
 import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
 import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.persistence.hibernate.SessionFactoryBuilder;
 import com.manydesigns.portofino.resourceactions.ActionContext;
 import com.manydesigns.portofino.resourceactions.ActionInstance;
 import com.manydesigns.portofino.resourceactions.crud.configuration.CrudProperty;
 import com.manydesigns.portofino.resourceactions.crud.configuration.database.CrudConfiguration;
+import io.reactivex.disposables.Disposable;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.apache.commons.fileupload.disk.DiskFileItem;
@@ -56,6 +58,7 @@ import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
 import org.h2.tools.RunScript;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.jdbc.Work;
 import org.jetbrains.annotations.NotNull;
 import org.testng.annotations.*;
@@ -67,8 +70,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.Map;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.Assert.*;
 
@@ -77,6 +81,7 @@ import static org.testng.Assert.*;
 public class CrudActionTest extends JerseyTest {
 
     Persistence persistence;
+    Long estimatedRowCount;
 
     @BeforeClass
     public void setupElements() {
@@ -85,7 +90,7 @@ public class CrudActionTest extends JerseyTest {
 
     @AfterClass
     public void teardownElements() {
-        ElementsThreadLocals.destroy();
+        ElementsThreadLocals.removeElementsContext();
     }
 
     @BeforeMethod
@@ -97,7 +102,13 @@ public class CrudActionTest extends JerseyTest {
     protected void setup(FileObject appDir) throws Exception {
         Configuration configuration = new PropertiesConfiguration();
         DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
-        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform() {
+            @Override
+            public Long getEstimatedRowCount(Connection connection, Table table) {
+                return estimatedRowCount;
+            }
+        });
+        estimatedRowCount = null;
         persistence = new Persistence(appDir, configuration, null, databasePlatformsRegistry);
         persistence.start();
         setupJPetStore();
@@ -343,4 +354,198 @@ public class CrudActionTest extends JerseyTest {
         }
     }
 
+    protected CrudAction createCrudAction(String query, Configuration portofinoConfiguration) throws Exception {
+        CrudConfiguration configuration = new CrudConfiguration();
+        configuration.setQuery(query);
+        return createCrudAction(configuration, portofinoConfiguration);
+    }
+
+    protected CrudAction createCrudAction(String query, CrudConfiguration.TotalRecordsMode totalRecordsMode)
+            throws Exception {
+        CrudConfiguration configuration = new CrudConfiguration();
+        configuration.setQuery(query);
+        configuration.setLargeResultSet(true);
+        configuration.setTotalRecordsMode(totalRecordsMode);
+        return createCrudAction(configuration, new PropertiesConfiguration());
+    }
+
+    protected CrudAction createCrudAction(CrudConfiguration configuration, Configuration portofinoConfiguration)
+            throws Exception {
+        MutableHttpServletRequest req = new MutableHttpServletRequest();
+        req.getServletContext().setInitParameter("portofino.api.root", "http://fake");
+        CrudAction crudAction = new CrudAction() {
+            public void commitTransaction() {
+                super.commitTransaction();
+                session.beginTransaction();
+            }
+
+            @NotNull
+            @Override
+            protected ClassAccessor filterAccordingToPermissions(ClassAccessor classAccessor) {
+                return classAccessor; //Let's ignore Shiro
+            }
+
+            @Override
+            protected String getUrlEncoding() {
+                return PortofinoProperties.URL_ENCODING_DEFAULT;
+            }
+        };
+        configuration.setDatabase("jpetstore");
+        configuration.persistence = persistence;
+        configuration.init();
+        ActionInstance actionInstance = new ActionInstance(null, null, new ActionDescriptor(), CrudAction.class);
+        actionInstance.setConfiguration(configuration);
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequest(req);
+        actionContext.setActionPath("");
+        actionContext.setServletContext(req.getServletContext());
+        crudAction.persistence = persistence;
+        crudAction.portofinoConfiguration = portofinoConfiguration;
+        crudAction.setContext(actionContext);
+        crudAction.setActionInstance(actionInstance);
+        crudAction.init();
+        return crudAction;
+    }
+
+    protected void insertLineItems(int orders, int linesPerOrder) {
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("delete from lineitem");
+                for (int order = 1; order <= orders; order++) {
+                    for (int line = 1; line <= linesPerOrder; line++) {
+                        statement.execute(
+                                "insert into lineitem values (" + order + ", " + line + ", 'EST-1', 1, 10)");
+                    }
+                }
+            }
+        });
+        session.getTransaction().commit();
+        session.beginTransaction();
+    }
+
+    public void testJdbcBatchingIsEnabledByDefault() {
+        SessionFactoryImplementor sessionFactory =
+                (SessionFactoryImplementor) persistence.getSession("jpetstore").getSessionFactory();
+        assertEquals(
+                sessionFactory.getSessionFactoryOptions().getJdbcBatchSize(),
+                SessionFactoryBuilder.DEFAULT_JDBC_BATCH_SIZE);
+        assertTrue(sessionFactory.getSessionFactoryOptions().isOrderUpdatesEnabled());
+    }
+
+    public void testLoadObjectsByCompositeKey() throws Exception {
+        insertLineItems(2, 2);
+        CrudAction crudAction = createCrudAction("from lineitem", new PropertiesConfiguration());
+        Map<String, Object> loaded = crudAction.loadObjectsByIdentifier(Arrays.asList("1/1", "2/2", "3/1"));
+        //Only the requested keys, not their combinations (1/2, 2/1)
+        assertEquals(loaded.keySet(), new HashSet<>(Arrays.asList("1/1", "2/2")));
+        Map lineItem = (Map) loaded.get("2/2");
+        assertEquals(((Number) lineItem.get("orderid")).intValue(), 2);
+        assertEquals(((Number) lineItem.get("linenum")).intValue(), 2);
+    }
+
+    public void testBulkDeleteInChunks() throws Exception {
+        insertLineItems(2, 5);
+        Configuration portofinoConfiguration = new PropertiesConfiguration();
+        portofinoConfiguration.setProperty(CrudAction.BULK_CHUNK_SIZE, 3);
+        CrudAction crudAction = createCrudAction("from lineitem", portofinoConfiguration);
+        AtomicInteger tableWrites = new AtomicInteger();
+        Disposable subscription = persistence.tableWrites.subscribe(table -> tableWrites.incrementAndGet());
+        try {
+            List<String> ids = new ArrayList<>();
+            for (int line = 1; line <= 5; line++) {
+                ids.add("1/" + line);
+                ids.add("2/" + line);
+            }
+            ids.add("3/1"); //Doesn't exist
+            List<String> deleted = crudAction.bulkDelete(ids);
+            assertEquals(deleted.size(), 10);
+            //Once on the first write, once per chunk (4) and once after the commit; not once per row
+            assertEquals(tableWrites.get(), 6);
+        } finally {
+            subscription.dispose();
+        }
+        Session session = persistence.getSession("jpetstore");
+        assertEquals(((Number) session.createSQLQuery("select count(*) from lineitem").uniqueResult()).intValue(), 0);
+    }
+
+    protected int countProducts() {
+        return ((Number) persistence.getSession("jpetstore")
+                .createSQLQuery("select count(*) from product").uniqueResult()).intValue();
+    }
+
+    public void testCountQueriesAreCached() throws Exception {
+        CrudAction.clearCountQueryCache();
+        String query = "from product";
+        CrudAction.CountQuery countQuery = createCrudAction(query, new PropertiesConfiguration()).getCountQuery(query);
+        assertTrue(countQuery.unfiltered);
+        //The same query for the same class of action is only parsed once
+        assertSame(createCrudAction(query, new PropertiesConfiguration()).getCountQuery(query), countQuery);
+        String filteredQuery = "from product where category = 'FISH'";
+        CrudAction.CountQuery filteredCountQuery =
+                createCrudAction(query, new PropertiesConfiguration()).getCountQuery(filteredQuery);
+        assertNotSame(filteredCountQuery, countQuery);
+        assertFalse(filteredCountQuery.unfiltered);
+        CrudAction.clearCountQueryCache();
+        assertNotSame(createCrudAction(query, new PropertiesConfiguration()).getCountQuery(query), countQuery);
+    }
+
+    public void testEstimatedTotalRecords() throws Exception {
+        int products = countProducts();
+        estimatedRowCount = 1000L;
+        CrudAction crudAction = createCrudAction("from product", CrudConfiguration.TotalRecordsMode.ESTIMATED);
+        assertEquals(crudAction.calculateTotalSearchRecords(), 1000L);
+        assertFalse(crudAction.isTotalSearchRecordsExact());
+
+        //Filtered searches can't use the estimate of the table
+        crudAction = createCrudAction(
+                "from product where category = 'FISH'", CrudConfiguration.TotalRecordsMode.ESTIMATED);
+        assertTrue(crudAction.calculateTotalSearchRecords() < products);
+        assertTrue(crudAction.isTotalSearchRecordsExact());
+
+        //Without an estimate, the records are counted
+        estimatedRowCount = null;
+        crudAction = createCrudAction("from product", CrudConfiguration.TotalRecordsMode.ESTIMATED);
+        assertEquals(crudAction.calculateTotalSearchRecords(), products);
+        assertTrue(crudAction.isTotalSearchRecordsExact());
+
+        //The mode only applies to large result sets
+        estimatedRowCount = 1000L;
+        CrudConfiguration configuration = new CrudConfiguration();
+        configuration.setQuery("from product");
+        configuration.setTotalRecordsMode(CrudConfiguration.TotalRecordsMode.ESTIMATED);
+        crudAction = createCrudAction(configuration, new PropertiesConfiguration());
+        assertEquals(crudAction.calculateTotalSearchRecords(), products);
+        assertTrue(crudAction.isTotalSearchRecordsExact());
+    }
+
+    public void testNoTotalRecords() throws Exception {
+        int products = countProducts();
+        assertTrue(products > 10);
+        CrudAction crudAction = createCrudAction("from product", CrudConfiguration.TotalRecordsMode.NONE);
+        //Nothing loaded: we only know whether there is at least a record
+        assertEquals(crudAction.calculateTotalSearchRecords(), 1L);
+        assertFalse(crudAction.isTotalSearchRecordsExact());
+
+        //A full page: a lower bound
+        crudAction.firstResult = 0;
+        crudAction.maxResults = 5;
+        crudAction.loadObjects();
+        assertEquals(crudAction.calculateTotalSearchRecords(), 6L);
+        assertFalse(crudAction.isTotalSearchRecordsExact());
+
+        //A full last page: the probe finds nothing after it
+        crudAction.firstResult = products - 5;
+        crudAction.loadObjects();
+        assertEquals(crudAction.calculateTotalSearchRecords(), products);
+        assertTrue(crudAction.isTotalSearchRecordsExact());
+
+        //A partial page is the last one
+        crudAction.firstResult = products - 3;
+        crudAction.loadObjects();
+        assertEquals(crudAction.objects.size(), 3);
+        assertEquals(crudAction.calculateTotalSearchRecords(), products);
+        assertTrue(crudAction.isTotalSearchRecordsExact());
+    }
+
 }
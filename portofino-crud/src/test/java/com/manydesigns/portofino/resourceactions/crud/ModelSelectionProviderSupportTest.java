@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.resourceactions.crud;
+
+import com.manydesigns.elements.ElementsThreadLocals;
+import com.manydesigns.elements.options.OptionProvider;
+import com.manydesigns.elements.options.SelectionProvider;
+import com.manydesigns.elements.reflection.ClassAccessor;
+import com.manydesigns.elements.servlet.MutableHttpServletRequest;
+import com.manydesigns.elements.text.QueryStringWithParameters;
+import com.manydesigns.portofino.actions.ActionDescriptor;
+import com.manydesigns.portofino.cache.CacheResetEvent;
+import com.manydesigns.portofino.cache.CacheResetListenerRegistry;
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.database.DatabaseLogic;
+import com.manydesigns.portofino.model.database.DatabaseSelectionProvider;
+import com.manydesigns.portofino.model.database.Table;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.manydesigns.portofino.modules.CrudModule;
+import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.resourceactions.ActionContext;
+import com.manydesigns.portofino.resourceactions.ActionInstance;
+import com.manydesigns.portofino.resourceactions.crud.configuration.CrudProperty;
+import com.manydesigns.portofino.resourceactions.crud.configuration.database.CrudConfiguration;
+import com.manydesigns.portofino.resourceactions.registry.ActionRegistry;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.h2.tools.RunScript;
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.*;
+
+import java.io.InputStreamReader;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ModelSelectionProviderSupportTest {
+
+    Persistence persistence;
+    CrudModule crudModule;
+    CrudAction crudAction;
+    Table categoryTable;
+    int categories;
+
+    @BeforeClass
+    public void setupElements() {
+        ElementsThreadLocals.setupDefaultElementsContext();
+    }
+
+    @AfterClass
+    public void teardownElements() {
+        ElementsThreadLocals.removeElementsContext();
+    }
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        FileObject appDir = VFS.getManager().resolveFile("res:com/manydesigns/portofino/resourceactions/crud/model");
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty(ModelSelectionProviderSupport.QUERY_CACHE_TIME_TO_LIVE, 60);
+        DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        persistence = new Persistence(appDir, configuration, null, databasePlatformsRegistry);
+        persistence.start();
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            RunScript.execute(connection, new InputStreamReader(
+                    getClass().getResourceAsStream("sql/jpetstore-postgres-schema.sql")));
+            RunScript.execute(connection, new InputStreamReader(
+                    getClass().getResourceAsStream("sql/jpetstore-postgres-dataload.sql")));
+        });
+        session.getTransaction().commit();
+        persistence.syncDataModel("jpetstore");
+        persistence.initModel();
+        categoryTable = DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "CATEGORY");
+        categories = ((Number) persistence.getSession("jpetstore")
+                .createSQLQuery("select count(*) from category").uniqueResult()).intValue();
+
+        crudModule = new CrudModule();
+        crudModule.configuration = configuration;
+        crudModule.actionRegistry = new ActionRegistry();
+        crudModule.cacheResetListenerRegistry = new CacheResetListenerRegistry();
+        crudModule.persistence = persistence;
+        crudModule.init();
+
+        crudAction = createCrudAction();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        crudModule.destroy();
+        ModelSelectionProviderSupport.initQueryCache(1000, 0);
+        persistence.stop();
+    }
+
+    protected CrudAction createCrudAction() {
+        MutableHttpServletRequest req = new MutableHttpServletRequest();
+        CrudConfiguration configuration = new CrudConfiguration();
+        configuration.setDatabase("jpetstore");
+        configuration.setQuery("from product");
+        CrudProperty property = new CrudProperty();
+        property.setName("category");
+        property.setEnabled(true);
+        configuration.getProperties().add(property);
+        configuration.persistence = persistence;
+        configuration.init();
+        ActionInstance actionInstance = new ActionInstance(null, null, new ActionDescriptor(), CrudAction.class);
+        actionInstance.setConfiguration(configuration);
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequest(req);
+        actionContext.setActionPath("");
+        actionContext.setServletContext(req.getServletContext());
+        CrudAction crudAction = new CrudAction() {
+            @NotNull
+            @Override
+            protected ClassAccessor filterAccordingToPermissions(ClassAccessor classAccessor) {
+                return classAccessor; //Let's ignore Shiro
+            }
+        };
+        crudAction.persistence = persistence;
+        crudAction.setContext(actionContext);
+        crudAction.setActionInstance(actionInstance);
+        crudAction.init();
+        return crudAction;
+    }
+
+    /**
+     * Loads the options of the category of products like a new request would, i.e. with a new selection provider.
+     */
+    protected int loadCategoryOptions(ModelSelectionProviderSupport support) {
+        support.setup();
+        for(CrudSelectionProvider crudSelectionProvider : support.getCrudSelectionProviders()) {
+            if(Arrays.asList(crudSelectionProvider.getFieldNames()).contains("category")) {
+                SelectionProvider selectionProvider = crudSelectionProvider.getSelectionProvider();
+                return selectionProvider.createSelectionModel().getOptions(0).size();
+            }
+        }
+        fail("No selection provider for category");
+        return -1;
+    }
+
+    protected int loadCategoryOptions() {
+        return loadCategoryOptions(new ModelSelectionProviderSupport(crudAction, persistence));
+    }
+
+    protected void insertCategory(String id) {
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("insert into category values ('" + id + "', '" + id + "', null)");
+            }
+        });
+        session.getTransaction().commit();
+        session.beginTransaction();
+    }
+
+    public void testOptionsAreCachedUntilTheTableIsWritten() {
+        assertEquals(loadCategoryOptions(), categories);
+        //Writes that are not published are not seen until the options expire
+        insertCategory("NEW1");
+        assertEquals(loadCategoryOptions(), categories);
+        //Writes to other tables don't invalidate the options
+        persistence.tableWrites.onNext(
+                DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "PRODUCT"));
+        assertEquals(loadCategoryOptions(), categories);
+        persistence.tableWrites.onNext(categoryTable);
+        assertEquals(loadCategoryOptions(), categories + 1);
+    }
+
+    public void testCacheResetClearsTheOptions() {
+        assertEquals(loadCategoryOptions(), categories);
+        insertCategory("NEW1");
+        assertEquals(loadCategoryOptions(), categories);
+        crudModule.cacheResetListenerRegistry.fireReset(new CacheResetEvent(this));
+        assertEquals(loadCategoryOptions(), categories + 1);
+    }
+
+    public void testWritesDuringTheQueryInvalidateTheOptions() {
+        ModelSelectionProviderSupport support = new ModelSelectionProviderSupport(crudAction, persistence) {
+            @Override
+            protected OptionProvider createHQLOptionProvider(
+                    DatabaseSelectionProvider selectionProvider, String name, String databaseName, String hql) {
+                Table table = DatabaseLogic.findTableByName(
+                        persistence.getModel(), databaseName, "PUBLIC", "CATEGORY");
+                return new HQLOptionProvider(selectionProvider, table, hql) {
+                    @Override
+                    protected Collection runQuery(Session session, QueryStringWithParameters query) {
+                        Collection result = super.runQuery(session, query);
+                        //Another request writes to the table after the query has read it
+                        insertCategory("NEW1");
+                        persistence.tableWrites.onNext(categoryTable);
+                        return result;
+                    }
+                };
+            }
+        };
+        assertEquals(loadCategoryOptions(support), categories);
+        //The options read before the write must not be served from the cache
+        assertEquals(loadCategoryOptions(), categories + 1);
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.resourceactions.m2m;
+
+import com.manydesigns.elements.ElementsThreadLocals;
+import com.manydesigns.elements.servlet.MutableHttpServletRequest;
+import com.manydesigns.portofino.actions.ActionDescriptor;
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.database.DatabaseLogic;
+import com.manydesigns.portofino.model.database.Table;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.resourceactions.ActionContext;
+import com.manydesigns.portofino.resourceactions.ActionInstance;
+import com.manydesigns.portofino.resourceactions.crud.CrudAction;
+import com.manydesigns.portofino.resourceactions.m2m.configuration.ManyToManyConfiguration;
+import com.manydesigns.portofino.resourceactions.m2m.configuration.SelectionProviderReference;
+import io.reactivex.disposables.Disposable;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.h2.tools.RunScript;
+import org.hibernate.Session;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.*;
+
+import java.io.InputStreamReader;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ManyToManyActionTest {
+
+    public static final String CRUD_TEST_RESOURCES = "/com/manydesigns/portofino/resourceactions/crud/";
+
+    Persistence persistence;
+    List<String> productIds;
+
+    @BeforeClass
+    public void setupElements() {
+        ElementsThreadLocals.setupDefaultElementsContext();
+    }
+
+    @AfterClass
+    public void teardownElements() {
+        ElementsThreadLocals.removeElementsContext();
+    }
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        FileObject appDir = VFS.getManager().resolveFile("res:com/manydesigns/portofino/resourceactions/crud/model");
+        Configuration configuration = new PropertiesConfiguration();
+        DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        persistence = new Persistence(appDir, configuration, null, databasePlatformsRegistry);
+        persistence.start();
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists product_supplier");
+            }
+            RunScript.execute(connection, new InputStreamReader(
+                    getClass().getResourceAsStream(CRUD_TEST_RESOURCES + "sql/jpetstore-postgres-schema.sql")));
+            RunScript.execute(connection, new InputStreamReader(
+                    getClass().getResourceAsStream(CRUD_TEST_RESOURCES + "sql/jpetstore-postgres-dataload.sql")));
+            try(Statement statement = connection.createStatement()) {
+                statement.execute(
+                        "create table product_supplier (" +
+                        "productid varchar(10) not null, suppid int not null, " +
+                        "constraint pk_product_supplier primary key (productid, suppid), " +
+                        "constraint fk_ps_product foreign key (productid) references product (productid), " +
+                        "constraint fk_ps_supplier foreign key (suppid) references supplier (suppid))");
+            }
+        });
+        session.getTransaction().commit();
+        persistence.syncDataModel("jpetstore");
+        persistence.initModel();
+        session = persistence.getSession("jpetstore");
+        productIds = new ArrayList<>();
+        for(Object productId : session.createSQLQuery("select productid from product order by productid").list()) {
+            productIds.add((String) productId);
+        }
+    }
+
+    @AfterMethod
+    public void teardown() {
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists product_supplier");
+            }
+        });
+        session.getTransaction().commit();
+        persistence.stop();
+    }
+
+    protected ManyToManyAction createManyToManyAction(Configuration portofinoConfiguration) throws Exception {
+        Table relationTable =
+                DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "PRODUCT_SUPPLIER");
+        ManyToManyConfiguration configuration = new ManyToManyConfiguration();
+        configuration.setDatabase("jpetstore");
+        configuration.setQuery("from " + relationTable.getActualEntityName());
+        configuration.setOneExpression("1");
+        configuration.setOnePropertyName("suppid");
+        SelectionProviderReference manySelectionProvider = new SelectionProviderReference();
+        manySelectionProvider.setForeignKeyName(
+                DatabaseLogic.findForeignKeyByNameIgnoreCase(relationTable, "fk_ps_product").getName());
+        configuration.setManySelectionProvider(manySelectionProvider);
+        configuration.persistence = persistence;
+        configuration.init();
+
+        MutableHttpServletRequest req = new MutableHttpServletRequest();
+        ActionInstance actionInstance = new ActionInstance(null, null, new ActionDescriptor(), ManyToManyAction.class);
+        actionInstance.setConfiguration(configuration);
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequest(req);
+        actionContext.setActionPath("");
+        actionContext.setServletContext(req.getServletContext());
+        ManyToManyAction action = new ManyToManyAction();
+        action.persistence = persistence;
+        action.portofinoConfiguration = portofinoConfiguration;
+        action.setContext(actionContext);
+        action.setActionInstance(actionInstance);
+        action.init();
+        assertTrue(action.correctlyConfigured);
+        action.loadOnePk("1");
+        return action;
+    }
+
+    protected void insertRelations(int suppid, List<String> products) {
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                for(String product : products) {
+                    statement.execute(
+                            "insert into product_supplier values ('" + product + "', " + suppid + ")");
+                }
+            }
+        });
+        session.getTransaction().commit();
+        session.beginTransaction();
+    }
+
+    protected Set<String> loadRelatedProducts(int suppid) {
+        Session session = persistence.getSession("jpetstore");
+        Set<String> products = new HashSet<>();
+        for(Object productId :
+                session.createSQLQuery("select productid from product_supplier where suppid = " + suppid).list()) {
+            products.add((String) productId);
+        }
+        return products;
+    }
+
+    public void testUpdateRelationsInChunks() throws Exception {
+        insertRelations(1, productIds.subList(0, 4));
+        insertRelations(2, productIds.subList(0, 2));
+        Configuration portofinoConfiguration = new PropertiesConfiguration();
+        portofinoConfiguration.setProperty(CrudAction.BULK_CHUNK_SIZE, 2);
+        ManyToManyAction action = createManyToManyAction(portofinoConfiguration);
+
+        //Keep 2 and 3, add 4, 5 and 6, remove 0 and 1
+        List<String> selected = productIds.subList(2, 7);
+        JSONObject request = new JSONObject();
+        request.put("1", new JSONArray(selected));
+        AtomicInteger tableWrites = new AtomicInteger();
+        Disposable subscription = persistence.tableWrites.subscribe(table -> tableWrites.incrementAndGet());
+        try {
+            action.httpPostJson(request.toString());
+        } finally {
+            subscription.dispose();
+        }
+        assertEquals(tableWrites.get(), 1);
+        assertEquals(action.existingAssociationsByManyPk.keySet(), new HashSet<>(selected));
+        assertEquals(action.existingAssociations.size(), selected.size());
+
+        Session session = persistence.getSession("jpetstore");
+        session.beginTransaction();
+        assertEquals(loadRelatedProducts(1), new HashSet<>(selected));
+        //The relations of other "one" objects are untouched
+        assertEquals(loadRelatedProducts(2), new HashSet<>(productIds.subList(0, 2)));
+    }
+
+    public void testUnchangedRelationsAreNotWritten() throws Exception {
+        insertRelations(1, productIds.subList(0, 3));
+        ManyToManyAction action = createManyToManyAction(new PropertiesConfiguration());
+        JSONObject request = new JSONObject();
+        request.put("1", new JSONArray(productIds.subList(0, 3)));
+        action.httpPostJson(request.toString());
+        Session session = persistence.getSession("jpetstore");
+        session.beginTransaction();
+        assertEquals(loadRelatedProducts(1), new HashSet<>(productIds.subList(0, 3)));
+    }
+
+    public void testAvailableAssociationsArePaged() throws Exception {
+        insertRelations(1, Arrays.asList(productIds.get(3), productIds.get(9)));
+        ManyToManyAction action = createManyToManyAction(new PropertiesConfiguration());
+        action.firstResult = 2;
+        action.maxResults = 5;
+        action.loadAssociations();
+
+        List<String> page = new ArrayList<>();
+        for(Object product : action.potentiallyAvailableAssociations) {
+            page.add((String) ((Map) product).get("productid"));
+        }
+        assertEquals(page, productIds.subList(2, 7));
+        List<String> available = new ArrayList<>();
+        for(Object product : action.availableAssociations) {
+            available.add((String) ((Map) product).get("productid"));
+        }
+        List<String> expected = new ArrayList<>(page);
+        expected.remove(productIds.get(3));
+        assertEquals(available, expected);
+
+        //The next page doesn't overlap the previous one
+        action.firstResult = 7;
+        action.loadAssociations();
+        assertEquals(action.potentiallyAvailableAssociations.size(), 5);
+        assertFalse(action.availableAssociations.stream().anyMatch(
+                product -> productIds.get(9).equals(((Map) product).get("productid"))));
+        assertEquals(
+                ((Map) action.potentiallyAvailableAssociations.get(0)).get("productid"), productIds.get(7));
+    }
+
+}
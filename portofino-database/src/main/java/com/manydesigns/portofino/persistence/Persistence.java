@@ -20,6 +20,8 @@
 
 package com.manydesigns.portofino.persistence;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.manydesigns.portofino.PortofinoProperties;
 import com.manydesigns.portofino.cache.CacheResetEvent;
 import com.manydesigns.portofino.cache.CacheResetListenerRegistry;
@@ -36,6 +38,7 @@ import com.manydesigns.portofino.reflection.ViewAccessor;
 import com.manydesigns.portofino.sync.DatabaseSyncer;
 import io.reactivex.subjects.BehaviorSubject;
 import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 import liquibase.Contexts;
 import liquibase.Liquibase;
 import liquibase.database.DatabaseFactory;
@@ -61,10 +64,9 @@ import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import java.io.*;
 import java.sql.Connection;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -85,6 +87,27 @@ public class Persistence {
     public static final String APP_MODEL_FILE = APP_MODEL_DIRECTORY + ".xml";
     public static final String LIQUIBASE_CONTEXT = "liquibase.context";
     public final static String changelogFileNameTemplate = "liquibase.changelog.xml";
+    /**
+     * The number of threads used to read the model and to initialize the databases. By default, the model is read
+     * using as many threads as available processors, while each database is initialized in its own thread, so that
+     * one that is slow to connect doesn't hold back the others.
+     */
+    public static final String LOADING_THREADS = "persistence.loading.threads";
+    /**
+     * How long, in seconds, startup waits for the databases to be initialized. Those that are not ready by then
+     * are made available as soon as they are. Zero or less (the default) means waiting for all of them.
+     */
+    public static final String STARTUP_TIMEOUT = "persistence.startup.timeout";
+    /**
+     * Directory, relative to the application directory, where generated entity classes are cached across restarts.
+     * If not set, entity classes are always regenerated.
+     */
+    public static final String CLASS_CACHE_PATH = "persistence.bytecode.cache.path";
+    /**
+     * The JDBC batch size used by Hibernate for the databases that don't set hibernate.jdbc.batch_size themselves.
+     * Defaults to {@link SessionFactoryBuilder#DEFAULT_JDBC_BATCH_SIZE}; zero disables batching.
+     */
+    public static final String JDBC_BATCH_SIZE = "persistence.jdbc.batch.size";
 
     //**************************************************************************
     // Fields
@@ -98,7 +121,26 @@ public class Persistence {
     protected final Configuration configuration;
     protected final FileBasedConfigurationBuilder<PropertiesConfiguration> configurationFile;
     public final BehaviorSubject<Status> status = BehaviorSubject.create();
-    public final PublishSubject<DatabaseSetupEvent> databaseSetupEvents = PublishSubject.create();
+    /**
+     * Database setups as they're added, replaced or removed. Databases are initialized in parallel, so events may be
+     * published from different threads, although never concurrently.
+     */
+    public final Subject<DatabaseSetupEvent> databaseSetupEvents =
+            PublishSubject.<DatabaseSetupEvent>create().toSerialized();
+    /**
+     * Tables that have been written to, published by actions that modify data so that caches depending on those
+     * tables can be invalidated. Actions should publish both when writing and after committing.
+     */
+    public final Subject<Table> tableWrites = PublishSubject.<Table>create().toSerialized();
+    /**
+     * Accessors by table identity. They depend on the model and on the classes generated by the database setups,
+     * so they're discarded when either changes.
+     */
+    protected final Cache<Table, TableAccessor> tableAccessors = CacheBuilder.newBuilder().weakKeys().build();
+    /**
+     * Completed when all the databases of the current model have been initialized.
+     */
+    protected volatile CompletableFuture<Void> databasesInitialization = CompletableFuture.completedFuture(null);
 
     public enum Status {
         STARTING, STARTED, STOPPING, STOPPED
@@ -129,7 +171,8 @@ public class Persistence {
             logger.info("Application model directory: {}", getModelDirectory().getName().getPath());
         }
 
-        setups = new HashMap<>();
+        setups = new ConcurrentHashMap<>();
+        databaseSetupEvents.subscribe(e -> tableAccessors.invalidateAll());
     }
 
     //**************************************************************************
@@ -138,30 +181,50 @@ public class Persistence {
 
     public synchronized void loadXmlModel() {
         try {
-            JAXBContext jc = createModelJAXBContext();
-            Unmarshaller um = jc.createUnmarshaller();
-            FileObject appModelFile = getModelFile();
-            if(appModelFile.exists()) {
-                logger.info("Loading legacy xml model from file: {}", appModelFile.getName().getPath());
-                try (InputStream inputStream = appModelFile.getContent().getInputStream()) {
-                    model = (Model) um.unmarshal(inputStream);
-                } catch (Exception e) {
-                    String msg = "Cannot load/parse model: " + appModelFile;
-                    logger.error(msg, e);
-                }
-            } else {
-                logger.info("Loading model from directory: {}", getModelDirectory().getName().getPath());
-                model = new Model();
+            readXmlModel();
+            initModel();
+        } catch (Exception e) {
+            logger.error("Cannot load/parse model", e);
+        }
+    }
+
+    /**
+     * Reads the model from the application directory, without initializing it. Table files are parsed in parallel.
+     */
+    protected synchronized void readXmlModel() throws Exception {
+        JAXBContext jc = createModelJAXBContext();
+        Unmarshaller um = jc.createUnmarshaller();
+        FileObject appModelFile = getModelFile();
+        if(appModelFile.exists()) {
+            logger.info("Loading legacy xml model from file: {}", appModelFile.getName().getPath());
+            try (InputStream inputStream = appModelFile.getContent().getInputStream()) {
+                model = (Model) um.unmarshal(inputStream);
+            } catch (Exception e) {
+                String msg = "Cannot load/parse model: " + appModelFile;
+                logger.error(msg, e);
             }
-            FileObject modelDir = getModelDirectory();
-            if(modelDir.exists()) {
+        } else {
+            logger.info("Loading model from directory: {}", getModelDirectory().getName().getPath());
+            model = new Model();
+        }
+        FileObject modelDir = getModelDirectory();
+        if(modelDir.exists()) {
+            //Unmarshallers are not thread-safe, while the context is
+            ThreadLocal<Unmarshaller> unmarshallers = ThreadLocal.withInitial(() -> {
+                try {
+                    return jc.createUnmarshaller();
+                } catch (JAXBException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            ExecutorService executor = createLoadingExecutor("portofino-model-loader");
+            try {
                 for (FileObject databaseDir : modelDir.getChildren()) {
-                    loadXmlDatabase(um, model, databaseDir);
+                    loadXmlDatabase(um, model, databaseDir, executor, unmarshallers);
                 }
+            } finally {
+                executor.shutdownNow();
             }
-            initModel();
-        } catch (Exception e) {
-            logger.error("Cannot load/parse model", e);
         }
     }
 
@@ -169,7 +232,18 @@ public class Persistence {
         return JAXBContext.newInstance(Model.class, View.class);
     }
 
-    protected void loadXmlDatabase(Unmarshaller um, Model model, FileObject databaseDir) throws IOException, JAXBException {
+    /**
+     * Loads a database from its directory. Its table files are parsed in parallel using the given executor; this
+     * method returns when they have all been added to their schemas.
+     * @param um the unmarshaller to use for the database file.
+     * @param model the model the database belongs to.
+     * @param databaseDir the directory of the database.
+     * @param executor the executor used to parse the table files.
+     * @param unmarshallers an unmarshaller for each of the executor's threads.
+     */
+    protected void loadXmlDatabase(
+            Unmarshaller um, Model model, FileObject databaseDir,
+            ExecutorService executor, ThreadLocal<Unmarshaller> unmarshallers) throws IOException, JAXBException {
         if(!databaseDir.getType().equals(FileType.FOLDER)) {
             logger.error("Not a directory: " + databaseDir.getName().getPath());
             return;
@@ -209,29 +283,93 @@ public class Persistence {
             }
         }
 
+        Map<Schema, List<Future<Table>>> schemaTables = new LinkedHashMap<>();
         for(Schema schema : database.getSchemas()) {
             FileObject schemaDir = databaseDir.resolveFile(schema.getSchemaName());
             if(schemaDir.getType() == FileType.FOLDER) {
                 logger.debug("Schema directory {} exists", schemaDir);
-                FileObject[] tableFiles = schemaDir.getChildren();
-                for(FileObject tableFile : tableFiles) {
-                    if(!tableFile.getName().getBaseName().endsWith(".table.xml")) {
-                        continue;
-                    }
-                    try(InputStream tableInputStream = tableFile.getContent().getInputStream()) {
-                        Table table = (Table) um.unmarshal(tableInputStream);
-                        if (!tableFile.getName().getBaseName().equalsIgnoreCase(table.getTableName() + ".table.xml")) {
-                            logger.error("Skipping table " + table.getTableName() + " defined in file " + tableFile);
-                            continue;
-                        }
-                        table.afterUnmarshal(um, schema);
-                        schema.getTables().add(table);
+                List<Future<Table>> tables = new ArrayList<>();
+                for(FileObject tableFile : schemaDir.getChildren()) {
+                    if(tableFile.getName().getBaseName().endsWith(".table.xml")) {
+                        tables.add(executor.submit(() -> loadXmlTable(unmarshallers.get(), schema, tableFile)));
                     }
                 }
+                schemaTables.put(schema, tables);
             } else {
                 logger.debug("Schema directory {} does not exist", schemaDir);
             }
         }
+        //Tables are added in the order of their files, regardless of which parse completes first
+        for(Map.Entry<Schema, List<Future<Table>>> entry : schemaTables.entrySet()) {
+            for(Future<Table> future : entry.getValue()) {
+                Table table = awaitTable(future);
+                if(table != null) {
+                    entry.getKey().getTables().add(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a table file.
+     * @return the table, or null if the file does not match the table it defines.
+     */
+    protected Table loadXmlTable(Unmarshaller um, Schema schema, FileObject tableFile) throws IOException, JAXBException {
+        try(InputStream tableInputStream = tableFile.getContent().getInputStream()) {
+            Table table = (Table) um.unmarshal(tableInputStream);
+            if (!tableFile.getName().getBaseName().equalsIgnoreCase(table.getTableName() + ".table.xml")) {
+                logger.error("Skipping table " + table.getTableName() + " defined in file " + tableFile);
+                return null;
+            }
+            table.afterUnmarshal(um, schema);
+            return table;
+        }
+    }
+
+    protected Table awaitTable(Future<Table> future) throws IOException, JAXBException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the model");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Creates a bounded executor to load the model and initialize the databases in parallel. Its threads don't keep
+     * the JVM alive and inherit the context class loader of the calling thread.
+     * @param name the prefix of the names of the threads.
+     */
+    protected ExecutorService createLoadingExecutor(String name) {
+        return createLoadingExecutor(name, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a bounded executor to load the model and initialize the databases in parallel.
+     * @param name the prefix of the names of the threads.
+     * @param defaultThreads the number of threads if {@link #LOADING_THREADS} is not configured.
+     */
+    protected ExecutorService createLoadingExecutor(String name, int defaultThreads) {
+        int threads = configuration.getInt(LOADING_THREADS, defaultThreads);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setContextClassLoader(contextClassLoader);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Deprecated
@@ -379,6 +517,17 @@ public class Persistence {
     }
 
     public synchronized void initModel() {
+        awaitDatabasesInitialization(initModelAsync(false), 0);
+    }
+
+    /**
+     * Initializes the model and starts initializing its databases in parallel. The setup of each database is
+     * published through {@link #databaseSetupEvents} as soon as it is ready, regardless of the others.
+     * @param runLiquibase whether to update each database that is successfully connected, after its setup is ready.
+     * @return a future that is completed when all the databases have been initialized.
+     */
+    protected synchronized CompletableFuture<Void> initModelAsync(boolean runLiquibase) {
+        awaitDatabasesInitialization(databasesInitialization, 0);
         logger.info("Cleaning up old setups");
         closeSessions();
         for (Map.Entry<String, HibernateDatabaseSetup> current : setups.entrySet()) {
@@ -394,15 +543,69 @@ public class Persistence {
         }
         //TODO it would perhaps be preferable if we generated REPLACED events here rather than REMOVED followed by ADDED
         setups.clear();
+        tableAccessors.invalidateAll();
         model.init(configuration);
-        for (Database database : model.getDatabases()) {
-            initConnectionProvider(database);
+        List<Database> databases = new ArrayList<>(model.getDatabases());
+        CompletableFuture<Void> initialization;
+        if(databases.isEmpty()) {
+            initialization = CompletableFuture.completedFuture(null);
+        } else {
+            //Initializing a database mostly means waiting for it, so the processors are not the limit here
+            ExecutorService executor = createLoadingExecutor("portofino-database-init", databases.size());
+            CompletableFuture<?>[] futures = new CompletableFuture[databases.size()];
+            for (int i = 0; i < futures.length; i++) {
+                Database database = databases.get(i);
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    initConnectionProvider(database);
+                    if(runLiquibase && isConnected(database)) {
+                        runLiquibase(database);
+                    }
+                }, executor);
+            }
+            //Already submitted tasks still run to completion
+            executor.shutdown();
+            initialization = CompletableFuture.allOf(futures);
         }
-        if(cacheResetListenerRegistry != null) {
-            cacheResetListenerRegistry.fireReset(new CacheResetEvent(this));
+        databasesInitialization = initialization.whenComplete((result, error) -> {
+            if(cacheResetListenerRegistry != null) {
+                cacheResetListenerRegistry.fireReset(new CacheResetEvent(this));
+            }
+        });
+        return databasesInitialization;
+    }
+
+    /**
+     * Waits for the databases to be initialized.
+     * @param initialization the future that tracks the initialization.
+     * @param timeout the maximum time to wait, in seconds. Zero or less means waiting indefinitely.
+     * @return true if all the databases have been initialized, false if the timeout elapsed or the current thread
+     * was interrupted.
+     */
+    protected boolean awaitDatabasesInitialization(CompletableFuture<Void> initialization, long timeout) {
+        try {
+            if(timeout > 0) {
+                initialization.get(timeout, TimeUnit.SECONDS);
+            } else {
+                initialization.get();
+            }
+            return true;
+        } catch (TimeoutException e) {
+            logger.warn("Databases still initializing after {} seconds, they will become available when ready", timeout);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the databases to be initialized");
+            return false;
+        } catch (ExecutionException e) {
+            logger.error("Unexpected error while initializing databases", e.getCause());
+            return true;
         }
     }
 
+    protected boolean isConnected(Database database) {
+        return ConnectionProvider.STATUS_CONNECTED.equals(database.getConnectionProvider().getStatus());
+    }
+
     protected void initConnectionProvider(Database database) {
         logger.info("Initializing connection provider for database " + database.getDatabaseName());
         try {
@@ -410,14 +613,26 @@ public class Persistence {
             connectionProvider.init(databasePlatformsRegistry);
             if (connectionProvider.getStatus().equals(ConnectionProvider.STATUS_CONNECTED)) {
                 SessionFactoryBuilder builder = new SessionFactoryBuilder(database);
+                builder.setJdbcBatchSize(
+                        configuration.getInt(JDBC_BATCH_SIZE, SessionFactoryBuilder.DEFAULT_JDBC_BATCH_SIZE));
+                String classCachePath = configuration.getString(CLASS_CACHE_PATH);
+                if(classCachePath != null) {
+                    builder.setClassCache(applicationDirectory.getFileSystem().getFileSystemManager().resolveFile(
+                            applicationDirectory, classCachePath));
+                }
                 SessionFactoryAndCodeBase sessionFactoryAndCodeBase = builder.buildSessionFactory();
                 HibernateDatabaseSetup setup =
                         new HibernateDatabaseSetup(
                                 database, sessionFactoryAndCodeBase.sessionFactory,
                                 sessionFactoryAndCodeBase.codeBase, builder.getEntityMode());
                 String databaseName = database.getDatabaseName();
-                HibernateDatabaseSetup oldSetup = setups.get(databaseName);
-                setups.put(databaseName, setup);
+                Status currentStatus = status.getValue();
+                if(currentStatus == Status.STOPPING || currentStatus == Status.STOPPED) {
+                    logger.info("Persistence stopped while initializing database {}, discarding its setup", databaseName);
+                    setup.dispose();
+                    return;
+                }
+                HibernateDatabaseSetup oldSetup = setups.put(databaseName, setup);
                 if(oldSetup != null) {
                     oldSetup.dispose();
                     databaseSetupEvents.onNext(new DatabaseSetupEvent(oldSetup, setup));
@@ -435,8 +650,12 @@ public class Persistence {
         if(currentStatus != Status.STARTED) {
             throw new IllegalStateException("Persistence not started: " + currentStatus);
         }
+        if(!databasesInitialization.isDone()) {
+            logger.debug("Databases still initializing, not retrying failed connections");
+            return;
+        }
         for (Database database : model.getDatabases()) {
-            if (!ConnectionProvider.STATUS_CONNECTED.equals(database.getConnectionProvider().getStatus())) {
+            if (!isConnected(database)) {
                 logger.info("Retrying failed connection to database " + database.getDatabaseName());
                 initConnectionProvider(database);
             }
@@ -448,12 +667,8 @@ public class Persistence {
     //**************************************************************************
 
     public ConnectionProvider getConnectionProvider(String databaseName) {
-        for (Database database : model.getDatabases()) {
-            if (database.getDatabaseName().equals(databaseName)) {
-                return database.getConnectionProvider();
-            }
-        }
-        return null;
+        Database database = DatabaseLogic.findDatabaseByName(model, databaseName);
+        return database != null ? database.getConnectionProvider() : null;
     }
 
     public Configuration getConfiguration() {
@@ -487,6 +702,8 @@ public class Persistence {
         Database targetDatabase = dbSyncer.syncDatabase(model);
         model.getDatabases().remove(sourceDatabase);
         model.getDatabases().add(targetDatabase);
+        model.reindex();
+        tableAccessors.invalidateAll();
     }
 
     //**************************************************************************
@@ -549,7 +766,12 @@ public class Persistence {
 
     @NotNull
     public TableAccessor getTableAccessor(Table table) {
-        return table instanceof View ? new ViewAccessor((View) table) : new TableAccessor(table);
+        TableAccessor accessor = tableAccessors.getIfPresent(table);
+        if(accessor == null) {
+            accessor = table instanceof View ? new ViewAccessor((View) table) : new TableAccessor(table);
+            tableAccessors.put(table, accessor);
+        }
+        return accessor;
     }
 
     //**************************************************************************
@@ -558,12 +780,15 @@ public class Persistence {
 
     public void start() {
         status.onNext(Status.STARTING);
-        loadXmlModel();
-        for(Database database : model.getDatabases()) {
-            if(ConnectionProvider.STATUS_CONNECTED.equals(database.getConnectionProvider().getStatus())) {
-                runLiquibase(database);
-            }
+        CompletableFuture<Void> initialization;
+        try {
+            readXmlModel();
+            initialization = initModelAsync(true);
+        } catch (Exception e) {
+            logger.error("Cannot load/parse model", e);
+            initialization = CompletableFuture.completedFuture(null);
         }
+        awaitDatabasesInitialization(initialization, configuration.getLong(STARTUP_TIMEOUT, 0));
         status.onNext(Status.STARTED);
     }
 
@@ -20,6 +20,9 @@
 
 package com.manydesigns.portofino.persistence;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.manydesigns.elements.fields.search.Criteria;
 import com.manydesigns.elements.fields.search.Criterion;
 import com.manydesigns.elements.fields.search.TextMatchMode;
 import com.manydesigns.elements.reflection.ClassAccessor;
@@ -42,6 +45,8 @@ import net.sf.jsqlparser.parser.CCJSqlParserManager;
 import net.sf.jsqlparser.statement.select.*;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.jdbc.Work;
 import org.hibernate.query.Query;
@@ -316,6 +321,12 @@ public class QueryUtils {
                     hqlFormat = "lower({0}) like lower(:p" + (parametersList.size() + initialParameterIndex) + ")";
                     parametersList.add(pattern);
                 }
+            } else if (criterion instanceof TableCriteria.SeekCriterion) {
+                hqlFormat = getSeekHqlFormat(
+                        (TableCriteria.SeekCriterion) criterion, parametersList, initialParameterIndex);
+            } else if (criterion instanceof TableCriteria.KeysInCriterion) {
+                hqlFormat = getKeysInHqlFormat(
+                        (TableCriteria.KeysInCriterion) criterion, parametersList, initialParameterIndex);
             } else if (criterion instanceof TableCriteria.IsNullCriterion) {
                 hqlFormat = "{0} is null";
             } else if (criterion instanceof TableCriteria.IsNotNullCriterion) {
@@ -329,11 +340,23 @@ public class QueryUtils {
                 continue;
             }
 
-            String accessorName = accessor.getName();
-            if(alias != null) {
-                accessorName = alias + "." + accessorName;
+            PropertyAccessor[] accessors;
+            if (criterion instanceof TableCriteria.SeekCriterion) {
+                accessors = ((TableCriteria.SeekCriterion) criterion).getPropertyAccessors();
+            } else if (criterion instanceof TableCriteria.KeysInCriterion) {
+                accessors = ((TableCriteria.KeysInCriterion) criterion).getPropertyAccessors();
+            } else {
+                accessors = new PropertyAccessor[] { accessor };
+            }
+            Object[] accessorNames = new Object[accessors.length];
+            for (int i = 0; i < accessors.length; i++) {
+                String accessorName = accessors[i].getName();
+                if(alias != null) {
+                    accessorName = alias + "." + accessorName;
+                }
+                accessorNames[i] = accessorName;
             }
-            String hql = MessageFormat.format(hqlFormat, accessorName);
+            String hql = MessageFormat.format(hqlFormat, accessorNames);
 
             if (whereBuilder.length() > 0) {
                 whereBuilder.append(" AND ");
@@ -363,6 +386,74 @@ public class QueryUtils {
         return new QueryStringWithParameters(queryString, parameters);
     }
 
+    /**
+     * Builds the condition of a {@link TableCriteria.SeekCriterion}: (p0, p1, ...) &gt; (v0, v1, ...) in
+     * lexicographic order, expanded as p0 &gt; v0 OR (p0 = v0 AND p1 &gt; v1) OR ... since row value comparisons are
+     * not supported by HQL. Null values of the first property are sorted last.
+     */
+    protected static String getSeekHqlFormat(
+            TableCriteria.SeekCriterion criterion, List<Object> parametersList, int initialParameterIndex) {
+        Object[] values = criterion.getValues();
+        String operator = criterion.isAsc() ? " > " : " < ";
+        String[] parameterNames = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if(values[i] != null) {
+                parameterNames[i] = ":p" + (parametersList.size() + initialParameterIndex);
+                parametersList.add(values[i]);
+            }
+        }
+        //When the first value is null, we're among the nulls, sorted last: compare the other properties only
+        int first = values[0] == null ? 1 : 0;
+        StringBuilder sb = new StringBuilder();
+        for (int i = first; i < values.length; i++) {
+            if (i > first) {
+                sb.append(" OR ");
+            }
+            sb.append("(");
+            for (int j = first; j < i; j++) {
+                sb.append("{").append(j).append("} = ").append(parameterNames[j]).append(" AND ");
+            }
+            sb.append("{").append(i).append("}").append(operator).append(parameterNames[i]);
+            sb.append(")");
+        }
+        if(first == 1) {
+            return "({0} is null AND (" + sb + "))";
+        } else if(criterion.isNullable()) {
+            return "(" + sb + " OR {0} is null)";
+        } else {
+            return "(" + sb + ")";
+        }
+    }
+
+    /**
+     * Builds the condition of a {@link TableCriteria.KeysInCriterion}: (p0 = k0 AND p1 = k1 ...) OR ... for each key.
+     * An empty list of keys matches nothing.
+     */
+    protected static String getKeysInHqlFormat(
+            TableCriteria.KeysInCriterion criterion, List<Object> parametersList, int initialParameterIndex) {
+        if(criterion.getKeys().isEmpty()) {
+            return "1 = 0";
+        }
+        StringBuilder sb = new StringBuilder("(");
+        boolean firstKey = true;
+        for (Object[] key : criterion.getKeys()) {
+            if (!firstKey) {
+                sb.append(" OR ");
+            }
+            firstKey = false;
+            sb.append("(");
+            for (int i = 0; i < key.length; i++) {
+                if (i > 0) {
+                    sb.append(" AND ");
+                }
+                sb.append("{").append(i).append("} = :p").append(parametersList.size() + initialParameterIndex);
+                parametersList.add(key[i]);
+            }
+            sb.append(")");
+        }
+        return sb.append(")").toString();
+    }
+
     protected static String processTextMatchMode(TextMatchMode textMatchMode,
                                           String value) {
         String pattern;
@@ -434,6 +525,30 @@ public class QueryUtils {
         return runHqlQuery(session, result.getQueryString(), result.getParameters(), firstResult, maxResults);
     }
 
+    /**
+     * Like {@link #getObjects(Session, String, TableCriteria, Object, Integer, Integer)}, but returns a forward-only
+     * cursor over the results instead of loading them all in memory. The caller must close the returned object.
+     * @param session the session
+     * @param queryString the query
+     * @param criteria the search criteria to merge with the query.
+     * @param rootObject the rootFactory object passed to the ognl evaluator (can be null).
+     * @param firstResult index of the first result to return
+     * @param maxResults maximum number of results to return
+     * @return the results of the query, to be consumed with {@link ScrollableResults#next()} and
+     * {@link ScrollableResults#get(int)}.
+     */
+    public static ScrollableResults scrollObjects(
+            Session session,
+            String queryString,
+            TableCriteria criteria,
+            @Nullable Object rootObject,
+            @Nullable Integer firstResult,
+            @Nullable Integer maxResults) {
+        QueryStringWithParameters result = mergeQuery(queryString, criteria, rootObject);
+
+        return scrollHqlQuery(session, result.getQueryString(), result.getParameters(), firstResult, maxResults);
+    }
+
     /**
      * Merges a HQL query string with a {@link TableCriteria} object representing a search. The query string
      * is processed with an {@link OgnlSqlFormat}, so it can access values from the OGNL context, as well as
@@ -445,22 +560,17 @@ public class QueryUtils {
      */
     public static QueryStringWithParameters mergeQuery
             (String queryString, @Nullable TableCriteria criteria, Object rootObject) {
-        OgnlHqlFormat hqlFormat = OgnlHqlFormat.create(queryString);
-        String formatString = hqlFormat.getFormatString();
-        Object[] parameters = hqlFormat.evaluateOgnlExpressions(rootObject);
-
-        CCJSqlParserManager parserManager = new CCJSqlParserManager();
-        PlainSelect parsedQueryString;
-        PlainSelect parsedCriteriaQuery;
+        ParsedQuery baseQuery;
         try {
-            parsedQueryString = parseQuery(parserManager, formatString);
+            baseQuery = getParsedQuery(queryString);
         } catch (JSQLParserException e) {
             throw new RuntimeException("Couldn't merge query", e);
         }
+        Object[] parameters = baseQuery.format.evaluateOgnlExpressions(rootObject);
 
         Alias mainEntityAlias = null;
         if(criteria != null) {
-            mainEntityAlias = getEntityAlias(criteria.getTable().getActualEntityName(), parsedQueryString);
+            mainEntityAlias = getEntityAlias(criteria.getTable().getActualEntityName(), baseQuery.select);
         }
 
         QueryStringWithParameters criteriaQuery =
@@ -469,14 +579,75 @@ public class QueryUtils {
         String criteriaQueryString = criteriaQuery.getQueryString();
         Object[] criteriaParameters = criteriaQuery.getParameters();
 
-        try {
-            if(StringUtils.isEmpty(criteriaQueryString)) {
-                parsedCriteriaQuery = new PlainSelect();
-            } else {
-                parsedCriteriaQuery = parseQuery(parserManager, criteriaQueryString);
+        //The criteria query string only depends on the shape of the criteria (not on the values), so together
+        //with the base query and the ordering it identifies the merged query.
+        List<Criteria.OrderBy> orderBy = new ArrayList<>();
+        List<Criteria.OrderBy> finallyOrderBy = new ArrayList<>();
+        boolean nullsLast = false;
+        if(criteria != null && criteria.getOrderBy() != null) {
+            orderBy.add(criteria.getOrderBy());
+            orderBy.addAll(criteria.getThenOrderBy());
+            nullsLast = criteria.isNullsLast();
+        }
+        if(criteria != null) {
+            finallyOrderBy.addAll(criteria.getFinallyOrderBy());
+        }
+        List<Object> cacheKey = new ArrayList<>(Arrays.asList("merge", queryString, criteriaQueryString, nullsLast));
+        for(Criteria.OrderBy element : orderBy) {
+            cacheKey.add(element.getPropertyAccessor().getName());
+            cacheKey.add(element.isAsc());
+        }
+        cacheKey.add("finally");
+        for(Criteria.OrderBy element : finallyOrderBy) {
+            cacheKey.add(element.getPropertyAccessor().getName());
+            cacheKey.add(element.isAsc());
+        }
+        String fullQueryString = mergedQueryCache.getIfPresent(cacheKey);
+        if(fullQueryString == null) {
+            try {
+                fullQueryString = mergeQueryString(
+                        baseQuery.formatString, criteriaQueryString, mainEntityAlias,
+                        orderBy, finallyOrderBy, nullsLast);
+            } catch (JSQLParserException e) {
+                throw new RuntimeException("Couldn't merge query", e);
             }
-        } catch (JSQLParserException e) {
-            throw new RuntimeException("Couldn't merge query", e);
+            mergedQueryCache.put(cacheKey, fullQueryString);
+        }
+
+        // merge the parameters
+        ArrayList<Object> mergedParametersList = new ArrayList<Object>();
+        mergedParametersList.addAll(Arrays.asList(parameters));
+        mergedParametersList.addAll(Arrays.asList(criteriaParameters));
+        Object[] mergedParameters = new Object[mergedParametersList.size()];
+        mergedParametersList.toArray(mergedParameters);
+
+        return new QueryStringWithParameters(fullQueryString, mergedParameters);
+    }
+
+    protected static OrderByElement createOrderByElement(Criteria.OrderBy element, Alias mainEntityAlias) {
+        OrderByElement orderByElement = new OrderByElement();
+        orderByElement.setAsc(element.isAsc());
+        String propertyName = element.getPropertyAccessor().getName();
+        if(mainEntityAlias != null) {
+            propertyName = mainEntityAlias.getName() + "." + propertyName;
+        }
+        orderByElement.setExpression(
+                new net.sf.jsqlparser.schema.Column(
+                        new net.sf.jsqlparser.schema.Table(), propertyName));
+        return orderByElement;
+    }
+
+    protected static String mergeQueryString(
+            String formatString, String criteriaQueryString, Alias mainEntityAlias,
+            List<Criteria.OrderBy> orderBy, List<Criteria.OrderBy> finallyOrderBy, boolean nullsLast)
+            throws JSQLParserException {
+        CCJSqlParserManager parserManager = new CCJSqlParserManager();
+        PlainSelect parsedQueryString = parseQuery(parserManager, formatString);
+        PlainSelect parsedCriteriaQuery;
+        if(StringUtils.isEmpty(criteriaQueryString)) {
+            parsedCriteriaQuery = new PlainSelect();
+        } else {
+            parsedCriteriaQuery = parseQuery(parserManager, criteriaQueryString);
         }
 
         Expression whereExpression;
@@ -494,28 +665,34 @@ public class QueryUtils {
             whereExpression = parsedCriteriaQuery.getWhere();
         }
         parsedQueryString.setWhere(whereExpression);
-        if(criteria != null && criteria.getOrderBy() != null) {
+        if(!orderBy.isEmpty() || !finallyOrderBy.isEmpty()) {
             List orderByElements = new ArrayList();
-            OrderByElement orderByElement = new OrderByElement();
-            orderByElement.setAsc(criteria.getOrderBy().isAsc());
-            String propertyName = criteria.getOrderBy().getPropertyAccessor().getName();
-            if(mainEntityAlias != null) {
-                propertyName = mainEntityAlias.getName() + "." + propertyName;
+            Set<String> propertyNames = new HashSet<>();
+            for(Criteria.OrderBy element : orderBy) {
+                OrderByElement orderByElement = createOrderByElement(element, mainEntityAlias);
+                if(nullsLast && orderByElements.isEmpty()) {
+                    orderByElement.setNullOrdering(OrderByElement.NullOrdering.NULLS_LAST);
+                }
+                orderByElements.add(orderByElement);
+                propertyNames.add(orderByElement.getExpression().toString());
             }
-            orderByElement.setExpression(
-                    new net.sf.jsqlparser.schema.Column(
-                            new net.sf.jsqlparser.schema.Table(), propertyName));
-            orderByElements.add(orderByElement);
             if(parsedQueryString.getOrderByElements() != null) {
                 for(Object el : parsedQueryString.getOrderByElements()) {
                     OrderByElement toAdd = (OrderByElement) el;
                     if(toAdd.getExpression() instanceof net.sf.jsqlparser.schema.Column) {
                         net.sf.jsqlparser.schema.Column column = (net.sf.jsqlparser.schema.Column) toAdd.getExpression();
-                        if(StringUtils.isEmpty(column.getTable().getName()) && propertyName.equals(column.getColumnName())) {
+                        if(StringUtils.isEmpty(column.getTable().getName()) && propertyNames.contains(column.getColumnName())) {
                             continue; //do not add
                         }
                     }
                     orderByElements.add(toAdd);
+                    propertyNames.add(toAdd.getExpression().toString());
+                }
+            }
+            for(Criteria.OrderBy element : finallyOrderBy) {
+                OrderByElement orderByElement = createOrderByElement(element, mainEntityAlias);
+                if(propertyNames.add(orderByElement.getExpression().toString())) {
+                    orderByElements.add(orderByElement);
                 }
             }
             parsedQueryString.setOrderByElements(orderByElements);
@@ -524,15 +701,7 @@ public class QueryUtils {
         if(fullQueryString.toLowerCase().startsWith(FAKE_SELECT_PREFIX)) {
             fullQueryString = fullQueryString.substring(FAKE_SELECT_PREFIX.length());
         }
-
-        // merge the parameters
-        ArrayList<Object> mergedParametersList = new ArrayList<Object>();
-        mergedParametersList.addAll(Arrays.asList(parameters));
-        mergedParametersList.addAll(Arrays.asList(criteriaParameters));
-        Object[] mergedParameters = new Object[mergedParametersList.size()];
-        mergedParametersList.toArray(mergedParameters);
-
-        return new QueryStringWithParameters(fullQueryString, mergedParameters);
+        return fullQueryString;
     }
 
     public static final String FAKE_SELECT_PREFIX = "select __portofino_fake_select__ ";
@@ -548,6 +717,66 @@ public class QueryUtils {
         return parsedQueryString;
     }
 
+    //**************************************************************************
+    // Query cache
+    //**************************************************************************
+
+    /**
+     * A HQL query with its OGNL expressions replaced by named parameters, and the parse tree of the result.
+     * Instances are shared through a cache, so the parse tree must never be modified.
+     */
+    protected static class ParsedQuery {
+        public final OgnlHqlFormat format;
+        public final String formatString;
+        public final PlainSelect select;
+
+        public ParsedQuery(OgnlHqlFormat format, PlainSelect select) {
+            this.format = format;
+            this.formatString = format.getFormatString();
+            this.select = select;
+        }
+    }
+
+    //Cache configuration properties
+    public static final String QUERY_CACHE_SIZE = "query.cache.size";
+    public static final int SCROLL_FETCH_SIZE = 100;
+
+    protected static Cache<String, ParsedQuery> parsedQueryCache;
+    protected static Cache<List<Object>, String> mergedQueryCache;
+
+    static {
+        initQueryCache(1000);
+    }
+
+    /**
+     * Initializes the caches of parsed and merged queries, discarding their previous content.
+     * @param maxSize the maximum number of entries of each cache.
+     */
+    public static void initQueryCache(int maxSize) {
+        parsedQueryCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        mergedQueryCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Empties the caches of parsed and merged queries.
+     */
+    public static void clearQueryCache() {
+        parsedQueryCache.invalidateAll();
+        mergedQueryCache.invalidateAll();
+    }
+
+    protected static ParsedQuery getParsedQuery(String queryString) throws JSQLParserException {
+        ParsedQuery parsedQuery = parsedQueryCache.getIfPresent(queryString);
+        if(parsedQuery == null) {
+            logger.debug("Query cache miss for: {}", queryString);
+            OgnlHqlFormat hqlFormat = OgnlHqlFormat.create(queryString);
+            PlainSelect select = parseQuery(new CCJSqlParserManager(), hqlFormat.getFormatString());
+            parsedQuery = new ParsedQuery(hqlFormat, select);
+            parsedQueryCache.put(queryString, parsedQuery);
+        }
+        return parsedQuery;
+    }
+
     /**
      * Runs a HQL query against the database.
      * @see QueryUtils#runHqlQuery(Session, String, Object[], Integer, Integer)
@@ -610,6 +839,54 @@ public class QueryUtils {
         }
     }
 
+    /**
+     * Runs a HQL query against the database, returning a forward-only cursor over the results.
+     * @see QueryUtils#runHqlQuery(Session, String, Object[], Integer, Integer)
+     * @param session the session
+     * @param queryString the query
+     * @param parameters the query parameters
+     * @param firstResult index of the first result to return
+     * @param maxResults maximum number of results to return
+     * @return the results of the query. The caller must close them.
+     */
+    public static ScrollableResults scrollHqlQuery(
+            Session session,
+            String queryString,
+            @Nullable Object[] parameters,
+            @Nullable Integer firstResult,
+            @Nullable Integer maxResults) {
+
+        Query query = session.createQuery(queryString);
+        if (parameters != null) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof Collection) {
+                    query.setParameterList("p" + (i + 1), (Collection) parameters[i]);
+                } else
+                    query.setParameter("p" + (i + 1), parameters[i]);
+            }
+        }
+
+        if (firstResult != null) {
+            query.setFirstResult(firstResult);
+        }
+
+        if(maxResults != null) {
+            query.setMaxResults(maxResults);
+            query.setFetchSize(Math.min(maxResults, SCROLL_FETCH_SIZE));
+        } else {
+            query.setFetchSize(SCROLL_FETCH_SIZE);
+        }
+
+        try {
+            return query.scroll(ScrollMode.FORWARD_ONLY);
+        } catch (HibernateException e) {
+            logger.error("Error running query", e);
+            session.getTransaction().rollback();
+            session.beginTransaction();
+            throw e;
+        }
+    }
+
     /**
      * Loads an object by primary key.
      * @param persistence the persistence object
@@ -692,55 +969,76 @@ public class QueryUtils {
         TableAccessor table = persistence.getTableAccessor(database, entityName);
         List<Object> result;
         PropertyAccessor[] keyProperties = table.getKeyProperties();
-        OgnlHqlFormat hqlFormat = OgnlHqlFormat.create(hqlQueryString);
-        String formatString = hqlFormat.getFormatString();
-        Object[] ognlParameters = hqlFormat.evaluateOgnlExpressions(rootObject);
+        ParsedQuery baseQuery;
+        try {
+            baseQuery = getParsedQuery(hqlQueryString);
+        } catch (JSQLParserException e) {
+            throw new Error(e);
+        }
+        if(baseQuery.select.getWhere() == null) {
+            return getObjectByPk(persistence, database, entityName, pk);
+        }
+        Object[] ognlParameters = baseQuery.format.evaluateOgnlExpressions(rootObject);
         int p = ognlParameters.length;
         Object[] parameters = new Object[p + keyProperties.length];
         System.arraycopy(ognlParameters, 0, parameters, 0, p);
-        try {
-            PlainSelect parsedQuery = parseQuery(new CCJSqlParserManager(), formatString);
-            if(parsedQuery.getWhere() == null) {
-                return getObjectByPk(persistence, database, entityName, pk);
-            }
-
-            Alias mainEntityAlias = getEntityAlias(entityName, parsedQuery);
-            net.sf.jsqlparser.schema.Table mainEntityTable;
-            if(mainEntityAlias != null) {
-                mainEntityTable = new net.sf.jsqlparser.schema.Table(null, mainEntityAlias.getName());
-            } else {
-                mainEntityTable = new net.sf.jsqlparser.schema.Table();
+        List<Object> cacheKey = new ArrayList<>();
+        cacheKey.add("pk");
+        cacheKey.add(hqlQueryString);
+        cacheKey.add(entityName);
+        for(int i = 0; i < keyProperties.length; i++) {
+            PropertyAccessor propertyAccessor = keyProperties[i];
+            cacheKey.add(propertyAccessor.getName());
+            parameters[p + i] = propertyAccessor.get(pk);
+        }
+        String fullQueryString = mergedQueryCache.getIfPresent(cacheKey);
+        if(fullQueryString == null) {
+            try {
+                fullQueryString = mergePkQueryString(baseQuery.formatString, entityName, keyProperties, p);
+            } catch (JSQLParserException e) {
+                throw new Error(e);
             }
+            mergedQueryCache.put(cacheKey, fullQueryString);
+        }
+        Session session = persistence.getSession(database);
+        result = runHqlQuery(session, fullQueryString, parameters);
+        if(result != null && !result.isEmpty()) {
+            return result.get(0);
+        } else {
+            return null;
+        }
+    }
 
+    protected static String mergePkQueryString(
+            String formatString, String entityName, PropertyAccessor[] keyProperties, int firstKeyParameterIndex)
+            throws JSQLParserException {
+        PlainSelect parsedQuery = parseQuery(new CCJSqlParserManager(), formatString);
+        Alias mainEntityAlias = getEntityAlias(entityName, parsedQuery);
+        net.sf.jsqlparser.schema.Table mainEntityTable;
+        if(mainEntityAlias != null) {
+            mainEntityTable = new net.sf.jsqlparser.schema.Table(null, mainEntityAlias.getName());
+        } else {
+            mainEntityTable = new net.sf.jsqlparser.schema.Table();
+        }
 
-            for(int i = 0; i < keyProperties.length; i++) {
-                PropertyAccessor propertyAccessor = keyProperties[i];
-                EqualsTo condition = new EqualsTo();
-                parsedQuery.setWhere(
-                        new AndExpression(condition, new Parenthesis(parsedQuery.getWhere())));
-                net.sf.jsqlparser.schema.Column column =
-                        new net.sf.jsqlparser.schema.Column(mainEntityTable, propertyAccessor.getName());
-                condition.setLeftExpression(column);
-                JdbcNamedParameter jdbcParameter = new JdbcNamedParameter();
-                jdbcParameter.setName("p" + (p + i + 1));
-                condition.setRightExpression(jdbcParameter);
-                parameters[p + i] = propertyAccessor.get(pk);
-            }
+        for(int i = 0; i < keyProperties.length; i++) {
+            PropertyAccessor propertyAccessor = keyProperties[i];
+            EqualsTo condition = new EqualsTo();
+            parsedQuery.setWhere(
+                    new AndExpression(condition, new Parenthesis(parsedQuery.getWhere())));
+            net.sf.jsqlparser.schema.Column column =
+                    new net.sf.jsqlparser.schema.Column(mainEntityTable, propertyAccessor.getName());
+            condition.setLeftExpression(column);
+            JdbcNamedParameter jdbcParameter = new JdbcNamedParameter();
+            jdbcParameter.setName("p" + (firstKeyParameterIndex + i + 1));
+            condition.setRightExpression(jdbcParameter);
+        }
 
-            String fullQueryString = parsedQuery.toString();
-            if(fullQueryString.toLowerCase().startsWith(FAKE_SELECT_PREFIX)) {
-                fullQueryString = fullQueryString.substring(FAKE_SELECT_PREFIX.length());
-            }
-            Session session = persistence.getSession(database);
-            result = runHqlQuery(session, fullQueryString, parameters);
-            if(result != null && !result.isEmpty()) {
-                return result.get(0);
-            } else {
-                return null;
-            }
-        } catch (JSQLParserException e) {
-            throw new Error(e);
+        String fullQueryString = parsedQuery.toString();
+        if(fullQueryString.toLowerCase().startsWith(FAKE_SELECT_PREFIX)) {
+            fullQueryString = fullQueryString.substring(FAKE_SELECT_PREFIX.length());
         }
+        return fullQueryString;
     }
 
     protected static Alias getEntityAlias(String entityName, PlainSelect query) {
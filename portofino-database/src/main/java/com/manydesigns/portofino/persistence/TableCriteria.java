@@ -24,6 +24,10 @@ import com.manydesigns.elements.fields.search.BaseCriteria;
 import com.manydesigns.elements.fields.search.TextMatchMode;
 import com.manydesigns.elements.reflection.PropertyAccessor;
 import com.manydesigns.portofino.model.database.Table;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -40,6 +44,9 @@ public class TableCriteria extends BaseCriteria {
     //**************************************************************************
 
     protected final Table table;
+    protected final List<OrderBy> thenOrderBy = new ArrayList<>();
+    protected final List<OrderBy> finallyOrderBy = new ArrayList<>();
+    protected boolean nullsLast;
 
 
     //**************************************************************************
@@ -60,6 +67,149 @@ public class TableCriteria extends BaseCriteria {
         return table;
     }
 
+    public List<OrderBy> getThenOrderBy() {
+        return thenOrderBy;
+    }
+
+    public List<OrderBy> getFinallyOrderBy() {
+        return finallyOrderBy;
+    }
+
+    public boolean isNullsLast() {
+        return nullsLast;
+    }
+
+    //**************************************************************************
+    // Keyset pagination
+    //**************************************************************************
+
+    /**
+     * Sorts the results by a further property, used when the previous ones are equal.
+     * @param accessor the property.
+     * @param direction the direction, asc or desc.
+     * @return this object.
+     */
+    public TableCriteria thenOrderBy(PropertyAccessor accessor, String direction) {
+        thenOrderBy.add(new OrderBy(accessor, direction));
+        return this;
+    }
+
+    /**
+     * Sorts the results by a further property after the ordering of the base query, if any, to break ties. Use this
+     * with the primary key to make the order deterministic, e.g. when paginating.
+     * @param accessor the property.
+     * @param direction the direction, asc or desc.
+     * @return this object.
+     */
+    public TableCriteria finallyOrderBy(PropertyAccessor accessor, String direction) {
+        finallyOrderBy.add(new OrderBy(accessor, direction));
+        return this;
+    }
+
+    /**
+     * Sorts null values of the {@link #orderBy(PropertyAccessor, String) orderBy} property after all the others,
+     * whatever the direction. This makes the order predictable across databases, as required by
+     * {@link #seek(PropertyAccessor[], Object[], String, boolean)}.
+     * @return this object.
+     */
+    public TableCriteria nullsLast() {
+        nullsLast = true;
+        return this;
+    }
+
+    /**
+     * Restricts the results to those that come after a given row, according to the order defined by a list of
+     * properties (typically the sort property followed by the primary key), all sorted in the same direction.
+     * This is the "seek" predicate of keyset pagination.
+     * @param accessors the properties defining the order. Only the first one can be nullable.
+     * @param values the values of the properties in the last row of the previous page.
+     * @param direction the direction, asc or desc.
+     * @param nullable whether the first property is nullable. In that case the order must also put null values
+     *                 last, see {@link #nullsLast()}.
+     * @return this object.
+     */
+    public TableCriteria seek(PropertyAccessor[] accessors, Object[] values, String direction, boolean nullable) {
+        add(new SeekCriterion(accessors, values, direction, nullable));
+        return this;
+    }
+
+    public static class SeekCriterion extends AbstractCriterion {
+        protected final PropertyAccessor[] accessors;
+        protected final Object[] values;
+        protected final String direction;
+        protected final boolean nullable;
+
+        public SeekCriterion(@NotNull PropertyAccessor[] accessors, @NotNull Object[] values,
+                             String direction, boolean nullable) {
+            super(accessors[0]);
+            if(accessors.length != values.length) {
+                throw new IllegalArgumentException("Expected " + accessors.length + " values, got " + values.length);
+            }
+            for (int i = 1; i < values.length; i++) {
+                if (values[i] == null) {
+                    throw new IllegalArgumentException("Null value");
+                }
+            }
+            this.accessors = accessors;
+            this.values = values;
+            this.direction = direction;
+            this.nullable = nullable;
+        }
+
+        public PropertyAccessor[] getPropertyAccessors() {
+            return accessors;
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        public boolean isAsc() {
+            return !OrderBy.DESC.equals(direction);
+        }
+
+        public boolean isNullable() {
+            return nullable;
+        }
+    }
+
+    /**
+     * Restricts the results to those whose (composite) key is one of the given ones, i.e. (p0 = k0 AND p1 = k1 ...)
+     * OR ... for each key. Unlike an IN restriction per property, it doesn't match the combinations of the values
+     * of different keys.
+     * @param accessors the properties of the key.
+     * @param keys the values of the properties, one array per key, in the same order as the accessors.
+     * @return this object.
+     */
+    public TableCriteria keysIn(PropertyAccessor[] accessors, List<Object[]> keys) {
+        add(new KeysInCriterion(accessors, keys));
+        return this;
+    }
+
+    public static class KeysInCriterion extends AbstractCriterion {
+        protected final PropertyAccessor[] accessors;
+        protected final List<Object[]> keys;
+
+        public KeysInCriterion(@NotNull PropertyAccessor[] accessors, @NotNull List<Object[]> keys) {
+            super(accessors[0]);
+            for (Object[] key : keys) {
+                if(key.length != accessors.length) {
+                    throw new IllegalArgumentException("Expected " + accessors.length + " values, got " + key.length);
+                }
+            }
+            this.accessors = accessors;
+            this.keys = keys;
+        }
+
+        public PropertyAccessor[] getPropertyAccessors() {
+            return accessors;
+        }
+
+        public List<Object[]> getKeys() {
+            return keys;
+        }
+    }
+
     //**************************************************************************
     // Overrides to simplify type casting
     //**************************************************************************
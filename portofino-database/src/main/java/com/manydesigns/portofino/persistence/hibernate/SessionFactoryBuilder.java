@@ -15,6 +15,8 @@ import javassist.bytecode.AnnotationsAttribute;
 import javassist.bytecode.ClassFile;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.annotation.*;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
@@ -43,13 +45,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.*;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Types;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -63,7 +68,21 @@ public class SessionFactoryBuilder {
     protected final Database database;
     protected final ClassPool classPool = new ClassPool(ClassPool.getDefault());
     protected EntityMode entityMode = EntityMode.MAP;
+    /**
+     * Optional directory where generated entity classes are persisted, so that they survive restarts.
+     */
+    protected FileObject classCache;
+    /**
+     * The JDBC batch size applied unless the database settings specify one. Zero or less disables batching.
+     */
+    protected int jdbcBatchSize = DEFAULT_JDBC_BATCH_SIZE;
 
+    public static final int DEFAULT_JDBC_BATCH_SIZE = 50;
+    public static final String CLASS_STAMP_EXTENSION = ".stamp";
+    /**
+     * Part of the stamp of cached classes. Change it whenever the generated bytecode changes for the same model.
+     */
+    protected static final String GENERATOR_VERSION = "1";
     protected static final Set<String> JAVA_KEYWORDS = new HashSet<>();
 
     static {
@@ -123,14 +142,40 @@ public class SessionFactoryBuilder {
                 outputStream.write(baseClass.toBytecode());
             }
 
+            Map<Table, byte[]> cachedClassFiles = new HashMap<>();
+            Map<Table, String> stamps = new HashMap<>();
+            Set<Table> generatedTables = new HashSet<>();
+            Set<Table> mappableTableSet = new HashSet<>(mappableTables);
             for (Table table : mappableTables) {
+                if(classCache != null) {
+                    String stamp = getClassStamp(table, mappableTableSet);
+                    stamps.put(table, stamp);
+                    byte[] classFile = loadCachedClassFile(table, stamp);
+                    if(classFile != null) {
+                        //Known to the class pool, so that generated classes can refer to it
+                        classPool.makeClass(new ByteArrayInputStream(classFile));
+                        cachedClassFiles.put(table, classFile);
+                        continue;
+                    }
+                }
                 generateClass(table);
+                generatedTables.add(table);
+            }
+            if(classCache != null) {
+                logger.info("Database {}: {} entity classes loaded from the cache, {} generated",
+                        database.getDatabaseName(), cachedClassFiles.size(), generatedTables.size());
             }
             for (Table table : mappableTables) {
-                mapRelationships(table);
+                mapRelationships(table, generatedTables);
             }
             for (Table table : mappableTables) {
-                byte[] classFile = getClassFile(table);
+                byte[] classFile = cachedClassFiles.get(table);
+                if(classFile == null) {
+                    classFile = getClassFile(table);
+                    if(classCache != null) {
+                        storeClassFile(table, stamps.get(table), classFile);
+                    }
+                }
                 FileObject location = getEntityLocation(root, table);
                 try(OutputStream outputStream = location.getContent().getOutputStream()) {
                     outputStream.write(classFile);
@@ -198,6 +243,7 @@ public class SessionFactoryBuilder {
         if(database.getSettings() != null) {
             settings.putAll((Map) database.getSettings());
         }
+        setupBatching(settings);
         setupConnection(settings);
         ServiceRegistry standardRegistry =
                 new StandardServiceRegistryBuilder(bootstrapServiceRegistry).applySettings(settings).build();
@@ -237,6 +283,20 @@ public class SessionFactoryBuilder {
         return new SessionFactoryAndCodeBase(sessionFactoryBuilder.build(), codeBase);
     }
 
+    /**
+     * Enables JDBC batching of inserts, updates and deletes, unless it's disabled or the database settings say
+     * otherwise. Ordering statements by entity lets Hibernate group more of them in the same batch.
+     */
+    protected void setupBatching(Map<String, Object> settings) {
+        if(jdbcBatchSize <= 0) {
+            return;
+        }
+        settings.putIfAbsent("hibernate.jdbc.batch_size", String.valueOf(jdbcBatchSize));
+        settings.putIfAbsent("hibernate.order_updates", "true");
+        settings.putIfAbsent("hibernate.order_inserts", "true");
+        settings.putIfAbsent("hibernate.jdbc.batch_versioned_data", "true");
+    }
+
     protected void setupConnection(Map<String, Object> settings) {
         ConnectionProvider connectionProvider = database.getConnectionProvider();
         if(!connectionProvider.isHibernateDialectAutodetected()) {
@@ -244,7 +304,11 @@ public class SessionFactoryBuilder {
                     "hibernate.dialect",
                     connectionProvider.getActualHibernateDialectName());
         }
-        if(connectionProvider instanceof JdbcConnectionProvider) {
+        if(connectionProvider instanceof PooledJdbcConnectionProvider) {
+            //Hibernate shares the pool with the rest of the application rather than building its own
+            PooledJdbcConnectionProvider pooledConnectionProvider = (PooledJdbcConnectionProvider) connectionProvider;
+            settings.put("hibernate.connection.datasource", pooledConnectionProvider.getDataSource());
+        } else if(connectionProvider instanceof JdbcConnectionProvider) {
             JdbcConnectionProvider jdbcConnectionProvider =
                     (JdbcConnectionProvider) connectionProvider;
             settings.put("hibernate.connection.url", jdbcConnectionProvider.getActualUrl());
@@ -685,6 +749,26 @@ public class SessionFactoryBuilder {
         }
     }
 
+    /**
+     * Maps the relationships of a table only on the classes that have been generated. Classes loaded from the
+     * cache already include them.
+     */
+    protected void mapRelationships(Table table, Set<Table> generatedTables)
+            throws NotFoundException, CannotCompileException {
+        for(ForeignKey foreignKey : table.getForeignKeys()) {
+            boolean mapManyToOne = generatedTables.contains(foreignKey.getFromTable());
+            boolean mapOneToMany = generatedTables.contains(foreignKey.getToTable());
+            if((mapManyToOne || mapOneToMany) && checkValidFk(foreignKey)) {
+                if(mapManyToOne) {
+                    mapManyToOne(foreignKey);
+                }
+                if(mapOneToMany) {
+                    mapOneToMany(foreignKey);
+                }
+            }
+        }
+    }
+
     protected void mapManyToOne(ForeignKey foreignKey) throws CannotCompileException, NotFoundException {
         CtClass cc = getMappedClass(foreignKey.getFromTable());
         ClassFile ccFile = cc.getClassFile();
@@ -783,6 +867,178 @@ public class SessionFactoryBuilder {
         return classPool.get(getMappedClassName(table));
     }
 
+    //**************************************************************************
+    // Persistent class cache
+    //**************************************************************************
+
+    /**
+     * Computes a hash of everything the class generated for a table depends on: the table itself, its
+     * relationships in both directions and the settings of this builder. A cached class is only valid if it was
+     * stored with the same stamp.
+     * @param table the table.
+     * @param mappableTables the tables that are being mapped, i.e. whose classes are generated.
+     */
+    protected String getClassStamp(Table table, Collection<Table> mappableTables) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(GENERATOR_VERSION).append(' ').append(SessionFactoryBuilder.class.getPackage().getImplementationVersion());
+        sb.append('\n').append(entityMode).append(' ').append(getMappedClassName(table)).append(' ').append(getBaseEntityName());
+        sb.append('\n').append(table.getTableName()).append(' ').append(table.getSchema().getActualSchemaName());
+        sb.append(' ').append(table.getActualEntityName());
+        appendAnnotationsStamp(sb, table.getAnnotations());
+        List<Column> columnPKList = table.getPrimaryKey().getColumns();
+        for(Column column : table.getColumns()) {
+            Class<?> javaType = column.getActualJavaType();
+            sb.append("\ncolumn ").append(column.getColumnName()).append(' ').append(column.getActualPropertyName());
+            sb.append(' ').append(javaType.getName()).append(' ').append(column.getJdbcType());
+            sb.append(' ').append(column.isNullable()).append(' ').append(column.getLength());
+            sb.append(' ').append(column.getScale()).append(' ').append(column.isAutoincrement());
+            if(columnPKList.contains(column)) {
+                sb.append(" id");
+                Generator generator =
+                        table.getPrimaryKey().findPrimaryKeyColumnByName(column.getColumnName()).getGenerator();
+                appendGeneratorStamp(sb, generator);
+            }
+            if(!Boolean.class.equals(javaType) && !DateTime.class.isAssignableFrom(javaType)) {
+                DatabasePlatform.TypeDescriptor databaseSpecificType =
+                        database.getConnectionProvider().getDatabasePlatform().getDatabaseSpecificType(column);
+                if(databaseSpecificType != null) {
+                    sb.append(' ').append(databaseSpecificType.name).append(new TreeMap<>(databaseSpecificType.parameters));
+                }
+            }
+            appendAnnotationsStamp(sb, column.getAnnotations());
+        }
+        for(ForeignKey foreignKey : table.getForeignKeys()) {
+            sb.append("\nmanyToOne");
+            appendForeignKeyStamp(sb, foreignKey, mappableTables);
+        }
+        for(ForeignKey foreignKey : table.getOneToManyRelationships()) {
+            sb.append("\noneToMany");
+            appendForeignKeyStamp(sb, foreignKey, mappableTables);
+        }
+        return DigestUtils.sha256Hex(sb.toString());
+    }
+
+    protected void appendAnnotationsStamp(
+            StringBuilder sb, List<com.manydesigns.portofino.model.Annotation> annotations) {
+        for(com.manydesigns.portofino.model.Annotation annotation : annotations) {
+            sb.append(" @").append(annotation.getType()).append(annotation.getValues());
+            for(com.manydesigns.portofino.model.Property property : annotation.getProperties()) {
+                sb.append(' ').append(property.getName()).append('=').append(property.getValue());
+            }
+        }
+    }
+
+    protected void appendGeneratorStamp(StringBuilder sb, Generator generator) {
+        if(generator instanceof SequenceGenerator) {
+            sb.append(" sequence ").append(((SequenceGenerator) generator).getName());
+        } else if(generator instanceof TableGenerator) {
+            TableGenerator tableGenerator = (TableGenerator) generator;
+            sb.append(" table ").append(tableGenerator.getTable()).append(' ').append(tableGenerator.getKeyColumn());
+            sb.append(' ').append(tableGenerator.getKeyValue()).append(' ').append(tableGenerator.getValueColumn());
+        } else if(generator != null) {
+            sb.append(' ').append(generator.getClass().getName());
+        }
+    }
+
+    /**
+     * Appends what determines the mapping of a foreign key on both sides, including whether it's valid
+     * (see {@link #checkValidFk(ForeignKey)}).
+     */
+    protected void appendForeignKeyStamp(StringBuilder sb, ForeignKey foreignKey, Collection<Table> mappableTables) {
+        Table fromTable = foreignKey.getFromTable();
+        Table toTable = foreignKey.getToTable();
+        sb.append(' ').append(foreignKey.getActualOnePropertyName());
+        sb.append(' ').append(foreignKey.getActualManyPropertyName());
+        sb.append(' ').append(getMappedClassName(fromTable)).append(' ').append(mappableTables.contains(fromTable));
+        if(toTable == null) {
+            sb.append(" none");
+            return;
+        }
+        sb.append(' ').append(getMappedClassName(toTable)).append(' ').append(mappableTables.contains(toTable));
+        boolean invalidPrimaryKey = checkInvalidPrimaryKey(toTable, false);
+        sb.append(' ').append(invalidPrimaryKey);
+        if(!invalidPrimaryKey) {
+            for(Column column : toTable.getPrimaryKey().getColumns()) {
+                sb.append(' ').append(column.getColumnName());
+            }
+        }
+        for(Reference reference : foreignKey.getReferences()) {
+            Column toColumn = reference.getActualToColumn();
+            sb.append(' ').append(reference.getFromColumn()).append('>').append(reference.getToColumn());
+            sb.append(' ').append(toColumn != null ? toColumn.getColumnName() : null);
+        }
+    }
+
+    /**
+     * Loads the class file of a table from the class cache, if it was stored there with the given stamp.
+     * @return the class file, or null if no valid cached class file exists.
+     */
+    protected byte[] loadCachedClassFile(Table table, String stamp) {
+        try {
+            String path = getMappedClassName(table).replace('.', FileName.SEPARATOR_CHAR);
+            FileObject stampFile = classCache.resolveFile(path + CLASS_STAMP_EXTENSION);
+            FileObject classFile = classCache.resolveFile(path + ".class");
+            if(!stampFile.exists() || !classFile.exists()) {
+                return null;
+            }
+            String cachedStamp;
+            try(InputStream inputStream = stampFile.getContent().getInputStream()) {
+                cachedStamp = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+            }
+            if(!stamp.equals(cachedStamp)) {
+                logger.debug("Table {} has changed, regenerating its class", table.getQualifiedName());
+                return null;
+            }
+            try(InputStream inputStream = classFile.getContent().getInputStream()) {
+                return IOUtils.toByteArray(inputStream);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not load the class of " + table.getQualifiedName() + " from the cache, regenerating it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the freshly generated class file of a table in the class cache.
+     */
+    protected void storeClassFile(Table table, String stamp, byte[] classFile) {
+        String path = getMappedClassName(table).replace('.', FileName.SEPARATOR_CHAR);
+        try {
+            FileObject stampFile = classCache.resolveFile(path + CLASS_STAMP_EXTENSION);
+            //Invalidate the old stamp first, and write the new one last, so that a partially stored class is
+            //never considered valid
+            stampFile.delete();
+            try(OutputStream outputStream = classCache.resolveFile(path + ".class").getContent().getOutputStream()) {
+                outputStream.write(classFile);
+            }
+            try(OutputStream outputStream = stampFile.getContent().getOutputStream()) {
+                outputStream.write(stamp.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.warn("Could not store the class of " + table.getQualifiedName() + " in the cache", e);
+        }
+    }
+
+    public FileObject getClassCache() {
+        return classCache;
+    }
+
+    /**
+     * Sets the directory where generated entity classes are persisted, so that they are only regenerated when the
+     * corresponding tables (or their relationships) change. Null (the default) disables the cache.
+     */
+    public void setClassCache(FileObject classCache) {
+        this.classCache = classCache;
+    }
+
+    public int getJdbcBatchSize() {
+        return jdbcBatchSize;
+    }
+
+    public void setJdbcBatchSize(int jdbcBatchSize) {
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
     public static class DynamicClassLoaderService extends ClassLoaderServiceImpl {
 
         public final Map<String, Class> classes = new HashMap<>();
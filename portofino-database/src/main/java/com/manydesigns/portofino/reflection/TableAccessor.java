@@ -54,6 +54,7 @@ public class TableAccessor extends AbstractAnnotatedAccessor implements ClassAcc
     protected final Table table;
     protected final ColumnAccessor[] columnAccessors;
     protected final ColumnAccessor[] keyColumnAccessors;
+    protected final Map<String, ColumnAccessor> columnAccessorsByName = new HashMap<>();
     protected ClassAccessor javaClassAccessor = null;
 
     public final static Logger logger = LoggerFactory.getLogger(TableAccessor.class);
@@ -111,6 +112,7 @@ public class TableAccessor extends AbstractAnnotatedAccessor implements ClassAcc
                     new ColumnAccessor(current,
                             inPk, autoGenerated, nestedPropertyAccessor);
             columnAccessors[i] = columnAccessor;
+            columnAccessorsByName.putIfAbsent(columnAccessor.getName(), columnAccessor);
             i++;
         }
     }
@@ -145,13 +147,11 @@ public class TableAccessor extends AbstractAnnotatedAccessor implements ClassAcc
 
     public PropertyAccessor getProperty(String propertyName)
             throws NoSuchFieldException {
-        for (ColumnAccessor current : columnAccessors) {
-            if (current.getName().equals(propertyName)) {
-                return current;
-            }
+        ColumnAccessor result = columnAccessorsByName.get(propertyName);
+        if (result == null) {
+            throw new NoSuchFieldException(propertyName);
         }
-
-        throw new NoSuchFieldException(propertyName);
+        return result;
     }
 
     
@@ -1,16 +1,26 @@
 package com.manydesigns.portofino.shiro;
 
+import com.google.common.cache.Cache;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.manydesigns.elements.ognl.OgnlUtils;
 import com.manydesigns.elements.util.RandomUtil;
+import com.manydesigns.portofino.cache.CacheResetListener;
 import com.manydesigns.portofino.model.database.Column;
+import com.manydesigns.portofino.model.database.DatabaseLogic;
 import com.manydesigns.portofino.model.database.Table;
 import com.manydesigns.portofino.persistence.Persistence;
 import com.manydesigns.portofino.persistence.QueryUtils;
 import com.manydesigns.portofino.reflection.TableAccessor;
 import com.manydesigns.portofino.util.PkHelper;
 import groovy.lang.Tuple3;
+import io.reactivex.disposables.Disposable;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.shiro.authc.*;
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.util.Destroyable;
 import org.hibernate.Session;
 import org.hibernate.exception.ConstraintViolationException;
 import org.hibernate.query.Query;
@@ -26,9 +36,11 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
+public abstract class ModelBasedRealm extends AbstractPortofinoRealm implements Destroyable {
 
     protected Table usersTable;
     protected Table groupsTable;
@@ -46,6 +58,17 @@ public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
     protected String groupLinkProperty;
     protected String userLinkProperty;
 
+    public static final String AUTHORIZATION_CACHE_SIZE = "security.authorization.cache.size";
+    public static final String AUTHORIZATION_CACHE_TIME_TO_LIVE = "security.authorization.cache.ttl";
+
+    /**
+     * The groups of each user, by user id. Shiro's own authorization cache is per session, and it's useless with
+     * stateless (JWT) authentication, so we keep our own. Null if disabled.
+     */
+    protected Cache<Object, List<String>> authorizationCache;
+    protected CacheResetListener cacheResetListener;
+    protected Disposable tableWritesSubscription;
+
     protected static final Logger logger = LoggerFactory.getLogger(ModelBasedRealm.class);
 
     @Autowired
@@ -107,6 +130,66 @@ public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
         if(userLinkProperty == null || groupLinkProperty == null) {
             usersGroupsTable = null;
         }
+        setupAuthorizationCache();
+        if(persistence.cacheResetListenerRegistry != null) {
+            cacheResetListener = e -> {
+                clearAuthorizationCache();
+                clearWebTokenCache();
+            };
+            persistence.cacheResetListenerRegistry.getCacheResetListeners().add(cacheResetListener);
+        }
+        tableWritesSubscription = persistence.tableWrites.subscribe(table -> {
+            if(isSecurityTable(table)) {
+                clearAuthorizationCache();
+            }
+            if(usersTable != null && table.getQualifiedName().equals(usersTable.getQualifiedName())) {
+                clearWebTokenCache();
+            }
+        });
+    }
+
+    protected void setupAuthorizationCache() {
+        int timeToLive = portofinoConfiguration.getInt(AUTHORIZATION_CACHE_TIME_TO_LIVE, 60);
+        if(timeToLive <= 0) {
+            return;
+        }
+        authorizationCache = CacheBuilder.newBuilder()
+                .maximumSize(portofinoConfiguration.getInt(AUTHORIZATION_CACHE_SIZE, 1000))
+                .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Stops listening for cache resets and table writes. Called by Shiro (directly, or by the SecurityClassRealm
+     * when it replaces or destroys its delegate).
+     */
+    @Override
+    public void destroy() {
+        if(cacheResetListener != null) {
+            persistence.cacheResetListenerRegistry.getCacheResetListeners().remove(cacheResetListener);
+            cacheResetListener = null;
+        }
+        if(tableWritesSubscription != null) {
+            tableWritesSubscription.dispose();
+            tableWritesSubscription = null;
+        }
+    }
+
+    /**
+     * Tells whether the groups of the users depend on the given table. Tables are compared by name, because the
+     * model may have been reloaded since the realm was configured.
+     */
+    protected boolean isSecurityTable(Table table) {
+        String name = table.getQualifiedName();
+        return (usersTable != null && name.equals(usersTable.getQualifiedName())) ||
+                (groupsTable != null && name.equals(groupsTable.getQualifiedName())) ||
+                (usersGroupsTable != null && name.equals(usersGroupsTable.getQualifiedName()));
+    }
+
+    public void clearAuthorizationCache() {
+        if(authorizationCache != null) {
+            authorizationCache.invalidateAll();
+        }
     }
 
     protected void setupUserTable(Table t) {
@@ -127,18 +210,36 @@ public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
         if(groupsTable == null) {
             return groups;
         }
-        Session session = persistence.getSession(usersTable.getDatabaseName());
-        String queryString = getUserGroupsQuery();
-        Query<String> query = session.createQuery(queryString);
         Object userId = getUserProperty(principal, userIdProperty);
-        if(userId != null) {
-            //Load groups from the database
-            query.setParameter("userId", userId);
-            groups.addAll(query.list());
+        if(userId == null) {
+            return groups;
+        }
+        if(authorizationCache != null) {
+            try {
+                groups.addAll(authorizationCache.get(userId, () -> Collections.unmodifiableList(loadGroups(userId))));
+            } catch (ExecutionException e) {
+                throw new AuthorizationException("Could not load the groups of user " + userId, e.getCause());
+            } catch (UncheckedExecutionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+        } else {
+            groups.addAll(loadGroups(userId));
         }
         return groups;
     }
 
+    /**
+     * Loads the names of the groups of a user from the database.
+     */
+    protected List<String> loadGroups(Object userId) {
+        Session session = persistence.getSession(usersTable.getDatabaseName());
+        String queryString = getUserGroupsQuery();
+        Query<String> query = session.createQuery(queryString);
+        query.setParameter("userId", userId);
+        return new ArrayList<>(query.list());
+    }
+
     @NotNull
     protected String getUserGroupsQuery() {
         String queryString =
@@ -164,6 +265,52 @@ public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>This implementation only includes the user id, name and email.</p>
+     */
+    @Override
+    protected Map<String, Object> getCompactPrincipal(Object principal) {
+        Map<String, Object> claims = new HashMap<>();
+        for(String property : new String[] { userIdProperty, userNameProperty, userEmailProperty }) {
+            if(!StringUtils.isEmpty(property)) {
+                claims.put(property, getUserProperty(principal, property));
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation creates an instance of the users entity (a map or a POJO, depending on the entity
+     * mode) and sets the claims on it, converting each of them, that JSON may have turned into a different type, to
+     * the type of the corresponding column of the users table.</p>
+     */
+    @Override
+    protected Object getPrincipalFromClaims(Map<String, Object> claims) {
+        if(claims == null) {
+            throw new AuthenticationException("The token does not contain a principal");
+        }
+        Object principal = persistence.getTableAccessor(usersTable).newInstance();
+        claims.forEach((property, value) -> {
+            Column column = DatabaseLogic.findColumnByPropertyName(usersTable, property);
+            if(column != null) {
+                setUserProperty(principal, property, OgnlUtils.convertValue(value, column.getActualJavaType()));
+            }
+        });
+        return principal;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This implementation compares the user ids.</p>
+     */
+    @Override
+    protected boolean isSameUser(Object principal1, Object principal2) {
+        return Objects.equals(
+                getUserProperty(principal1, userIdProperty), getUserProperty(principal2, userIdProperty));
+    }
+
     protected void setUserProperty(Object principal, String property, Object value) {
         if(principal instanceof Map) {
             ((Map) principal).put(property, value);
@@ -274,6 +421,7 @@ public abstract class ModelBasedRealm extends AbstractPortofinoRealm {
         } else {
             setUserProperty(savedUser, userPasswordProperty, encryptPassword(newPassword));
             session.getTransaction().commit();
+            clearWebTokenCache(user);
         }
     }
 
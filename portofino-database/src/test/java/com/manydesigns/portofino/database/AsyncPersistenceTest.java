@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.database;
+
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.database.Database;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.persistence.hibernate.HibernateDatabaseSetup;
+import io.reactivex.disposables.Disposable;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.hibernate.Session;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Initializes two databases in parallel, one of which is slow to connect.
+ */
+@Test
+public class AsyncPersistenceTest {
+
+    public static final String SLOW_DATABASE = "hibernatetest";
+    public static final String FAST_DATABASE = "jpetstore";
+
+    Persistence persistence;
+    CountDownLatch slowDatabaseReleased;
+    CountDownLatch fastDatabaseReady;
+    List<String> initializations;
+    Disposable subscription;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        Configuration configuration = new PropertiesConfiguration();
+        configuration.setProperty(Persistence.STARTUP_TIMEOUT, 1);
+        DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        slowDatabaseReleased = new CountDownLatch(1);
+        fastDatabaseReady = new CountDownLatch(1);
+        initializations = Collections.synchronizedList(new ArrayList<>());
+        persistence = createPersistence(configuration, databasePlatformsRegistry);
+        subscription = persistence.databaseSetupEvents.subscribe(e -> {
+            if(e.type == Persistence.DatabaseSetupEvent.ADDED &&
+                    FAST_DATABASE.equals(e.setup.getDatabase().getDatabaseName())) {
+                fastDatabaseReady.countDown();
+            }
+        });
+    }
+
+    protected Persistence createPersistence(
+            Configuration configuration, DatabasePlatformsRegistry databasePlatformsRegistry)
+            throws FileSystemException {
+        return new Persistence(
+                VFS.getManager().resolveFile("res:com/manydesigns/portofino/database/model"),
+                configuration, null, databasePlatformsRegistry) {
+            @Override
+            protected void initConnectionProvider(Database database) {
+                String databaseName = database.getDatabaseName();
+                initializations.add("begin " + databaseName);
+                if(SLOW_DATABASE.equals(databaseName)) {
+                    try {
+                        //Like a database that takes a long time to answer
+                        assertTrue(slowDatabaseReleased.await(1, TimeUnit.MINUTES));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                super.initConnectionProvider(database);
+                initializations.add("end " + databaseName);
+            }
+        };
+    }
+
+    @AfterMethod
+    public void teardown() {
+        slowDatabaseReleased.countDown();
+        subscription.dispose();
+        persistence.stop();
+    }
+
+    public void testHealthyDatabaseIsAvailableWhileTheOtherIsLoading() throws Exception {
+        persistence.start();
+        //Startup doesn't wait for the slow database longer than the timeout
+        assertEquals(persistence.status.getValue(), Persistence.Status.STARTED);
+        assertTrue(fastDatabaseReady.await(1, TimeUnit.MINUTES));
+        assertNull(persistence.getDatabaseSetup(SLOW_DATABASE));
+        assertFalse(initializations.contains("end " + SLOW_DATABASE));
+
+        Session session = persistence.getSession(FAST_DATABASE);
+        assertEquals(((Number) session.createSQLQuery("select 1").uniqueResult()).intValue(), 1);
+        persistence.closeSessions();
+
+        slowDatabaseReleased.countDown();
+        persistence.initModel();
+        assertNotNull(persistence.getDatabaseSetup(SLOW_DATABASE));
+        assertNotNull(persistence.getDatabaseSetup(FAST_DATABASE));
+    }
+
+    public void testInitModelWaitsForThePreviousInitialization() throws Exception {
+        persistence.start();
+        assertTrue(fastDatabaseReady.await(1, TimeUnit.MINUTES));
+        HibernateDatabaseSetup fastSetup = persistence.getDatabaseSetup(FAST_DATABASE);
+
+        Thread reinitialization = new Thread(persistence::initModel);
+        reinitialization.start();
+        reinitialization.join(1000);
+        //The second initialization waits for the slow database before replacing the setups
+        assertTrue(reinitialization.isAlive());
+        assertEquals(Collections.frequency(initializations, "begin " + FAST_DATABASE), 1);
+        assertSame(persistence.getDatabaseSetup(FAST_DATABASE), fastSetup);
+
+        slowDatabaseReleased.countDown();
+        reinitialization.join(TimeUnit.MINUTES.toMillis(1));
+        assertFalse(reinitialization.isAlive());
+        assertEquals(Collections.frequency(initializations, "begin " + FAST_DATABASE), 2);
+        assertTrue(initializations.indexOf("end " + SLOW_DATABASE) <
+                initializations.lastIndexOf("begin " + FAST_DATABASE));
+        assertNotNull(persistence.getDatabaseSetup(SLOW_DATABASE));
+        assertNotSame(persistence.getDatabaseSetup(FAST_DATABASE), fastSetup);
+    }
+
+}
@@ -16,23 +16,28 @@ import com.manydesigns.portofino.modules.DatabaseModule;
 import com.manydesigns.portofino.persistence.Persistence;
 import com.manydesigns.portofino.persistence.QueryUtils;
 import com.manydesigns.portofino.persistence.TableCriteria;
+import com.manydesigns.portofino.persistence.hibernate.SessionFactoryBuilder;
 import com.manydesigns.portofino.reflection.TableAccessor;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.vfs2.AllFileSelector;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.VFS;
 import org.h2.tools.RunScript;
+import org.hibernate.EntityMode;
 import org.hibernate.Session;
 import org.hibernate.UnknownEntityTypeException;
 import org.hibernate.jdbc.Work;
 import org.testng.annotations.*;
 
 import javax.persistence.criteria.CriteriaQuery;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
@@ -574,6 +579,51 @@ public class PersistenceTest {
         assertEquals(2, allQuestions.size());
     }
 
+    public void testClassCache() throws Exception {
+        FileObject cacheDir = VFS.getManager().resolveFile("ram:/portofino-class-cache");
+        cacheDir.deleteAll();
+        persistence.getConfiguration().setProperty(Persistence.CLASS_CACHE_PATH, cacheDir.getName().getURI());
+        try {
+            persistence.initModel();
+            Table domanda = DatabaseLogic.findTableByName(persistence.getModel(), "hibernatetest", "PUBLIC", "DOMANDA");
+            Table product = DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "PRODUCT");
+            FileObject domandaStamp = getClassStamp(cacheDir, domanda, "hibernatetest");
+            FileObject productStamp = getClassStamp(cacheDir, product, "jpetstore");
+            assertTrue(domandaStamp.exists());
+            assertTrue(productStamp.exists());
+            String oldDomandaStamp = readString(domandaStamp);
+            String oldProductStamp = readString(productStamp);
+
+            Annotation nq = new Annotation(domanda, "javax.persistence.NamedQuery");
+            nq.setProperties(Arrays.asList(new Property("name", "all_questions"), new Property("query", "from domanda")));
+            domanda.getAnnotations().add(nq);
+            persistence.initModel();
+            assertNotEquals(readString(domandaStamp), oldDomandaStamp);
+            assertEquals(oldProductStamp, readString(productStamp));
+
+            Session session = persistence.getSession("hibernatetest");
+            assertEquals(2, session.createNamedQuery("all_questions", Object.class).list().size());
+            session = persistence.getSession("jpetstore");
+            CriteriaQuery criteria = QueryUtils.createCriteria(session, "product").getFirst();
+            assertEquals(16, session.createQuery(criteria).list().size());
+        } finally {
+            persistence.getConfiguration().clearProperty(Persistence.CLASS_CACHE_PATH);
+            cacheDir.deleteAll();
+        }
+    }
+
+    protected String readString(FileObject file) throws Exception {
+        try(InputStream inputStream = file.getContent().getInputStream()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    protected FileObject getClassStamp(FileObject cacheDir, Table table, String databaseName) throws Exception {
+        EntityMode entityMode = persistence.getDatabaseSetup(databaseName).getEntityMode();
+        String className = SessionFactoryBuilder.getMappedClassName(table, entityMode);
+        return cacheDir.resolveFile(className.replace('.', '/') + SessionFactoryBuilder.CLASS_STAMP_EXTENSION);
+    }
+
     public void testDateAndTimeAPIMapping() {
         Table table = DatabaseLogic.findTableByName(persistence.getModel(), "hibernatetest", "PUBLIC", "DOMANDA");
         assertNotNull(table);
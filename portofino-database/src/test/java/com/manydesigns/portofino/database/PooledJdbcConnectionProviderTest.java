@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.database;
+
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Database;
+import com.manydesigns.portofino.model.database.PooledJdbcConnectionProvider;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.testng.Assert.*;
+
+@Test
+public class PooledJdbcConnectionProviderTest {
+
+    DatabasePlatformsRegistry databasePlatformsRegistry;
+    PooledJdbcConnectionProvider connectionProvider;
+
+    @BeforeMethod
+    public void setup() {
+        databasePlatformsRegistry = new DatabasePlatformsRegistry(new PropertiesConfiguration());
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        Database database = new Database();
+        database.setDatabaseName("pooltest");
+        connectionProvider = new PooledJdbcConnectionProvider();
+        connectionProvider.setDriver("org.h2.Driver");
+        connectionProvider.setUrl("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        connectionProvider.setUsername("sa");
+        connectionProvider.setPassword("");
+        connectionProvider.setMaxPoolSize(2);
+        connectionProvider.setCheckoutTimeout(1);
+        connectionProvider.setDatabase(database);
+        database.setConnectionProvider(connectionProvider);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        connectionProvider.shutdown();
+    }
+
+    public void testConnectionsAreReused() throws Exception {
+        connectionProvider.init(databasePlatformsRegistry);
+        assertEquals(connectionProvider.getStatus(), ConnectionProvider.STATUS_CONNECTED);
+        assertTrue(connectionProvider.getDatabasePlatform() instanceof H2DatabasePlatform);
+        awaitCheckins();
+
+        try(Connection connection = connectionProvider.acquireConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("select 1")) {
+            assertTrue(resultSet.next());
+            assertEquals(connectionProvider.getActiveConnections(), 1);
+        }
+        for(int i = 0; i < 10; i++) {
+            try(Connection ignored = connectionProvider.acquireConnection()) {
+                assertTrue(connectionProvider.getTotalConnections() <= 2);
+            }
+        }
+    }
+
+    /**
+     * Returned connections are validated asynchronously, so they're busy for a while after being closed.
+     */
+    protected void awaitCheckins() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(connectionProvider.getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testExhaustedPool() throws Exception {
+        connectionProvider.init(databasePlatformsRegistry);
+        awaitCheckins();
+        try(Connection first = connectionProvider.acquireConnection();
+            Connection second = connectionProvider.acquireConnection()) {
+            assertEquals(connectionProvider.getActiveConnections(), 2);
+            assertEquals(connectionProvider.getIdleConnections(), 0);
+            try(Connection ignored = connectionProvider.acquireConnection()) {
+                fail("The pool should be exhausted");
+            } catch (SQLException e) {
+                //Expected, after the checkout timeout
+            }
+        }
+        //Returned connections can be acquired again
+        try(Connection ignored = connectionProvider.acquireConnection()) {
+            assertTrue(connectionProvider.getActiveConnections() >= 1);
+        }
+    }
+
+    public void testPoolConfiguration() {
+        connectionProvider.setMinPoolSize(2);
+        connectionProvider.setValidationQuery("select 1");
+        connectionProvider.setLeakDetectionThreshold(60);
+        connectionProvider.init(databasePlatformsRegistry);
+        ComboPooledDataSource dataSource = (ComboPooledDataSource) connectionProvider.getDataSource();
+        assertEquals(dataSource.getMinPoolSize(), 2);
+        assertEquals(dataSource.getMaxPoolSize(), 2);
+        assertEquals(dataSource.getCheckoutTimeout(), 1000);
+        assertEquals(dataSource.getPreferredTestQuery(), "select 1");
+        assertEquals(dataSource.getUnreturnedConnectionTimeout(), 60);
+        assertTrue(dataSource.isDebugUnreturnedConnectionStackTraces());
+        assertFalse(dataSource.isTestConnectionOnCheckout());
+    }
+
+    public void testInitReplacesPool() throws Exception {
+        connectionProvider.init(databasePlatformsRegistry);
+        ComboPooledDataSource dataSource = (ComboPooledDataSource) connectionProvider.getDataSource();
+        connectionProvider.init(databasePlatformsRegistry);
+        assertNotSame(connectionProvider.getDataSource(), dataSource);
+
+        connectionProvider.shutdown();
+        assertEquals(connectionProvider.getTotalConnections(), 0);
+        connectionProvider.init(databasePlatformsRegistry);
+        assertEquals(connectionProvider.getStatus(), ConnectionProvider.STATUS_CONNECTED);
+    }
+}
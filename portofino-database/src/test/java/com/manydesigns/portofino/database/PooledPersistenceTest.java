@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.database;
+
+import com.manydesigns.portofino.cache.CacheResetListenerRegistry;
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.PooledJdbcConnectionProvider;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.manydesigns.portofino.modules.DatabaseModule;
+import com.manydesigns.portofino.persistence.Persistence;
+import com.manydesigns.portofino.persistence.QueryUtils;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.vfs2.VFS;
+import org.hibernate.Session;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.criteria.CriteriaQuery;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Runs Hibernate on a database configured with a &lt;pooledJdbcConnection&gt;.
+ *
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+@Test
+public class PooledPersistenceTest {
+
+    DatabaseModule databaseModule;
+    Persistence persistence;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        Configuration configuration = new PropertiesConfiguration();
+        DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        databaseModule = new DatabaseModule() {
+            @Override
+            public void destroy() {
+                if(subscription != null) {
+                    subscription.dispose();
+                    subscription = null;
+                }
+            }
+        };
+        databaseModule.applicationDirectory =
+                VFS.getManager().resolveFile("res:com/manydesigns/portofino/database/pooled");
+        databaseModule.configuration = configuration;
+        persistence = databaseModule.getPersistence(databasePlatformsRegistry, new CacheResetListenerRegistry());
+        databaseModule.init();
+        persistence.start();
+        Session session = persistence.getSession("pooltest");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS item");
+                statement.execute("CREATE TABLE item (id INTEGER PRIMARY KEY, name VARCHAR(50))");
+                statement.execute("INSERT INTO item VALUES (1, 'one'), (2, 'two')");
+            }
+        });
+        session.getTransaction().commit();
+        persistence.syncDataModel("pooltest");
+        persistence.initModel();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        persistence.stop();
+        databaseModule.destroy();
+    }
+
+    public void testHibernateUsesThePool() throws Exception {
+        ConnectionProvider connectionProvider = persistence.getConnectionProvider("pooltest");
+        assertTrue(connectionProvider instanceof PooledJdbcConnectionProvider);
+        PooledJdbcConnectionProvider pooledConnectionProvider = (PooledJdbcConnectionProvider) connectionProvider;
+        assertEquals(pooledConnectionProvider.getStatus(), ConnectionProvider.STATUS_CONNECTED);
+        assertEquals(pooledConnectionProvider.getMaxPoolSize(), Integer.valueOf(5));
+        assertFalse(pooledConnectionProvider.toString().contains("password"));
+
+        Session session = persistence.getSession("pooltest");
+        CriteriaQuery criteria = QueryUtils.createCriteria(session, "item").getFirst();
+        List result = session.createQuery(criteria).list();
+        assertEquals(result.size(), 2);
+        assertTrue(pooledConnectionProvider.getActiveConnections() >= 1);
+        persistence.closeSessions();
+        assertTrue(pooledConnectionProvider.getTotalConnections() <= 5);
+    }
+}
@@ -1,5 +1,6 @@
 package com.manydesigns.portofino.database;
 
+import com.manydesigns.elements.reflection.PropertyAccessor;
 import com.manydesigns.elements.text.QueryStringWithParameters;
 import com.manydesigns.portofino.model.Model;
 import com.manydesigns.portofino.model.database.*;
@@ -9,6 +10,9 @@ import com.manydesigns.portofino.reflection.TableAccessor;
 import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.testng.AssertJUnit.assertEquals;
 
 @Test
@@ -101,4 +105,147 @@ public class QueryUtilsTest {
         assertEquals("SELECT t, u FROM test_table t, other x WHERE (t.foo = x.bar) AND t.column1 = :p1", queryStringWithParameters.getQueryString());
     }
 
+    public void testMergeQueryCache() throws NoSuchFieldException {
+        Table table = createTestTable();
+        TableAccessor tableAccessor = new TableAccessor(table);
+
+        TableCriteria criteria = new TableCriteria(table);
+        criteria.eq(tableAccessor.getProperty("column1"), "123");
+        criteria.orderBy(tableAccessor.getProperty("column1"), "desc");
+        QueryStringWithParameters queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t where t.foo = 1", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.foo = 1) AND t.column1 = :p1 ORDER BY t.column1 DESC",
+                queryStringWithParameters.getQueryString());
+        assertEquals("123", queryStringWithParameters.getParameters()[0]);
+
+        //Same shape, different values: the cached query is reused with the new parameters
+        criteria = new TableCriteria(table);
+        criteria.eq(tableAccessor.getProperty("column1"), "456");
+        criteria.orderBy(tableAccessor.getProperty("column1"), "desc");
+        queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t where t.foo = 1", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.foo = 1) AND t.column1 = :p1 ORDER BY t.column1 DESC",
+                queryStringWithParameters.getQueryString());
+        assertEquals("456", queryStringWithParameters.getParameters()[0]);
+
+        //Different shape
+        criteria = new TableCriteria(table);
+        criteria.isNull(tableAccessor.getProperty("column1"));
+        queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t where t.foo = 1", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.foo = 1) AND t.column1 IS NULL",
+                queryStringWithParameters.getQueryString());
+        assertEquals(0, queryStringWithParameters.getParameters().length);
+
+        QueryUtils.clearQueryCache();
+        queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t where t.foo = 1", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.foo = 1) AND t.column1 IS NULL",
+                queryStringWithParameters.getQueryString());
+    }
+
+    public void testSeek() throws NoSuchFieldException {
+        Table table = createTestTable();
+        TableAccessor tableAccessor = new TableAccessor(table);
+        PropertyAccessor[] accessors = { tableAccessor.getProperty("column2"), tableAccessor.getProperty("column1") };
+
+        TableCriteria criteria = new TableCriteria(table);
+        criteria.seek(accessors, new Object[] { "a", "k" }, "desc", true);
+        criteria.orderBy(accessors[0], "desc").thenOrderBy(accessors[1], "desc").nullsLast();
+        QueryStringWithParameters queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t where t.foo = 1", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.foo = 1) AND " +
+                        "((t.column2 < :p1) OR (t.column2 = :p1 AND t.column1 < :p2) OR t.column2 IS NULL) " +
+                        "ORDER BY t.column2 DESC NULLS LAST, t.column1 DESC",
+                queryStringWithParameters.getQueryString());
+        assertEquals(2, queryStringWithParameters.getParameters().length);
+
+        //Among the nulls, only the primary key is compared
+        criteria = new TableCriteria(table);
+        criteria.seek(accessors, new Object[] { null, "k" }, "asc", true);
+        queryStringWithParameters = QueryUtils.mergeQuery("from test_table t", criteria, null);
+        assertEquals("FROM test_table t WHERE (t.column2 IS NULL AND ((t.column1 > :p1)))",
+                queryStringWithParameters.getQueryString());
+        assertEquals("k", queryStringWithParameters.getParameters()[0]);
+    }
+
+    public void testFinallyOrderBy() throws NoSuchFieldException {
+        Table table = createTestTable();
+        TableAccessor tableAccessor = new TableAccessor(table);
+
+        TableCriteria criteria = new TableCriteria(table);
+        criteria.finallyOrderBy(tableAccessor.getProperty("column1"), "asc");
+        QueryStringWithParameters queryStringWithParameters =
+                QueryUtils.mergeQuery("from test_table t order by t.column2 desc", criteria, null);
+        assertEquals("FROM test_table t ORDER BY t.column2 DESC, t.column1",
+                queryStringWithParameters.getQueryString());
+
+        //Not repeated if the query already sorts by the same property
+        queryStringWithParameters = QueryUtils.mergeQuery("from test_table t order by t.column1", criteria, null);
+        assertEquals("FROM test_table t ORDER BY t.column1", queryStringWithParameters.getQueryString());
+
+        queryStringWithParameters = QueryUtils.mergeQuery("from test_table t", criteria, null);
+        assertEquals("FROM test_table t ORDER BY t.column1", queryStringWithParameters.getQueryString());
+    }
+
+    public void testKeysIn() throws NoSuchFieldException {
+        Table table = createTestTable();
+        TableAccessor tableAccessor = new TableAccessor(table);
+        PropertyAccessor[] keyProperties = {
+                tableAccessor.getProperty("column1"), tableAccessor.getProperty("column2") };
+
+        TableCriteria criteria = new TableCriteria(table);
+        criteria.keysIn(keyProperties, Arrays.asList(new Object[] { 1, "a" }, new Object[] { 2, "b" }));
+        QueryStringWithParameters queryStringWithParameters = QueryUtils.mergeQuery("from test_table", criteria, null);
+        assertEquals(
+                "FROM test_table WHERE ((column1 = :p1 AND column2 = :p2) OR (column1 = :p3 AND column2 = :p4))",
+                queryStringWithParameters.getQueryString());
+        assertEquals(Arrays.asList(1, "a", 2, "b"), Arrays.asList(queryStringWithParameters.getParameters()));
+
+        criteria = new TableCriteria(table);
+        criteria.keysIn(keyProperties, Collections.emptyList());
+        queryStringWithParameters = QueryUtils.mergeQuery("from test_table", criteria, null);
+        assertEquals("FROM test_table WHERE 1 = 0", queryStringWithParameters.getQueryString());
+    }
+
+    protected Table createTestTable() {
+        Model model = new Model();
+
+        Database database = new Database();
+        database.setDatabaseName("db");
+        model.getDatabases().add(database);
+
+        Schema schema = new Schema(database);
+        schema.setSchemaName("schema");
+        database.getSchemas().add(schema);
+
+        Table table = new Table(schema);
+        table.setTableName("test_table");
+        schema.getTables().add(table);
+
+        Column column = new Column(table);
+        column.setColumnName("column1");
+        column.setColumnType("varchar");
+        column.setLength(10);
+        column.setScale(0);
+        table.getColumns().add(column);
+
+        column = new Column(table);
+        column.setColumnName("column2");
+        column.setColumnType("varchar");
+        column.setLength(10);
+        column.setScale(0);
+        column.setNullable(true);
+        table.getColumns().add(column);
+
+        PrimaryKey primaryKey = new PrimaryKey(table);
+        PrimaryKeyColumn pkColumn = new PrimaryKeyColumn(primaryKey);
+        primaryKey.getPrimaryKeyColumns().add(pkColumn);
+        pkColumn.setColumnName("column1");
+        table.setPrimaryKey(primaryKey);
+
+        model.init(new PropertiesConfiguration());
+        return table;
+    }
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.database;
+
+import com.manydesigns.portofino.model.database.Type;
+import org.testng.annotations.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/*
+* @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+* @author Angelo Lupo          - angelo.lupo@manydesigns.com
+* @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+* @author Alessio Stalla       - alessio.stalla@manydesigns.com
+*/
+@Test
+public class TypeTest {
+
+    protected Type binaryType(String name, int jdbcType) {
+        return new Type(name, jdbcType, null, null, null, true, false, false, false, 0, 0);
+    }
+
+    public void testBlobOnlyOfferedForLobColumns() {
+        List<Class> lob = Arrays.asList(binaryType("BLOB", Types.BLOB).getAvailableJavaTypes(null));
+        assertEquals(lob, Arrays.asList(byte[].class, java.sql.Blob.class));
+
+        //E.g. PostgreSQL bytea, which the driver can't read as a java.sql.Blob
+        List<Class> bytea = Arrays.asList(binaryType("bytea", Types.BINARY).getAvailableJavaTypes(null));
+        assertEquals(bytea, Arrays.asList(byte[].class));
+
+        List<Class> varbinary = Arrays.asList(binaryType("VARBINARY", Types.VARBINARY).getAvailableJavaTypes(100));
+        assertEquals(varbinary, Arrays.asList(byte[].class));
+    }
+
+}
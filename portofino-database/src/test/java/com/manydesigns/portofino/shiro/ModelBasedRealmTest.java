@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.shiro;
+
+import com.manydesigns.elements.ElementsThreadLocals;
+import com.manydesigns.portofino.cache.CacheResetListenerRegistry;
+import com.manydesigns.portofino.database.platforms.H2DatabasePlatform;
+import com.manydesigns.portofino.model.Annotation;
+import com.manydesigns.portofino.model.database.Column;
+import com.manydesigns.portofino.model.database.DatabaseLogic;
+import com.manydesigns.portofino.model.database.Table;
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.manydesigns.portofino.modules.DatabaseModule;
+import com.manydesigns.portofino.persistence.Persistence;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Encoders;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.vfs2.VFS;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.hibernate.Session;
+import org.testng.annotations.*;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.sql.Statement;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ModelBasedRealmTest {
+
+    DatabaseModule databaseModule;
+    Persistence persistence;
+    ModelBasedRealm realm;
+    Table usersTable;
+
+    @BeforeClass
+    public void setupElements() {
+        ElementsThreadLocals.setupDefaultElementsContext();
+    }
+
+    @AfterClass
+    public void teardownElements() {
+        ElementsThreadLocals.removeElementsContext();
+    }
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        Configuration configuration = new PropertiesConfiguration();
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+        configuration.setProperty(AbstractPortofinoRealm.JWT_SECRET_PROPERTY, Encoders.BASE64.encode(secret));
+        configuration.setProperty(AbstractPortofinoRealm.JWT_COMPACT_PRINCIPAL_PROPERTY, true);
+        DatabasePlatformsRegistry databasePlatformsRegistry = new DatabasePlatformsRegistry(configuration);
+        databasePlatformsRegistry.addDatabasePlatform(new H2DatabasePlatform());
+        databaseModule = new DatabaseModule() {
+            @Override
+            public void destroy() {
+                if(subscription != null) {
+                    subscription.dispose();
+                    subscription = null;
+                }
+            }
+        };
+        databaseModule.applicationDirectory =
+                VFS.getManager().resolveFile("res:com/manydesigns/portofino/database/model");
+        databaseModule.configuration = configuration;
+        persistence = databaseModule.getPersistence(databasePlatformsRegistry, new CacheResetListenerRegistry());
+        databaseModule.init();
+        persistence.start();
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS realm_user");
+                statement.execute("DROP TABLE IF EXISTS realm_group");
+                statement.execute("CREATE TABLE realm_group (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+                statement.execute("CREATE TABLE realm_user (" +
+                        "id BIGINT PRIMARY KEY, username VARCHAR(50), email VARCHAR(100), password VARCHAR(100), " +
+                        "registration TIMESTAMP)");
+                statement.execute("INSERT INTO realm_user VALUES " +
+                        "(1, 'admin', 'admin@example.com', 'secret', CURRENT_TIMESTAMP)");
+            }
+        });
+        session.getTransaction().commit();
+        persistence.syncDataModel("jpetstore");
+        usersTable = DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "REALM_USER");
+        annotateColumn("USERNAME", Username.class);
+        annotateColumn("EMAIL", EmailAddress.class);
+        annotateColumn("PASSWORD", Password.class);
+        persistence.initModel();
+
+        realm = new ModelBasedRealm() {
+            @Override
+            protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) {
+                return loadAuthenticationInfo((JSONWebToken) token);
+            }
+        };
+        realm.persistence = persistence;
+        realm.portofinoConfiguration = configuration;
+        realm.configure();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        realm.destroy();
+        Session session = persistence.getSession("jpetstore");
+        session.doWork(connection -> {
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS realm_user");
+                statement.execute("DROP TABLE IF EXISTS realm_group");
+            }
+        });
+        session.getTransaction().commit();
+        persistence.stop();
+        databaseModule.destroy();
+    }
+
+    protected void annotateColumn(String columnName, Class<?> annotationType) {
+        Column column = usersTable.getColumns().stream()
+                .filter(c -> c.getColumnName().equalsIgnoreCase(columnName))
+                .findFirst().orElseThrow(IllegalStateException::new);
+        column.getAnnotations().add(new Annotation(column, annotationType.getName()));
+    }
+
+    protected Map<?, ?> loadUser() {
+        Session session = persistence.getSession("jpetstore");
+        return (Map<?, ?>) session.createQuery("from " + usersTable.getActualEntityName()).uniqueResult();
+    }
+
+    protected Object authenticate(String token) {
+        return realm.loadAuthenticationInfo(new JSONWebToken(token)).getPrincipals().getPrimaryPrincipal();
+    }
+
+    public void testCompactPrincipalRoundTrip() {
+        Map<?, ?> user = loadUser();
+        String token = realm.generateWebToken(user);
+
+        //Only the id, name and email are in the token, not the password nor the serialized entity
+        Claims claims = (Claims) Jwts.parser().setSigningKey(realm.getJWTKey()).parse(token).getBody();
+        assertFalse(claims.containsKey("serialized-principal"));
+        Map<?, ?> compactPrincipal = (Map<?, ?>) claims.get("principal");
+        assertEquals(compactPrincipal.keySet().size(), 3);
+        assertFalse(compactPrincipal.containsKey(realm.userPasswordProperty));
+
+        Map<?, ?> principal = (Map<?, ?>) authenticate(token);
+        //JSON turns the id into an Integer; the realm converts it back to the type of the column
+        assertEquals(principal.get(realm.userIdProperty), 1L);
+        assertEquals(principal.get(realm.userNameProperty), "admin");
+        assertEquals(principal.get(realm.userEmailProperty), "admin@example.com");
+        assertNull(principal.get(realm.userPasswordProperty));
+        assertEquals(realm.getUserId((Serializable) principal), user.get(realm.userIdProperty));
+        assertTrue(realm.isSameUser(principal, user));
+
+        //From the cache
+        Map<?, ?> cachedPrincipal = (Map<?, ?>) authenticate(token);
+        assertNotSame(cachedPrincipal, principal);
+        assertEquals(cachedPrincipal, principal);
+        assertEquals(realm.getWebTokenCache().size(), 1);
+    }
+
+    public void testWritesToTheUsersTableClearCachedTokens() {
+        String token = realm.generateWebToken(loadUser());
+        authenticate(token);
+        assertEquals(realm.getWebTokenCache().size(), 1);
+        //Writes to other tables don't invalidate the tokens
+        persistence.tableWrites.onNext(
+                DatabaseLogic.findTableByName(persistence.getModel(), "jpetstore", "PUBLIC", "REALM_GROUP"));
+        assertEquals(realm.getWebTokenCache().size(), 1);
+        persistence.tableWrites.onNext(usersTable);
+        assertEquals(realm.getWebTokenCache().size(), 0);
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * A list that runs a callback every time it is structurally modified or one of its elements is replaced. It is used
+ * by model objects to invalidate the indexes built over their children. All the bulk operations (addAll, removeIf,
+ * clear, sort, iterator removal and so on) go through {@link #add(int, Object)}, {@link #set(int, Object)} and
+ * {@link #remove(int)}, so the callback never misses a change.
+ *
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+public class ChangeTrackingList<T> extends AbstractList<T> implements RandomAccess {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    protected final ArrayList<T> elements = new ArrayList<>();
+    protected final Runnable onChange;
+
+    public ChangeTrackingList(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    @Override
+    public T get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public T set(int index, T element) {
+        T previous = elements.set(index, element);
+        onChange.run();
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        elements.add(index, element);
+        modCount++;
+        onChange.run();
+    }
+
+    @Override
+    public T remove(int index) {
+        T removed = elements.remove(index);
+        modCount++;
+        onChange.run();
+        return removed;
+    }
+}
@@ -25,8 +25,9 @@ import org.apache.commons.configuration2.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.xml.bind.annotation.*;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -44,7 +45,8 @@ public class Model {
     // Fields
     //**************************************************************************
 
-    protected final LinkedList<Database> databases;
+    protected final List<Database> databases;
+    protected volatile Map<String, Database> databasesByName;
 
     public static final Logger logger = LoggerFactory.getLogger(Model.class);
 
@@ -53,7 +55,7 @@ public class Model {
     //**************************************************************************
 
     public Model() {
-        this.databases = new LinkedList<>();
+        this.databases = new ChangeTrackingList<>(this::invalidateIndexes);
     }
 
     //**************************************************************************
@@ -70,6 +72,34 @@ public class Model {
         new ResetVisitor().visit(rootObject);
         new InitVisitor(this, configuration).visit(rootObject);
         new LinkVisitor(this, configuration).visit(rootObject);
+        reindex();
+    }
+
+    /**
+     * Eagerly rebuilds the indexes used to find databases, schemas, tables and foreign keys by name and tables by
+     * entity name. Adding, removing or replacing children invalidates the affected indexes, which are then rebuilt on
+     * the next lookup; renaming an object is caught by the lookups in {@link
+     * com.manydesigns.portofino.model.database.DatabaseLogic}, which check the name of the indexed object.
+     */
+    public void reindex() {
+        databasesByName = buildDatabasesByName();
+        for (Database database : databases) {
+            database.reindex();
+        }
+    }
+
+    public void invalidateIndexes() {
+        databasesByName = null;
+    }
+
+    protected Map<String, Database> buildDatabasesByName() {
+        Map<String, Database> databasesByName = new HashMap<>();
+        for (Database database : databases) {
+            if(database.getDatabaseName() != null) {
+                databasesByName.putIfAbsent(database.getDatabaseName(), database);
+            }
+        }
+        return databasesByName;
     }
 
     //**************************************************************************
@@ -83,4 +113,16 @@ public class Model {
         return databases;
     }
 
+    /**
+     * @return the databases by name, rebuilt if the list of databases has changed since the last lookup.
+     */
+    public Map<String, Database> getDatabasesByName() {
+        Map<String, Database> databasesByName = this.databasesByName;
+        if(databasesByName == null) {
+            databasesByName = buildDatabasesByName();
+            this.databasesByName = databasesByName;
+        }
+        return databasesByName;
+    }
+
 }
@@ -30,7 +30,9 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /*
@@ -61,6 +63,9 @@ public class Database implements ModelObject, Annotated {
     protected ConnectionProvider connectionProvider;
     protected Properties settings;
     protected final List<Annotation> annotations = new ArrayList<>();
+
+    protected volatile Map<String, Schema> schemasByName;
+    protected volatile Map<String, Table> tablesByEntityName;
     
     //**************************************************************************
     // Logging
@@ -72,7 +77,7 @@ public class Database implements ModelObject, Annotated {
     // Constructors
     //**************************************************************************
     public Database() {
-        this.schemas = new ArrayList<>();
+        this.schemas = new ChangeTrackingList<>(this::invalidateIndexes);
     }
 
     //**************************************************************************
@@ -115,6 +120,49 @@ public class Database implements ModelObject, Annotated {
         }
     }
 
+    /**
+     * Eagerly rebuilds the indexes of schemas by name and tables by entity name, as well as those of the schemas.
+     * See {@link Model#reindex()}.
+     */
+    public void reindex() {
+        schemasByName = buildSchemasByName();
+        tablesByEntityName = buildTablesByEntityName();
+        for (Schema schema : schemas) {
+            schema.reindex();
+        }
+    }
+
+    /**
+     * Invalidates the indexes of schemas by name and tables by entity name. Called when the schemas or the tables
+     * of any schema change.
+     */
+    public void invalidateIndexes() {
+        schemasByName = null;
+        tablesByEntityName = null;
+    }
+
+    protected Map<String, Schema> buildSchemasByName() {
+        Map<String, Schema> schemasByName = new HashMap<>();
+        for (Schema schema : schemas) {
+            if(schema.getSchemaName() != null) {
+                schemasByName.putIfAbsent(schema.getSchemaName(), schema);
+            }
+        }
+        return schemasByName;
+    }
+
+    protected Map<String, Table> buildTablesByEntityName() {
+        Map<String, Table> tablesByEntityName = new HashMap<>();
+        for (Schema schema : schemas) {
+            for (Table table : schema.getTables()) {
+                if(table.getActualEntityName() != null) {
+                    tablesByEntityName.putIfAbsent(table.getActualEntityName(), table);
+                }
+            }
+        }
+        return tablesByEntityName;
+    }
+
     //**************************************************************************
     // Getters/setter
     //**************************************************************************
@@ -128,6 +176,31 @@ public class Database implements ModelObject, Annotated {
         this.databaseName = databaseName;
     }
 
+    /**
+     * @return the schemas by name, rebuilt if the schemas have changed since the last lookup.
+     */
+    public Map<String, Schema> getSchemasByName() {
+        Map<String, Schema> schemasByName = this.schemasByName;
+        if(schemasByName == null) {
+            schemasByName = buildSchemasByName();
+            this.schemasByName = schemasByName;
+        }
+        return schemasByName;
+    }
+
+    /**
+     * @return the tables by actual entity name, rebuilt if the tables have changed since the last lookup. Tables
+     * that have not been initialized have no entity name and are not indexed.
+     */
+    public Map<String, Table> getTablesByEntityName() {
+        Map<String, Table> tablesByEntityName = this.tablesByEntityName;
+        if(tablesByEntityName == null) {
+            tablesByEntityName = buildTablesByEntityName();
+            this.tablesByEntityName = tablesByEntityName;
+        }
+        return tablesByEntityName;
+    }
+
     @XmlElementWrapper(name="schemas")
     @XmlElement(name = "schema", type = Schema.class)
     public List<Schema> getSchemas() {
@@ -201,6 +274,7 @@ public class Database implements ModelObject, Annotated {
 
     @XmlElements({
         @XmlElement(name="jdbcConnection", type=JdbcConnectionProvider.class),
+        @XmlElement(name="pooledJdbcConnection", type=PooledJdbcConnectionProvider.class),
         @XmlElement(name="jndiConnection", type=JndiConnectionProvider.class)
     })
     public ConnectionProvider getConnectionProvider() {
@@ -102,9 +102,17 @@ public class DatabaseLogic {
 
     //**************************************************************************
     // Search objects of a certain kind
+    // Databases, schemas, tables and foreign keys are looked up in the indexes
+    // maintained by the model (see Model#reindex()). Those are invalidated when
+    // children are added or removed; a renamed object fails the name check and
+    // falls back to a linear search.
     //**************************************************************************
 
     public static @Nullable Database findDatabaseByName(Model model, String databaseName) {
+        Database indexed = model.getDatabasesByName().get(databaseName);
+        if (indexed != null && indexed.getDatabaseName().equals(databaseName)) {
+            return indexed;
+        }
         for (Database database : model.getDatabases()) {
             if (database.getDatabaseName().equals(databaseName)) {
                 return database;
@@ -116,6 +124,10 @@ public class DatabaseLogic {
 
     public static @Nullable Schema findSchemaByName(
             Database database, String schemaName) {
+        Schema indexed = database.getSchemasByName().get(schemaName);
+        if (indexed != null && indexed.getSchemaName().equals(schemaName)) {
+            return indexed;
+        }
         for (Schema schema : database.getSchemas()) {
             if (schema.getSchemaName().equals(schemaName)) {
                 return schema;
@@ -156,6 +168,10 @@ public class DatabaseLogic {
     }
 
     public static @Nullable Table findTableByName(Schema schema, String tableName) {
+        Table indexed = schema.getTablesByName().get(tableName);
+        if (indexed != null && indexed.getTableName().equals(tableName)) {
+            return indexed;
+        }
         for (Table table : schema.getTables()) {
             if (table.getTableName().equals(tableName)) {
                 return table;
@@ -236,6 +252,10 @@ public class DatabaseLogic {
     }
 
     public static Table findTableByEntityName(Database database, String entityName) {
+        Table indexed = database.getTablesByEntityName().get(entityName);
+        if (indexed != null && entityName.equals(indexed.getActualEntityName())) {
+            return indexed;
+        }
         for(Schema schema : database.getSchemas()) {
             for(Table table : schema.getTables()) {
                 if(entityName.equals(table.getActualEntityName())) {
@@ -247,7 +267,11 @@ public class DatabaseLogic {
     }
 
     public static ForeignKey findForeignKeyByName(Table table, String fkName) {
-        for (ForeignKey current : table.foreignKeys) {
+        ForeignKey indexed = table.getForeignKeysByName().get(fkName);
+        if (indexed != null && fkName.equals(indexed.getName())) {
+            return indexed;
+        }
+        for (ForeignKey current : table.getForeignKeys()) {
             if (current.getName().equals(fkName)) {
                 return current;
             }
@@ -257,7 +281,7 @@ public class DatabaseLogic {
     }
 
     public static ForeignKey findForeignKeyByNameIgnoreCase(Table table, String fkName) {
-        for (ForeignKey current : table.foreignKeys) {
+        for (ForeignKey current : table.getForeignKeys()) {
             if (current.getName().equalsIgnoreCase(fkName)) {
                 return current;
             }
@@ -38,7 +38,7 @@ import java.util.List;
 * @author Alessio Stalla       - alessio.stalla@manydesigns.com
 */
 @XmlAccessorType(value = XmlAccessType.NONE)
-@XmlType(propOrder = {"name","toDatabase","references","hql", "sql"})
+@XmlType(propOrder = {"name","toDatabase","references","hql", "sql", "cacheTimeToLive"})
 public class DatabaseSelectionProvider implements ModelSelectionProvider {
     public static final String copyright =
             "Copyright (C) 2005-2020 ManyDesigns srl";
@@ -49,6 +49,7 @@ public class DatabaseSelectionProvider implements ModelSelectionProvider {
     protected String toDatabase;
     protected String sql;
     protected String hql;
+    protected Integer cacheTimeToLive;
 
     protected Table fromTable;
 
@@ -154,6 +155,19 @@ public class DatabaseSelectionProvider implements ModelSelectionProvider {
         this.hql = hql;
     }
 
+    /**
+     * How long, in seconds, the results of the query are cached across requests. 0 disables caching; null means
+     * the application default.
+     */
+    @XmlAttribute(required = false)
+    public Integer getCacheTimeToLive() {
+        return cacheTimeToLive;
+    }
+
+    public void setCacheTimeToLive(Integer cacheTimeToLive) {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
     public Table getFromTable() {
         return fromTable;
     }
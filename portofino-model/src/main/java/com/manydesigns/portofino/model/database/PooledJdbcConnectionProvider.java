@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2005-2020 ManyDesigns srl.  All rights reserved.
+ * http://www.manydesigns.com/
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.manydesigns.portofino.model.database;
+
+import com.manydesigns.portofino.model.database.platforms.DatabasePlatformsRegistry;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import javax.sql.DataSource;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import java.beans.PropertyVetoException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+
+/**
+ * A JDBC connection provider backed by a pool of connections. The same pool serves Hibernate, through
+ * {@link #getDataSource()}, and every other user of {@link #acquireConnection()} (model synchronization, metadata
+ * scans, Liquibase). Connections must be closed to be returned to the pool.<br />
+ * The pool is created upon the first request for a connection and closed by {@link #shutdown()} or when the
+ * provider is initialized again. Its statistics are available through the getters of this class and, as the pool
+ * is registered with JMX, to monitoring tools.
+ *
+ * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
+ * @author Angelo Lupo          - angelo.lupo@manydesigns.com
+ * @author Giampiero Granatella - giampiero.granatella@manydesigns.com
+ * @author Alessio Stalla       - alessio.stalla@manydesigns.com
+ */
+@XmlAccessorType(XmlAccessType.NONE)
+public class PooledJdbcConnectionProvider extends JdbcConnectionProvider {
+    public static final String copyright =
+            "Copyright (C) 2005-2020 ManyDesigns srl";
+
+    //**************************************************************************
+    // Constants
+    //**************************************************************************
+
+    public static final int DEFAULT_MIN_POOL_SIZE = 1;
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+    public static final int DEFAULT_CHECKOUT_TIMEOUT = 30;
+    public static final int DEFAULT_VALIDATION_INTERVAL = 60;
+    public static final int ACQUIRE_RETRY_ATTEMPTS = 3;
+
+    //**************************************************************************
+    // Fields (configured values)
+    //**************************************************************************
+
+    protected Integer minPoolSize;
+    protected Integer maxPoolSize;
+    protected Integer checkoutTimeout;
+    protected Integer maxIdleTime;
+    protected String validationQuery;
+    protected Integer validationInterval;
+    protected Boolean validateOnCheckout;
+    protected Integer leakDetectionThreshold;
+
+    //**************************************************************************
+    // Fields (calculated values)
+    //**************************************************************************
+
+    protected ComboPooledDataSource dataSource;
+
+    //**************************************************************************
+    // Constructors
+    //**************************************************************************
+
+    public PooledJdbcConnectionProvider() {
+        super();
+    }
+
+    //**************************************************************************
+    // Overrides
+    //**************************************************************************
+
+    @Override
+    public void init(DatabasePlatformsRegistry databasePlatformsRegistry) {
+        //The connection settings may have changed
+        closeDataSource();
+        super.init(databasePlatformsRegistry);
+    }
+
+    @Override
+    public String getDescription() {
+        return MessageFormat.format(
+                "Pooled JDBC connection to URL: {0}", actualUrl);
+    }
+
+    @Override
+    public Connection acquireConnection() throws Exception {
+        return getDataSource().getConnection();
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        closeDataSource();
+    }
+
+    //**************************************************************************
+    // Pool management
+    //**************************************************************************
+
+    /**
+     * Returns the pool, creating it if necessary. Only valid after {@link #init(DatabasePlatformsRegistry)}.
+     */
+    public synchronized DataSource getDataSource() {
+        if(dataSource == null) {
+            String databaseName = getDatabase().getDatabaseName();
+            if(actualUrl == null) {
+                throw new IllegalStateException("Connection provider not initialized for database " + databaseName);
+            }
+            try {
+                dataSource = createDataSource();
+            } catch (PropertyVetoException e) {
+                throw new IllegalStateException("Invalid connection pool configuration for database " + databaseName, e);
+            }
+            logger.info("Created connection pool for database {} with {}-{} connections",
+                    databaseName, dataSource.getMinPoolSize(), dataSource.getMaxPoolSize());
+        }
+        return dataSource;
+    }
+
+    protected ComboPooledDataSource createDataSource() throws PropertyVetoException {
+        ComboPooledDataSource dataSource = new ComboPooledDataSource();
+        dataSource.setDataSourceName("portofino-" + getDatabase().getDatabaseName());
+        if(driver != null) {
+            dataSource.setDriverClass(driver);
+        }
+        dataSource.setJdbcUrl(actualUrl);
+        dataSource.setUser(actualUsername);
+        dataSource.setPassword(actualPassword);
+        int actualMinPoolSize = getActualMinPoolSize();
+        dataSource.setMinPoolSize(actualMinPoolSize);
+        dataSource.setInitialPoolSize(actualMinPoolSize);
+        dataSource.setMaxPoolSize(Math.max(actualMinPoolSize, getActualMaxPoolSize()));
+        //Fail fast when the database is unreachable, rather than retrying until the checkout timeout
+        dataSource.setAcquireRetryAttempts(ACQUIRE_RETRY_ATTEMPTS);
+        dataSource.setCheckoutTimeout(
+                (checkoutTimeout != null ? checkoutTimeout : DEFAULT_CHECKOUT_TIMEOUT) * 1000);
+        if(maxIdleTime != null) {
+            dataSource.setMaxIdleTime(maxIdleTime);
+        }
+        //Idle connections are validated periodically, and connections returned to the pool are validated
+        //asynchronously, so that broken connections are rarely handed out without paying a round trip per checkout
+        if(validationQuery != null) {
+            dataSource.setPreferredTestQuery(validationQuery);
+        }
+        dataSource.setIdleConnectionTestPeriod(
+                validationInterval != null ? validationInterval : DEFAULT_VALIDATION_INTERVAL);
+        dataSource.setTestConnectionOnCheckin(true);
+        dataSource.setTestConnectionOnCheckout(validateOnCheckout != null && validateOnCheckout);
+        if(leakDetectionThreshold != null && leakDetectionThreshold > 0) {
+            //Connections held longer than this are considered leaked: they are closed, and the stack trace of
+            //the code that acquired them is logged
+            dataSource.setUnreturnedConnectionTimeout(leakDetectionThreshold);
+            dataSource.setDebugUnreturnedConnectionStackTraces(true);
+        }
+        return dataSource;
+    }
+
+    protected synchronized void closeDataSource() {
+        if(dataSource != null) {
+            logger.info("Closing connection pool for database {}", getDatabase().getDatabaseName());
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    //**************************************************************************
+    // Pool statistics
+    //**************************************************************************
+
+    /**
+     * @return the number of connections currently in use.
+     */
+    public synchronized int getActiveConnections() throws SQLException {
+        return dataSource != null ? dataSource.getNumBusyConnectionsDefaultUser() : 0;
+    }
+
+    /**
+     * @return the number of connections available in the pool.
+     */
+    public synchronized int getIdleConnections() throws SQLException {
+        return dataSource != null ? dataSource.getNumIdleConnectionsDefaultUser() : 0;
+    }
+
+    /**
+     * @return the number of open connections, active and idle.
+     */
+    public synchronized int getTotalConnections() throws SQLException {
+        return dataSource != null ? dataSource.getNumConnectionsDefaultUser() : 0;
+    }
+
+    /**
+     * @return the number of threads waiting for a connection to become available.
+     */
+    public synchronized int getThreadsAwaitingConnection() throws SQLException {
+        return dataSource != null ? dataSource.getNumThreadsAwaitingCheckoutDefaultUser() : 0;
+    }
+
+    //**************************************************************************
+    // Getters/setters
+    //**************************************************************************
+
+    @XmlAttribute(required = false)
+    public Integer getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public void setMinPoolSize(Integer minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+    public int getActualMinPoolSize() {
+        return minPoolSize != null ? minPoolSize : DEFAULT_MIN_POOL_SIZE;
+    }
+
+    @XmlAttribute(required = false)
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public int getActualMaxPoolSize() {
+        return maxPoolSize != null ? maxPoolSize : DEFAULT_MAX_POOL_SIZE;
+    }
+
+    /**
+     * How long, in seconds, to wait for a connection when the pool is exhausted before failing. Zero means
+     * waiting indefinitely. Defaults to {@link #DEFAULT_CHECKOUT_TIMEOUT}.
+     */
+    @XmlAttribute(required = false)
+    public Integer getCheckoutTimeout() {
+        return checkoutTimeout;
+    }
+
+    public void setCheckoutTimeout(Integer checkoutTimeout) {
+        this.checkoutTimeout = checkoutTimeout;
+    }
+
+    /**
+     * How long, in seconds, a connection can stay unused in the pool before being closed. By default, connections
+     * are never closed for being idle.
+     */
+    @XmlAttribute(required = false)
+    public Integer getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(Integer maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * The query used to validate connections. By default, the driver's own validation (Connection.isValid) is used.
+     */
+    @XmlAttribute(required = false)
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    /**
+     * How often, in seconds, idle connections are validated. Defaults to {@link #DEFAULT_VALIDATION_INTERVAL}.
+     */
+    @XmlAttribute(required = false)
+    public Integer getValidationInterval() {
+        return validationInterval;
+    }
+
+    public void setValidationInterval(Integer validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * Whether to validate each connection before handing it out. Safest, but costs a round trip to the database
+     * per checkout. False by default.
+     */
+    @XmlAttribute(required = false)
+    public Boolean getValidateOnCheckout() {
+        return validateOnCheckout;
+    }
+
+    public void setValidateOnCheckout(Boolean validateOnCheckout) {
+        this.validateOnCheckout = validateOnCheckout;
+    }
+
+    /**
+     * How long, in seconds, a connection can be held before it is considered leaked, closed and reported in the log
+     * together with the stack trace of the code that acquired it. Disabled by default.
+     */
+    @XmlAttribute(required = false)
+    public Integer getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public void setLeakDetectionThreshold(Integer leakDetectionThreshold) {
+        this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    //**************************************************************************
+    // Other methods
+    //**************************************************************************
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("driver", driver)
+                .append("url", actualUrl)
+                .append("username", actualUsername)
+                .append("minPoolSize", getActualMinPoolSize())
+                .append("maxPoolSize", getActualMaxPoolSize())
+                .toString();
+    }
+}
@@ -31,7 +31,9 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -50,7 +52,7 @@ public class Schema implements ModelObject, Annotated {
     //**************************************************************************
 
     protected Database database;
-    protected final List<Table> tables = new ArrayList<>();
+    protected final List<Table> tables = new ChangeTrackingList<>(this::invalidateIndexes);
     @Deprecated
     protected final List<Table> immediateTables;
 
@@ -61,6 +63,8 @@ public class Schema implements ModelObject, Annotated {
     protected Configuration configuration;
     protected String key;
     protected final List<Annotation> annotations = new ArrayList<>();
+
+    protected volatile Map<String, Table> tablesByName;
     
     //**************************************************************************
     // Logging
@@ -123,6 +127,48 @@ public class Schema implements ModelObject, Annotated {
         }
     }
 
+    /**
+     * Eagerly rebuilds the index of tables by name and those of the tables. See {@link Model#reindex()}.
+     */
+    public void reindex() {
+        tablesByName = buildTablesByName();
+        for (Table table : tables) {
+            table.reindex();
+        }
+    }
+
+    /**
+     * Invalidates the index of tables by name and the database's index of tables by entity name.
+     */
+    public void invalidateIndexes() {
+        tablesByName = null;
+        if(database != null) {
+            database.invalidateIndexes();
+        }
+    }
+
+    protected Map<String, Table> buildTablesByName() {
+        Map<String, Table> tablesByName = new HashMap<>();
+        for (Table table : tables) {
+            if(table.getTableName() != null) {
+                tablesByName.putIfAbsent(table.getTableName(), table);
+            }
+        }
+        return tablesByName;
+    }
+
+    /**
+     * @return the tables by name, rebuilt if the tables have changed since the last lookup.
+     */
+    public Map<String, Table> getTablesByName() {
+        Map<String, Table> tablesByName = this.tablesByName;
+        if(tablesByName == null) {
+            tablesByName = buildTablesByName();
+            this.tablesByName = tablesByName;
+        }
+        return tablesByName;
+    }
+
     //**************************************************************************
     // Getters/setter
     //**************************************************************************
@@ -132,6 +178,7 @@ public class Schema implements ModelObject, Annotated {
     }
 
     public void setDatabase(Database database) {
+        invalidateIndexes();
         this.database = database;
     }
 
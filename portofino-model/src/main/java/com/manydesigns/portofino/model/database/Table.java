@@ -33,7 +33,9 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 * @author Paolo Predonzani     - paolo.predonzani@manydesigns.com
@@ -57,6 +59,8 @@ public class Table implements ModelObject, Annotated {
     protected final List<Annotation> annotations;
     protected final List<ModelSelectionProvider> selectionProviders;
 
+    protected volatile Map<String, ForeignKey> foreignKeysByName;
+
     protected Schema schema;
     protected String tableName;
     protected String entityName;
@@ -86,7 +90,7 @@ public class Table implements ModelObject, Annotated {
     //**************************************************************************
     public Table() {
         columns = new ArrayList<>();
-        foreignKeys = new ArrayList<>();
+        foreignKeys = new ChangeTrackingList<>(this::invalidateIndexes);
         oneToManyRelationships = new ArrayList<>();
         annotations = new ArrayList<>();
         selectionProviders = new ArrayList<>();
@@ -171,6 +175,27 @@ public class Table implements ModelObject, Annotated {
         }
     }
 
+    /**
+     * Eagerly rebuilds the index of foreign keys by name. See {@link Model#reindex()}.
+     */
+    public void reindex() {
+        foreignKeysByName = buildForeignKeysByName();
+    }
+
+    public void invalidateIndexes() {
+        foreignKeysByName = null;
+    }
+
+    protected Map<String, ForeignKey> buildForeignKeysByName() {
+        Map<String, ForeignKey> foreignKeysByName = new HashMap<>();
+        for (ForeignKey foreignKey : foreignKeys) {
+            if(foreignKey.getName() != null) {
+                foreignKeysByName.putIfAbsent(foreignKey.getName(), foreignKey);
+            }
+        }
+        return foreignKeysByName;
+    }
+
     //**************************************************************************
     // Getters/setter
     //**************************************************************************
@@ -247,6 +272,18 @@ public class Table implements ModelObject, Annotated {
         return foreignKeys;
     }
 
+    /**
+     * @return the foreign keys by name, rebuilt if the foreign keys have changed since the last lookup.
+     */
+    public Map<String, ForeignKey> getForeignKeysByName() {
+        Map<String, ForeignKey> foreignKeysByName = this.foreignKeysByName;
+        if(foreignKeysByName == null) {
+            foreignKeysByName = buildForeignKeysByName();
+            this.foreignKeysByName = foreignKeysByName;
+        }
+        return foreignKeysByName;
+    }
+
     @XmlAttribute(required = false)
     public String getEntityName() {
         return entityName;
@@ -240,6 +240,15 @@ public class Type {
                 return new Class[] { Timestamp.class, DateTime.class, java.sql.Date.class, LocalDateTime.class, ZonedDateTime.class, Instant.class };
             } else if(defaultJavaType == java.sql.Date.class) {
                 return new Class[] { java.sql.Date.class, DateTime.class, LocalDate.class, Timestamp.class }; //TODO Joda LocalDate as well?
+            } else if(defaultJavaType == byte[].class) {
+                if(jdbcType == Types.BLOB) {
+                    //java.sql.Blob is mapped lazily and streamed, rather than read in memory with the rest of the row.
+                    //It's only offered for actual LOB columns: on binary columns such as PostgreSQL's bytea, the
+                    //driver would treat the value as a large object reference.
+                    return new Class[] { byte[].class, java.sql.Blob.class };
+                } else {
+                    return new Class[] { byte[].class };
+                }
             } else {
                 if(defaultJavaType != null) {
                     return new Class[] { defaultJavaType };
@@ -22,11 +22,14 @@ package com.manydesigns.portofino.model.database.platforms;
 
 import com.manydesigns.portofino.model.database.Column;
 import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Table;
 import org.apache.commons.dbutils.DbUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -149,4 +152,29 @@ public abstract class AbstractDatabasePlatform implements DatabasePlatform {
     protected String getCatalogColumnName() {
         return TABLE_CATALOG;
     }
+
+    /**
+     * Runs a query returning a single row count, as used by {@link #getEstimatedRowCount(Connection, Table)}.
+     * The query is passed the schema and the table name as parameters.
+     * @param connection the connection.
+     * @param sql the query.
+     * @param table the table.
+     * @return the count, or null if the query returns no rows or a negative count (i.e. no statistics available).
+     * @throws SQLException if the query fails.
+     */
+    protected Long queryEstimatedRowCount(Connection connection, String sql, Table table) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, table.getSchema().getActualSchemaName());
+            statement.setString(2, table.getTableName());
+            try(ResultSet rs = statement.executeQuery()) {
+                if(rs.next()) {
+                    long count = rs.getLong(1);
+                    if(!rs.wasNull() && count >= 0) {
+                        return count;
+                    }
+                }
+            }
+        }
+        return null;
+    }
 }
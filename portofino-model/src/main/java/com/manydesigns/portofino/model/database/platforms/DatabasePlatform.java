@@ -23,7 +23,9 @@ package com.manydesigns.portofino.model.database.platforms;
 import com.manydesigns.elements.annotations.Status;
 import com.manydesigns.portofino.model.database.Column;
 import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Table;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.List;
@@ -64,6 +66,18 @@ public interface DatabasePlatform {
     void shutdown(ConnectionProvider connectionProvider);
 
     List<String[]> getSchemaNames(DatabaseMetaData databaseMetaData) throws SQLException;
+
+    /**
+     * Estimates the number of rows of a table using the statistics maintained by the database, which is much
+     * cheaper than an exact count on large tables.
+     * @param connection the connection to use.
+     * @param table the table.
+     * @return the estimated number of rows, or null if this platform cannot estimate it (the default).
+     * @throws SQLException if the statistics cannot be read.
+     */
+    default Long getEstimatedRowCount(Connection connection, Table table) throws SQLException {
+        return null;
+    }
     
     class TypeDescriptor {
         
@@ -21,9 +21,11 @@
 package com.manydesigns.portofino.database.platforms;
 
 import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Table;
 import com.manydesigns.portofino.model.database.platforms.AbstractDatabasePlatform;
 import org.hibernate.dialect.MySQLDialect;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -42,6 +44,8 @@ public class MySql5DatabasePlatform extends AbstractDatabasePlatform {
 
     public final static String DESCRIPTION = "MySQL 5.x";
     public final static String STANDARD_DRIVER_CLASS_NAME = "com.mysql.jdbc.Driver";
+    public final static String ESTIMATED_ROW_COUNT_QUERY =
+            "select table_rows from information_schema.tables where table_schema = ? and table_name = ?";
 
     //**************************************************************************
     // Constructors
@@ -78,5 +82,10 @@ public class MySql5DatabasePlatform extends AbstractDatabasePlatform {
         }
         return schemaNames;
     }
+
+    @Override
+    public Long getEstimatedRowCount(Connection connection, Table table) throws SQLException {
+        return queryEstimatedRowCount(connection, ESTIMATED_ROW_COUNT_QUERY, table);
+    }
 }
 
@@ -21,9 +21,11 @@
 package com.manydesigns.portofino.database.platforms;
 
 import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Table;
 import com.manydesigns.portofino.model.database.platforms.AbstractDatabasePlatform;
 import org.hibernate.dialect.Oracle9iDialect;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -42,6 +44,8 @@ public class OracleDatabasePlatform extends AbstractDatabasePlatform {
     public final static String DESCRIPTION = "Oracle";
     public final static String STANDARD_DRIVER_CLASS_NAME =
             "oracle.jdbc.driver.OracleDriver";
+    public final static String ESTIMATED_ROW_COUNT_QUERY =
+            "select num_rows from all_tables where owner = ? and table_name = ?";
 
     //**************************************************************************
     // Constructors
@@ -73,4 +77,10 @@ public class OracleDatabasePlatform extends AbstractDatabasePlatform {
         schemaNames.removeIf(schemaName -> "SYS".equals(schemaName[1]) || "SYSTEM".equals(schemaName[1]));
         return schemaNames;
     }
+
+    @Override
+    public Long getEstimatedRowCount(Connection connection, Table table) throws SQLException {
+        //num_rows is null if the table has never been analyzed
+        return queryEstimatedRowCount(connection, ESTIMATED_ROW_COUNT_QUERY, table);
+    }
 }
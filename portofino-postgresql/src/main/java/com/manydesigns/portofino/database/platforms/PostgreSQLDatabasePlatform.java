@@ -22,11 +22,13 @@ package com.manydesigns.portofino.database.platforms;
 
 import com.manydesigns.portofino.model.database.Column;
 import com.manydesigns.portofino.model.database.ConnectionProvider;
+import com.manydesigns.portofino.model.database.Table;
 import com.manydesigns.portofino.model.database.platforms.AbstractDatabasePlatform;
 import com.manydesigns.portofino.persistence.hibernate.ColumnParameterType;
 import org.hibernate.dialect.PostgreSQL82Dialect;
 import org.hibernate.usertype.DynamicParameterizedType;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -47,6 +49,9 @@ public class PostgreSQLDatabasePlatform extends AbstractDatabasePlatform {
     public final static String DESCRIPTION = "PostgreSQL";
     public final static String STANDARD_DRIVER_CLASS_NAME =
             "org.postgresql.Driver";
+    public final static String ESTIMATED_ROW_COUNT_QUERY =
+            "select c.reltuples::bigint from pg_class c join pg_namespace n on n.oid = c.relnamespace " +
+            "where n.nspname = ? and c.relname = ?";
     
     //**************************************************************************
     // Constructors
@@ -95,4 +100,10 @@ public class PostgreSQLDatabasePlatform extends AbstractDatabasePlatform {
         schemaNames.removeIf(schema -> "information_schema".equalsIgnoreCase(schema[1]) || schema[1].startsWith("pg_"));
         return schemaNames;
     }
+
+    @Override
+    public Long getEstimatedRowCount(Connection connection, Table table) throws SQLException {
+        //reltuples is -1 (or 0 on older versions) if the table has never been vacuumed or analyzed
+        return queryEstimatedRowCount(connection, ESTIMATED_ROW_COUNT_QUERY, table);
+    }
 }
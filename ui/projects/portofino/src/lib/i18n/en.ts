@@ -11,5 +11,7 @@ export const TRANSLATIONS_EN = {
   "permission: crud-delete": "Delete",
   "_ is required.": "{{label}} is required.",
   '_: max _.': "{{label}}: max {{max}}.",
-  'Invalid date, _ expected.': "Invalid date, {{dateFormat}} expected."
+  'Invalid date, _ expected.': "Invalid date, {{dateFormat}} expected.",
+  "_ – _ of about _": "{{start}} – {{end}} of about {{length}}",
+  "_ – _ of more than _": "{{start}} – {{end}} of more than {{end}}"
 };
@@ -118,4 +118,6 @@ export const TRANSLATIONS_ES = {
   "_ not found": "{{what}} no encontrado",
   "_ is required.": "{{label}} es obligatorio.",
   '_: max _.': "{{label}}: max {max}.",
+  "_ – _ of about _": "{{start}} – {{end}} de aproximadamente {{length}}",
+  "_ – _ of more than _": "{{start}} – {{end}} de más de {{end}}",
 };
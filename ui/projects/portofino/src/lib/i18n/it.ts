@@ -118,4 +118,6 @@ export const TRANSLATIONS_IT = {
   "_ not found": "{{what}} non trovato",
   "_ is required.": "{{label}} è obbligatorio.",
   '_: max _.': "{{label}}: max {max}.",
+  "_ – _ of about _": "{{start}} – {{end}} di circa {{length}}",
+  "_ – _ of more than _": "{{start}} – {{end}} di più di {{end}}",
 };
@@ -305,7 +305,7 @@ export class CrudComponent extends Page {
 
   get configurationProperties() {
     return ["name", "database", "query", "searchTitle", "createTitle", "readTitle", "editTitle", "variable",
-            "largeResultSet", "rowsPerPage"]
+            "largeResultSet", "totalRecordsMode", "streamingSearch", "rowsPerPage"]
   }
 
   protected getPageSettingsPanel(): PageSettingsPanel {
@@ -1,6 +1,6 @@
 import {
   AfterViewInit,
-  Component, EventEmitter,
+  Component, EventEmitter, Injectable,
   Input,
   OnDestroy,
   OnInit, Output,
@@ -16,7 +16,7 @@ import {
   isSearchable,
   Property, SelectionOption
 } from "../../../class-accessor";
-import { PageEvent } from "@angular/material/paginator";
+import { MatPaginatorIntl, PageEvent } from "@angular/material/paginator";
 import { Sort } from "@angular/material/sort";
 import { MatTableDataSource } from "@angular/material/table";
 import {HttpClient, HttpParams} from "@angular/common/http";
@@ -31,10 +31,40 @@ import {Button, ButtonInfo, getButtons} from "../../../buttons";
 import {TranslateService} from "@ngx-translate/core";
 import {SearchFieldComponent} from "./search-field.component";
 
+/**
+ * Paginator labels for search results whose total is not exact: an estimate, or a lower bound when the
+ * records are never counted.
+ */
+@Injectable()
+export class SearchPaginatorIntl extends MatPaginatorIntl {
+  totalRecordsExact = true;
+  protected readonly exactRangeLabel = this.getRangeLabel;
+
+  constructor(protected translate: TranslateService) {
+    super();
+  }
+
+  getRangeLabel = (page: number, pageSize: number, length: number) => {
+    if(this.totalRecordsExact || length == 0) {
+      return this.exactRangeLabel(page, pageSize, length);
+    }
+    const start = page * pageSize + 1;
+    const end = Math.min((page + 1) * pageSize, length);
+    if(length > end + 1) {
+      //An estimate
+      return this.translate.instant("_ – _ of about _", { start: start, end: end, length: length });
+    } else {
+      //A lower bound: we only know whether there's at least another record after this page
+      return this.translate.instant("_ – _ of more than _", { start: start, end: end });
+    }
+  };
+}
+
 @Component({
   selector: 'portofino-crud-search',
   templateUrl: "../../../../../assets/pages/crud/search/search.component.html",
-  styleUrls: ["../../../../../assets/pages/crud/search/search.component.scss"]
+  styleUrls: ["../../../../../assets/pages/crud/search/search.component.scss"],
+  providers: [{ provide: MatPaginatorIntl, useClass: SearchPaginatorIntl }]
 })
 export class SearchComponent implements OnInit, OnDestroy, AfterViewInit {
 
@@ -81,7 +111,8 @@ export class SearchComponent implements OnInit, OnDestroy, AfterViewInit {
   openDetail = new EventEmitter<string>();
 
   constructor(protected http: HttpClient, protected portofino: PortofinoService, protected translate: TranslateService,
-              protected auth: AuthenticationService, public media: MediaObserver) {}
+              protected auth: AuthenticationService, public media: MediaObserver,
+              protected paginatorIntl: MatPaginatorIntl) {}
 
   ngOnInit() {
     this.setupFields();
@@ -275,6 +306,11 @@ export class SearchComponent implements OnInit, OnDestroy, AfterViewInit {
     this.http.get<SearchResults>(this.sourceUrl, {params: params}).subscribe(
       results => {
         this.results = results;
+        if(this.paginatorIntl instanceof SearchPaginatorIntl) {
+          //Without an exact count, the total is only a lower bound; the paginator must not present it as the length
+          this.paginatorIntl.totalRecordsExact = results.totalRecordsExact !== false;
+          this.paginatorIntl.changes.next();
+        }
         if(this.isDataTable() || !this.resultsDataSource.data) {
           this.resultsDataSource.data = this.results.records;
           this.selection.clear();
@@ -432,6 +468,8 @@ export class SearchComponent implements OnInit, OnDestroy, AfterViewInit {
 export class SearchResults {
   recordsReturned: number;
   totalRecords: number;
+  /** False when totalRecords is an estimate or a lower bound (see the totalRecordsMode of the CRUD configuration) */
+  totalRecordsExact: boolean;
   startIndex: number;
   records: object[];
 }
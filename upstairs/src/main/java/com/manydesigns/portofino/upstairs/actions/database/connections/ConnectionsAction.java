@@ -383,6 +383,8 @@ public class ConnectionsAction extends AbstractResourceAction {
         } else {
             persistence.getModel().getDatabases().remove(database);
             persistence.initModel();
+            //Release its resources, e.g. its connection pool
+            database.getConnectionProvider().shutdown();
             persistence.saveXmlModel();
             logger.info("Database {} deleted", databaseName);
         }
@@ -491,7 +491,7 @@ public class TablesAction extends AbstractResourceAction {
             classAccessor.addProperty(new MutablePropertyAccessor("fieldSize", Integer.class));
             classAccessor.addProperty(new MutablePropertyAccessor("dateFormat", String.class));
 
-        } else if(byte[].class.isAssignableFrom(type)) {
+        } else if(byte[].class.isAssignableFrom(type) || java.sql.Blob.class.isAssignableFrom(type)) {
             classAccessor.addProperty(new MutablePropertyAccessor("databaseBlobContentTypeProperty", String.class));
             classAccessor.addProperty(new MutablePropertyAccessor("databaseBlobFileNameProperty", String.class));
             classAccessor.addProperty(new MutablePropertyAccessor("databaseBlobTimestampProperty", String.class));